@@ -0,0 +1,56 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Realistic synthetic rows for the database benchmarks: a small menu of
+ * croffle products repeated across carts of a few items each.
+ */
+final class BenchmarkData {
+
+    private static final String[] PRODUCTS = {
+        "Classic Croffle", "Biscoff Croffle", "Nutella Croffle", "Matcha Croffle",
+        "Strawberry Croffle", "Oreo Croffle", "Caramel Croffle", "Blueberry Croffle",
+        "Iced Americano", "Caramel Latte", "Matcha Latte", "Bottled Water"
+    };
+
+    private static final String[] CATEGORIES = {"croffles", "espresso", "drinks"};
+
+    private BenchmarkData() {}
+
+    static List<TransactionItem> items(int seed, int count) {
+        List<TransactionItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int product = (seed * 7 + i * 3) % PRODUCTS.length;
+            TransactionItem item = new TransactionItem("prod-" + product, PRODUCTS[product], 1 + (i % 2), 125.0);
+            item.sku = "SKU-" + (1000 + product);
+            item.category = CATEGORIES[product % CATEGORIES.length];
+            item.taxRate = 0.12;
+            items.add(item);
+        }
+        return items;
+    }
+
+    static List<OfflineTransaction> transactions(int count, int itemsPerTransaction) {
+        String[] priorities = {"high", "medium", "medium", "low"};
+        long start = System.currentTimeMillis() - count * 1000L;
+        List<OfflineTransaction> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            OfflineTransaction tx = new OfflineTransaction("tx-" + i, "store-" + (i % 3), "user-1", "shift-" + (i % 3));
+            tx.timestamp = new Date(start + i * 1000L);
+            tx.setPriority(priorities[i % priorities.length]);
+            tx.items = items(i, itemsPerTransaction);
+            tx.subtotal = 125.0 * itemsPerTransaction;
+            tx.total = tx.subtotal;
+            tx.amountTendered = tx.total;
+            tx.paymentMethod = i % 3 == 0 ? "card" : "cash";
+            tx.receiptNumber = "RCP-" + (100000 + i);
+            rows.add(tx);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,241 @@
+package com.crofflestore.pos.benchmark;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Debug;
+import android.util.Log;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.converters.PaymentDetailsConverter;
+import com.crofflestore.pos.database.converters.TransactionItemConverter;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.PaymentDetails;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Items and payment details column codecs: the compact binary converters
+ * against the previous Gson path (reflective, with a TypeToken built per
+ * decode). Reports encode and decode time per row, bytes allocated per
+ * row, encoded size, and the database file size for the same rows.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConverterCodecBenchmark {
+
+    private static final String TAG = "ConverterCodecBenchmark";
+    private static final int ROWS = 10_000;
+    private static final int ITEMS_PER_TRANSACTION = 4;
+    private static final int WARMUP_PASSES = 2;
+
+    private static final Gson gson = new Gson();
+
+    @Test
+    public void binaryCodecAgainstGson() {
+        List<OfflineTransaction> rows = BenchmarkData.transactions(ROWS, ITEMS_PER_TRANSACTION);
+        for (OfflineTransaction tx : rows) {
+            if (!tx.isCashTransaction()) {
+                tx.paymentDetails = new PaymentDetails("visa", "4242");
+                tx.paymentDetails.authCode = "AUTH-" + tx.receiptNumber;
+                tx.paymentDetails.referenceNumber = tx.receiptNumber;
+            }
+        }
+
+        Codec gsonCodec = new GsonCodec();
+        Codec binaryCodec = new BinaryCodec();
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            decodeAll(gsonCodec, encodeAll(gsonCodec, rows));
+            decodeAll(binaryCodec, encodeAll(binaryCodec, rows));
+        }
+
+        Result gsonResult = measure(gsonCodec, rows);
+        Result binaryResult = measure(binaryCodec, rows);
+        Context context = ApplicationProvider.getApplicationContext();
+        gsonResult.fileBytes = fileSize(context, "codec-bench-gson.db", gsonResult.encoded);
+        binaryResult.fileBytes = fileSize(context, "codec-bench-binary.db", binaryResult.encoded);
+
+        Log.i(TAG, "gson:   " + gsonResult);
+        Log.i(TAG, "binary: " + binaryResult);
+
+        assertTrue(binaryResult.bytesPerRow * 2 < gsonResult.bytesPerRow);
+        assertTrue(binaryResult.fileBytes < gsonResult.fileBytes);
+        assertTrue(binaryResult.decodeNanosPerRow < gsonResult.decodeNanosPerRow);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Result measure(Codec codec, List<OfflineTransaction> rows) {
+        Result result = new Result();
+
+        long start = System.nanoTime();
+        Object[][] encoded = encodeAll(codec, rows);
+        result.encodeNanosPerRow = (System.nanoTime() - start) / rows.size();
+
+        start = System.nanoTime();
+        decodeAll(codec, encoded);
+        result.decodeNanosPerRow = (System.nanoTime() - start) / rows.size();
+
+        // Allocation counting slows everything down, so it gets its own pass
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        decodeAll(codec, encoded);
+        Debug.stopAllocCounting();
+        result.decodeAllocBytesPerRow = Debug.getThreadAllocSize() / rows.size();
+
+        long size = 0;
+        for (Object[] row : encoded) {
+            size += codec.size(row[0]) + codec.size(row[1]);
+        }
+        result.bytesPerRow = size / rows.size();
+        result.encoded = encoded;
+        return result;
+    }
+
+    private static Object[][] encodeAll(Codec codec, List<OfflineTransaction> rows) {
+        Object[][] encoded = new Object[rows.size()][];
+        for (int i = 0; i < rows.size(); i++) {
+            OfflineTransaction tx = rows.get(i);
+            encoded[i] = new Object[] {codec.encodeItems(tx.items), codec.encodePayment(tx.paymentDetails)};
+        }
+        return encoded;
+    }
+
+    private static int decodeAll(Codec codec, Object[][] encoded) {
+        int items = 0;
+        for (Object[] row : encoded) {
+            items += codec.decodeItems(row[0]).size();
+            codec.decodePayment(row[1]);
+        }
+        return items;
+    }
+
+    /**
+     * The encoded values stored the way Room would store them: TEXT for
+     * JSON, BLOB for the binary form
+     */
+    private static long fileSize(Context context, String name, Object[][] encoded) {
+        context.deleteDatabase(name);
+        File file = context.getDatabasePath(name);
+        SQLiteDatabase db = context.openOrCreateDatabase(name, Context.MODE_PRIVATE, null);
+        try {
+            db.execSQL("CREATE TABLE rows (id INTEGER PRIMARY KEY, items, payment_details)");
+            SQLiteStatement insert = db.compileStatement("INSERT INTO rows (items, payment_details) VALUES (?, ?)");
+            db.beginTransaction();
+            try {
+                for (Object[] row : encoded) {
+                    insert.clearBindings();
+                    bind(insert, 1, row[0]);
+                    bind(insert, 2, row[1]);
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            db.close();
+        }
+        long size = file.length();
+        context.deleteDatabase(name);
+        return size;
+    }
+
+    private static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value instanceof String) {
+            statement.bindString(index, (String) value);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        }
+    }
+
+    private interface Codec {
+        Object encodeItems(List<TransactionItem> items);
+        List<TransactionItem> decodeItems(Object value);
+        Object encodePayment(PaymentDetails details);
+        PaymentDetails decodePayment(Object value);
+        int size(Object value);
+    }
+
+    /**
+     * The converters as they were before the binary codec
+     */
+    private static final class GsonCodec implements Codec {
+        @Override
+        public Object encodeItems(List<TransactionItem> items) {
+            return gson.toJson(items);
+        }
+
+        @Override
+        public List<TransactionItem> decodeItems(Object value) {
+            Type listType = new TypeToken<List<TransactionItem>>(){}.getType();
+            return gson.fromJson((String) value, listType);
+        }
+
+        @Override
+        public Object encodePayment(PaymentDetails details) {
+            return details == null ? null : gson.toJson(details);
+        }
+
+        @Override
+        public PaymentDetails decodePayment(Object value) {
+            return value == null ? null : gson.fromJson((String) value, PaymentDetails.class);
+        }
+
+        @Override
+        public int size(Object value) {
+            // Room stores TEXT as UTF-8; this data is ASCII
+            return value == null ? 0 : ((String) value).length();
+        }
+    }
+
+    private static final class BinaryCodec implements Codec {
+        @Override
+        public Object encodeItems(List<TransactionItem> items) {
+            return TransactionItemConverter.toBytes(items);
+        }
+
+        @Override
+        public List<TransactionItem> decodeItems(Object value) {
+            return TransactionItemConverter.fromBytes((byte[]) value);
+        }
+
+        @Override
+        public Object encodePayment(PaymentDetails details) {
+            return PaymentDetailsConverter.toBytes(details);
+        }
+
+        @Override
+        public PaymentDetails decodePayment(Object value) {
+            return PaymentDetailsConverter.fromBytes((byte[]) value);
+        }
+
+        @Override
+        public int size(Object value) {
+            return value == null ? 0 : ((byte[]) value).length;
+        }
+    }
+
+    private static final class Result {
+        long encodeNanosPerRow;
+        long decodeNanosPerRow;
+        long decodeAllocBytesPerRow;
+        long bytesPerRow;
+        long fileBytes;
+        Object[][] encoded;
+
+        @Override
+        public String toString() {
+            return "encode=" + encodeNanosPerRow + "ns/row decode=" + decodeNanosPerRow + "ns/row"
+                    + " decodeAlloc=" + decodeAllocBytesPerRow + "B/row size=" + bytesPerRow + "B/row"
+                    + " file=" + fileBytes / 1024 + "KiB";
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.crofflestore.pos.benchmark;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.CroffleOfflineDatabase;
+import com.crofflestore.pos.database.TestDatabases;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.QueueStatsTracker;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * DatabaseStats read cost at 10k and 100k rows: the original twelve
+ * queries, the single grouped aggregate, and the incrementally maintained
+ * tracker snapshot. All three must agree.
+ *
+ * The grouped pass is what loading and reconciling the tracker cost (and
+ * how long reconciliation holds the write lock); with the covering queue
+ * index it is one index-only scan, comparable to the twelve queries
+ * together. Dashboard reads are served by the tracker.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseStatsBenchmark {
+
+    private static final String TAG = "DatabaseStatsBenchmark";
+    private static final String DB_NAME = "stats-bench.db";
+    private static final int SEED_CHUNK = 5_000;
+    private static final int RUNS = 5;
+    private static final int SNAPSHOT_RUNS = 1_000;
+    private static final String[] STATUSES = {"synced", "synced", "synced", "pending", "failed", "conflict"};
+
+    @Test
+    public void statsAt10kRows() {
+        measure(10_000);
+    }
+
+    @Test
+    public void statsAt100kRows() {
+        measure(100_000);
+    }
+
+    private void measure(int rows) {
+        Context context = ApplicationProvider.getApplicationContext();
+        CroffleOfflineDatabase database = TestDatabases.fileBuilder(context, DB_NAME).build();
+        try {
+            OfflineTransactionDao dao = database.offlineTransactionDao();
+            seed(dao, rows);
+
+            long start = System.nanoTime();
+            int[] twelve = null;
+            for (int i = 0; i < RUNS; i++) {
+                twelve = twelveQueries(dao);
+            }
+            long twelveNanos = (System.nanoTime() - start) / RUNS;
+
+            start = System.nanoTime();
+            QueueStatsTracker.Snapshot grouped = null;
+            for (int i = 0; i < RUNS; i++) {
+                grouped = groupedQuery(dao);
+            }
+            long groupedNanos = (System.nanoTime() - start) / RUNS;
+
+            dao.getQueueStats(); // loads the tracker
+            start = System.nanoTime();
+            QueueStatsTracker.Snapshot tracked = null;
+            for (int i = 0; i < SNAPSHOT_RUNS; i++) {
+                tracked = dao.getQueueStats();
+            }
+            long trackedNanos = (System.nanoTime() - start) / SNAPSHOT_RUNS;
+
+            Log.i(TAG, rows + " rows: twelve queries=" + twelveNanos / 1000 + "us"
+                    + " grouped=" + groupedNanos / 1000 + "us"
+                    + " tracker=" + trackedNanos + "ns");
+
+            assertEquals(rows, twelve[0]);
+            assertAgrees(twelve, grouped);
+            assertAgrees(twelve, tracked);
+            assertTrue("tracker=" + trackedNanos + " grouped=" + groupedNanos, trackedNanos * 100 < groupedNanos);
+        } finally {
+            database.close();
+            context.deleteDatabase(DB_NAME);
+        }
+    }
+
+    /**
+     * Inserts in chunks; the tracker follows the inserts, so it is checked
+     * against the queries too
+     */
+    private static void seed(OfflineTransactionDao dao, int rows) {
+        for (int offset = 0; offset < rows; offset += SEED_CHUNK) {
+            List<OfflineTransaction> chunk = BenchmarkData.transactions(Math.min(SEED_CHUNK, rows - offset), 3);
+            for (int i = 0; i < chunk.size(); i++) {
+                OfflineTransaction tx = chunk.get(i);
+                tx.id = "tx-" + (offset + i);
+                tx.receiptNumber = "RCP-" + (100000 + offset + i);
+                tx.syncStatus = STATUSES[(offset + i) % STATUSES.length];
+            }
+            dao.insertAll(chunk);
+        }
+    }
+
+    /**
+     * The original getDatabaseStats(): one query per figure
+     */
+    private static int[] twelveQueries(OfflineTransactionDao dao) {
+        int[] counts = {
+            dao.getTotalTransactionCount(),
+            dao.getPendingTransactionCount(),
+            dao.getFailedTransactionCount(),
+            dao.getSyncingTransactionCount(),
+            dao.getConflictTransactionCount(),
+            dao.getHighPriorityPendingCount(),
+            dao.getMediumPriorityPendingCount(),
+            dao.getLowPriorityPendingCount()
+        };
+        dao.getTotalPendingAmount();
+        dao.getTodaysSyncedAmount();
+        dao.getOldestPendingTransactionTime();
+        dao.getNewestPendingTransactionTime();
+        return counts;
+    }
+
+    private static QueueStatsTracker.Snapshot groupedQuery(OfflineTransactionDao dao) {
+        long now = System.currentTimeMillis();
+        long[] day = QueueStatsTracker.dayBounds(now);
+        QueueStatsTracker fold = new QueueStatsTracker();
+        fold.reset(dao.aggregateStatsByStatusAndRank(day[0], day[1]), day[0], day[1], now);
+        return fold.snapshot(now);
+    }
+
+    private static void assertAgrees(int[] twelve, QueueStatsTracker.Snapshot snapshot) {
+        assertArrayEquals(twelve, new int[] {
+            snapshot.total, snapshot.pending, snapshot.failed, snapshot.syncing, snapshot.conflict,
+            snapshot.highQueued, snapshot.mediumQueued, snapshot.lowQueued
+        });
+    }
+}
@@ -0,0 +1,120 @@
+package com.crofflestore.pos.benchmark;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.CroffleOfflineDatabase;
+import com.crofflestore.pos.database.GroupCommitWriter;
+import com.crofflestore.pos.database.StorageProfile;
+import com.crofflestore.pos.database.TestDatabases;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Concurrent transaction capture: one commit per insert against the
+ * group-commit writer. Several threads insert sales at once, as checkout
+ * and background writes do during a rush; reports throughput and per-call
+ * latency percentiles on a file-backed database with synchronous=FULL, so
+ * every commit pays for its fsync.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GroupCommitBenchmark {
+
+    private static final String TAG = "GroupCommitBenchmark";
+    private static final String DB_NAME = "group-commit-bench.db";
+    private static final int THREADS = 4;
+    private static final int ROWS_PER_THREAD = 100;
+
+    @Test
+    public void groupCommitAgainstCommitPerInsert() throws Exception {
+        Result direct = run(false);
+        Result grouped = run(true);
+
+        Log.i(TAG, "commit per insert: " + direct);
+        Log.i(TAG, "group commit:      " + grouped);
+
+        assertTrue("commits=" + grouped.commits, grouped.commits < THREADS * ROWS_PER_THREAD);
+    }
+
+    private static Result run(boolean grouped) throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        CroffleOfflineDatabase database =
+                StorageProfile.DURABLE.configure(TestDatabases.fileBuilder(context, DB_NAME)).build();
+        try {
+            OfflineTransactionDao dao = database.offlineTransactionDao();
+            GroupCommitWriter writer = grouped ? new GroupCommitWriter(dao::insertAll) : null;
+            List<OfflineTransaction> rows = BenchmarkData.transactions(THREADS * ROWS_PER_THREAD, 4);
+            long[] latencies = new long[rows.size()];
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> callers = new ArrayList<>();
+
+            for (int t = 0; t < THREADS; t++) {
+                int first = t * ROWS_PER_THREAD;
+                Thread caller = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = first; i < first + ROWS_PER_THREAD; i++) {
+                            long began = System.nanoTime();
+                            if (writer != null) {
+                                writer.insert(rows.get(i));
+                            } else {
+                                dao.insert(rows.get(i));
+                            }
+                            latencies[i] = System.nanoTime() - began;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                callers.add(caller);
+                caller.start();
+            }
+
+            long began = System.nanoTime();
+            start.countDown();
+            for (Thread caller : callers) {
+                caller.join();
+            }
+            long elapsed = System.nanoTime() - began;
+
+            Result result = new Result();
+            if (writer != null) {
+                writer.close();
+                result.commits = writer.getCommitCount();
+            } else {
+                result.commits = rows.size();
+            }
+            assertEquals(rows.size(), dao.getTotalTransactionCount());
+
+            Arrays.sort(latencies);
+            result.rowsPerSecond = rows.size() * 1_000_000_000L / elapsed;
+            result.p50Micros = latencies[latencies.length / 2] / 1000;
+            result.p99Micros = latencies[latencies.length * 99 / 100] / 1000;
+            return result;
+        } finally {
+            database.close();
+            context.deleteDatabase(DB_NAME);
+        }
+    }
+
+    private static final class Result {
+        long rowsPerSecond;
+        long p50Micros;
+        long p99Micros;
+        long commits;
+
+        @Override
+        public String toString() {
+            return rowsPerSecond + " rows/s p50=" + p50Micros + "us p99=" + p99Micros + "us commits=" + commits;
+        }
+    }
+}
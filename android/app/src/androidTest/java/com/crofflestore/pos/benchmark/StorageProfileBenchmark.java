@@ -0,0 +1,136 @@
+package com.crofflestore.pos.benchmark;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.CroffleOfflineDatabase;
+import com.crofflestore.pos.database.IdleWalCheckpointer;
+import com.crofflestore.pos.database.StorageProfile;
+import com.crofflestore.pos.database.TestDatabases;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.io.File;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Insert and query throughput under each storage profile, on a
+ * file-backed database where each commit pays for its fsync.
+ *
+ * Inserts are one transaction per sale, as at the till. The query pass
+ * mixes the list screen and the sync queue reads. The WAL is checkpointed
+ * by hand after the inserts, the way the idle checkpointer would, and the
+ * time it takes is reported separately.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StorageProfileBenchmark {
+
+    private static final String TAG = "StorageProfileBenchmark";
+    private static final String DB_NAME = "storage-profile-bench.db";
+    private static final int ROWS = 500;
+    private static final int QUERY_ROUNDS = 200;
+
+    @Test
+    public void throughputPerProfile() {
+        StorageProfile[] profiles = {StorageProfile.DURABLE, StorageProfile.BALANCED, StorageProfile.THROUGHPUT};
+        for (StorageProfile profile : profiles) {
+            Result result = measure(profile);
+            Log.i(TAG, profile.name + ": " + result);
+        }
+    }
+
+    private static Result measure(StorageProfile profile) {
+        Context context = ApplicationProvider.getApplicationContext();
+        CroffleOfflineDatabase database = profile.configure(TestDatabases.fileBuilder(context, DB_NAME)).build();
+        try {
+            OfflineTransactionDao dao = database.offlineTransactionDao();
+            SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+            assertProfileApplied(db, profile);
+
+            List<OfflineTransaction> rows = BenchmarkData.transactions(ROWS, 4);
+            Result result = new Result();
+
+            long start = System.nanoTime();
+            for (OfflineTransaction tx : rows) {
+                dao.insert(tx);
+            }
+            result.insertsPerSecond = ROWS * 1_000_000_000L / (System.nanoTime() - start);
+            result.walFramesBeforeCheckpoint = walFrames(db);
+
+            IdleWalCheckpointer checkpointer = IdleWalCheckpointer.start(database, 60_000, "offline_transactions");
+            start = System.nanoTime();
+            checkpointer.checkpoint();
+            result.checkpointMillis = (System.nanoTime() - start) / 1_000_000;
+            checkpointer.stop();
+
+            start = System.nanoTime();
+            int seen = 0;
+            for (int i = 0; i < QUERY_ROUNDS; i++) {
+                seen += dao.getRecentSummaries(50).size();
+                seen += dao.getNextQueueEntries(new Date(), 20).size();
+            }
+            result.queryRoundsPerSecond = QUERY_ROUNDS * 1_000_000_000L / (System.nanoTime() - start);
+
+            assertEquals(QUERY_ROUNDS * 70, seen);
+            assertEquals(ROWS, dao.getTotalTransactionCount());
+            return result;
+        } finally {
+            database.close();
+            context.deleteDatabase(DB_NAME);
+        }
+    }
+
+    /**
+     * Read back inside a transaction, which runs on the write connection
+     */
+    private static void assertProfileApplied(SupportSQLiteDatabase db, StorageProfile profile) {
+        db.beginTransaction();
+        try {
+            assertEquals("wal", stringPragma(db, "journal_mode"));
+            assertEquals(profile.synchronousLevel(), longPragma(db, "synchronous"));
+            assertEquals(-profile.cacheSizeKib, longPragma(db, "cache_size"));
+            assertEquals(profile.walAutocheckpointPages, longPragma(db, "wal_autocheckpoint"));
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Frames in the WAL file: a 32 byte header, then a 24 byte header per page
+     */
+    private static long walFrames(SupportSQLiteDatabase db) {
+        File wal = new File(db.getPath() + "-wal");
+        return Math.max(0, wal.length() - 32) / (longPragma(db, "page_size") + 24);
+    }
+
+    private static long longPragma(SupportSQLiteDatabase db, String name) {
+        try (Cursor cursor = db.query("PRAGMA " + name)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    private static String stringPragma(SupportSQLiteDatabase db, String name) {
+        try (Cursor cursor = db.query("PRAGMA " + name)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    private static final class Result {
+        long insertsPerSecond;
+        long queryRoundsPerSecond;
+        long walFramesBeforeCheckpoint;
+        long checkpointMillis;
+
+        @Override
+        public String toString() {
+            return "inserts=" + insertsPerSecond + "/s queryRounds=" + queryRoundsPerSecond + "/s"
+                    + " walFrames=" + walFramesBeforeCheckpoint + " checkpoint=" + checkpointMillis + "ms";
+        }
+    }
+}
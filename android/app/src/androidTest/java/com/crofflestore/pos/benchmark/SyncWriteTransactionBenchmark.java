@@ -0,0 +1,147 @@
+package com.crofflestore.pos.benchmark;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.CroffleOfflineDatabase;
+import com.crofflestore.pos.database.TestDatabases;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.QueueCursor;
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Write transactions per sync cycle: per-row update() versus the batched
+ * claim/applySyncOutcomes state machine.
+ *
+ * Transaction counts are taken from Room's query callback on an in-memory
+ * database (deterministic); wall time is taken on a file-backed database
+ * where each commit pays for its fsync.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncWriteTransactionBenchmark {
+
+    private static final String TAG = "SyncWriteBenchmark";
+    private static final int ROWS = 200;
+    private static final int BATCH_SIZE = 50;
+    private static final String OWNER = "sync-write-bench";
+
+    @Test
+    public void batchedStateMachineUsesTenTimesFewerWriteTransactions() {
+        Context context = ApplicationProvider.getApplicationContext();
+        TransactionCounter counter = new TransactionCounter();
+        CroffleOfflineDatabase database = TestDatabases.inMemoryBuilder(context)
+                .setQueryCallback((sql, args) -> counter.onQuery(sql), Runnable::run)
+                .build();
+        try {
+            OfflineTransactionDao dao = database.offlineTransactionDao();
+            seed(dao);
+
+            counter.reset();
+            runPerRowCycle(dao);
+            int perRow = counter.committed;
+
+            resetToPending(database);
+            counter.reset();
+            runBatchedCycle(dao);
+            int batched = counter.committed;
+
+            Log.i(TAG, "write transactions for " + ROWS + " rows: per-row=" + perRow + " batched=" + batched);
+            assertEquals(ROWS, dao.getTotalTransactionCount());
+            assertEquals(0, dao.getPendingTransactionCount());
+            assertTrue("per-row=" + perRow + " batched=" + batched, perRow >= 10 * batched);
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void batchedStateMachineWallTime() {
+        Context context = ApplicationProvider.getApplicationContext();
+        CroffleOfflineDatabase database = TestDatabases.fileBuilder(context, "sync-write-bench.db").build();
+        try {
+            OfflineTransactionDao dao = database.offlineTransactionDao();
+            seed(dao);
+
+            long start = System.nanoTime();
+            runPerRowCycle(dao);
+            long perRowNanos = System.nanoTime() - start;
+
+            resetToPending(database);
+            start = System.nanoTime();
+            runBatchedCycle(dao);
+            long batchedNanos = System.nanoTime() - start;
+
+            Log.i(TAG, "wall time for " + ROWS + " rows: per-row=" + perRowNanos / 1_000_000 + "ms"
+                    + " batched=" + batchedNanos / 1_000_000 + "ms");
+        } finally {
+            database.close();
+            context.deleteDatabase("sync-write-bench.db");
+        }
+    }
+
+    private static void seed(OfflineTransactionDao dao) {
+        dao.insertAll(BenchmarkData.transactions(ROWS, 4));
+    }
+
+    /**
+     * The pre-batching worker loop: mark syncing, upload, mark synced, each via update()
+     */
+    private static void runPerRowCycle(OfflineTransactionDao dao) {
+        for (OfflineTransaction tx : dao.getNextBatchForSync(new Date(), ROWS)) {
+            tx.markAsSyncing();
+            dao.update(tx);
+            tx.markAsSynced();
+            dao.update(tx);
+        }
+    }
+
+    private static void runBatchedCycle(OfflineTransactionDao dao) {
+        List<OfflineTransaction> batch;
+        while (!(batch = dao.claimBatchForSync(OWNER, QueueCursor.START, BATCH_SIZE, new Date())).isEmpty()) {
+            List<SyncOutcome> outcomes = new ArrayList<>(batch.size());
+            for (OfflineTransaction tx : batch) {
+                outcomes.add(SyncOutcome.synced(tx.id));
+            }
+            dao.applySyncOutcomes(OWNER, outcomes, new Date());
+        }
+    }
+
+    private static void resetToPending(CroffleOfflineDatabase database) {
+        database.getOpenHelper().getWritableDatabase()
+                .execSQL("UPDATE offline_transactions SET sync_status = 'pending'");
+    }
+
+    /**
+     * Counts outermost transactions; nested DAO calls inside a @Transaction
+     * method begin/end nested transactions that share one commit.
+     */
+    private static final class TransactionCounter {
+        private int depth;
+        int committed;
+
+        void onQuery(String sql) {
+            if (sql.startsWith("BEGIN")) {
+                depth++;
+            } else if (sql.startsWith("END TRANSACTION")) {
+                depth--;
+                if (depth == 0) {
+                    committed++;
+                }
+            }
+        }
+
+        void reset() {
+            depth = 0;
+            committed = 0;
+        }
+    }
+}
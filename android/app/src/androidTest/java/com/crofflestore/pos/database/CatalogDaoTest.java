@@ -0,0 +1,145 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.CatalogDao;
+import com.crofflestore.pos.database.dao.CatalogItem;
+import com.crofflestore.pos.database.entities.CatalogCategory;
+import com.crofflestore.pos.database.entities.CatalogPrice;
+import com.crofflestore.pos.database.entities.CatalogProduct;
+import com.crofflestore.pos.database.entities.CatalogSyncState;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Catalog pages land with their high-water mark in one transaction, store
+ * prices override list prices, and catalogCache() drops what a page changed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogDaoTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private CroffleOfflineDatabase database;
+    private CatalogDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.catalogDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void pagesStoreRecordsAndTheirMark() {
+        dao.applyCategories(Collections.singletonList(category("c-1", "Croffles")), mark("categories", T0, "c-1"));
+        List<CatalogProduct> page = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            page.add(product("p-" + i, "SKU-" + i, "c-1", 100 + i, T0 + i));
+        }
+        dao.applyProducts(page, mark("products", T0 + 1199, "p-1199"));
+
+        assertEquals(1200, dao.getProductCount());
+        assertEquals(1, dao.getActiveCategories().size());
+        assertEquals(1200, dao.getItemsByCategory("store-1", "c-1").size());
+        CatalogSyncState state = dao.getSyncState("products");
+        assertEquals(T0 + 1199, state.highWaterUpdatedAt);
+        assertEquals("p-1199", state.highWaterId);
+        assertNull(dao.getSyncState("prices"));
+
+        // Tombstones delete, in chunks larger than one IN list
+        List<CatalogProduct> tombstones = new ArrayList<>();
+        for (int i = 0; i < 700; i++) {
+            CatalogProduct gone = product("p-" + i, null, null, 0, T0 + 2000 + i);
+            gone.deleted = true;
+            tombstones.add(gone);
+        }
+        dao.applyProducts(tombstones, mark("products", T0 + 2699, "p-699"));
+        assertEquals(500, dao.getProductCount());
+        assertNull(dao.getItemBySku("store-1", "SKU-1"));
+        assertEquals(T0 + 2699, dao.getSyncState("products").highWaterUpdatedAt);
+
+        dao.resetSyncState();
+        assertNull(dao.getSyncState("products"));
+    }
+
+    @Test
+    public void storePriceOverridesTheListPrice() {
+        dao.applyProducts(Arrays.asList(
+                product("p-1", "SKU-1", "c-1", 120.0, T0),
+                product("p-2", "SKU-2", "c-1", 140.0, T0)), mark("products", T0, "p-2"));
+        dao.applyPrices(Collections.singletonList(price("sp-1", "p-1", "store-2", 99.0)), mark("prices", T0, "sp-1"));
+
+        assertEquals(120.0, dao.getItemBySku("store-1", "SKU-1").price, 0.0);
+        assertEquals(99.0, dao.getItemBySku("store-2", "SKU-1").price, 0.0);
+        assertEquals(99.0, dao.getItemById("store-2", "p-1").price, 0.0);
+        assertEquals(140.0, dao.getItemBySku("store-2", "SKU-2").price, 0.0);
+        assertNull(dao.getItemBySku("store-1", "NO-SUCH-SKU"));
+    }
+
+    @Test
+    public void cacheIsClearedWhenThePriceChanges() throws Exception {
+        dao.applyProducts(Collections.singletonList(product("p-1", "SKU-1", "c-1", 120.0, T0)),
+                mark("products", T0, "p-1"));
+        CatalogCache cache = database.catalogCache();
+        assertEquals(120.0, cache.get("store-1", "SKU-1").price, 0.0);
+        assertEquals(120.0, cache.get("store-1", "SKU-1").price, 0.0);
+        assertEquals(1, cache.hitCount());
+
+        dao.applyPrices(Collections.singletonList(price("sp-1", "p-1", "store-1", 110.0)), mark("prices", T0, "sp-1"));
+        // Invalidation is delivered off the writing thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, cache.size());
+        assertEquals(110.0, cache.get("store-1", "SKU-1").price, 0.0);
+    }
+
+    private static CatalogSyncState mark(String kind, long updatedAt, String id) {
+        return new CatalogSyncState(kind, updatedAt, id, System.currentTimeMillis());
+    }
+
+    private static CatalogCategory category(String id, String name) {
+        CatalogCategory category = new CatalogCategory();
+        category.id = id;
+        category.name = name;
+        category.updatedAt = T0;
+        return category;
+    }
+
+    private static CatalogProduct product(String id, String sku, String categoryId, double price, long updatedAt) {
+        CatalogProduct product = new CatalogProduct();
+        product.id = id;
+        product.sku = sku;
+        product.name = "Product " + id;
+        product.categoryId = categoryId;
+        product.price = price;
+        product.updatedAt = updatedAt;
+        return product;
+    }
+
+    private static CatalogPrice price(String id, String productId, String storeId, double price) {
+        CatalogPrice storePrice = new CatalogPrice();
+        storePrice.id = id;
+        storePrice.productId = productId;
+        storePrice.storeId = storeId;
+        storePrice.price = price;
+        storePrice.updatedAt = T0;
+        return storePrice;
+    }
+}
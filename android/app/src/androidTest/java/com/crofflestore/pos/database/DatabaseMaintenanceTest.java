@@ -0,0 +1,159 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.database.Cursor;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.QueueStatsTracker;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Chunked retention cleanup and incremental vacuum against a file-backed
+ * database, with chunks small enough that every delete takes several.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMaintenanceTest {
+
+    private static final String DB_NAME = "maintenance-test.db";
+    private static final int CHUNK_SIZE = 7;
+
+    private Context context;
+    private CroffleOfflineDatabase database;
+    private OfflineTransactionDao dao;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.fileBuilder(context, DB_NAME).build();
+        dao = database.offlineTransactionDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void deletesOldSyncedRowsAndDeadLettersExhaustedOnes() {
+        long now = System.currentTimeMillis();
+        List<OfflineTransaction> rows = new ArrayList<>();
+        rows.addAll(rows("old-synced", 40, "synced", 0, now - TimeUnit.DAYS.toMillis(8)));
+        rows.addAll(rows("new-synced", 5, "synced", 0, now - TimeUnit.DAYS.toMillis(1)));
+        rows.addAll(rows("old-failed", 20, "failed", 5, now - TimeUnit.DAYS.toMillis(31)));
+        rows.addAll(rows("retry-failed", 3, "failed", 2, now - TimeUnit.DAYS.toMillis(31)));
+        rows.addAll(rows("old-pending", 4, "pending", 0, now - TimeUnit.DAYS.toMillis(60)));
+        dao.insertAll(rows);
+        dao.getQueueStats();
+
+        CroffleOfflineDatabase.CleanupResult result =
+                maintenance(1_000_000).run(DatabaseMaintenance.NEVER_STOP, false);
+
+        assertTrue(result.error, result.success);
+        assertEquals(40, result.deletedSyncedTransactions);
+        assertEquals(20, result.deadLetteredTransactions);
+        assertEquals(5, dao.countByStatus("synced"));
+        assertEquals(3, dao.countByStatus("failed"));
+        assertEquals(4, dao.countByStatus("pending"));
+        // Exhausted rows are kept, whole, outside the queue
+        assertEquals(20, database.deadLetterDao().getCount());
+        assertEquals(1, database.deadLetterDao().getById("old-failed-0").items.size());
+
+        // The tracker was updated by delta and still agrees with SQL
+        QueueStatsTracker.Snapshot stats = dao.getQueueStats();
+        assertEquals(dao.getTotalTransactionCount(), stats.total);
+        assertEquals(5, stats.synced);
+        assertEquals(3, stats.failed);
+    }
+
+    @Test
+    public void stoppedRunDeletesNothing() {
+        long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8);
+        dao.insertAll(rows("old-synced", 20, "synced", 0, old));
+
+        CroffleOfflineDatabase.CleanupResult result = maintenance(1).run(() -> true, true);
+
+        assertTrue(result.stoppedEarly);
+        assertEquals(0, result.deletedSyncedTransactions);
+        assertFalse(result.autoVacuumConverted);
+        assertEquals(20, dao.countByStatus("synced"));
+    }
+
+    @Test
+    public void convertsToIncrementalAndReclaimsFreePages() {
+        long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8);
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        assertNotEquals(2, pragma(db, "auto_vacuum"));
+
+        // First run only converts; nothing is old enough yet
+        CroffleOfflineDatabase.CleanupResult first = maintenance(1).run(DatabaseMaintenance.NEVER_STOP, true);
+        assertTrue(first.error, first.success);
+        assertTrue(first.autoVacuumConverted);
+        assertEquals(2, pragma(db, "auto_vacuum"));
+
+        dao.insertAll(rows("old-synced", 500, "synced", 0, old));
+        long pagesBefore = pragma(db, "page_count");
+
+        CroffleOfflineDatabase.CleanupResult second = maintenance(1).run(DatabaseMaintenance.NEVER_STOP, true);
+
+        assertTrue(second.error, second.success);
+        assertFalse(second.autoVacuumConverted);
+        assertEquals(500, second.deletedSyncedTransactions);
+        assertTrue(second.pagesReclaimed > 0);
+        assertEquals(0, pragma(db, "freelist_count"));
+        assertTrue(pragma(db, "page_count") < pagesBefore);
+    }
+
+    @Test
+    public void smallFreelistIsLeftAlone() {
+        long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8);
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        maintenance(1).run(DatabaseMaintenance.NEVER_STOP, true);
+        dao.insertAll(rows("old-synced", 200, "synced", 0, old));
+
+        CroffleOfflineDatabase.CleanupResult result =
+                maintenance(1_000_000).run(DatabaseMaintenance.NEVER_STOP, false);
+
+        assertEquals(200, result.deletedSyncedTransactions);
+        assertEquals(0, result.pagesReclaimed);
+        assertTrue(pragma(db, "freelist_count") > 0);
+    }
+
+    private DatabaseMaintenance maintenance(int freelistThresholdPages) {
+        return new DatabaseMaintenance(database, CHUNK_SIZE, 0, freelistThresholdPages, 16);
+    }
+
+    private static List<OfflineTransaction> rows(String prefix, int count, String status, int attempts, long time) {
+        List<OfflineTransaction> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            OfflineTransaction tx = new OfflineTransaction(prefix + "-" + i, "store-1", "user-1", "shift-1");
+            tx.timestamp = new Date(time + i);
+            tx.syncStatus = status;
+            tx.syncAttempts = attempts;
+            tx.items = Collections.singletonList(new TransactionItem("prod-" + i, "Croffle " + i, 1, 100.0));
+            tx.total = 100.0;
+            rows.add(tx);
+        }
+        return rows;
+    }
+
+    private static long pragma(SupportSQLiteDatabase db, String name) {
+        try (Cursor cursor = db.query("PRAGMA " + name)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.DeadLetterDao;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.QueueCursor;
+import com.crofflestore.pos.database.dao.QueueStatsTracker;
+import com.crofflestore.pos.database.dao.SalesTotals;
+import com.crofflestore.pos.database.dao.SyncErrorHistory;
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.DeadLetterTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.crofflestore.pos.database.entities.SalesAggregate;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Rows that use up their retries leave the queue for the dead-letter table
+ * with their error history, and come back whole when requeued.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DeadLetterTest {
+
+    private static final String OWNER = "worker-a";
+
+    private CroffleOfflineDatabase database;
+    private OfflineTransactionDao dao;
+    private DeadLetterDao deadLetters;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.offlineTransactionDao();
+        deadLetters = database.deadLetterDao();
+
+        List<OfflineTransaction> rows = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            OfflineTransaction tx = new OfflineTransaction("tx-" + i, "store-1", "user-1", "shift-1");
+            tx.timestamp = new Date(1_700_000_000_000L + i * 1000L);
+            tx.items = Arrays.asList(new TransactionItem("prod-" + i, "Croffle " + i, 1, 100.0),
+                    new TransactionItem("drink-" + i, "Coffee " + i, 2, 50.0));
+            tx.total = 200.0;
+            rows.add(tx);
+        }
+        dao.insertAll(rows);
+        dao.getQueueStats();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void lastFailedAttemptMovesRowWithItsHistory() {
+        long time = exhaust("tx-0", "tx-1");
+
+        assertNull(dao.getById("tx-0"));
+        assertEquals(2, deadLetters.getCount());
+        DeadLetterTransaction row = deadLetters.getById("tx-0");
+        assertEquals(OfflineTransaction.MAX_SYNC_ATTEMPTS, row.syncAttempts);
+        assertEquals("failed", row.syncStatus);
+        assertEquals(DeadLetterTransaction.REASON_RETRIES_EXHAUSTED, row.deadLetterReason);
+        assertEquals(time, row.deadLetteredAt.getTime());
+        assertEquals(2, row.items.size());
+
+        List<SyncErrorHistory.Entry> history = SyncErrorHistory.parse(row.syncErrorHistory);
+        assertEquals(OfflineTransaction.MAX_SYNC_ATTEMPTS, history.size());
+        for (int i = 0; i < history.size(); i++) {
+            assertEquals(i + 1, history.get(i).attempt);
+            assertEquals("HTTP 422 attempt " + (i + 1), history.get(i).error);
+        }
+
+        // Gone from the queue, its stats and transaction_items
+        assertEquals(2, dao.getTotalTransactionCount());
+        assertEquals(4, database.transactionItemDao().getItemRowCount());
+        QueueStatsTracker.Snapshot stats = dao.getQueueStats();
+        assertEquals(2, stats.total);
+        assertEquals(0, stats.failed);
+        assertEquals(2, stats.pending);
+    }
+
+    @Test
+    public void requeueRestoresPendingRowsAndItems() {
+        long time = exhaust("tx-0", "tx-1", "tx-2");
+        Date requeuedAt = new Date(time + 1000);
+
+        assertEquals(2, dao.requeueDeadLetters(Arrays.asList("tx-0", "tx-2", "missing"), requeuedAt));
+
+        assertEquals(1, deadLetters.getCount());
+        OfflineTransaction row = dao.getById("tx-0");
+        assertEquals("pending", row.syncStatus);
+        assertEquals(0, row.syncAttempts);
+        assertNull(row.nextRetryAt);
+        assertEquals(OfflineTransaction.MAX_SYNC_ATTEMPTS, SyncErrorHistory.parse(row.syncErrorHistory).size());
+        assertEquals(2, database.transactionItemDao().getByTransactionId("tx-0").size());
+        assertEquals(3, dao.getQueueStats().pending);
+
+        // Claimable again at once
+        List<String> claimed = new ArrayList<>();
+        for (OfflineTransaction tx : dao.claimBatchForSync(OWNER, QueueCursor.START, 10, requeuedAt)) {
+            claimed.add(tx.id);
+        }
+        assertTrue(claimed.containsAll(Arrays.asList("tx-0", "tx-2")));
+
+        assertEquals(1, dao.requeueAllDeadLetters(requeuedAt));
+        assertEquals(0, deadLetters.getCount());
+        assertEquals(4, dao.getTotalTransactionCount());
+        assertEquals(dao.getTotalTransactionCount(), dao.getQueueStats().total);
+    }
+
+    @Test
+    public void exportWritesOneJsonObjectPerDeadLetter() throws IOException {
+        exhaust("tx-0", "tx-1", "tx-3");
+        StringWriter out = new StringWriter();
+
+        assertEquals(3, deadLetters.exportNdjson(out));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        JsonObject first = JsonParser.parseString(lines[0]).getAsJsonObject();
+        assertEquals("tx-0", first.get("id").getAsString());
+        assertEquals(2, first.getAsJsonArray("items").size());
+        assertTrue(first.get("syncErrorHistory").getAsString().contains("HTTP 422 attempt 5"));
+        assertTrue(first.get("deadLetteredAt").isJsonPrimitive());
+
+        assertEquals(2, deadLetters.delete(Arrays.asList("tx-0", "tx-1")));
+        assertEquals(Collections.singletonList("tx-3"), deadLetters.getAllIds());
+    }
+
+    @Test
+    public void discardedDeadLetterLeavesTheSalesReports() {
+        String day = SalesAggregate.businessDay(new Date(1_700_000_000_000L));
+        long time = exhaust("tx-0", "tx-1");
+        assertEquals(4, database.salesReportDao().getDayTotals(day).transactionCount);
+
+        // A requeued dead letter is still counted once, a discarded one not at all
+        assertEquals(1, dao.requeueDeadLetters(Collections.singletonList("tx-1"), new Date(time + 1000)));
+        assertEquals(1, deadLetters.delete(Collections.singletonList("tx-0")));
+
+        SalesTotals totals = database.salesReportDao().getDayTotals(day);
+        assertEquals(3, totals.transactionCount);
+        assertEquals(600.0, totals.total, 0.001);
+    }
+
+    @Test
+    public void lapsedOwnerCannotDeadLetterARow() {
+        Date time = new Date(1_800_000_000_000L);
+        dao.claimEntriesForSync(OWNER, QueueCursor.START, 10, time);
+        dao.applySyncOutcomes("worker-b", Collections.singletonList(SyncOutcome.failed("tx-0", "late")), time);
+
+        assertEquals(0, deadLetters.getCount());
+        assertEquals("syncing", dao.getById("tx-0").syncStatus);
+    }
+
+    /**
+     * Fail the given rows MAX_SYNC_ATTEMPTS times, each attempt once the
+     * backoff has run out
+     *
+     * @return time of the last attempt
+     */
+    private long exhaust(String... ids) {
+        long time = 1_800_000_000_000L;
+        for (int attempt = 1; attempt <= OfflineTransaction.MAX_SYNC_ATTEMPTS; attempt++) {
+            // Past the longest backoff window
+            time += 2 * 60 * 60_000L;
+            List<SyncOutcome> outcomes = new ArrayList<>();
+            for (String id : ids) {
+                outcomes.add(SyncOutcome.failed(id, "HTTP 422 attempt " + attempt));
+            }
+            dao.markTransactionsAsSyncing(Arrays.asList(ids), new Date(time));
+            dao.applySyncOutcomes(outcomes, new Date(time));
+        }
+        return time;
+    }
+}
@@ -0,0 +1,142 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.ExportFilter;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Export pages apply the date, store and status filters in SQL and walk
+ * the table once in (timestamp, id) order; TransactionExport streams them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExportPageTest {
+
+    private static final long DAY_MS = 24 * 60 * 60_000L;
+    private static final long START = 1_700_000_000_000L;
+
+    private CroffleOfflineDatabase database;
+    private OfflineTransactionDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.offlineTransactionDao();
+        List<OfflineTransaction> rows = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            rows.add(transaction("tx-" + i, i % 3 == 0 ? "store-2" : "store-1", START + (i / 10) * DAY_MS + i));
+        }
+        dao.insertAll(rows);
+        dao.markTransactionAsSynced("tx-1", new Date());
+        dao.markTransactionAsSynced("tx-2", new Date());
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void filtersNarrowThePages() {
+        assertEquals(30, ids(ExportFilter.ALL).size());
+
+        // Day two only: to is exclusive
+        List<String> day = ids(ExportFilter.between(new Date(START + DAY_MS), new Date(START + 2 * DAY_MS)));
+        assertEquals(10, day.size());
+        assertEquals("tx-10", day.get(0));
+
+        assertEquals(Arrays.asList("tx-0", "tx-3", "tx-6", "tx-9"),
+                ids(ExportFilter.between(null, new Date(START + DAY_MS)).forStore("store-2")));
+        assertEquals(Arrays.asList("tx-1", "tx-2"), ids(ExportFilter.ALL.withStatuses("synced")));
+        assertEquals(28, ids(ExportFilter.ALL.withStatuses("pending", "failed")).size());
+        assertTrue(ids(ExportFilter.ALL.withStatuses()).isEmpty());
+    }
+
+    @Test
+    public void pagesResumeAfterTheirLastRow() {
+        // Sorts before every timestamp
+        OfflineTransaction untimed = transaction("tx-untimed", "store-1", 0);
+        untimed.timestamp = null;
+        dao.insert(untimed);
+        List<String> seen = new ArrayList<>();
+        Long afterTimestamp = null;
+        String afterId = "";
+        List<OfflineTransaction> page;
+        do {
+            page = dao.getExportPage(ExportFilter.ALL.forStore("store-1"), afterTimestamp, afterId, 7);
+            for (OfflineTransaction row : page) {
+                afterTimestamp = row.timestamp != null ? row.timestamp.getTime() : null;
+                afterId = row.id;
+                seen.add(row.id);
+            }
+            if (seen.size() == 7) {
+                // A REPLACE gives tx-1 a new rowid but not a new place
+                dao.insert(dao.getById("tx-1"));
+            }
+        } while (page.size() == 7);
+        assertEquals(21, seen.size());
+        assertEquals("tx-untimed", seen.get(0));
+        assertEquals("tx-1", seen.get(1));
+        assertEquals(21, new HashSet<>(seen).size());
+        // Decoded in full, items included
+        assertEquals("Ube Croffle", dao.getExportPage(ExportFilter.ALL, null, "", 1).get(0).items.get(0).name);
+    }
+
+    @Test
+    public void exportStreamsTheFilteredRows() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransactionExport.Checkpoint done = TransactionExport.of(dao, ExportFilter.ALL.forStore("store-2"),
+                TransactionExport.Format.CSV, true).writeTo(out, TransactionExport.Checkpoint.START, null);
+        assertEquals(10, done.rows);
+
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        assertEquals(11, lines.size());
+        assertTrue(lines.get(1), lines.get(1).startsWith("tx-0,"));
+        assertTrue(lines.get(10), lines.get(10).startsWith("tx-27,"));
+    }
+
+    private List<String> ids(ExportFilter filter) {
+        List<String> ids = new ArrayList<>();
+        for (OfflineTransaction row : dao.getExportPage(filter, null, "", 100)) {
+            ids.add(row.id);
+        }
+        return ids;
+    }
+
+    private static OfflineTransaction transaction(String id, String storeId, long time) {
+        OfflineTransaction tx = new OfflineTransaction(id, storeId, "user-1", "shift-1");
+        tx.timestamp = new Date(time);
+        tx.items = Collections.singletonList(new TransactionItem("p-1", "Ube Croffle", 1, 120.0));
+        tx.total = 120.0;
+        return tx;
+    }
+}
@@ -0,0 +1,122 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.InventoryDao;
+import com.crofflestore.pos.database.dao.ReservedCount;
+import com.crofflestore.pos.database.entities.InventoryMovement;
+import com.crofflestore.pos.database.entities.StockLevel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * stock_levels.on_hand follows the ledger through its trigger, the ledger
+ * refuses edits, and InventoryCounters writes back through applyBatch().
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryLedgerTest {
+
+    private CroffleOfflineDatabase database;
+    private InventoryDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.inventoryDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void movementsMaintainTheStockLevel() {
+        dao.applyBatch(Arrays.asList(
+                movement("ube-jam", InventoryMovement.TYPE_RECEIVE, 40),
+                movement("ube-jam", InventoryMovement.TYPE_SALE, -3),
+                movement("ube-jam", InventoryMovement.TYPE_WASTE, -2),
+                movement("biscoff", InventoryMovement.TYPE_RECEIVE, 12)),
+                Collections.singletonList(new ReservedCount("store-1", "ube-jam", 4)));
+
+        StockLevel level = dao.getStockLevel("store-1", "ube-jam");
+        assertEquals(35, level.onHand);
+        assertEquals(4, level.reserved);
+        assertEquals(31, level.available());
+        assertEquals(35, dao.getLedgerBalance("store-1", "ube-jam"));
+        assertEquals(3, dao.getMovements("store-1", "ube-jam", 0, 10).size());
+        assertEquals(level.lastMovementId, dao.getMovements("store-1", "ube-jam", 0, 10).get(2).id);
+        assertEquals(2, dao.getStockLevels("store-1").size());
+        assertEquals(1, dao.getLowStock("store-1", 12).size());
+
+        // A reservation for an item with no movements yet gets a zeroed level
+        dao.applyBatch(Collections.<InventoryMovement>emptyList(),
+                Collections.singletonList(new ReservedCount("store-1", "matcha", 1)));
+        assertEquals(0, dao.getStockLevel("store-1", "matcha").onHand);
+
+        dao.clearReservations("store-1");
+        assertEquals(0, dao.getStockLevel("store-1", "ube-jam").reserved);
+    }
+
+    @Test
+    public void ledgerRefusesEdits() {
+        dao.applyBatch(Collections.singletonList(movement("ube-jam", InventoryMovement.TYPE_RECEIVE, 10)),
+                Collections.<ReservedCount>emptyList());
+        try {
+            database.getOpenHelper().getWritableDatabase()
+                    .execSQL("UPDATE inventory_movements SET quantity_change = 100");
+            fail("expected the ledger to refuse the update");
+        } catch (SQLiteException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("append-only"));
+        }
+        assertEquals(10, dao.getStockLevel("store-1", "ube-jam").onHand);
+
+        // A drifted level is rebuilt from the ledger
+        database.getOpenHelper().getWritableDatabase().execSQL("UPDATE stock_levels SET on_hand = 99");
+        dao.rebuildOnHand();
+        assertEquals(10, dao.getStockLevel("store-1", "ube-jam").onHand);
+    }
+
+    @Test
+    public void countersReserveInMemoryAndFlushToTheLedger() throws Exception {
+        dao.applyBatch(Collections.singletonList(movement("ube-jam", InventoryMovement.TYPE_RECEIVE, 20)),
+                Collections.<ReservedCount>emptyList());
+        InventoryCounters counters = database.inventoryCounters();
+        counters.prime("store-1");
+
+        List<String> sold = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(counters.tryReserve("store-1", "ube-jam", 2));
+            counters.commitSale("store-1", "ube-jam", 2, "tx-" + i);
+            sold.add("tx-" + i);
+        }
+        assertTrue(counters.tryReserve("store-1", "ube-jam", 3));
+        assertEquals(7, counters.available("store-1", "ube-jam"));
+
+        // The background flush may have written some of it already
+        counters.flush();
+        assertEquals(0, counters.pendingMovements());
+        StockLevel level = dao.getStockLevel("store-1", "ube-jam");
+        assertEquals(10, level.onHand);
+        assertEquals(3, level.reserved);
+        List<InventoryMovement> ledger = dao.getMovements("store-1", "ube-jam", 0, 10);
+        assertEquals(6, ledger.size());
+        assertEquals("tx-4", ledger.get(5).referenceId);
+        assertEquals(sold.size(), ledger.size() - 1);
+    }
+
+    private static InventoryMovement movement(String itemId, String type, long change) {
+        return new InventoryMovement("store-1", itemId, type, change, null, null, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,234 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.QueueCursor;
+import com.crofflestore.pos.database.dao.QueueEntry;
+import com.crofflestore.pos.database.dao.RetryBackoff;
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.dao.TransactionSummary;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Claims hand out queue entries and full payloads are loaded afterwards,
+ * only for the claimed rows.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueueEntryClaimTest {
+
+    private static final String OWNER = "worker-a";
+
+    private CroffleOfflineDatabase database;
+    private OfflineTransactionDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.offlineTransactionDao();
+
+        String[] priorities = {"low", "high", "medium"};
+        List<OfflineTransaction> rows = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            OfflineTransaction tx = new OfflineTransaction("tx-" + i, "store-" + (i % 2), "user-1", "shift-" + i);
+            tx.timestamp = new Date(1_700_000_000_000L + i * 1000L);
+            tx.setPriority(priorities[i % priorities.length]);
+            tx.items = Collections.singletonList(new TransactionItem("prod-" + i, "Croffle " + i, 1, 100.0));
+            tx.total = 100.0;
+            rows.add(tx);
+        }
+        dao.insertAll(rows);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void claimedEntriesAreMarkedSyncingInQueueOrder() {
+        // The four high priority rows
+        List<QueueEntry> claimed = dao.claimEntriesForSync(OWNER, QueueCursor.START, 4, new Date());
+
+        assertEquals(4, claimed.size());
+        assertEquals("tx-1", claimed.get(0).id);
+        for (QueueEntry entry : claimed) {
+            assertEquals("syncing", entry.syncStatus);
+            assertEquals(OfflineTransaction.PRIORITY_RANK_HIGH, entry.priorityRank);
+        }
+        assertEquals(4, dao.getSyncingQueueEntries().size());
+        assertEquals(8, dao.getPendingQueueEntries().size());
+    }
+
+    @Test
+    public void claimBatchLoadsPayloadsOfClaimedRowsOnly() {
+        List<OfflineTransaction> batch = dao.claimBatchForSync(OWNER, QueueCursor.START, 3, new Date());
+
+        assertEquals(3, batch.size());
+        for (OfflineTransaction tx : batch) {
+            assertEquals("syncing", tx.syncStatus);
+            assertEquals(1, tx.items.size());
+            assertEquals("prod-" + tx.id.substring(3), tx.items.get(0).productId);
+        }
+
+        List<OfflineTransaction> next = dao.claimBatchForSync(OWNER, QueueCursor.after(batch.get(2)), 3, new Date());
+        assertEquals("tx-10", next.get(0).id);
+    }
+
+    @Test
+    public void failedRowWaitsOutItsBackoffBeforeBeingClaimedAgain() {
+        Date failedAt = new Date();
+        List<QueueEntry> claimed = dao.claimEntriesForSync(OWNER, QueueCursor.START, 1, failedAt);
+        String id = claimed.get(0).id;
+        dao.applySyncOutcomes(OWNER, Collections.singletonList(SyncOutcome.failed(id, "HTTP 500")), failedAt);
+
+        OfflineTransaction failed = dao.getById(id);
+        long delay = failed.nextRetryAt.getTime() - failedAt.getTime();
+        assertTrue("delay " + delay, delay >= RetryBackoff.maxDelayMillis(1) / 2
+                && delay <= RetryBackoff.maxDelayMillis(1));
+
+        // Not due: the whole queue is claimed without it
+        assertEquals(11, dao.claimEntriesForSync(OWNER, QueueCursor.START, 20, failedAt).size());
+        assertEquals("failed", dao.getById(id).syncStatus);
+
+        Date due = new Date(failed.nextRetryAt.getTime());
+        List<QueueEntry> retried = dao.claimEntriesForSync(OWNER, QueueCursor.START, 20, due);
+        assertEquals(1, retried.size());
+        assertEquals(id, retried.get(0).id);
+
+        // The second failure backs off over the next, longer window
+        dao.applySyncOutcomes(OWNER, Collections.singletonList(SyncOutcome.failed(id, "HTTP 500")), due);
+        delay = dao.getById(id).nextRetryAt.getTime() - due.getTime();
+        assertTrue("delay " + delay, delay >= RetryBackoff.maxDelayMillis(2) / 2);
+    }
+
+    @Test
+    public void laterSalesOfAShiftWaitForItsEarlierOnes() {
+        String[] priorities = {"medium", "medium", "high", "low", "high"};
+        List<OfflineTransaction> shift = new ArrayList<>();
+        for (int i = 0; i < priorities.length; i++) {
+            OfflineTransaction tx = new OfflineTransaction("sale-" + i, "store-9", "user-1", "shift-9");
+            tx.timestamp = new Date(1_600_000_000_000L + i * 1000L);
+            tx.setPriority(priorities[i]);
+            shift.add(tx);
+        }
+        dao.insertAll(shift);
+        Date now = new Date();
+
+        // A high priority sale does not overtake earlier ones of its shift
+        assertEquals(Arrays.asList("sale-0", "sale-1", "sale-3"), claimedSales(now));
+        dao.applySyncOutcomes(OWNER, Arrays.asList(SyncOutcome.failed("sale-0", "HTTP 422"),
+                SyncOutcome.synced("sale-1"), SyncOutcome.synced("sale-3")), now);
+
+        // The failed head holds its shift while it backs off, across claims
+        assertEquals(Collections.emptyList(), claimedSales(now));
+        Date due = dao.getById("sale-0").nextRetryAt;
+        assertEquals(Collections.singletonList("sale-0"), claimedSales(due));
+        dao.applySyncOutcomes(OWNER, Collections.singletonList(SyncOutcome.synced("sale-0")), due);
+        assertEquals(Arrays.asList("sale-2", "sale-4"), claimedSales(due));
+    }
+
+    @Test
+    public void concurrentOwnersNeverClaimTheSameRow() {
+        List<QueueEntry> first = dao.claimEntriesForSync(OWNER, QueueCursor.START, 5, new Date());
+        List<QueueEntry> second = dao.claimEntriesForSync("worker-b", QueueCursor.START, 20, new Date());
+
+        assertEquals(5, first.size());
+        assertEquals(7, second.size());
+        for (QueueEntry entry : second) {
+            for (QueueEntry taken : first) {
+                assertNotEquals(taken.id, entry.id);
+            }
+        }
+        assertEquals("worker-b", dao.getById(second.get(0).id).claimOwner);
+    }
+
+    @Test
+    public void expiredLeaseIsReclaimedByTheNextClaim() {
+        Date claimedAt = new Date();
+        List<QueueEntry> stranded = dao.claimEntriesForSync(OWNER, QueueCursor.START, 3, claimedAt);
+        OfflineTransaction row = dao.getById(stranded.get(0).id);
+        assertEquals(claimedAt.getTime() + OfflineTransactionDao.LEASE_MS, row.leaseExpiresAt.getTime());
+
+        // Within the lease the rows stay with their owner
+        Date soon = new Date(claimedAt.getTime() + 1000);
+        assertEquals(9, dao.claimEntriesForSync("worker-b", QueueCursor.START, 20, soon).size());
+        assertEquals(0, dao.reclaimExpiredLeases(soon));
+
+        // worker-a died; once the lease runs out the next claim takes the rows back
+        Date later = new Date(claimedAt.getTime() + OfflineTransactionDao.LEASE_MS);
+        List<QueueEntry> retaken = dao.claimEntriesForSync("worker-c", QueueCursor.START, 20, later);
+        assertEquals(3, retaken.size());
+        assertEquals(stranded.get(0).id, retaken.get(0).id);
+        assertEquals(0, dao.getById(retaken.get(0).id).syncAttempts);
+        assertEquals(12, dao.getQueueStats().syncing);
+    }
+
+    @Test
+    public void outcomesOfALapsedOwnerOnlyKeepServerAnswers() {
+        Date claimedAt = new Date();
+        List<QueueEntry> claimed = dao.claimEntriesForSync(OWNER, QueueCursor.START, 2, claimedAt);
+        Date later = new Date(claimedAt.getTime() + OfflineTransactionDao.LEASE_MS);
+        dao.claimEntriesForSync("worker-b", QueueCursor.START, 2, later);
+
+        dao.applySyncOutcomes(OWNER, Arrays.asList(
+                SyncOutcome.failed(claimed.get(0).id, "timed out"),
+                SyncOutcome.synced(claimed.get(1).id)), later);
+
+        OfflineTransaction lapsed = dao.getById(claimed.get(0).id);
+        assertEquals("syncing", lapsed.syncStatus);
+        assertEquals("worker-b", lapsed.claimOwner);
+        assertEquals(0, lapsed.syncAttempts);
+        assertEquals("synced", dao.getById(claimed.get(1).id).syncStatus);
+        assertEquals(1, dao.getQueueStats().syncing);
+    }
+
+    @Test
+    public void loadPayloadsKeepsRequestOrderAndSkipsMissingIds() {
+        List<OfflineTransaction> rows = dao.loadPayloads(Arrays.asList("tx-7", "missing", "tx-2", "tx-5"));
+
+        assertEquals(3, rows.size());
+        assertEquals("tx-7", rows.get(0).id);
+        assertEquals("tx-2", rows.get(1).id);
+        assertEquals("tx-5", rows.get(2).id);
+        assertNotNull(rows.get(0).items);
+    }
+
+    @Test
+    public void summariesListNewestFirst() {
+        List<TransactionSummary> recent = dao.getRecentSummaries(4);
+        assertEquals(4, recent.size());
+        assertEquals("tx-11", recent.get(0).id);
+        assertEquals(100.0, recent.get(0).total, 0.001);
+
+        List<TransactionSummary> store = dao.getSummariesByStoreId("store-0", 100);
+        assertEquals(6, store.size());
+        assertEquals("tx-10", store.get(0).id);
+        assertEquals(12, dao.getSummariesByStatus("pending", 100).size());
+    }
+
+    private List<String> claimedSales(Date claimTime) {
+        List<String> ids = new ArrayList<>();
+        for (QueueEntry entry : dao.claimEntriesForSync(OWNER, QueueCursor.START, 50, claimTime)) {
+            if (entry.id.startsWith("sale-")) {
+                ids.add(entry.id);
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,114 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.QueueState;
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * queueState() follows offline_transactions through Room's invalidation
+ * tracker: counts, head and next retry change without anyone polling.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueueStateTest {
+
+    private CroffleOfflineDatabase database;
+    private OfflineTransactionDao dao;
+    private final LinkedBlockingQueue<QueueState> heard = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.offlineTransactionDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void stateFollowsWritesToTheQueue() throws Exception {
+        database.queueState().addListener(heard::add);
+        assertEquals(QueueState.EMPTY, next());
+
+        List<OfflineTransaction> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(transaction("tx-" + i, i));
+        }
+        dao.insertAll(rows);
+        QueueState queued = next();
+        assertEquals(50, queued.pending);
+        assertEquals("tx-0", queued.headId);
+
+        Date now = new Date();
+        dao.markTransactionsAsSyncing(Arrays.asList("tx-0", "tx-1"), now);
+        dao.applySyncOutcomes(Arrays.asList(SyncOutcome.synced("tx-0"), SyncOutcome.failed("tx-1", "HTTP 503")), now);
+        QueueState settled = latest();
+        assertEquals(48, settled.pending);
+        assertEquals(1, settled.failed);
+        assertEquals(0, settled.syncing);
+        // tx-1 waits out its backoff, so the head moves past it
+        assertEquals("tx-2", settled.headId);
+        assertNotNull(settled.nextRetryAt);
+        assertTrue(settled.nextRetryAt.after(now));
+        assertEquals(settled, dao.getQueueState(new Date()));
+    }
+
+    @Test
+    public void unrelatedWritesAreNotReported() throws Exception {
+        dao.insert(transaction("tx-1", 0));
+        database.queueState().addListener(heard::add);
+        assertEquals(1, next().pending);
+
+        // Touches the table without changing counts or head
+        OfflineTransaction tx = dao.getById("tx-1");
+        tx.deliveryOrderNumber = "GF-1042";
+        dao.update(tx);
+        assertNull(heard.poll(QueueStateMonitor.DEFAULT_DEBOUNCE_MS * 4, TimeUnit.MILLISECONDS));
+
+        dao.deleteById("tx-1");
+        assertFalse(next().hasDueWork());
+        assertEquals(Collections.emptyList(), dao.getNextQueueEntries(new Date(), 1));
+    }
+
+    private QueueState next() throws InterruptedException {
+        QueueState state = heard.poll(5, TimeUnit.SECONDS);
+        assertNotNull("no queue state delivered", state);
+        return state;
+    }
+
+    /** The last state delivered once the monitor has gone quiet */
+    private QueueState latest() throws InterruptedException {
+        QueueState state = next();
+        QueueState later;
+        while ((later = heard.poll(QueueStateMonitor.DEFAULT_DEBOUNCE_MS * 4, TimeUnit.MILLISECONDS)) != null) {
+            state = later;
+        }
+        return state;
+    }
+
+    private static OfflineTransaction transaction(String id, int minute) {
+        OfflineTransaction tx = new OfflineTransaction(id, "store-1", "user-1", "shift-1");
+        tx.timestamp = new Date(1_700_000_000_000L + minute * 60_000L);
+        tx.total = 100.0;
+        return tx;
+    }
+}
@@ -0,0 +1,90 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.RecipeChanges;
+import com.crofflestore.pos.database.dao.RecipeDao;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.crofflestore.pos.database.entities.RecipeIngredient;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Every recipe change takes the next version, getChangesSince() returns
+ * just the changed recipes, and recipeExplosions() follows the tables.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RecipeDaoTest {
+
+    private CroffleOfflineDatabase database;
+    private RecipeDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.recipeDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void changesAreReadByVersion() {
+        dao.saveRecipe("classic", "", Arrays.asList(
+                new RecipeIngredient("croffle-dough", 1, "pc", "pc"),
+                new RecipeIngredient("sugar", 12, "g", "g")));
+        dao.saveRecipe("ube", "", Collections.singletonList(new RecipeIngredient("ube-jam", 30, "g", "g")));
+        assertEquals(1, dao.getRecipe("classic", "").version);
+        assertEquals(2, dao.getRecipe("ube", "").version);
+
+        RecipeChanges all = dao.getChangesSince(0);
+        assertEquals(2, all.recipes.size());
+        assertEquals(3, all.ingredients.size());
+
+        // Saving replaces the lines
+        dao.saveRecipe("classic", "", Collections.singletonList(new RecipeIngredient("sugar", 10, "g", "g")));
+        RecipeChanges changed = dao.getChangesSince(2);
+        assertEquals(1, changed.recipes.size());
+        assertEquals(3, changed.recipes.get(0).version);
+        assertEquals(1, changed.ingredients.size());
+        assertEquals(1, dao.getIngredients("classic", "").size());
+
+        dao.removeRecipe("ube", "");
+        changed = dao.getChangesSince(3);
+        assertFalse(changed.recipes.get(0).active);
+        assertTrue(changed.ingredients.isEmpty());
+        assertTrue(dao.getIngredients("ube", "").isEmpty());
+    }
+
+    @Test
+    public void explosionsFollowRecipeEdits() throws Exception {
+        dao.saveRecipe("classic", "", Arrays.asList(
+                new RecipeIngredient("croffle-dough", 1, "pc", "pc"),
+                new RecipeIngredient("sugar", 12, "g", "g")));
+        RecipeExplosionCache cache = database.recipeExplosions();
+        List<TransactionItem> order = Collections.singletonList(new TransactionItem("classic", "Classic", 2, 120.0));
+        assertEquals(Long.valueOf(24), cache.explode(order).asMap().get("sugar"));
+
+        dao.saveRecipe("classic", "", Collections.singletonList(new RecipeIngredient("sugar", 0.01, "kg", "g")));
+        // Invalidation is delivered off the writing thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.current().version() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Map<String, Long> cart = cache.explode(order).asMap();
+        assertEquals(Long.valueOf(20), cart.get("sugar"));
+        assertNull(cart.get("croffle-dough"));
+    }
+}
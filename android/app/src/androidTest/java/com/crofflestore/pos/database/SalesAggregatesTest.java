@@ -0,0 +1,193 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.SalesReportDao;
+import com.crofflestore.pos.database.dao.SalesTotals;
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.SalesAggregate;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * sales_aggregates follows every insert, replace, update, status change
+ * and delete of offline_transactions, and the reports read it back.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SalesAggregatesTest {
+
+    private static final String DAY = "2024-03-15";
+
+    private CroffleOfflineDatabase database;
+    private OfflineTransactionDao dao;
+    private SalesReportDao reports;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.offlineTransactionDao();
+        reports = database.salesReportDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void salesAreSummedByDayHourShiftAndPaymentMethod() {
+        dao.insertAll(Arrays.asList(
+                sale("tx-1", at(10, 15), "shift-1", "cash", 100.10),
+                sale("tx-2", at(10, 40), "shift-1", "card", 50.25),
+                sale("tx-3", at(14, 5), "shift-2", "cash", 20.00),
+                sale("tx-4", at(9, 0, 16), "shift-3", "cash", 5.00)));
+        assertEquals(DAY, SalesAggregate.businessDay(at(10, 15)));
+
+        SalesTotals day = reports.getDayTotals(DAY);
+        assertEquals(3, day.transactionCount);
+        assertEquals(170.35, day.total, 0.001);
+        assertEquals(3.00, day.tax, 0.001);
+
+        List<SalesTotals> byHour = reports.getDayByHour(DAY);
+        assertEquals(2, byHour.size());
+        assertEquals(10, byHour.get(0).hour);
+        assertEquals(2, byHour.get(0).transactionCount);
+        assertEquals(14, byHour.get(1).hour);
+
+        List<SalesTotals> byMethod = reports.getDayByPaymentMethod(DAY);
+        assertEquals(2, byMethod.size());
+        assertEquals("card", byMethod.get(0).paymentMethod);
+        assertEquals(50.25, byMethod.get(0).total, 0.001);
+        assertEquals("cash", byMethod.get(1).paymentMethod);
+        assertEquals(120.10, byMethod.get(1).total, 0.001);
+
+        assertEquals(2, reports.getShiftTotals("shift-1").transactionCount);
+        assertEquals(150.35, reports.getShiftTotals("shift-1").total, 0.001);
+        assertEquals(1, reports.getShiftByPaymentMethod("shift-3").size());
+        assertEquals(0, reports.getShiftTotals("shift-9").transactionCount);
+    }
+
+    @Test
+    public void replaceAndUpdateMoveTheFigures() {
+        dao.insert(sale("tx-1", at(10, 15), "shift-1", "cash", 100.00));
+        // Replaced: the old figures leave, the new ones arrive
+        dao.insert(sale("tx-1", at(11, 30), "shift-1", "card", 80.00));
+
+        List<SalesTotals> byMethod = reports.getDayByPaymentMethod(DAY);
+        assertEquals(1, byMethod.size());
+        assertEquals("card", byMethod.get(0).paymentMethod);
+        assertEquals(80.00, byMethod.get(0).total, 0.001);
+        assertEquals(Collections.singletonList(11), hours(reports.getDayByHour(DAY)));
+
+        OfflineTransaction tx = dao.getById("tx-1");
+        tx.shiftId = "shift-2";
+        tx.total = 75.50;
+        dao.update(tx);
+        assertEquals(0, reports.getShiftTotals("shift-1").transactionCount);
+        assertEquals(75.50, reports.getShiftTotals("shift-2").total, 0.001);
+        assertEquals(1, reports.getDayTotals(DAY).transactionCount);
+    }
+
+    @Test
+    public void syncedFiguresFollowTheSyncStatus() {
+        Date now = new Date();
+        dao.insertAll(Arrays.asList(sale("tx-1", now, "shift-1", "cash", 40.00),
+                sale("tx-2", now, "shift-1", "card", 60.00)));
+        assertEquals(0, reports.getDayTotals(SalesAggregate.businessDay(now)).syncedCount);
+
+        dao.markTransactionsAsSyncing(Arrays.asList("tx-1", "tx-2"), now);
+        dao.applySyncOutcomes(Arrays.asList(SyncOutcome.synced("tx-1"), SyncOutcome.failed("tx-2", "HTTP 503")), now);
+
+        SalesTotals day = reports.getDayTotals(SalesAggregate.businessDay(now));
+        assertEquals(2, day.transactionCount);
+        assertEquals(1, day.syncedCount);
+        assertEquals(40.00, day.syncedTotal, 0.001);
+        assertEquals(40.00, dao.getTodaysSyncedAmount(), 0.001);
+
+        List<OfflineTransactionDao.PaymentMethodSummary> synced = dao.getTodaysPaymentMethodSummary();
+        assertEquals(1, synced.size());
+        assertEquals("cash", synced.get(0).paymentMethod);
+        assertEquals(1, synced.get(0).count);
+        assertEquals(40.00, synced.get(0).totalAmount, 0.001);
+    }
+
+    @Test
+    public void retentionKeepsSyncedSalesWhileOtherDeletesRemoveThem() {
+        dao.insertAll(Arrays.asList(sale("tx-1", at(10, 15), "shift-1", "cash", 10.00),
+                sale("tx-2", at(10, 20), "shift-1", "cash", 20.00)));
+        dao.markTransactionAsSynced("tx-1", at(10, 30));
+
+        assertEquals(1, dao.deleteSyncedTransactionsOlderThan(at(12, 0)));
+        assertEquals(30.00, reports.getDayTotals(DAY).total, 0.001);
+
+        dao.deleteById("tx-2");
+        SalesTotals day = reports.getDayTotals(DAY);
+        assertEquals(1, day.transactionCount);
+        assertEquals(10.00, day.total, 0.001);
+    }
+
+    @Test
+    public void deadLetteredSalesStayInTheReports() {
+        dao.insert(sale("tx-1", at(10, 15), "shift-1", "cash", 10.00));
+        long time = 1_800_000_000_000L;
+        for (int attempt = 1; attempt <= OfflineTransaction.MAX_SYNC_ATTEMPTS; attempt++) {
+            time += 2 * 60 * 60_000L;
+            dao.markTransactionsAsSyncing(Collections.singletonList("tx-1"), new Date(time));
+            dao.applySyncOutcomes(Collections.singletonList(SyncOutcome.failed("tx-1", "HTTP 422")), new Date(time));
+        }
+        // The sale happened; only its upload gave up
+        assertEquals(1, database.deadLetterDao().getCount());
+        SalesTotals day = reports.getDayTotals(DAY);
+        assertEquals(1, day.transactionCount);
+        assertEquals(10.00, day.total, 0.001);
+        assertEquals(0, day.syncedCount);
+
+        // Requeued, it is not counted twice
+        assertEquals(1, dao.requeueAllDeadLetters(new Date(time + 1000)));
+        day = reports.getDayTotals(DAY);
+        assertEquals(1, day.transactionCount);
+        assertEquals(10.00, day.total, 0.001);
+    }
+
+    private static OfflineTransaction sale(String id, Date time, String shiftId, String paymentMethod, double total) {
+        OfflineTransaction tx = new OfflineTransaction(id, "store-1", "user-1", shiftId);
+        tx.timestamp = time;
+        tx.paymentMethod = paymentMethod;
+        tx.subtotal = total;
+        tx.tax = 1.00;
+        tx.total = total;
+        return tx;
+    }
+
+    private static Date at(int hour, int minute) {
+        return at(hour, minute, 15);
+    }
+
+    private static Date at(int hour, int minute, int dayOfMonth) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2024, Calendar.MARCH, dayOfMonth, hour, minute);
+        return calendar.getTime();
+    }
+
+    private static List<Integer> hours(List<SalesTotals> totals) {
+        Integer[] hours = new Integer[totals.size()];
+        for (int i = 0; i < hours.length; i++) {
+            hours[i] = totals.get(i).hour;
+        }
+        return Arrays.asList(hours);
+    }
+}
@@ -0,0 +1,95 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.SyncMetricsDao;
+import com.crofflestore.pos.database.dao.SyncMetricsSummary;
+import com.crofflestore.pos.database.entities.SyncMetricsSample;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * sync_metrics stays a bounded rolling window and summarises a period.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncMetricsDaoTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private CroffleOfflineDatabase database;
+    private SyncMetricsDao dao;
+
+    @Before
+    public void setUp() {
+        database = TestDatabases.inMemory(ApplicationProvider.getApplicationContext());
+        dao = database.syncMetricsDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void recordDropsSamplesPastRetention() {
+        dao.record(sample(NOW - SyncMetricsDao.RETENTION_MS - 1, 1, null));
+        dao.record(sample(NOW - SyncMetricsDao.RETENTION_MS + 1, 2, null));
+        dao.record(sample(NOW, 3, null));
+
+        List<SyncMetricsSample> recent = dao.getRecent(10);
+        assertEquals(2, recent.size());
+        assertEquals(3, recent.get(0).syncedCount);
+        assertEquals(2, recent.get(1).syncedCount);
+    }
+
+    @Test
+    public void recordKeepsOnlyTheNewestSamples() {
+        for (int i = 0; i < SyncMetricsDao.MAX_SAMPLES + 25; i++) {
+            dao.record(sample(NOW + i, i, null));
+        }
+
+        List<SyncMetricsSample> all = dao.getRecent(SyncMetricsDao.MAX_SAMPLES * 2);
+        assertEquals(SyncMetricsDao.MAX_SAMPLES, all.size());
+        assertEquals(SyncMetricsDao.MAX_SAMPLES + 24, dao.getLatest().syncedCount);
+        assertEquals(25, all.get(all.size() - 1).syncedCount);
+    }
+
+    @Test
+    public void summaryAddsUpThePeriod() {
+        dao.record(sample(NOW - 60_000, 100, null));
+        dao.record(sample(NOW - 30_000, 50, 90_000L));
+        dao.record(sample(NOW, 10, 120_000L));
+
+        SyncMetricsSummary summary = dao.getSummarySince(new Date(NOW - 45_000));
+
+        assertEquals(2, summary.runs);
+        assertEquals(60, summary.syncedCount);
+        assertEquals(2_000, summary.durationMs);
+        assertEquals(30.0, summary.getTransactionsPerSecond(), 0.001);
+        assertEquals(Long.valueOf(120_000L), summary.worstOldestQueuedAgeMs);
+        assertEquals(20_000, summary.worstUploadP99Micros);
+
+        SyncMetricsSummary empty = dao.getSummarySince(new Date(NOW + 1));
+        assertEquals(0, empty.runs);
+        assertEquals(0, empty.syncedCount);
+        assertNull(empty.worstOldestQueuedAgeMs);
+    }
+
+    private static SyncMetricsSample sample(long recordedAt, int synced, Long oldestQueuedAgeMs) {
+        SyncMetricsSample sample = new SyncMetricsSample();
+        sample.recordedAt = new Date(recordedAt);
+        sample.syncType = "periodic";
+        sample.durationMs = 1_000;
+        sample.syncedCount = synced;
+        sample.uploadP99Micros = 20_000;
+        sample.queuedMedium = oldestQueuedAgeMs != null ? 5 : 0;
+        sample.oldestQueuedAgeMs = oldestQueuedAgeMs;
+        return sample;
+    }
+}
@@ -0,0 +1,282 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.database.Cursor;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.OfflineTransactionQueries;
+import com.crofflestore.pos.database.dao.QueueCursor;
+import com.crofflestore.pos.database.dao.QueueEntry;
+import com.crofflestore.pos.database.dao.RetryBackoff;
+import com.crofflestore.pos.database.dao.SalesAggregateQueries;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Verifies that the sync queue queries are answered from the queue indexes
+ * rather than by full table scans and temp B-tree sorts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncQueueQueryPlanTest {
+
+    // Past the backoff of every failed row inserted in setUp()
+    private static final Date LATER = new Date(System.currentTimeMillis() + RetryBackoff.MAX_DELAY_MS);
+
+    private CroffleOfflineDatabase database;
+    private OfflineTransactionDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.offlineTransactionDao();
+
+        String[] priorities = {"high", "medium", "low"};
+        String[] statuses = {"pending", "failed", "synced", "syncing"};
+        List<OfflineTransaction> rows = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // A shift each: rows of one shift are held back behind earlier ones
+            OfflineTransaction tx = new OfflineTransaction("tx-" + i, "store-1", "user-1", "shift-" + i);
+            tx.timestamp = new Date(1_700_000_000_000L + i * 1000L);
+            tx.setPriority(priorities[i % priorities.length]);
+            tx.syncStatus = statuses[i % statuses.length];
+            rows.add(tx);
+        }
+        dao.insertAll(rows);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void nextBatchMergesIndexRangesWithoutSorting() {
+        String plan = explain(OfflineTransactionQueries.NEXT_BATCH_FOR_SYNC, 10);
+        assertUsesIndex(plan);
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void keysetPageSeeksPastTheCursor() {
+        // Unbound parameters are fine for EXPLAIN
+        for (String sql : new String[] {
+                OfflineTransactionQueries.NEXT_BATCH_AFTER, OfflineTransactionQueries.NEXT_BATCH_AFTER_AT_RANK}) {
+            String plan = explain(sql);
+            assertUsesIndex(plan);
+            assertTrue(plan, plan.contains("priority_rank=? AND timestamp>?"));
+            // Earlier sales of the shift are seeks, never a walk of the retry index
+            assertTrue(plan, plan.contains(
+                    "index_offline_transactions_store_id_shift_id_sync_status_priority_rank_timestamp"));
+            assertFalse(plan, plan.contains("index_offline_transactions_sync_status_next_retry_at"));
+            // Only ties on (priority_rank, timestamp) are sorted by id
+            assertFalse(plan, plan.contains("USE TEMP B-TREE FOR ORDER BY"));
+        }
+    }
+
+    @Test
+    public void keysetPagesVisitEveryQueuedRowOnceInOrder() {
+        Set<String> seen = new HashSet<>();
+        QueueEntry previous = null;
+        QueueCursor cursor = QueueCursor.START;
+        List<QueueEntry> page;
+        while (!(page = dao.getNextBatchAfter(cursor.priorityRank, cursor.timestamp, cursor.id, LATER, 7)).isEmpty()) {
+            for (QueueEntry current : page) {
+                assertTrue(current.id, seen.add(current.id));
+                assertTrue("pending".equals(current.syncStatus) || "failed".equals(current.syncStatus));
+                if (previous != null) {
+                    assertTrue(previous.priorityRank <= current.priorityRank);
+                    if (previous.priorityRank == current.priorityRank) {
+                        assertTrue(!previous.timestamp.after(current.timestamp));
+                    }
+                }
+                previous = current;
+            }
+            cursor = QueueCursor.after(page.get(page.size() - 1));
+        }
+        assertEquals(100, seen.size());
+    }
+
+    @Test
+    public void keysetPagingBreaksTimestampTiesById() {
+        Date sameInstant = new Date(1_600_000_000_000L);
+        List<OfflineTransaction> ties = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            OfflineTransaction tx = new OfflineTransaction("tie-" + i, "store-1", "user-1", "shift-1");
+            tx.timestamp = sameInstant;
+            tx.setPriority("high");
+            ties.add(tx);
+        }
+        dao.insertAll(ties);
+
+        List<String> ids = new ArrayList<>();
+        QueueCursor cursor = QueueCursor.START;
+        for (int i = 0; i < 5; i++) {
+            List<QueueEntry> page = dao.getNextBatchAfter(cursor.priorityRank, cursor.timestamp, cursor.id, LATER, 1);
+            ids.add(page.get(0).id);
+            cursor = QueueCursor.after(page.get(0));
+        }
+        assertEquals(Arrays.asList("tie-0", "tie-1", "tie-2", "tie-3", "tie-4"), ids);
+    }
+
+    @Test
+    public void queueEntryProjectionsUseIndexOrder() {
+        String plan = explain(OfflineTransactionQueries.PENDING_QUEUE_ENTRIES);
+        assertUsesIndex(plan);
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+
+        plan = explain(OfflineTransactionQueries.NEXT_QUEUE_ENTRIES, 10);
+        assertUsesIndex(plan);
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void pendingTransactionsUseIndexOrder() {
+        String plan = explain(OfflineTransactionQueries.PENDING_TRANSACTIONS);
+        assertUsesIndex(plan);
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void syncingTransactionsUseLastAttemptIndex() {
+        String plan = explain(OfflineTransactionQueries.SYNCING_TRANSACTIONS);
+        assertTrue(plan, plan.contains("index_offline_transactions_sync_status_last_sync_attempt"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void failedRetryQueryUsesIndex() {
+        assertUsesIndex(explain(OfflineTransactionQueries.FAILED_TRANSACTIONS_FOR_RETRY));
+    }
+
+    @Test
+    public void retryScansSeekOnNextRetryAt() {
+        for (String sql : new String[] {
+                OfflineTransactionQueries.QUEUE_ENTRIES_FOR_RETRY, OfflineTransactionQueries.FAILED_TRANSACTIONS_FOR_RETRY,
+                OfflineTransactionQueries.NEXT_RETRY_AT}) {
+            String plan = explain(sql);
+            assertTrue(plan, plan.contains("index_offline_transactions_sync_status_next_retry_at"));
+            assertFalse(plan, plan.contains("TEMP B-TREE"));
+        }
+    }
+
+    @Test
+    public void expiredLeaseScanSeeksOnLeaseExpiry() {
+        String plan = explain(OfflineTransactionQueries.EXPIRED_LEASE_STATS_ROWS);
+        assertTrue(plan, plan.contains("index_offline_transactions_sync_status_lease_expires_at"));
+    }
+
+    @Test
+    public void receiptLookupsSeekTheReceiptIndex() {
+        for (String sql : new String[] {
+                OfflineTransactionQueries.TRANSACTION_BY_RECEIPT, OfflineTransactionQueries.RECEIPT_PREFIX_SUMMARIES}) {
+            String plan = explain(sql);
+            assertTrue(plan, plan.contains("index_offline_transactions_receipt_number"));
+            assertFalse(plan, plan.contains("TEMP B-TREE"));
+        }
+    }
+
+    @Test
+    public void searchTiersSeekTheirIndexes() {
+        String plan = explain(OfflineTransactionQueries.SEARCH_SUMMARIES);
+        assertTrue(plan, plan.contains("index_offline_transactions_receipt_number"));
+        assertTrue(plan, plan.contains("index_offline_transactions_customer_id_timestamp"));
+        assertTrue(plan, plan.contains("VIRTUAL TABLE"));
+        assertFalse(plan, plan.matches("(?s).*SCAN (TABLE )?offline_transactions(?! USING).*"));
+    }
+
+    @Test
+    public void exportPagesSeekPastTheLastRow() {
+        String plan = explain(OfflineTransactionQueries.EXPORT_PAGE);
+        assertTrue(plan, plan.contains("index_offline_transactions_timestamp_id (timestamp>?)"));
+        assertTrue(plan, plan.contains("index_offline_transactions_timestamp_id (timestamp=? AND id>?)"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void salesReportsSeekTheirKeys() {
+        String dayPlan = explain(SalesAggregateQueries.DAY_BY_PAYMENT_METHOD);
+        assertTrue(dayPlan, dayPlan.contains("sqlite_autoindex_sales_aggregates_1 (business_day=?)"));
+        String shiftPlan = explain(SalesAggregateQueries.SHIFT_BY_PAYMENT_METHOD);
+        assertTrue(shiftPlan, shiftPlan.contains("index_sales_aggregates_shift_id"));
+    }
+
+    @Test
+    public void failedRowsAreSkippedUntilDue() {
+        Date now = new Date();
+        for (QueueEntry entry : dao.getNextQueueEntries(now, 200)) {
+            assertEquals(entry.id, "pending", entry.syncStatus);
+        }
+        assertTrue(dao.getQueueEntriesForRetry(now).isEmpty());
+        assertTrue(dao.getNextRetryTime().after(now));
+
+        assertEquals(100, dao.getNextQueueEntries(LATER, 200).size());
+        assertEquals(50, dao.getQueueEntriesForRetry(LATER).size());
+    }
+
+    @Test
+    public void countersUseCoveringIndex() {
+        String statusPlan = explain(OfflineTransactionQueries.COUNT_BY_STATUS, "pending");
+        assertTrue(statusPlan, statusPlan.contains("COVERING INDEX"));
+
+        String priorityPlan = explain(OfflineTransactionQueries.COUNT_QUEUED_BY_PRIORITY_RANK,
+                OfflineTransaction.PRIORITY_RANK_HIGH);
+        assertTrue(priorityPlan, priorityPlan.contains("COVERING INDEX"));
+    }
+
+    @Test
+    public void batchHonoursPriorityThenAge() {
+        List<OfflineTransaction> batch = dao.getNextBatchForSync(LATER, 20);
+        assertEquals(20, batch.size());
+        for (int i = 1; i < batch.size(); i++) {
+            OfflineTransaction previous = batch.get(i - 1);
+            OfflineTransaction current = batch.get(i);
+            assertTrue(previous.priorityRank <= current.priorityRank);
+            if (previous.priorityRank == current.priorityRank) {
+                assertTrue(!previous.timestamp.after(current.timestamp));
+            }
+        }
+        assertEquals(OfflineTransaction.PRIORITY_RANK_HIGH, batch.get(0).priorityRank);
+    }
+
+    @Test
+    public void rankFollowsPriorityWhenFieldIsAssignedDirectly() {
+        OfflineTransaction tx = new OfflineTransaction("direct", "store-1", "user-1", "shift-1");
+        tx.priority = "high"; // bypasses setPriority(), trigger must fix the rank
+        dao.insert(tx);
+        assertEquals(OfflineTransaction.PRIORITY_RANK_HIGH, dao.getById("direct").priorityRank);
+    }
+
+    private String explain(String sql, Object... args) {
+        // Room named parameters are positional placeholders in raw SQLite
+        String raw = sql.replaceAll(":\\w+", "?");
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = database.getOpenHelper().getReadableDatabase()
+                .query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + raw, args))) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    private static void assertUsesIndex(String plan) {
+        assertTrue(plan, plan.contains("USING INDEX") || plan.contains("USING COVERING INDEX"));
+        // A bare "SCAN [TABLE] offline_transactions" without an index is a full table scan
+        assertFalse(plan, plan.matches("(?s).*SCAN (TABLE )?offline_transactions(?! USING).*"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.crofflestore.pos.database;
+
+import android.content.Context;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Database builders for instrumented tests and benchmarks.
+ *
+ * Installs the same non-Room schema objects (triggers) the production
+ * callback creates, so tests see the real schema.
+ */
+public final class TestDatabases {
+
+    private TestDatabases() {}
+
+    public static RoomDatabase.Builder<CroffleOfflineDatabase> inMemoryBuilder(Context context) {
+        return withSchemaExtras(Room.inMemoryDatabaseBuilder(context, CroffleOfflineDatabase.class));
+    }
+
+    /**
+     * File-backed database, for measurements where fsync cost matters.
+     * Any previous file with the same name is deleted first.
+     */
+    public static RoomDatabase.Builder<CroffleOfflineDatabase> fileBuilder(Context context, String name) {
+        context.deleteDatabase(name);
+        return withSchemaExtras(Room.databaseBuilder(context, CroffleOfflineDatabase.class, name));
+    }
+
+    public static CroffleOfflineDatabase inMemory(Context context) {
+        return inMemoryBuilder(context).build();
+    }
+
+    private static RoomDatabase.Builder<CroffleOfflineDatabase> withSchemaExtras(
+            RoomDatabase.Builder<CroffleOfflineDatabase> builder) {
+        return builder
+                .addCallback(new RoomDatabase.Callback() {
+                    @Override
+                    public void onCreate(SupportSQLiteDatabase db) {
+                        CroffleOfflineDatabase.createSchemaExtras(db);
+                    }
+                })
+                .allowMainThreadQueries();
+    }
+}
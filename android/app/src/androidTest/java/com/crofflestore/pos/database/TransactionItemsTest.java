@@ -0,0 +1,176 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.TransactionItemDao;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.crofflestore.pos.database.entities.TransactionItemRow;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * transaction_items follows its parent through insert, replace, update and
+ * delete, answers the sales aggregates, and can be rebuilt from the items
+ * blobs by the migration backfill.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransactionItemsTest {
+
+    private static final long DAY_START = 1_700_000_000_000L;
+    private static final Date FROM = new Date(DAY_START);
+    private static final Date TO = new Date(DAY_START + 86_400_000L);
+
+    private CroffleOfflineDatabase database;
+    private OfflineTransactionDao dao;
+    private TransactionItemDao items;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.offlineTransactionDao();
+        items = database.transactionItemDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void itemsAreWrittenWithTheParent() {
+        dao.insert(transaction("tx-1", 0,
+                item("p-1", "Classic Croffle", "croffles", 2, 100.0),
+                item("p-2", "Iced Americano", "espresso", 1, 90.0)));
+
+        List<TransactionItemRow> rows = items.getByTransactionId("tx-1");
+        assertEquals(2, rows.size());
+        assertEquals(0, rows.get(0).lineNumber);
+        assertEquals("p-1", rows.get(0).productId);
+        assertEquals("store-1", rows.get(0).storeId);
+        assertEquals(new Date(DAY_START), rows.get(0).soldAt);
+        assertEquals(1, rows.get(1).lineNumber);
+        assertEquals("p-2", rows.get(1).productId);
+    }
+
+    @Test
+    public void replacingOrUpdatingTheParentRewritesItsItems() {
+        dao.insert(transaction("tx-1", 0,
+                item("p-1", "Classic Croffle", "croffles", 2, 100.0),
+                item("p-2", "Iced Americano", "espresso", 1, 90.0)));
+
+        dao.insert(transaction("tx-1", 0, item("p-3", "Matcha Latte", "drinks", 1, 120.0)));
+        List<TransactionItemRow> rows = items.getByTransactionId("tx-1");
+        assertEquals(1, rows.size());
+        assertEquals("p-3", rows.get(0).productId);
+
+        OfflineTransaction updated = transaction("tx-1", 0,
+                item("p-1", "Classic Croffle", "croffles", 1, 100.0),
+                item("p-1", "Classic Croffle", "croffles", 1, 100.0),
+                item("p-2", "Iced Americano", "espresso", 3, 90.0));
+        dao.update(updated);
+        assertEquals(3, items.getByTransactionId("tx-1").size());
+        assertEquals(3, items.getItemRowCount());
+    }
+
+    @Test
+    public void deletingTheParentDeletesItsItems() {
+        dao.insert(transaction("tx-1", 0, item("p-1", "Classic Croffle", "croffles", 2, 100.0)));
+        dao.insert(transaction("tx-2", 0, item("p-2", "Iced Americano", "espresso", 1, 90.0)));
+
+        dao.deleteById("tx-1");
+
+        assertTrue(items.getByTransactionId("tx-1").isEmpty());
+        assertEquals(1, items.getItemRowCount());
+    }
+
+    @Test
+    public void salesAggregatesAreBoundedBySaleTime() {
+        dao.insertAll(Arrays.asList(
+                transaction("tx-1", 0,
+                        item("p-1", "Classic Croffle", "croffles", 2, 100.0),
+                        item("p-2", "Iced Americano", "espresso", 1, 90.0)),
+                transaction("tx-2", 3_600_000L,
+                        item("p-1", "Classic Croffle", "croffles", 1, 100.0),
+                        item("p-3", "Biscoff Croffle", "croffles", 1, 130.0)),
+                // Yesterday: outside [FROM, TO)
+                transaction("tx-3", -3_600_000L,
+                        item("p-1", "Classic Croffle", "croffles", 5, 100.0))));
+
+        List<TransactionItemDao.ProductSales> products = items.getProductSales(FROM, TO);
+        assertEquals(3, products.size());
+        TransactionItemDao.ProductSales top = products.get(0);
+        assertEquals("p-1", top.productId);
+        assertEquals(3, top.unitsSold);
+        assertEquals(300.0, top.revenue, 0.001);
+        assertEquals(2, top.transactionCount);
+
+        List<TransactionItemDao.CategorySales> categories = items.getCategorySales(FROM, TO);
+        assertEquals(2, categories.size());
+        assertEquals("croffles", categories.get(0).category);
+        assertEquals(430.0, categories.get(0).revenue, 0.001);
+        assertEquals(4, categories.get(0).unitsSold);
+
+        assertEquals(3, items.getUnitsSoldByProduct("p-1", FROM, TO));
+        assertEquals(3, items.getUnitsSoldBySku("SKU-p-1", FROM, TO));
+        assertEquals(1, items.getUnitsSoldByCategory("espresso", FROM, TO));
+        assertEquals(3, items.getProductSalesForStore("store-1", FROM, TO).size());
+        assertTrue(items.getProductSalesForStore("store-2", FROM, TO).isEmpty());
+    }
+
+    @Test
+    public void backfillSplitsItemsBlobsInChunks() throws Exception {
+        List<OfflineTransaction> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(transaction("tx-" + i, i * 1000L,
+                    item("p-1", "Classic Croffle", "croffles", 1, 100.0),
+                    item("p-2", "Iced Americano", "espresso", 2, 90.0)));
+        }
+        rows.add(transaction("tx-empty", 0));
+        dao.insertAll(rows);
+
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        // As a version 3 database would look: blobs only, one of them corrupt
+        db.execSQL("DELETE FROM transaction_items");
+        db.execSQL("UPDATE offline_transactions SET items = 'not json' WHERE id = 'tx-9'");
+
+        // A chunk size that does not divide the row count
+        int written = TransactionItemBackfill.run(db, 3);
+
+        assertEquals(18, written);
+        assertEquals(18, items.getItemRowCount());
+        assertEquals(2, items.getByTransactionId("tx-0").size());
+        assertTrue(items.getByTransactionId("tx-9").isEmpty());
+        assertEquals(9, items.getUnitsSoldByProduct("p-1", FROM, TO));
+        assertEquals(18, items.getUnitsSoldByCategory("espresso", FROM, TO));
+    }
+
+    private static OfflineTransaction transaction(String id, long offsetMs, TransactionItem... lines) {
+        OfflineTransaction tx = new OfflineTransaction(id, "store-1", "user-1", "shift-1");
+        tx.timestamp = new Date(DAY_START + offsetMs);
+        tx.items = new ArrayList<>(Arrays.asList(lines));
+        for (TransactionItem line : lines) {
+            tx.total += line.totalPrice;
+        }
+        return tx;
+    }
+
+    private static TransactionItem item(String productId, String name, String category, int quantity, double price) {
+        TransactionItem item = new TransactionItem(productId, name, quantity, price);
+        item.sku = "SKU-" + productId;
+        item.category = category;
+        return item;
+    }
+}
@@ -0,0 +1,191 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteConstraintException;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.dao.TransactionSummary;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Receipt numbers stay unique, and transaction_search follows its
+ * transaction through insert, replace, update, delete and the dead-letter
+ * round trip while ranking receipt, customer and item matches.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransactionSearchTest {
+
+    private CroffleOfflineDatabase database;
+    private OfflineTransactionDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = TestDatabases.inMemory(context);
+        dao = database.offlineTransactionDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void receiptLookupsUseTheExactNumberOrAPrefix() {
+        dao.insertAll(Arrays.asList(
+                transaction("tx-1", "RCP-0120", null, "Classic Croffle"),
+                transaction("tx-2", "RCP-0121", null, "Classic Croffle"),
+                transaction("tx-3", "RCP-0130", null, "Classic Croffle")));
+
+        assertEquals("tx-2", dao.getByReceiptNumber("RCP-0121").id);
+        assertNull(dao.getByReceiptNumber("RCP-012"));
+        assertEquals(Arrays.asList("tx-1", "tx-2"), ids(dao.getSummariesByReceiptPrefix("RCP-012", 10)));
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.getSummariesByReceiptPrefix("RCP-012", 1)));
+        assertTrue(dao.getSummariesByReceiptPrefix("", 10).isEmpty());
+    }
+
+    @Test
+    public void receiptNumberOfAnotherTransactionIsRefused() {
+        dao.insert(transaction("tx-1", "RCP-1", null, "Classic Croffle"));
+
+        try {
+            dao.insert(transaction("tx-2", "RCP-1", null, "Ube Croffle"));
+            fail("duplicate receipt accepted");
+        } catch (SQLiteConstraintException expected) {
+            // REPLACE would otherwise delete tx-1
+        }
+        try {
+            dao.insertAll(Arrays.asList(transaction("tx-3", "RCP-3", null, "Ube Croffle"),
+                    transaction("tx-4", "RCP-3", null, "Ube Croffle")));
+            fail("duplicate receipt in one batch accepted");
+        } catch (SQLiteConstraintException expected) {
+            // Nothing of the batch is written
+        }
+
+        assertEquals(1, dao.getTotalTransactionCount());
+        assertEquals("tx-1", dao.getByReceiptNumber("RCP-1").id);
+        assertEquals(1, dao.getQueueStats().total);
+
+        // Replacing a transaction under its own receipt is fine
+        dao.insert(transaction("tx-1", "RCP-1", null, "Biscoff Croffle"));
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.search("biscoff", 10)));
+    }
+
+    @Test
+    public void indexFollowsReplaceUpdateAndDelete() {
+        dao.insert(transaction("tx-1", "RCP-1", "cust-7", "Classic Croffle", "Iced Americano"));
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.search("americano", 10)));
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.search("cust-7", 10)));
+
+        // Replace rewrites the document, leaving no stale terms behind
+        dao.insert(transaction("tx-1", "RCP-1", "cust-7", "Matcha Latte"));
+        assertTrue(dao.search("americano", 10).isEmpty());
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.search("matcha", 10)));
+
+        OfflineTransaction tx = dao.getById("tx-1");
+        tx.customerId = "cust-9";
+        tx.items = Collections.singletonList(new TransactionItem("p-1", "Ube Croffle", 1, 120.0));
+        dao.update(tx);
+        assertTrue(dao.search("matcha", 10).isEmpty());
+        assertTrue(dao.search("cust-7", 10).isEmpty());
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.search("ube", 10)));
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.search("cust-9", 10)));
+
+        // Status changes leave the document alone
+        dao.markTransactionAsSynced("tx-1", new Date());
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.search("ube", 10)));
+
+        dao.deleteById("tx-1");
+        assertTrue(dao.search("ube", 10).isEmpty());
+        assertTrue(dao.search("RCP-1", 10).isEmpty());
+    }
+
+    @Test
+    public void repeatedIdInOneBatchIsWrittenOnce() {
+        dao.insertAll(Arrays.asList(
+                transaction("tx-1", "RCP-1", null, "Classic Croffle"),
+                transaction("tx-1", "RCP-1", null, "Matcha Latte")));
+
+        assertEquals(1, dao.getTotalTransactionCount());
+        assertEquals(1, dao.getQueueStats().total);
+        assertTrue(dao.search("classic", 10).isEmpty());
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.search("matcha", 10)));
+        assertEquals("Matcha Latte", dao.getById("tx-1").items.get(0).name);
+    }
+
+    @Test
+    public void deadLetteredRowsLeaveAndRejoinTheIndex() {
+        dao.insert(transaction("tx-1", "RCP-1", null, "Classic Croffle"));
+        long time = 1_800_000_000_000L;
+        for (int attempt = 1; attempt <= OfflineTransaction.MAX_SYNC_ATTEMPTS; attempt++) {
+            time += 2 * 60 * 60_000L;
+            dao.markTransactionsAsSyncing(Collections.singletonList("tx-1"), new Date(time));
+            dao.applySyncOutcomes(Collections.singletonList(SyncOutcome.failed("tx-1", "HTTP 422")), new Date(time));
+        }
+        assertNull(dao.getById("tx-1"));
+        assertTrue(dao.search("classic", 10).isEmpty());
+
+        assertEquals(1, dao.requeueAllDeadLetters(new Date(time + 1000)));
+        assertEquals(Collections.singletonList("tx-1"), ids(dao.search("classic", 10)));
+        assertEquals("tx-1", dao.getByReceiptNumber("RCP-1").id);
+    }
+
+    @Test
+    public void searchRanksReceiptsThenCustomersThenItems() {
+        List<OfflineTransaction> rows = new ArrayList<>();
+        rows.add(transaction("tx-item-old", "R-1", null, "Caramel Croffle"));
+        rows.add(transaction("tx-item-new", "R-2", null, "Caramel Latte"));
+        rows.add(transaction("tx-customer", "R-3", "CARAMEL-CLUB", "Iced Americano"));
+        rows.add(transaction("tx-receipt", "CARAMEL-7", null, "Iced Americano"));
+        rows.add(transaction("tx-other", "R-4", null, "Ube Croffle"));
+        dao.insertAll(rows);
+
+        // Receipt and customer prefixes compare case-sensitively; item words do not
+        assertEquals(Arrays.asList("tx-receipt", "tx-customer", "tx-item-new", "tx-item-old"),
+                ids(dao.search("CARAMEL", 10)));
+        assertEquals(Arrays.asList("tx-receipt", "tx-customer"), ids(dao.search("CARAMEL", 2)));
+        assertEquals(Arrays.asList("tx-receipt", "tx-customer", "tx-item-new", "tx-item-old"),
+                ids(dao.search("caramel", 10)));
+
+        // The word still being typed is a prefix, finished words match whole
+        assertEquals(Collections.singletonList("tx-item-old"), ids(dao.search("caramel cro", 10)));
+        assertEquals(Collections.singletonList("tx-item-new"), ids(dao.search("caramel latte ", 10)));
+        assertTrue(dao.search("caramel lat ", 10).isEmpty());
+        assertTrue(dao.search("  ", 10).isEmpty());
+    }
+
+    private static OfflineTransaction transaction(String id, String receipt, String customer, String... names) {
+        OfflineTransaction tx = new OfflineTransaction(id, "store-1", "user-1", "shift-1");
+        tx.timestamp = new Date(1_700_000_000_000L);
+        tx.receiptNumber = receipt;
+        tx.customerId = customer;
+        tx.items = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            tx.items.add(new TransactionItem("p-" + i, names[i], 1, 100.0));
+        }
+        tx.total = 100.0 * names.length;
+        return tx;
+    }
+
+    private static List<String> ids(List<TransactionSummary> summaries) {
+        List<String> ids = new ArrayList<>();
+        for (TransactionSummary summary : summaries) {
+            ids.add(summary.id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,95 @@
+package com.crofflestore.pos.database;
+
+import com.crofflestore.pos.database.dao.CatalogItem;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU of catalog items by store and SKU, in front of
+ * CatalogDao.getItemBySku()
+ *
+ * A till scans the same few dozen SKUs all day; a hit costs a map lookup
+ * instead of a query. Unknown SKUs are cached too, so a bad barcode
+ * scanned again does not go back to the database.
+ *
+ * CroffleOfflineDatabase.catalogCache() clears it whenever the catalog
+ * tables change. A load that started before a clear is not stored, so a
+ * refresh never leaves an old price behind in the cache.
+ *
+ * Items are shared between callers and must not be modified.
+ */
+public final class CatalogCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    /**
+     * Reads an item from the database; null if the SKU is unknown
+     */
+    public interface Loader {
+        CatalogItem load(String storeId, String sku);
+    }
+
+    // Cached result of an unknown SKU
+    private static final CatalogItem ABSENT = new CatalogItem();
+
+    private final Loader loader;
+    private final LinkedHashMap<String, CatalogItem> entries;
+    private long generation;
+    private long hits;
+    private long misses;
+
+    public CatalogCache(Loader loader, int maxEntries) {
+        this.loader = loader;
+        this.entries = new LinkedHashMap<String, CatalogItem>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CatalogItem> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * The item sold under sku at storeId, or null if there is none. The
+     * database read on a miss runs on the calling thread.
+     */
+    public CatalogItem get(String storeId, String sku) {
+        String key = storeId + '\n' + sku;
+        long loadGeneration;
+        synchronized (this) {
+            CatalogItem cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached == ABSENT ? null : cached;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        CatalogItem loaded = loader.load(storeId, sku);
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(key, loaded != null ? loaded : ABSENT);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Drop every entry; loads already running are not stored
+     */
+    public synchronized void clear() {
+        entries.clear();
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+}
@@ -1,30 +1,69 @@
 package com.crofflestore.pos.database;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
+import androidx.room.InvalidationTracker;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
 import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 import android.content.Context;
+import com.crofflestore.pos.database.entities.CatalogCategory;
+import com.crofflestore.pos.database.entities.CatalogPrice;
+import com.crofflestore.pos.database.entities.CatalogProduct;
+import com.crofflestore.pos.database.entities.CatalogSyncState;
+import com.crofflestore.pos.database.entities.DeadLetterTransaction;
+import com.crofflestore.pos.database.entities.InventoryMovement;
 import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.Recipe;
+import com.crofflestore.pos.database.entities.RecipeIngredient;
+import com.crofflestore.pos.database.entities.SalesAggregate;
+import com.crofflestore.pos.database.entities.StockLevel;
+import com.crofflestore.pos.database.entities.SyncMetricsSample;
+import com.crofflestore.pos.database.entities.TransactionItemRow;
+import com.crofflestore.pos.database.entities.TransactionSearchEntry;
+import com.crofflestore.pos.database.dao.CatalogDao;
+import com.crofflestore.pos.database.dao.DeadLetterDao;
+import com.crofflestore.pos.database.dao.InventoryDao;
+import com.crofflestore.pos.database.dao.InventoryQueries;
 import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.dao.OfflineTransactionQueries;
+import com.crofflestore.pos.database.dao.QueueStatsTracker;
+import com.crofflestore.pos.database.dao.RecipeDao;
+import com.crofflestore.pos.database.dao.SalesAggregateQueries;
+import com.crofflestore.pos.database.dao.SalesReportDao;
+import com.crofflestore.pos.database.dao.SyncMetricsDao;
+import com.crofflestore.pos.database.dao.TransactionItemDao;
 import com.crofflestore.pos.database.converters.DateConverter;
 import com.crofflestore.pos.database.converters.TransactionItemConverter;
 import com.crofflestore.pos.database.converters.PaymentDetailsConverter;
+import java.util.Date;
+import java.util.Set;
 
 /**
  * Room Database for Croffle Store POS Offline Data
  * 
  * Provides local SQLite storage for:
  * - Offline transactions with full sync capabilities
- * - Product cache for offline operations
- * - Inventory levels and reservations
+ * - Dead letters: transactions that used up their sync retries
+ * - Transaction line items for product and category sales
+ * - A full-text index over receipts, customers and item names/SKUs
+ * - Sales pre-summed by day, hour, shift and payment method
+ * - A rolling window of sync run metrics
+ * - Product catalog (categories, products, store prices) for offline
+ *   operations, refreshed by delta from the catalog feed
+ * - An append-only inventory ledger with materialized stock levels and
+ *   checkout reservations
+ * - Recipes, compiled for deducting ingredients from sales
  * - User preferences and settings
  */
 @Database(
-    entities = {OfflineTransaction.class},
-    version = 1,
+    entities = {OfflineTransaction.class, TransactionItemRow.class, SyncMetricsSample.class,
+        DeadLetterTransaction.class, TransactionSearchEntry.class, SalesAggregate.class,
+        CatalogCategory.class, CatalogProduct.class, CatalogPrice.class, CatalogSyncState.class,
+        InventoryMovement.class, StockLevel.class, Recipe.class, RecipeIngredient.class},
+    version = 19,
     exportSchema = false
 )
 @TypeConverters({
@@ -39,6 +78,179 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
     
     // Abstract methods to get DAOs
     public abstract OfflineTransactionDao offlineTransactionDao();
+    public abstract TransactionItemDao transactionItemDao();
+    public abstract SyncMetricsDao syncMetricsDao();
+    public abstract DeadLetterDao deadLetterDao();
+    public abstract SalesReportDao salesReportDao();
+    public abstract CatalogDao catalogDao();
+    public abstract InventoryDao inventoryDao();
+    public abstract RecipeDao recipeDao();
+    
+    private volatile GroupCommitWriter transactionWriter;
+    private volatile QueueStateMonitor queueState;
+    private InvalidationTracker.Observer queueStateObserver;
+    private volatile CatalogCache catalogCache;
+    private InvalidationTracker.Observer catalogCacheObserver;
+    private volatile InventoryCounters inventoryCounters;
+    private volatile RecipeExplosionCache recipeExplosions;
+    private InvalidationTracker.Observer recipeExplosionsObserver;
+    
+    /**
+     * Group-committing writer for checkout-time transaction capture
+     */
+    public GroupCommitWriter transactionWriter() {
+        GroupCommitWriter writer = transactionWriter;
+        if (writer == null) {
+            synchronized (this) {
+                writer = transactionWriter;
+                if (writer == null) {
+                    OfflineTransactionDao dao = offlineTransactionDao();
+                    writer = new GroupCommitWriter(dao::insertAll);
+                    transactionWriter = writer;
+                }
+            }
+        }
+        return writer;
+    }
+    
+    /**
+     * Observable sync queue state (counts, head, next retry), re-read when
+     * offline_transactions changes instead of polled
+     */
+    public QueueStateMonitor queueState() {
+        QueueStateMonitor monitor = queueState;
+        if (monitor == null) {
+            synchronized (this) {
+                monitor = queueState;
+                if (monitor == null) {
+                    OfflineTransactionDao dao = offlineTransactionDao();
+                    QueueStateMonitor created = new QueueStateMonitor(
+                            () -> dao.getQueueState(new Date()), QueueStateMonitor.DEFAULT_DEBOUNCE_MS);
+                    queueStateObserver = new InvalidationTracker.Observer("offline_transactions") {
+                        @Override
+                        public void onInvalidated(@NonNull Set<String> tables) {
+                            created.invalidate();
+                        }
+                    };
+                    getInvalidationTracker().addObserver(queueStateObserver);
+                    monitor = created;
+                    queueState = monitor;
+                }
+            }
+        }
+        return monitor;
+    }
+    
+    /**
+     * LRU of catalog items by store and SKU, cleared whenever the catalog
+     * tables change
+     */
+    public CatalogCache catalogCache() {
+        CatalogCache cache = catalogCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = catalogCache;
+                if (cache == null) {
+                    CatalogDao dao = catalogDao();
+                    CatalogCache created = new CatalogCache(dao::getItemBySku, CatalogCache.DEFAULT_MAX_ENTRIES);
+                    catalogCacheObserver = new InvalidationTracker.Observer("catalog_products", "catalog_prices") {
+                        @Override
+                        public void onInvalidated(@NonNull Set<String> tables) {
+                            created.clear();
+                        }
+                    };
+                    getInvalidationTracker().addObserver(catalogCacheObserver);
+                    cache = created;
+                    catalogCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+    
+    /**
+     * Lock-free stock counters for checkout reservations, flushed to the
+     * inventory ledger in batches
+     */
+    public InventoryCounters inventoryCounters() {
+        InventoryCounters counters = inventoryCounters;
+        if (counters == null) {
+            synchronized (this) {
+                counters = inventoryCounters;
+                if (counters == null) {
+                    counters = InventoryCounters.forDao(inventoryDao());
+                    inventoryCounters = counters;
+                }
+            }
+        }
+        return counters;
+    }
+    
+    /**
+     * Compiled recipes for ingredient deductions, recompiled incrementally
+     * whenever the recipe tables change
+     */
+    public RecipeExplosionCache recipeExplosions() {
+        RecipeExplosionCache cache = recipeExplosions;
+        if (cache == null) {
+            synchronized (this) {
+                cache = recipeExplosions;
+                if (cache == null) {
+                    RecipeExplosionCache created = RecipeExplosionCache.forDao(recipeDao());
+                    recipeExplosionsObserver = new InvalidationTracker.Observer("recipes", "recipe_ingredients") {
+                        @Override
+                        public void onInvalidated(@NonNull Set<String> tables) {
+                            created.invalidate();
+                        }
+                    };
+                    getInvalidationTracker().addObserver(recipeExplosionsObserver);
+                    // Compile in the background before the first sale needs it
+                    created.invalidate();
+                    cache = created;
+                    recipeExplosions = cache;
+                }
+            }
+        }
+        return cache;
+    }
+    
+    /**
+     * Commits whatever the transaction writer and inventory counters still
+     * hold before closing
+     */
+    @Override
+    public void close() {
+        QueueStateMonitor monitor = queueState;
+        if (monitor != null) {
+            getInvalidationTracker().removeObserver(queueStateObserver);
+            monitor.stop();
+        }
+        if (catalogCache != null) {
+            getInvalidationTracker().removeObserver(catalogCacheObserver);
+        }
+        RecipeExplosionCache recipes = recipeExplosions;
+        if (recipes != null) {
+            getInvalidationTracker().removeObserver(recipeExplosionsObserver);
+            recipes.stop();
+        }
+        GroupCommitWriter writer = transactionWriter;
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        InventoryCounters counters = inventoryCounters;
+        if (counters != null) {
+            try {
+                counters.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.close();
+    }
     
     /**
      * Get database instance (Singleton pattern)
@@ -47,21 +259,150 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
         if (INSTANCE == null) {
             synchronized (CroffleOfflineDatabase.class) {
                 if (INSTANCE == null) {
-                    INSTANCE = Room.databaseBuilder(
+                    StorageProfile profile = StorageProfile.fromBuildConfig();
+                    INSTANCE = profile.configure(Room.databaseBuilder(
                             context.getApplicationContext(),
                             CroffleOfflineDatabase.class,
                             DATABASE_NAME
-                    )
+                    ))
                     .addCallback(roomCallback)
-                    .addMigrations(MIGRATION_1_2) // Future migrations
+                    .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
+                            MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9,
+                            MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13,
+                            MIGRATION_13_14, MIGRATION_14_15, MIGRATION_15_16,
+                            MIGRATION_16_17, MIGRATION_17_18, MIGRATION_18_19) // Future migrations
                     .fallbackToDestructiveMigration() // For development only
                     .build();
+                    IdleWalCheckpointer.start(INSTANCE, profile.idleCheckpointDelayMs,
+                            "offline_transactions", "transaction_items");
                 }
             }
         }
         return INSTANCE;
     }
     
+    /**
+     * SQL expression mapping a priority label to OfflineTransaction.rankOf()
+     */
+    private static final String PRIORITY_RANK_CASE =
+            "CASE %s WHEN 'high' THEN 1 WHEN 'low' THEN 3 ELSE 2 END";
+    
+    /**
+     * Triggers keeping priority_rank consistent with priority for writers that
+     * assign the public field directly instead of calling setPriority(). The
+     * WHEN guard means a correctly populated row costs no extra write.
+     */
+    private static final String[] PRIORITY_RANK_TRIGGERS = {
+        "CREATE TRIGGER IF NOT EXISTS offline_transactions_priority_rank_ai " +
+            "AFTER INSERT ON offline_transactions " +
+            "WHEN NEW.priority_rank != (" + String.format(PRIORITY_RANK_CASE, "NEW.priority") + ") " +
+            "BEGIN UPDATE offline_transactions SET priority_rank = " +
+            String.format(PRIORITY_RANK_CASE, "NEW.priority") + " WHERE id = NEW.id; END",
+        "CREATE TRIGGER IF NOT EXISTS offline_transactions_priority_rank_au " +
+            "AFTER UPDATE OF priority, priority_rank ON offline_transactions " +
+            "WHEN NEW.priority_rank != (" + String.format(PRIORITY_RANK_CASE, "NEW.priority") + ") " +
+            "BEGIN UPDATE offline_transactions SET priority_rank = " +
+            String.format(PRIORITY_RANK_CASE, "NEW.priority") + " WHERE id = NEW.id; END"
+    };
+    
+    /**
+     * Line items go with their parent. A REPLACE of the parent does not fire
+     * this (recursive triggers are off); OfflineTransactionDao rewrites the
+     * items itself in that case.
+     */
+    private static final String ITEMS_DELETE_TRIGGER =
+        "CREATE TRIGGER IF NOT EXISTS offline_transactions_items_ad " +
+            "AFTER DELETE ON offline_transactions " +
+            "BEGIN DELETE FROM transaction_items WHERE transaction_id = OLD.id; END";
+    
+    /**
+     * SQL expression for the transaction_search items value of the
+     * transaction whose id is %s
+     */
+    private static final String SEARCH_ITEMS_OF =
+            "COALESCE((SELECT group_concat(COALESCE(name, '') || ' ' || COALESCE(sku, ''), ' ') " +
+            "FROM transaction_items WHERE transaction_id = %s), '')";
+    
+    /**
+     * Triggers keeping transaction_search (TransactionSearchEntry) in step,
+     * one document per transaction under the transaction's rowid.
+     *
+     * The document is built from the transaction_items rows when the parent
+     * row is written, so the lines must be written first, as
+     * OfflineTransactionDao does; one FTS write per sale instead of one per
+     * line. A REPLACE deletes the old row without firing delete triggers,
+     * so the BEFORE INSERT trigger drops the old document itself; the new
+     * row may get a different rowid. Status updates touch none of the
+     * watched columns and cost nothing here.
+     */
+    private static final String[] SEARCH_TRIGGERS = {
+        "CREATE TRIGGER IF NOT EXISTS transaction_search_bi " +
+            "BEFORE INSERT ON offline_transactions " +
+            "BEGIN DELETE FROM transaction_search WHERE rowid = " +
+            "(SELECT rowid FROM offline_transactions WHERE id = NEW.id); END",
+        "CREATE TRIGGER IF NOT EXISTS transaction_search_ai " +
+            "AFTER INSERT ON offline_transactions " +
+            "BEGIN INSERT INTO transaction_search (rowid, receipt_number, customer_id, items) " +
+            "VALUES (NEW.rowid, NEW.receipt_number, NEW.customer_id, " +
+            String.format(SEARCH_ITEMS_OF, "NEW.id") + "); END",
+        "CREATE TRIGGER IF NOT EXISTS transaction_search_au " +
+            "AFTER UPDATE OF receipt_number, customer_id, items ON offline_transactions " +
+            "WHEN OLD.receipt_number IS NOT NEW.receipt_number OR OLD.customer_id IS NOT NEW.customer_id " +
+            "OR OLD.items IS NOT NEW.items " +
+            "BEGIN UPDATE transaction_search SET receipt_number = NEW.receipt_number, " +
+            "customer_id = NEW.customer_id, items = " + String.format(SEARCH_ITEMS_OF, "NEW.id") + " " +
+            "WHERE rowid = NEW.rowid; END",
+        "CREATE TRIGGER IF NOT EXISTS transaction_search_ad " +
+            "AFTER DELETE ON offline_transactions " +
+            "BEGIN DELETE FROM transaction_search WHERE rowid = OLD.rowid; END"
+    };
+    
+    /**
+     * Refill transaction_search from offline_transactions and
+     * transaction_items
+     */
+    static void rebuildSearchIndex(SupportSQLiteDatabase db) {
+        db.execSQL("DELETE FROM transaction_search");
+        db.execSQL("INSERT INTO transaction_search (rowid, receipt_number, customer_id, items) " +
+                "SELECT rowid, receipt_number, customer_id, " + String.format(SEARCH_ITEMS_OF, "o.id") +
+                " FROM offline_transactions o");
+    }
+    
+    /**
+     * Create schema objects Room does not manage itself (triggers). Early
+     * migrations call this before later tables exist; a trigger writing to
+     * a missing table would fail every write it fires on, so those are
+     * left to the migration that creates the table.
+     */
+    static void createSchemaExtras(SupportSQLiteDatabase db) {
+        for (String sql : PRIORITY_RANK_TRIGGERS) {
+            db.execSQL(sql);
+        }
+        db.execSQL(ITEMS_DELETE_TRIGGER);
+        if (hasTable(db, "transaction_search")) {
+            for (String sql : SEARCH_TRIGGERS) {
+                db.execSQL(sql);
+            }
+        }
+        if (hasTable(db, "sales_aggregates")) {
+            for (String sql : SalesAggregateQueries.TRIGGERS) {
+                db.execSQL(sql);
+            }
+        }
+        if (hasTable(db, "stock_levels")) {
+            for (String sql : InventoryQueries.TRIGGERS) {
+                db.execSQL(sql);
+            }
+        }
+    }
+    
+    private static boolean hasTable(SupportSQLiteDatabase db, String name) {
+        try (android.database.Cursor cursor = db.query(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?", new Object[] {name})) {
+            return cursor.moveToFirst();
+        }
+    }
+    
     /**
      * Database callback for initialization
      */
@@ -69,10 +410,16 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
         @Override
         public void onCreate(SupportSQLiteDatabase db) {
             super.onCreate(db);
-            // Database created - could populate with initial data
+            createSchemaExtras(db);
             android.util.Log.d("CroffleDB", "Database created successfully");
         }
         
+        @Override
+        public void onDestructiveMigration(SupportSQLiteDatabase db) {
+            super.onDestructiveMigration(db);
+            createSchemaExtras(db);
+        }
+        
         @Override
         public void onOpen(SupportSQLiteDatabase db) {
             super.onOpen(db);
@@ -82,17 +429,415 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
     };
     
     /**
-     * Migration from version 1 to 2 (example for future use)
+     * Migration from version 1 to 2: numeric priority rank and sync queue indexes
      */
     static final Migration MIGRATION_1_2 = new Migration(1, 2) {
         @Override
         public void migrate(SupportSQLiteDatabase database) {
-            // Example migration - add new column
-            // database.execSQL("ALTER TABLE offline_transactions ADD COLUMN new_column TEXT");
+            database.execSQL("ALTER TABLE offline_transactions ADD COLUMN priority_rank INTEGER NOT NULL DEFAULT 2");
+            database.execSQL("UPDATE offline_transactions SET priority_rank = " +
+                    String.format(PRIORITY_RANK_CASE, "priority"));
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_priority_rank_timestamp` " +
+                    "ON `offline_transactions` (`sync_status`, `priority_rank`, `timestamp`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_last_sync_attempt` " +
+                    "ON `offline_transactions` (`sync_status`, `last_sync_attempt`)");
+            createSchemaExtras(database);
             android.util.Log.d("CroffleDB", "Migration 1->2 completed");
         }
     };
     
+    /**
+     * Migration from version 2 to 3: total joins the queue index so the
+     * statistics aggregate never reads table rows
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("DROP INDEX IF EXISTS `index_offline_transactions_sync_status_priority_rank_timestamp`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_priority_rank_timestamp_total` " +
+                    "ON `offline_transactions` (`sync_status`, `priority_rank`, `timestamp`, `total`)");
+            android.util.Log.d("CroffleDB", "Migration 2->3 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 3 to 4: transaction_items child table, filled
+     * from the existing items blobs in chunks
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `transaction_items` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `transaction_id` TEXT NOT NULL, " +
+                    "`line_number` INTEGER NOT NULL, `product_id` TEXT, `variation_id` TEXT, `name` TEXT, " +
+                    "`sku` TEXT, `category` TEXT, `quantity` INTEGER NOT NULL, `unit_price` REAL NOT NULL, " +
+                    "`total_price` REAL NOT NULL, `tax_rate` REAL, `store_id` TEXT, `sold_at` INTEGER)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_transaction_items_transaction_id_line_number` " +
+                    "ON `transaction_items` (`transaction_id`, `line_number`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_transaction_items_sold_at` " +
+                    "ON `transaction_items` (`sold_at`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_transaction_items_product_id_sold_at` " +
+                    "ON `transaction_items` (`product_id`, `sold_at`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_transaction_items_sku_sold_at` " +
+                    "ON `transaction_items` (`sku`, `sold_at`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_transaction_items_category_sold_at` " +
+                    "ON `transaction_items` (`category`, `sold_at`)");
+            try {
+                int items = TransactionItemBackfill.run(database, TransactionItemBackfill.DEFAULT_CHUNK_SIZE);
+                android.util.Log.d("CroffleDB", "Backfilled " + items + " transaction items");
+            } catch (java.io.IOException e) {
+                throw new IllegalStateException("transaction_items backfill failed", e);
+            }
+            createSchemaExtras(database);
+            android.util.Log.d("CroffleDB", "Migration 3->4 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 4 to 5: items and payment_details become BLOB
+     * columns for the compact binary codec. SQLite cannot change a column
+     * type in place, so the table is rebuilt. Existing JSON values are
+     * copied as blobs and keep decoding through the legacy path until the
+     * row is next written.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `offline_transactions_new` (" +
+                    "`id` TEXT NOT NULL, `timestamp` INTEGER, `store_id` TEXT, `user_id` TEXT, " +
+                    "`shift_id` TEXT, `customer_id` TEXT, `items` BLOB, `subtotal` REAL NOT NULL, " +
+                    "`tax` REAL NOT NULL, `discount` REAL NOT NULL, `discount_type` TEXT, " +
+                    "`discount_id_number` TEXT, `total` REAL NOT NULL, `amount_tendered` REAL NOT NULL, " +
+                    "`change_amount` REAL, `payment_method` TEXT, `payment_details` BLOB, `order_type` TEXT, " +
+                    "`delivery_platform` TEXT, `delivery_order_number` TEXT, `sync_status` TEXT, " +
+                    "`sync_attempts` INTEGER NOT NULL, `last_sync_attempt` INTEGER, `sync_error` TEXT, " +
+                    "`priority` TEXT, `priority_rank` INTEGER NOT NULL DEFAULT 2, `receipt_number` TEXT, " +
+                    "`device_id` TEXT, `network_quality` TEXT, `conflict_data` TEXT, `created_at` INTEGER, " +
+                    "`updated_at` INTEGER, PRIMARY KEY(`id`))");
+            database.execSQL("INSERT INTO `offline_transactions_new` SELECT " +
+                    "`id`, `timestamp`, `store_id`, `user_id`, `shift_id`, `customer_id`, " +
+                    "CAST(`items` AS BLOB), `subtotal`, `tax`, `discount`, `discount_type`, " +
+                    "`discount_id_number`, `total`, `amount_tendered`, `change_amount`, `payment_method`, " +
+                    "CAST(`payment_details` AS BLOB), `order_type`, `delivery_platform`, " +
+                    "`delivery_order_number`, `sync_status`, `sync_attempts`, `last_sync_attempt`, " +
+                    "`sync_error`, `priority`, `priority_rank`, `receipt_number`, `device_id`, " +
+                    "`network_quality`, `conflict_data`, `created_at`, `updated_at` " +
+                    "FROM `offline_transactions`");
+            // Dropped first so dropping the table cannot touch transaction_items
+            database.execSQL("DROP TRIGGER IF EXISTS offline_transactions_items_ad");
+            database.execSQL("DROP TABLE `offline_transactions`");
+            database.execSQL("ALTER TABLE `offline_transactions_new` RENAME TO `offline_transactions`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_priority_rank_timestamp_total` " +
+                    "ON `offline_transactions` (`sync_status`, `priority_rank`, `timestamp`, `total`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_last_sync_attempt` " +
+                    "ON `offline_transactions` (`sync_status`, `last_sync_attempt`)");
+            createSchemaExtras(database);
+            android.util.Log.d("CroffleDB", "Migration 4->5 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 5 to 6: sync_metrics table
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_metrics` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `recorded_at` INTEGER, " +
+                    "`sync_type` TEXT, `duration_ms` INTEGER NOT NULL, `synced_count` INTEGER NOT NULL, " +
+                    "`failed_count` INTEGER NOT NULL, `conflict_count` INTEGER NOT NULL, " +
+                    "`requests` INTEGER NOT NULL, `bytes_uploaded` INTEGER NOT NULL, " +
+                    "`transactions_per_second` REAL NOT NULL, `claim_p50_us` INTEGER NOT NULL, " +
+                    "`claim_p99_us` INTEGER NOT NULL, `encode_p50_us` INTEGER NOT NULL, " +
+                    "`encode_p99_us` INTEGER NOT NULL, `upload_p50_us` INTEGER NOT NULL, " +
+                    "`upload_p99_us` INTEGER NOT NULL, `upload_max_us` INTEGER NOT NULL, " +
+                    "`commit_p50_us` INTEGER NOT NULL, `commit_p99_us` INTEGER NOT NULL, " +
+                    "`latency_histograms` BLOB, `queued_high` INTEGER NOT NULL, " +
+                    "`queued_medium` INTEGER NOT NULL, `queued_low` INTEGER NOT NULL, " +
+                    "`oldest_queued_age_ms` INTEGER)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_sync_metrics_recorded_at` " +
+                    "ON `sync_metrics` (`recorded_at`)");
+            android.util.Log.d("CroffleDB", "Migration 5->6 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 6 to 7: per-row retry backoff. Rows already
+     * failed become due at their last attempt, i.e. at once, and back off
+     * from their next failure.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE offline_transactions ADD COLUMN next_retry_at INTEGER");
+            database.execSQL("UPDATE offline_transactions SET next_retry_at = " +
+                    "COALESCE(last_sync_attempt, updated_at, 0) WHERE sync_status = 'failed'");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_next_retry_at` " +
+                    "ON `offline_transactions` (`sync_status`, `next_retry_at`)");
+            android.util.Log.d("CroffleDB", "Migration 6->7 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 7 to 8: claim leases. Rows left syncing by an
+     * earlier version have no live worker behind them, so their leases
+     * start out expired and the next claim hands them back to the queue.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE offline_transactions ADD COLUMN claim_owner TEXT");
+            database.execSQL("ALTER TABLE offline_transactions ADD COLUMN lease_expires_at INTEGER");
+            database.execSQL("UPDATE offline_transactions SET lease_expires_at = 0 WHERE sync_status = 'syncing'");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_lease_expires_at` " +
+                    "ON `offline_transactions` (`sync_status`, `lease_expires_at`)");
+            android.util.Log.d("CroffleDB", "Migration 7->8 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 8 to 9: dead_letter_transactions and the
+     * per-row error history. Failed rows already past the retry limit are
+     * moved over with their last error as their history; earlier versions
+     * deleted them after 30 days.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE offline_transactions ADD COLUMN sync_error_history TEXT");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `dead_letter_transactions` (" +
+                    "`dead_lettered_at` INTEGER, `dead_letter_reason` TEXT, " +
+                    "`id` TEXT NOT NULL, `timestamp` INTEGER, `store_id` TEXT, `user_id` TEXT, " +
+                    "`shift_id` TEXT, `customer_id` TEXT, `items` BLOB, `subtotal` REAL NOT NULL, " +
+                    "`tax` REAL NOT NULL, `discount` REAL NOT NULL, `discount_type` TEXT, " +
+                    "`discount_id_number` TEXT, `total` REAL NOT NULL, `amount_tendered` REAL NOT NULL, " +
+                    "`change_amount` REAL, `payment_method` TEXT, `payment_details` BLOB, `order_type` TEXT, " +
+                    "`delivery_platform` TEXT, `delivery_order_number` TEXT, `sync_status` TEXT, " +
+                    "`sync_attempts` INTEGER NOT NULL, `last_sync_attempt` INTEGER, `next_retry_at` INTEGER, " +
+                    "`claim_owner` TEXT, `lease_expires_at` INTEGER, `sync_error` TEXT, " +
+                    "`sync_error_history` TEXT, `priority` TEXT, `priority_rank` INTEGER NOT NULL DEFAULT 2, " +
+                    "`receipt_number` TEXT, `device_id` TEXT, `network_quality` TEXT, `conflict_data` TEXT, " +
+                    "`created_at` INTEGER, `updated_at` INTEGER, PRIMARY KEY(`id`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_dead_letter_transactions_dead_lettered_at` " +
+                    "ON `dead_letter_transactions` (`dead_lettered_at`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_dead_letter_transactions_store_id_dead_lettered_at` " +
+                    "ON `dead_letter_transactions` (`store_id`, `dead_lettered_at`)");
+            String exhausted = "FROM offline_transactions WHERE sync_status = 'failed' AND sync_attempts >= " +
+                    OfflineTransaction.MAX_SYNC_ATTEMPTS;
+            database.execSQL("UPDATE offline_transactions SET sync_error_history = sync_attempts || char(9) || " +
+                    "COALESCE(last_sync_attempt, updated_at, 0) || char(9) || " +
+                    "REPLACE(REPLACE(COALESCE(sync_error, ''), char(10), ' '), char(9), ' ') " +
+                    "WHERE id IN (SELECT id " + exhausted + ")");
+            database.execSQL("INSERT OR REPLACE INTO dead_letter_transactions (" +
+                    OfflineTransactionQueries.TRANSACTION_COLUMNS + ", dead_lettered_at, dead_letter_reason) " +
+                    "SELECT " + OfflineTransactionQueries.TRANSACTION_COLUMNS + ", " +
+                    "COALESCE(last_sync_attempt, updated_at, 0), '" +
+                    DeadLetterTransaction.REASON_RETRIES_EXHAUSTED + "' " + exhausted);
+            // The items trigger takes their transaction_items rows with them
+            database.execSQL("DELETE " + exhausted);
+            android.util.Log.d("CroffleDB", "Migration 8->9 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 9 to 10: unique receipt_number index, the
+     * customer index and the transaction_search full-text index. Receipt numbers were never
+     * checked before, so every row repeating an earlier row's receipt
+     * number gets its transaction id appended ("R-1~tx-9") to make the
+     * index creatable.
+     */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            String repeats = "FROM offline_transactions WHERE receipt_number IS NOT NULL AND rowid NOT IN " +
+                    "(SELECT MIN(rowid) FROM offline_transactions WHERE receipt_number IS NOT NULL " +
+                    "GROUP BY receipt_number)";
+            android.database.Cursor cursor = database.query("SELECT COUNT(*) " + repeats);
+            int renamed = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+            cursor.close();
+            if (renamed > 0) {
+                database.execSQL("UPDATE offline_transactions SET receipt_number = receipt_number || '~' || id " +
+                        "WHERE rowid IN (SELECT rowid " + repeats + ")");
+                android.util.Log.w("CroffleDB", "Migration 9->10: renamed " + renamed + " duplicate receipt numbers");
+            }
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_offline_transactions_receipt_number` " +
+                    "ON `offline_transactions` (`receipt_number`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_offline_transactions_customer_id_timestamp` " +
+                    "ON `offline_transactions` (`customer_id`, `timestamp`)");
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `transaction_search` USING FTS4(" +
+                    "`receipt_number` TEXT, `customer_id` TEXT, `items` TEXT, tokenize=unicode61, prefix=`2,3`, order=DESC)");
+            rebuildSearchIndex(database);
+            createSchemaExtras(database);
+            android.util.Log.d("CroffleDB", "Migration 9->10 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 10 to 11: sales_aggregates, filled from the
+     * rows still on the device
+     */
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sales_aggregates` (" +
+                    "`business_day` TEXT NOT NULL, `hour` INTEGER NOT NULL, `shift_id` TEXT NOT NULL, " +
+                    "`payment_method` TEXT NOT NULL, `transaction_count` INTEGER NOT NULL DEFAULT 0, " +
+                    "`subtotal_cents` INTEGER NOT NULL DEFAULT 0, `tax_cents` INTEGER NOT NULL DEFAULT 0, " +
+                    "`discount_cents` INTEGER NOT NULL DEFAULT 0, `total_cents` INTEGER NOT NULL DEFAULT 0, " +
+                    "`synced_count` INTEGER NOT NULL DEFAULT 0, `synced_cents` INTEGER NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY(`business_day`, `hour`, `shift_id`, `payment_method`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_sales_aggregates_shift_id` " +
+                    "ON `sales_aggregates` (`shift_id`)");
+            database.execSQL(SalesAggregateQueries.FILL);
+            createSchemaExtras(database);
+            android.util.Log.d("CroffleDB", "Migration 10->11 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 11 to 12: the local product catalog. Starts
+     * empty with no high-water marks; the first refresh loads it in full.
+     */
+    static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `catalog_categories` (" +
+                    "`id` TEXT NOT NULL, `name` TEXT, `sort_order` INTEGER NOT NULL, " +
+                    "`active` INTEGER NOT NULL, `updated_at` INTEGER NOT NULL, PRIMARY KEY(`id`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `catalog_products` (" +
+                    "`id` TEXT NOT NULL, `sku` TEXT, `name` TEXT, `category_id` TEXT, " +
+                    "`price` REAL NOT NULL, `active` INTEGER NOT NULL, `updated_at` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`id`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_catalog_products_sku` " +
+                    "ON `catalog_products` (`sku`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_catalog_products_category_id` " +
+                    "ON `catalog_products` (`category_id`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `catalog_prices` (" +
+                    "`id` TEXT NOT NULL, `product_id` TEXT, `store_id` TEXT, `price` REAL NOT NULL, " +
+                    "`updated_at` INTEGER NOT NULL, PRIMARY KEY(`id`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_catalog_prices_product_id_store_id` " +
+                    "ON `catalog_prices` (`product_id`, `store_id`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `catalog_sync_state` (" +
+                    "`kind` TEXT NOT NULL, `high_water_updated_at` INTEGER NOT NULL, " +
+                    "`high_water_id` TEXT NOT NULL, `refreshed_at` INTEGER NOT NULL, PRIMARY KEY(`kind`))");
+            android.util.Log.d("CroffleDB", "Migration 11->12 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 12 to 13: the inventory ledger and stock
+     * levels, both empty until the first movement is recorded
+     */
+    static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `inventory_movements` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `store_id` TEXT NOT NULL, " +
+                    "`item_id` TEXT NOT NULL, `movement_type` TEXT NOT NULL, `quantity_change` INTEGER NOT NULL, " +
+                    "`reference_type` TEXT, `reference_id` TEXT, `created_at` INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_inventory_movements_store_id_item_id` " +
+                    "ON `inventory_movements` (`store_id`, `item_id`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `stock_levels` (" +
+                    "`store_id` TEXT NOT NULL, `item_id` TEXT NOT NULL, `on_hand` INTEGER NOT NULL, " +
+                    "`reserved` INTEGER NOT NULL, `last_movement_id` INTEGER NOT NULL, " +
+                    "`updated_at` INTEGER NOT NULL, PRIMARY KEY(`store_id`, `item_id`))");
+            createSchemaExtras(database);
+            android.util.Log.d("CroffleDB", "Migration 12->13 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 13 to 14: recipes and their ingredient lines,
+     * empty until the first recipe is saved
+     */
+    static final Migration MIGRATION_13_14 = new Migration(13, 14) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `recipes` (" +
+                    "`product_id` TEXT NOT NULL, `variation_id` TEXT NOT NULL, `version` INTEGER NOT NULL, " +
+                    "`active` INTEGER NOT NULL, PRIMARY KEY(`product_id`, `variation_id`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_recipes_version` ON `recipes` (`version`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `recipe_ingredients` (" +
+                    "`product_id` TEXT NOT NULL, `variation_id` TEXT NOT NULL, `item_id` TEXT NOT NULL, " +
+                    "`quantity` REAL NOT NULL, `unit` TEXT, `base_unit` TEXT, " +
+                    "PRIMARY KEY(`product_id`, `variation_id`, `item_id`))");
+            android.util.Log.d("CroffleDB", "Migration 13->14 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 14 to 15: replace the stock level trigger,
+     * whose INSERT OR IGNORE took Room's OR ABORT and failed every movement
+     * after an item's first. Levels written before are rebuilt from the
+     * ledger.
+     */
+    static final Migration MIGRATION_14_15 = new Migration(14, 15) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("DROP TRIGGER IF EXISTS inventory_movements_ai");
+            createSchemaExtras(database);
+            database.execSQL(InventoryQueries.REBUILD_ON_HAND);
+            android.util.Log.d("CroffleDB", "Migration 14->15 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 15 to 16: index the queued sales of each shift,
+     * so a claim can hold back rows behind an earlier sale still waiting
+     */
+    static final Migration MIGRATION_15_16 = new Migration(15, 16) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS " +
+                    "`index_offline_transactions_store_id_shift_id_sync_status_priority_rank_timestamp` " +
+                    "ON `offline_transactions` (`store_id`, `shift_id`, `sync_status`, `priority_rank`, `timestamp`)");
+            android.util.Log.d("CroffleDB", "Migration 15->16 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 16 to 17: sales moved to the dead-letter table
+     * stay in sales_aggregates. The triggers are replaced and the sales
+     * already dead-lettered, which the old ones took out, are added back.
+     */
+    static final Migration MIGRATION_16_17 = new Migration(16, 17) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("DROP TRIGGER IF EXISTS sales_aggregates_ai");
+            database.execSQL("DROP TRIGGER IF EXISTS sales_aggregates_ad");
+            createSchemaExtras(database);
+            for (String sql : SalesAggregateQueries.ADD_DEAD_LETTERS) {
+                database.execSQL(sql);
+            }
+            android.util.Log.d("CroffleDB", "Migration 16->17 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 17 to 18: index (timestamp, id), which exports
+     * now page on instead of rowid
+     */
+    static final Migration MIGRATION_17_18 = new Migration(17, 18) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_offline_transactions_timestamp_id` " +
+                    "ON `offline_transactions` (`timestamp`, `id`)");
+            android.util.Log.d("CroffleDB", "Migration 17->18 completed");
+        }
+    };
+    
+    /**
+     * Migration from version 18 to 19: discarding a dead letter for good
+     * takes its sale out of sales_aggregates
+     */
+    static final Migration MIGRATION_18_19 = new Migration(18, 19) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            createSchemaExtras(database);
+            android.util.Log.d("CroffleDB", "Migration 18->19 completed");
+        }
+    };
+    
     /**
      * Close database instance
      */
@@ -118,10 +863,27 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
     }
     
     /**
-     * Vacuum database to reclaim space
+     * Full VACUUM: rewrites the whole file and blocks every writer while it
+     * runs, then rebuilds the search index. Routine reclamation is
+     * DatabaseMaintenance's incremental vacuum.
      */
     public void vacuumDatabase() {
-        this.getOpenHelper().getWritableDatabase().execSQL("VACUUM");
+        vacuum(this.getOpenHelper().getWritableDatabase());
+    }
+    
+    /**
+     * VACUUM, then rebuild transaction_search: VACUUM may renumber the
+     * rowids its documents are keyed on
+     */
+    static void vacuum(SupportSQLiteDatabase db) {
+        db.execSQL("VACUUM");
+        db.beginTransaction();
+        try {
+            rebuildSearchIndex(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
     
     /**
@@ -147,28 +909,32 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
     
     /**
      * Get database statistics
+     * 
+     * Served from the DAO's incrementally maintained QueueStatsTracker, so
+     * this is cheap enough for the dashboard to poll.
      */
     public DatabaseStats getDatabaseStats() {
         DatabaseStats stats = new DatabaseStats();
         
         try {
-            OfflineTransactionDao dao = offlineTransactionDao();
+            QueueStatsTracker.Snapshot snapshot = offlineTransactionDao().getQueueStats();
             
-            stats.totalTransactions = dao.getTotalTransactionCount();
-            stats.pendingTransactions = dao.getPendingTransactionCount();
-            stats.failedTransactions = dao.getFailedTransactionCount();
-            stats.syncingTransactions = dao.getSyncingTransactionCount();
-            stats.conflictTransactions = dao.getConflictTransactionCount();
+            stats.totalTransactions = snapshot.total;
+            stats.pendingTransactions = snapshot.pending;
+            stats.failedTransactions = snapshot.failed;
+            stats.syncingTransactions = snapshot.syncing;
+            stats.conflictTransactions = snapshot.conflict;
+            stats.deadLetterTransactions = deadLetterDao().getCount();
             
-            stats.highPriorityPending = dao.getHighPriorityPendingCount();
-            stats.mediumPriorityPending = dao.getMediumPriorityPendingCount();
-            stats.lowPriorityPending = dao.getLowPriorityPendingCount();
+            stats.highPriorityPending = snapshot.highQueued;
+            stats.mediumPriorityPending = snapshot.mediumQueued;
+            stats.lowPriorityPending = snapshot.lowQueued;
             
-            stats.totalPendingAmount = dao.getTotalPendingAmount();
-            stats.todaysSyncedAmount = dao.getTodaysSyncedAmount();
+            stats.totalPendingAmount = snapshot.pendingAmount;
+            stats.todaysSyncedAmount = snapshot.todaysSyncedAmount;
             
-            stats.oldestPendingTransaction = dao.getOldestPendingTransactionTime();
-            stats.newestPendingTransaction = dao.getNewestPendingTransactionTime();
+            stats.oldestPendingTransaction = snapshot.oldestQueued;
+            stats.newestPendingTransaction = snapshot.newestQueued;
             
         } catch (Exception e) {
             android.util.Log.e("CroffleDB", "Failed to get database stats", e);
@@ -178,40 +944,12 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
     }
     
     /**
-     * Cleanup old data
+     * Cleanup old data: chunked retention deletes, then incremental vacuum
+     * once the freelist is large enough. Never runs a full VACUUM; that is
+     * left to the idle/charging DatabaseMaintenanceWorker.
      */
     public CleanupResult performCleanup() {
-        CleanupResult result = new CleanupResult();
-        
-        try {
-            OfflineTransactionDao dao = offlineTransactionDao();
-            
-            // Calculate cutoff dates
-            long sevenDaysAgo = System.currentTimeMillis() - (7 * 24 * 60 * 60 * 1000);
-            long thirtyDaysAgo = System.currentTimeMillis() - (30 * 24 * 60 * 60 * 1000);
-            
-            java.util.Date sevenDaysCutoff = new java.util.Date(sevenDaysAgo);
-            java.util.Date thirtyDaysCutoff = new java.util.Date(thirtyDaysAgo);
-            
-            // Delete old synced transactions (older than 7 days)
-            result.deletedSyncedTransactions = dao.deleteSyncedTransactionsOlderThan(sevenDaysCutoff);
-            
-            // Delete old failed transactions (older than 30 days)
-            result.deletedFailedTransactions = dao.deleteFailedTransactionsOlderThan(thirtyDaysCutoff);
-            
-            // Vacuum database to reclaim space
-            vacuumDatabase();
-            result.vacuumPerformed = true;
-            
-            result.success = true;
-            
-        } catch (Exception e) {
-            android.util.Log.e("CroffleDB", "Cleanup failed", e);
-            result.success = false;
-            result.error = e.getMessage();
-        }
-        
-        return result;
+        return new DatabaseMaintenance(this).run(DatabaseMaintenance.NEVER_STOP, false);
     }
     
     /**
@@ -223,6 +961,7 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
         public int failedTransactions = 0;
         public int syncingTransactions = 0;
         public int conflictTransactions = 0;
+        public int deadLetterTransactions = 0;
         
         public int highPriorityPending = 0;
         public int mediumPriorityPending = 0;
@@ -242,6 +981,7 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
                     ", failedTransactions=" + failedTransactions +
                     ", syncingTransactions=" + syncingTransactions +
                     ", conflictTransactions=" + conflictTransactions +
+                    ", deadLetterTransactions=" + deadLetterTransactions +
                     ", highPriorityPending=" + highPriorityPending +
                     ", totalPendingAmount=" + totalPendingAmount +
                     '}';
@@ -254,8 +994,11 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
     public static class CleanupResult {
         public boolean success = false;
         public int deletedSyncedTransactions = 0;
-        public int deletedFailedTransactions = 0;
+        public int deadLetteredTransactions = 0;
         public boolean vacuumPerformed = false;
+        public boolean autoVacuumConverted = false;
+        public int pagesReclaimed = 0;
+        public boolean stoppedEarly = false;
         public String error;
         
         @Override
@@ -263,8 +1006,11 @@ public abstract class CroffleOfflineDatabase extends RoomDatabase {
             return "CleanupResult{" +
                     "success=" + success +
                     ", deletedSyncedTransactions=" + deletedSyncedTransactions +
-                    ", deletedFailedTransactions=" + deletedFailedTransactions +
+                    ", deadLetteredTransactions=" + deadLetteredTransactions +
                     ", vacuumPerformed=" + vacuumPerformed +
+                    ", autoVacuumConverted=" + autoVacuumConverted +
+                    ", pagesReclaimed=" + pagesReclaimed +
+                    ", stoppedEarly=" + stoppedEarly +
                     ", error='" + error + '\'' +
                     '}';
         }
@@ -0,0 +1,182 @@
+package com.crofflestore.pos.database;
+
+import android.database.Cursor;
+import android.util.Log;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retention cleanup and space reclamation without a full VACUUM
+ *
+ * - Old synced rows are deleted in chunks, each its own short
+ *   transaction, with a pause between chunks so checkout writes are never
+ *   queued behind the cleanup for long.
+ * - Failed rows with no retries left that are still in the queue table
+ *   are moved to the dead-letter table the same way. Failed sales are
+ *   never deleted.
+ * - The transaction_search full-text index gets one bounded segment
+ *   merge, so the segments left behind by per-sale trigger writes do not
+ *   pile up and slow searches down.
+ * - Freed pages are returned to the filesystem with incremental_vacuum,
+ *   a bounded number of pages per step, and only once the freelist has
+ *   grown past a threshold.
+ * - incremental_vacuum needs auto_vacuum=INCREMENTAL, which an existing
+ *   database only picks up through one full VACUUM. That conversion is
+ *   done once, and only when the caller allows it (the idle/charging
+ *   maintenance job).
+ *
+ * Every step checks the StopSignal, so a stopped job leaves after at most
+ * one chunk or vacuum step.
+ */
+public class DatabaseMaintenance {
+
+    public interface StopSignal {
+        boolean isStopped();
+    }
+
+    public static final StopSignal NEVER_STOP = () -> false;
+
+    private static final String TAG = "CroffleDB";
+
+    static final long SYNCED_RETENTION_MS = TimeUnit.DAYS.toMillis(7);
+
+    static final int DEFAULT_CHUNK_SIZE = 200;
+    static final long DEFAULT_YIELD_MS = 50;
+    // 1 MiB of free space at the default 4 KiB page size
+    static final int DEFAULT_FREELIST_THRESHOLD_PAGES = 256;
+    static final int DEFAULT_VACUUM_STEP_PAGES = 128;
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // FTS4 incremental merge: up to 200 pages of work, merging runs of 8 segments
+    static final String SEARCH_INDEX_MERGE =
+            "INSERT INTO transaction_search (transaction_search) VALUES ('merge=200,8')";
+
+    private final CroffleOfflineDatabase database;
+    private final int chunkSize;
+    private final long yieldMs;
+    private final int freelistThresholdPages;
+    private final int vacuumStepPages;
+
+    public DatabaseMaintenance(CroffleOfflineDatabase database) {
+        this(database, DEFAULT_CHUNK_SIZE, DEFAULT_YIELD_MS, DEFAULT_FREELIST_THRESHOLD_PAGES, DEFAULT_VACUUM_STEP_PAGES);
+    }
+
+    DatabaseMaintenance(CroffleOfflineDatabase database, int chunkSize, long yieldMs,
+                        int freelistThresholdPages, int vacuumStepPages) {
+        this.database = database;
+        this.chunkSize = chunkSize;
+        this.yieldMs = yieldMs;
+        this.freelistThresholdPages = freelistThresholdPages;
+        this.vacuumStepPages = vacuumStepPages;
+    }
+
+    /**
+     * Run retention and reclamation.
+     *
+     * @param allowFullVacuum whether the one-time conversion to incremental
+     *                        auto-vacuum may run; it rewrites the whole file
+     */
+    public CroffleOfflineDatabase.CleanupResult run(StopSignal stop, boolean allowFullVacuum) {
+        CroffleOfflineDatabase.CleanupResult result = new CroffleOfflineDatabase.CleanupResult();
+        try {
+            OfflineTransactionDao dao = database.offlineTransactionDao();
+            long now = System.currentTimeMillis();
+            Date syncedCutoff = new Date(now - SYNCED_RETENTION_MS);
+
+            result.deletedSyncedTransactions = deleteInChunks(stop,
+                    () -> dao.deleteSyncedChunkOlderThan(syncedCutoff, chunkSize));
+            result.deadLetteredTransactions = deleteInChunks(stop,
+                    () -> dao.deadLetterExhaustedChunk(new Date(now), chunkSize));
+
+            SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+            if (!stop.isStopped()) {
+                db.execSQL(SEARCH_INDEX_MERGE);
+            }
+            if (allowFullVacuum && !stop.isStopped() && pragma(db, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                CroffleOfflineDatabase.vacuum(db);
+                result.autoVacuumConverted = true;
+                Log.d(TAG, "Converted to incremental auto-vacuum");
+            }
+            result.pagesReclaimed = reclaimFreePages(db, stop);
+            result.vacuumPerformed = result.autoVacuumConverted || result.pagesReclaimed > 0;
+            result.stoppedEarly = stop.isStopped();
+            result.success = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.stoppedEarly = true;
+            result.success = true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Cleanup failed", e);
+            result.success = false;
+            result.error = e.getMessage();
+        }
+        return result;
+    }
+
+    private interface Chunk {
+        int delete();
+    }
+
+    private int deleteInChunks(StopSignal stop, Chunk chunk) throws InterruptedException {
+        int total = 0;
+        while (!stop.isStopped()) {
+            int deleted = chunk.delete();
+            total += deleted;
+            if (deleted < chunkSize) {
+                break;
+            }
+            pause();
+        }
+        return total;
+    }
+
+    /**
+     * incremental_vacuum in steps of vacuumStepPages while the freelist is
+     * above the threshold. Does nothing until auto_vacuum is INCREMENTAL.
+     */
+    private int reclaimFreePages(SupportSQLiteDatabase db, StopSignal stop) throws InterruptedException {
+        if (pragma(db, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            return 0;
+        }
+        long free = pragma(db, "freelist_count");
+        if (free < freelistThresholdPages) {
+            return 0;
+        }
+        long reclaimed = 0;
+        while (free > 0 && !stop.isStopped()) {
+            // The pragma may report per-page rows; draining the cursor runs it to completion
+            try (Cursor cursor = db.query("PRAGMA incremental_vacuum(" + vacuumStepPages + ")")) {
+                while (cursor.moveToNext()) {
+                    // nothing to read
+                }
+            }
+            long remaining = pragma(db, "freelist_count");
+            if (remaining >= free) {
+                break;
+            }
+            reclaimed += free - remaining;
+            free = remaining;
+            if (free > 0) {
+                pause();
+            }
+        }
+        Log.d(TAG, "Reclaimed " + reclaimed + " free pages");
+        return (int) reclaimed;
+    }
+
+    private void pause() throws InterruptedException {
+        if (yieldMs > 0) {
+            Thread.sleep(yieldMs);
+        }
+    }
+
+    private static long pragma(SupportSQLiteDatabase db, String name) {
+        try (Cursor cursor = db.query("PRAGMA " + name)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
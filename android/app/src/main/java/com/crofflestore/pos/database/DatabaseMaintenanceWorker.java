@@ -0,0 +1,83 @@
+package com.crofflestore.pos.database;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Android WorkManager Worker for Database Maintenance
+ *
+ * Runs retention cleanup and free page reclamation once a day while the
+ * device is idle and charging, away from checkout and sync. This is the
+ * only caller allowed to run the one-time full VACUUM that switches the
+ * file to incremental auto-vacuum.
+ */
+public class DatabaseMaintenanceWorker extends Worker {
+
+    private static final String TAG = "DatabaseMaintenance";
+    private static final String WORK_NAME = "database_maintenance";
+
+    // Output data keys
+    public static final String OUTPUT_DELETED_SYNCED = "deleted_synced";
+    public static final String OUTPUT_DEAD_LETTERED = "dead_lettered";
+    public static final String OUTPUT_PAGES_RECLAIMED = "pages_reclaimed";
+
+    public DatabaseMaintenanceWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        CroffleOfflineDatabase database = CroffleOfflineDatabase.getInstance(getApplicationContext());
+        CroffleOfflineDatabase.CleanupResult result =
+                new DatabaseMaintenance(database).run(this::isStopped, true);
+        Log.d(TAG, "Maintenance finished: " + result);
+
+        if (!result.success) {
+            return Result.retry();
+        }
+        return Result.success(new Data.Builder()
+                .putInt(OUTPUT_DELETED_SYNCED, result.deletedSyncedTransactions)
+                .putInt(OUTPUT_DEAD_LETTERED, result.deadLetteredTransactions)
+                .putInt(OUTPUT_PAGES_RECLAIMED, result.pagesReclaimed)
+                .build());
+    }
+
+    /**
+     * Schedule daily maintenance, idle and charging only
+     */
+    public static void scheduleMaintenance(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .build();
+
+        PeriodicWorkRequest maintenanceWork = new PeriodicWorkRequest.Builder(
+                DatabaseMaintenanceWorker.class,
+                1, TimeUnit.DAYS
+        )
+                .setConstraints(constraints)
+                .build();
+
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, maintenanceWork);
+
+        Log.d(TAG, "Database maintenance scheduled");
+    }
+
+    /**
+     * Cancel scheduled maintenance
+     */
+    public static void cancelMaintenance(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+    }
+}
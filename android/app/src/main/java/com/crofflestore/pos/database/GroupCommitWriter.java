@@ -0,0 +1,263 @@
+package com.crofflestore.pos.database;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group commit for transaction capture
+ *
+ * Callers on any thread submit rows; a single writer thread gathers them
+ * into one batch and commits the batch through one insertAll transaction,
+ * so a rush of sales pays for one commit (and one fsync) per batch rather
+ * than per sale.
+ *
+ * - A batch closes after maxDelayMs from its first row or at maxBatchRows
+ *   rows, whichever comes first. Rows submitted while a commit is running
+ *   simply wait for the next one, so under load batches fill without any
+ *   waiting at all.
+ * - Rows are committed in submission order; a later row with the same id
+ *   replaces an earlier one exactly as two separate inserts would.
+ * - A caller's future completes only after the batch holding its row has
+ *   committed, i.e. as durable as the storage profile makes any commit.
+ * - If a commit fails, the batch is halved and each half committed in
+ *   turn, down to single rows, so one bad row (a receipt number already
+ *   taken, say) fails only its own future. That costs two extra commits
+ *   per halving. When every row fails alone, as when the disk is full,
+ *   every future fails with the cause; an Error fails the batch at once.
+ */
+public class GroupCommitWriter {
+
+    /**
+     * Writes a batch in one transaction
+     */
+    public interface BatchSink {
+        void insertAll(List<OfflineTransaction> rows);
+    }
+
+    public static final long DEFAULT_MAX_DELAY_MS = 5;
+    public static final int DEFAULT_MAX_BATCH_ROWS = 64;
+
+    private final BatchSink sink;
+    private final long maxDelayNanos;
+    private final int maxBatchRows;
+    private final LinkedBlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Written by the writer thread only
+    private long commits;
+    private long rowsCommitted;
+
+    public GroupCommitWriter(BatchSink sink) {
+        this(sink, DEFAULT_MAX_DELAY_MS, DEFAULT_MAX_BATCH_ROWS);
+    }
+
+    public GroupCommitWriter(BatchSink sink, long maxDelayMs, int maxBatchRows) {
+        this.sink = sink;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMs));
+        this.maxBatchRows = Math.max(1, maxBatchRows);
+        this.writer = new Thread(this::runWriter, "group-commit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue a row for the next group commit
+     *
+     * @return completes once the row is committed
+     * @throws IllegalStateException after close()
+     */
+    public Future<Void> submit(OfflineTransaction transaction) {
+        PendingWrite write = new PendingWrite(transaction);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("GroupCommitWriter is closed");
+            }
+            queue.add(write);
+        }
+        return write;
+    }
+
+    /**
+     * Submit and wait for the commit
+     *
+     * @throws RuntimeException what the commit failed with
+     */
+    public void insert(OfflineTransaction transaction) throws InterruptedException {
+        try {
+            submit(transaction).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException
+                    ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Stop accepting rows, commit everything already submitted and stop
+     * the writer thread
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(PendingWrite.END);
+        }
+        writer.join();
+    }
+
+    /**
+     * Commits so far; call after close() for an exact figure
+     */
+    public long getCommitCount() {
+        return commits;
+    }
+
+    public long getRowsCommitted() {
+        return rowsCommitted;
+    }
+
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchRows);
+        boolean ending = false;
+        while (!ending) {
+            try {
+                ending = collect(batch);
+            } catch (InterruptedException e) {
+                // Only close() ends the writer; submitted rows are never dropped
+                continue;
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Fill the batch: block for its first row, then take more until the
+     * window closes or the batch is full
+     *
+     * @return true when END was reached
+     */
+    private boolean collect(List<PendingWrite> batch) throws InterruptedException {
+        PendingWrite first = queue.take();
+        if (first == PendingWrite.END) {
+            return true;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchRows) {
+            PendingWrite next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+            }
+            if (next == PendingWrite.END) {
+                return true;
+            }
+            batch.add(next);
+        }
+        return false;
+    }
+
+    private void commit(List<PendingWrite> batch) {
+        List<OfflineTransaction> rows = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            rows.add(write.transaction);
+        }
+        Throwable failure = null;
+        try {
+            sink.insertAll(rows);
+            commits++;
+            rowsCommitted += rows.size();
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                // Halves in order, so a repeated id still ends up as its last copy
+                int half = batch.size() / 2;
+                commit(batch.subList(0, half));
+                commit(batch.subList(half, batch.size()));
+                return;
+            }
+            failure = e;
+        } catch (Error e) {
+            failure = e;
+        }
+        for (PendingWrite write : batch) {
+            write.complete(failure);
+        }
+    }
+
+    /**
+     * One submitted row; the Future a caller waits on
+     */
+    private static final class PendingWrite implements Future<Void> {
+        static final PendingWrite END = new PendingWrite(null);
+
+        final OfflineTransaction transaction;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Throwable failure;
+
+        PendingWrite(OfflineTransaction transaction) {
+            this.transaction = transaction;
+        }
+
+        void complete(Throwable failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // A row handed to the writer is committed or fails with its batch
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            done.await();
+            return result();
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private Void result() throws ExecutionException {
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return null;
+        }
+    }
+}
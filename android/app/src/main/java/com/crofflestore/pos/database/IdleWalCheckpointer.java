@@ -0,0 +1,104 @@
+package com.crofflestore.pos.database;
+
+import android.database.Cursor;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkpoints the WAL once writes have gone quiet
+ *
+ * Every committed write to an observed table pushes the checkpoint back by
+ * the idle delay, so during a rush no checkpoint runs at all and the
+ * commits only append to the WAL. When the till goes quiet a PASSIVE
+ * checkpoint copies the WAL back into the database file on a background
+ * thread. PASSIVE never waits on readers; pages still in use by a reader
+ * are picked up by the next checkpoint.
+ *
+ * Android runs every write, checkpoints included, on one connection, so a
+ * write arriving during the checkpoint waits for it. The idle delay keeps
+ * that rare.
+ */
+public final class IdleWalCheckpointer {
+
+    private static final String TAG = "CroffleDB";
+
+    private final RoomDatabase database;
+    private final long idleDelayMs;
+    private final ScheduledExecutorService executor;
+    private final InvalidationTracker.Observer observer;
+    private ScheduledFuture<?> pending;
+
+    private IdleWalCheckpointer(RoomDatabase database, long idleDelayMs, String[] tables) {
+        this.database = database;
+        this.idleDelayMs = idleDelayMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-checkpoint");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.observer = new InvalidationTracker.Observer(tables) {
+            @Override
+            public void onInvalidated(@NonNull Set<String> changed) {
+                reschedule();
+            }
+        };
+    }
+
+    /**
+     * Start checkpointing the database after idleDelayMs without a write to
+     * any of the given tables
+     */
+    public static IdleWalCheckpointer start(RoomDatabase database, long idleDelayMs, String... tables) {
+        IdleWalCheckpointer checkpointer = new IdleWalCheckpointer(database, idleDelayMs, tables);
+        database.getInvalidationTracker().addObserver(checkpointer.observer);
+        return checkpointer;
+    }
+
+    public void stop() {
+        database.getInvalidationTracker().removeObserver(observer);
+        executor.shutdownNow();
+    }
+
+    private synchronized void reschedule() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(this::checkpoint, idleDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One PASSIVE checkpoint
+     *
+     * @return frames copied back into the database, or -1 if it did not run
+     */
+    public int checkpoint() {
+        if (!database.isOpen()) {
+            return -1;
+        }
+        // Rows: busy, frames in the WAL, frames checkpointed
+        try (Cursor cursor = database.getOpenHelper().getWritableDatabase()
+                .query("PRAGMA wal_checkpoint(PASSIVE)")) {
+            if (!cursor.moveToFirst()) {
+                return -1;
+            }
+            int walFrames = cursor.getInt(1);
+            int checkpointed = cursor.getInt(2);
+            Log.d(TAG, "Idle checkpoint: " + checkpointed + "/" + walFrames + " frames");
+            return checkpointed;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Idle checkpoint failed", e);
+            return -1;
+        }
+    }
+}
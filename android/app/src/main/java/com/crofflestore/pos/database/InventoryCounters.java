@@ -0,0 +1,419 @@
+package com.crofflestore.pos.database;
+
+import android.util.Log;
+import com.crofflestore.pos.database.dao.InventoryDao;
+import com.crofflestore.pos.database.dao.ReservedCount;
+import com.crofflestore.pos.database.entities.InventoryMovement;
+import com.crofflestore.pos.database.entities.StockLevel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stock counters for checkout, written back to the inventory
+ * ledger in batches
+ *
+ * A store's stock levels are loaded once with {@link #prime(String)}.
+ * From then on available(), tryReserve(), release() and commitSale() touch
+ * only the item's counter: a map lookup and a compare-and-set, no lock and
+ * no disk. Items are spread over ConcurrentHashMap bins, so tills selling
+ * different items never contend; two tills reserving the same item retry
+ * a CAS instead of waiting.
+ *
+ * Movements (sales, receipts, adjustments) are queued and appended to
+ * inventory_movements by a background thread after flushDelayMs, or as
+ * soon as maxBatchMovements are waiting; the reservation count of every
+ * item that changed rides along, all in one transaction. A failed flush
+ * keeps its batch and tries again after the delay. close() flushes what
+ * is left.
+ *
+ * - Available is on hand minus reserved, both including movements not
+ *   yet flushed. A reservation never takes it below zero; a negative
+ *   adjustment can, and then reservations fail until stock is received.
+ * - An item the store has no level for has none in stock until something
+ *   is received.
+ * - Every movement of a primed store must go through here, or these
+ *   counters no longer match the ledger.
+ *
+ * The class itself is plain Java; only the Store of forDao() logs.
+ */
+public final class InventoryCounters {
+
+    private static final String TAG = "CroffleDB";
+
+    public static final long DEFAULT_FLUSH_DELAY_MS = 500;
+    public static final int DEFAULT_MAX_BATCH_MOVEMENTS = 256;
+
+    /**
+     * Where levels are loaded from and batches written to
+     */
+    public interface Store {
+        List<StockLevel> getStockLevels(String storeId);
+
+        void clearReservations(String storeId);
+
+        /** Append movements and store reservation counts in one transaction */
+        void applyBatch(List<InventoryMovement> movements, List<ReservedCount> reserved);
+    }
+
+    private final Store store;
+    private final long flushDelayMs;
+    private final int maxBatchMovements;
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Set<String> primedStores = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentLinkedQueue<InventoryMovement> movements = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedMovements = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Counter> dirtyCounters = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+    private volatile boolean closed;
+
+    // Guarded by this: movements of a failed flush, written first next time
+    private final List<InventoryMovement> unflushed = new ArrayList<>();
+    private long flushes;
+
+    public InventoryCounters(Store store) {
+        this(store, DEFAULT_FLUSH_DELAY_MS, DEFAULT_MAX_BATCH_MOVEMENTS);
+    }
+
+    public InventoryCounters(Store store, long flushDelayMs, int maxBatchMovements) {
+        this.store = store;
+        this.flushDelayMs = Math.max(0, flushDelayMs);
+        this.maxBatchMovements = Math.max(1, maxBatchMovements);
+        ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "inventory-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // close() writes what a pending flush would have
+        flusher.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = flusher;
+    }
+
+    public static InventoryCounters forDao(InventoryDao dao) {
+        return new InventoryCounters(new Store() {
+            @Override
+            public List<StockLevel> getStockLevels(String storeId) {
+                List<StockLevel> levels = dao.getStockLevels(storeId);
+                Log.d(TAG, "Inventory loaded for store " + storeId + ": " + levels.size() + " items");
+                return levels;
+            }
+
+            @Override
+            public void clearReservations(String storeId) {
+                dao.clearReservations(storeId);
+            }
+
+            @Override
+            public void applyBatch(List<InventoryMovement> movements, List<ReservedCount> reserved) {
+                try {
+                    dao.applyBatch(movements, reserved);
+                } catch (RuntimeException e) {
+                    // InventoryCounters keeps the batch and tries again
+                    Log.w(TAG, "Inventory flush failed, retrying", e);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Load a store's stock levels; reads the database, so call it off the
+     * main thread before the store's first sale. Reservations left in the
+     * database by an earlier process are cleared. Does nothing if the
+     * store is already loaded.
+     */
+    public synchronized void prime(String storeId) {
+        checkOpen();
+        if (primedStores.contains(storeId)) {
+            return;
+        }
+        List<StockLevel> levels = store.getStockLevels(storeId);
+        store.clearReservations(storeId);
+        for (StockLevel level : levels) {
+            counters.put(key(storeId, level.itemId), new Counter(storeId, level.itemId, level.onHand));
+        }
+        primedStores.add(storeId);
+    }
+
+    public boolean isPrimed(String storeId) {
+        return primedStores.contains(storeId);
+    }
+
+    /**
+     * On hand minus reserved
+     */
+    public long available(String storeId, String itemId) {
+        Counter counter = counter(storeId, itemId);
+        return counter != null ? counter.available.get() : 0;
+    }
+
+    public long onHand(String storeId, String itemId) {
+        Counter counter = counter(storeId, itemId);
+        return counter != null ? counter.onHand.get() : 0;
+    }
+
+    public long reserved(String storeId, String itemId) {
+        Counter counter = counter(storeId, itemId);
+        return counter != null ? counter.reserved.get() : 0;
+    }
+
+    /**
+     * Hold quantity of an item for a checkout in progress
+     *
+     * @return false, holding nothing, if less than quantity is available
+     */
+    public boolean tryReserve(String storeId, String itemId, long quantity) {
+        checkQuantity(quantity);
+        checkOpen();
+        Counter counter = counter(storeId, itemId);
+        if (counter == null) {
+            return false;
+        }
+        long available;
+        do {
+            available = counter.available.get();
+            if (available < quantity) {
+                return false;
+            }
+        } while (!counter.available.compareAndSet(available, available - quantity));
+        counter.reserved.addAndGet(quantity);
+        markDirty(counter);
+        return true;
+    }
+
+    /**
+     * Reserve every item of a cart, or none of them
+     *
+     * @param quantities item id to quantity
+     */
+    public boolean tryReserveAll(String storeId, Map<String, Long> quantities) {
+        List<Map.Entry<String, Long>> held = new ArrayList<>(quantities.size());
+        for (Map.Entry<String, Long> line : quantities.entrySet()) {
+            if (!tryReserve(storeId, line.getKey(), line.getValue())) {
+                for (Map.Entry<String, Long> undo : held) {
+                    release(storeId, undo.getKey(), undo.getValue());
+                }
+                return false;
+            }
+            held.add(line);
+        }
+        return true;
+    }
+
+    /**
+     * Give back quantity reserved by a cancelled checkout
+     */
+    public void release(String storeId, String itemId, long quantity) {
+        checkQuantity(quantity);
+        checkOpen();
+        Counter counter = reservedCounter(storeId, itemId);
+        counter.reserved.addAndGet(-quantity);
+        counter.available.addAndGet(quantity);
+        markDirty(counter);
+    }
+
+    /**
+     * Turn a reservation into a sale: the reservation ends and a sale
+     * movement leaves quantity off on hand, so available does not change
+     *
+     * @param transactionId the sale's transaction, as the movement's reference
+     */
+    public void commitSale(String storeId, String itemId, long quantity, String transactionId) {
+        checkQuantity(quantity);
+        checkOpen();
+        Counter counter = reservedCounter(storeId, itemId);
+        counter.reserved.addAndGet(-quantity);
+        counter.onHand.addAndGet(-quantity);
+        markDirty(counter);
+        enqueue(new InventoryMovement(storeId, itemId, InventoryMovement.TYPE_SALE, -quantity,
+                "transaction", transactionId, System.currentTimeMillis()));
+    }
+
+    /**
+     * Record a movement that is not a sale (receipt, count adjustment,
+     * waste); change is signed
+     */
+    public void record(String storeId, String itemId, String movementType, long change,
+                       String referenceType, String referenceId) {
+        checkOpen();
+        Counter counter = counter(storeId, itemId);
+        if (counter == null) {
+            Counter created = new Counter(storeId, itemId, 0);
+            counter = counters.putIfAbsent(key(storeId, itemId), created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.onHand.addAndGet(change);
+        counter.available.addAndGet(change);
+        enqueue(new InventoryMovement(storeId, itemId, movementType, change,
+                referenceType, referenceId, System.currentTimeMillis()));
+    }
+
+    /**
+     * Write everything queued now, on the calling thread
+     *
+     * @return movements written
+     * @throws RuntimeException what the write failed with; the batch is
+     *         kept for the next flush
+     */
+    public synchronized int flush() {
+        InventoryMovement movement;
+        while ((movement = movements.poll()) != null) {
+            queuedMovements.decrementAndGet();
+            unflushed.add(movement);
+        }
+        List<Counter> taken = new ArrayList<>();
+        List<ReservedCount> reserved = new ArrayList<>();
+        Counter counter;
+        while ((counter = dirtyCounters.poll()) != null) {
+            // Cleared before reading, so a change racing the read marks it again
+            counter.dirty.set(false);
+            taken.add(counter);
+            reserved.add(new ReservedCount(counter.storeId, counter.itemId, counter.reserved.get()));
+        }
+        if (unflushed.isEmpty() && reserved.isEmpty()) {
+            return 0;
+        }
+        try {
+            store.applyBatch(new ArrayList<>(unflushed), reserved);
+        } catch (RuntimeException e) {
+            for (Counter failed : taken) {
+                markDirty(failed);
+            }
+            throw e;
+        }
+        int written = unflushed.size();
+        unflushed.clear();
+        flushes++;
+        return written;
+    }
+
+    /**
+     * Movements not yet written
+     */
+    public synchronized int pendingMovements() {
+        return queuedMovements.get() + unflushed.size();
+    }
+
+    /**
+     * Batches written so far
+     */
+    public synchronized long getFlushCount() {
+        return flushes;
+    }
+
+    /**
+     * Stop the flush thread and write what is left
+     *
+     * @throws RuntimeException if the final write fails
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        flush();
+    }
+
+    private Counter counter(String storeId, String itemId) {
+        if (!primedStores.contains(storeId)) {
+            throw new IllegalStateException("Inventory of store " + storeId + " is not loaded; call prime() first");
+        }
+        return counters.get(key(storeId, itemId));
+    }
+
+    private Counter reservedCounter(String storeId, String itemId) {
+        Counter counter = counter(storeId, itemId);
+        if (counter == null) {
+            throw new IllegalStateException("Nothing reserved of " + itemId + " at store " + storeId);
+        }
+        return counter;
+    }
+
+    private void enqueue(InventoryMovement movement) {
+        movements.add(movement);
+        requestFlush(queuedMovements.incrementAndGet() >= maxBatchMovements);
+    }
+
+    private void markDirty(Counter counter) {
+        if (counter.dirty.compareAndSet(false, true)) {
+            dirtyCounters.add(counter);
+            requestFlush(false);
+        }
+    }
+
+    private void requestFlush(boolean now) {
+        if (closed) {
+            // close() writes what is queued
+            return;
+        }
+        try {
+            if (now) {
+                executor.execute(this::runFlush);
+            } else if (flushScheduled.compareAndSet(false, true)) {
+                executor.schedule(this::runFlush, flushDelayMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            // Closing
+        }
+    }
+
+    private void runFlush() {
+        flushScheduled.set(false);
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Kept for the next flush; Store implementations report it
+            requestFlush(false);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("InventoryCounters is closed");
+        }
+    }
+
+    private static void checkQuantity(long quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+    }
+
+    private static String key(String storeId, String itemId) {
+        return storeId + '\n' + itemId;
+    }
+
+    private static final class Counter {
+        final String storeId;
+        final String itemId;
+        final AtomicLong onHand;
+        final AtomicLong reserved = new AtomicLong();
+        final AtomicLong available;
+        final AtomicBoolean dirty = new AtomicBoolean();
+
+        Counter(String storeId, String itemId, long onHand) {
+            this.storeId = storeId;
+            this.itemId = itemId;
+            this.onHand = new AtomicLong(onHand);
+            this.available = new AtomicLong(onHand);
+        }
+    }
+}
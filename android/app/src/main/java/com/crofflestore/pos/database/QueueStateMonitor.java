@@ -0,0 +1,153 @@
+package com.crofflestore.pos.database;
+
+import android.util.Log;
+import com.crofflestore.pos.database.dao.QueueState;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observable sync queue state, re-read only when the queue changes
+ *
+ * The owner calls {@link #invalidate()} from a Room InvalidationTracker
+ * observer (see CroffleOfflineDatabase.queueState()), so nothing polls the
+ * database. Invalidations are coalesced: the first one schedules a read
+ * after the debounce delay and any arriving before it runs ride along, so
+ * a rush of sales costs one read per window and a change is still seen
+ * within one window even while writes keep coming.
+ *
+ * Listeners hear about a state only when it differs from the last one.
+ * A failed row coming due changes the queue head without any write, so
+ * after each read a wake-up is also scheduled for the next retry time.
+ *
+ * Reads and callbacks run on one background thread, in order.
+ */
+public final class QueueStateMonitor {
+
+    private static final String TAG = "CroffleDB";
+
+    public static final long DEFAULT_DEBOUNCE_MS = 250;
+
+    /**
+     * Reads the current state; called on the monitor thread
+     */
+    public interface Source {
+        QueueState read();
+    }
+
+    public interface Listener {
+        void onQueueStateChanged(QueueState state);
+    }
+
+    private final Source source;
+    private final long debounceMs;
+    private final ScheduledExecutorService executor;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile QueueState current;
+    private boolean refreshQueued;
+    private ScheduledFuture<?> retryWakeup;
+
+    public QueueStateMonitor(Source source, long debounceMs) {
+        this.source = source;
+        this.debounceMs = debounceMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "queue-state");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::refresh);
+    }
+
+    /**
+     * The last state read, or null before the first read completes
+     */
+    public QueueState current() {
+        return current;
+    }
+
+    /**
+     * Register a listener. It is called with the current state once known,
+     * then with every change.
+     */
+    public void addListener(Listener listener) {
+        submit(() -> {
+            listeners.add(listener);
+            QueueState state = current;
+            if (state != null) {
+                deliver(listener, state);
+            }
+        });
+    }
+
+    /**
+     * Unregister a listener. A callback already running may still complete.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The observed tables changed; re-read within the debounce delay
+     */
+    public synchronized void invalidate() {
+        if (refreshQueued || executor.isShutdown()) {
+            return;
+        }
+        refreshQueued = true;
+        executor.schedule(this::refresh, debounceMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        listeners.clear();
+        executor.shutdownNow();
+    }
+
+    private synchronized void submit(Runnable task) {
+        if (!executor.isShutdown()) {
+            executor.execute(task);
+        }
+    }
+
+    private void refresh() {
+        synchronized (this) {
+            // Changes committed from here on queue another read
+            refreshQueued = false;
+        }
+        QueueState state;
+        try {
+            state = source.read();
+        } catch (RuntimeException e) {
+            // Closed database or a failed read; the next change retries
+            Log.w(TAG, "Queue state read failed", e);
+            return;
+        }
+        if (!state.equals(current)) {
+            current = state;
+            for (Listener listener : listeners) {
+                deliver(listener, state);
+            }
+        }
+        scheduleRetryWakeup(state.millisUntilNextRetry(System.currentTimeMillis()));
+    }
+
+    private synchronized void scheduleRetryWakeup(long delayMs) {
+        if (retryWakeup != null) {
+            retryWakeup.cancel(false);
+            retryWakeup = null;
+        }
+        if (delayMs >= 0 && !executor.isShutdown()) {
+            retryWakeup = executor.schedule(this::refresh, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void deliver(Listener listener, QueueState state) {
+        try {
+            listener.onQueueStateChanged(state);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Queue state listener failed", e);
+        }
+    }
+}
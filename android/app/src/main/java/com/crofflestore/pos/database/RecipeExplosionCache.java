@@ -0,0 +1,131 @@
+package com.crofflestore.pos.database;
+
+import android.util.Log;
+import com.crofflestore.pos.database.dao.RecipeChanges;
+import com.crofflestore.pos.database.dao.RecipeDao;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The current RecipeExplosions, recompiled from the recipes that changed
+ *
+ * The owner calls {@link #invalidate()} from a Room InvalidationTracker
+ * observer (see CroffleOfflineDatabase.recipeExplosions()). That marks the
+ * snapshot stale and queues a refresh in the background; invalidations
+ * arriving before it runs ride along. A refresh reads only recipes with a
+ * version above the snapshot's and swaps in a new snapshot, so a sale is
+ * never exploded against half an edit.
+ *
+ * A sale that finds the snapshot stale refreshes it on its own thread
+ * first rather than explode against recipes known to be old.
+ */
+public final class RecipeExplosionCache {
+
+    private static final String TAG = "CroffleDB";
+
+    /**
+     * Reads recipes changed after a version; called on the refreshing thread
+     */
+    public interface Source {
+        RecipeChanges changesSince(long version);
+    }
+
+    private final Source source;
+    private final ExecutorService executor;
+    private final Object refreshLock = new Object();
+    private volatile RecipeExplosions current = RecipeExplosions.EMPTY;
+    // Nothing has been read yet
+    private volatile boolean stale = true;
+    private boolean refreshQueued;
+    private long refreshCount;
+
+    public RecipeExplosionCache(Source source) {
+        this.source = source;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "recipe-explosions");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static RecipeExplosionCache forDao(RecipeDao dao) {
+        return new RecipeExplosionCache(dao::getChangesSince);
+    }
+
+    /**
+     * Inventory to deduct for an order, by the current recipes
+     */
+    public RecipeExplosions.Deduction explode(List<TransactionItem> order) {
+        return current().explode(order);
+    }
+
+    /**
+     * The compiled recipes, refreshed first if they are stale. If the
+     * refresh fails the last snapshot is returned and the next call tries
+     * again.
+     */
+    public RecipeExplosions current() {
+        if (stale) {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Recipe refresh failed", e);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Read the recipes changed since the current snapshot and compile them
+     */
+    public void refresh() {
+        synchronized (refreshLock) {
+            // Changes committed from here on mark it stale again
+            stale = false;
+            RecipeExplosions snapshot = current;
+            RecipeChanges changes;
+            try {
+                changes = source.changesSince(snapshot.version());
+            } catch (RuntimeException e) {
+                stale = true;
+                throw e;
+            }
+            current = snapshot.withChanges(changes.recipes, changes.ingredients);
+            refreshCount++;
+            if (!changes.recipes.isEmpty() && !current.errors().isEmpty()) {
+                Log.w(TAG, "Recipes left out of deductions: " + current.errors());
+            }
+        }
+    }
+
+    /**
+     * The recipe tables changed; recompile in the background
+     */
+    public void invalidate() {
+        stale = true;
+        synchronized (this) {
+            if (refreshQueued || executor.isShutdown()) {
+                return;
+            }
+            refreshQueued = true;
+            executor.execute(() -> {
+                synchronized (this) {
+                    refreshQueued = false;
+                }
+                current();
+            });
+        }
+    }
+
+    public long getRefreshCount() {
+        synchronized (refreshLock) {
+            return refreshCount;
+        }
+    }
+
+    public synchronized void stop() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,257 @@
+package com.crofflestore.pos.database;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.crofflestore.pos.database.entities.Recipe;
+import com.crofflestore.pos.database.entities.RecipeIngredient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recipes compiled for deducting sales: for each product or variation, the
+ * inventory items it uses and how much of each per unit sold, already in
+ * the items' stock units
+ *
+ * Exploding an order is one map lookup per line and a walk over two flat
+ * arrays; no recipe rows are read and no units converted at the till.
+ * Items are numbered once, so the order's totals add up in an array.
+ *
+ * A snapshot never changes. withChanges() returns a new one with only the
+ * changed recipes recompiled, sharing the rest, so readers need no locks
+ * (see RecipeExplosionCache). A recipe whose units do not convert is left
+ * out and reported by errors(); its sales come back unmatched rather than
+ * deducting part of the recipe.
+ */
+public final class RecipeExplosions {
+
+    public static final RecipeExplosions EMPTY = new RecipeExplosions(
+            Collections.<String, Explosion>emptyMap(), new String[0],
+            Collections.<String, Integer>emptyMap(), Collections.<String, String>emptyMap(), 0);
+
+    // Stands in for a recipe that failed to compile, so a variation's sales
+    // are not deducted by its product's recipe instead
+    private static final Explosion BROKEN = new Explosion(new int[0], new double[0]);
+
+    private final Map<String, Explosion> explosions;
+    // Every inventory item any recipe has used, by number
+    private final String[] items;
+    private final Map<String, Integer> itemNumbers;
+    private final Map<String, String> errors;
+    private final long version;
+
+    private RecipeExplosions(Map<String, Explosion> explosions, String[] items,
+                             Map<String, Integer> itemNumbers, Map<String, String> errors, long version) {
+        this.explosions = explosions;
+        this.items = items;
+        this.itemNumbers = itemNumbers;
+        this.errors = errors;
+        this.version = version;
+    }
+
+    /**
+     * The highest recipe version compiled in
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Number of recipes compiled
+     */
+    public int size() {
+        return explosions.size() - errors.size();
+    }
+
+    /**
+     * Recipes left out, by "productId/variationId", with the reason
+     */
+    public Map<String, String> errors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * This snapshot with the given recipes replaced. Inactive recipes are
+     * removed; ingredients are those of the active ones.
+     */
+    public RecipeExplosions withChanges(List<Recipe> recipes, List<RecipeIngredient> ingredients) {
+        if (recipes.isEmpty()) {
+            return this;
+        }
+        Map<String, List<RecipeIngredient>> lines = new HashMap<>();
+        for (RecipeIngredient ingredient : ingredients) {
+            String key = key(ingredient.productId, ingredient.variationId);
+            List<RecipeIngredient> recipeLines = lines.get(key);
+            if (recipeLines == null) {
+                recipeLines = new ArrayList<>();
+                lines.put(key, recipeLines);
+            }
+            recipeLines.add(ingredient);
+        }
+
+        Map<String, Explosion> nextExplosions = new HashMap<>(explosions);
+        Map<String, Integer> nextNumbers = new HashMap<>(itemNumbers);
+        List<String> nextItems = new ArrayList<>(Arrays.asList(items));
+        Map<String, String> nextErrors = new HashMap<>(errors);
+        long nextVersion = version;
+        for (Recipe recipe : recipes) {
+            String key = key(recipe.productId, recipe.variationId);
+            nextVersion = Math.max(nextVersion, recipe.version);
+            nextExplosions.remove(key);
+            nextErrors.remove(errorKey(recipe.productId, recipe.variationId));
+            if (!recipe.active) {
+                continue;
+            }
+            List<RecipeIngredient> recipeLines = lines.get(key);
+            if (recipeLines == null) {
+                recipeLines = Collections.emptyList();
+            }
+            try {
+                nextExplosions.put(key, compile(recipeLines, nextNumbers, nextItems));
+            } catch (IllegalArgumentException e) {
+                nextExplosions.put(key, BROKEN);
+                nextErrors.put(errorKey(recipe.productId, recipe.variationId), e.getMessage());
+            }
+        }
+        return new RecipeExplosions(nextExplosions, nextItems.toArray(new String[0]),
+                nextNumbers, nextErrors, nextVersion);
+    }
+
+    /**
+     * Inventory to deduct for an order. A variation without a recipe of
+     * its own uses its product's; lines with neither, or no quantity, are
+     * returned as unmatched. Quantities are summed across the order and
+     * rounded up to whole stock units once, at the end.
+     */
+    public Deduction explode(List<TransactionItem> order) {
+        double[] totals = new double[items.length];
+        int[] touched = new int[items.length];
+        int touchedCount = 0;
+        List<TransactionItem> unmatched = null;
+        for (TransactionItem line : order) {
+            Explosion explosion = lookup(line.productId, line.variationId);
+            if (explosion == null || line.quantity <= 0) {
+                if (unmatched == null) {
+                    unmatched = new ArrayList<>();
+                }
+                unmatched.add(line);
+                continue;
+            }
+            int[] lineItems = explosion.items;
+            double[] perUnit = explosion.quantities;
+            for (int i = 0; i < lineItems.length; i++) {
+                int item = lineItems[i];
+                if (totals[item] == 0) {
+                    touched[touchedCount++] = item;
+                }
+                totals[item] += perUnit[i] * line.quantity;
+            }
+        }
+
+        String[] itemIds = new String[touchedCount];
+        long[] quantities = new long[touchedCount];
+        for (int i = 0; i < touchedCount; i++) {
+            itemIds[i] = items[touched[i]];
+            quantities[i] = roundUp(totals[touched[i]]);
+        }
+        return new Deduction(itemIds, quantities,
+                unmatched == null ? Collections.<TransactionItem>emptyList() : unmatched);
+    }
+
+    private Explosion lookup(String productId, String variationId) {
+        if (productId == null) {
+            return null;
+        }
+        if (variationId != null && !variationId.isEmpty()) {
+            Explosion explosion = explosions.get(key(productId, variationId));
+            if (explosion != null) {
+                return explosion == BROKEN ? null : explosion;
+            }
+        }
+        Explosion explosion = explosions.get(key(productId, ""));
+        return explosion == BROKEN ? null : explosion;
+    }
+
+    private static Explosion compile(List<RecipeIngredient> lines, Map<String, Integer> numbers, List<String> items) {
+        int[] lineItems = new int[lines.size()];
+        double[] quantities = new double[lines.size()];
+        int count = 0;
+        for (RecipeIngredient line : lines) {
+            double quantity = line.quantity * RecipeUnits.factor(line.unit, line.baseUnit);
+            if (quantity < 0 || Double.isNaN(quantity) || Double.isInfinite(quantity)) {
+                throw new IllegalArgumentException("Bad quantity " + line.quantity + " of " + line.itemId);
+            }
+            if (quantity == 0) {
+                continue;
+            }
+            Integer number = numbers.get(line.itemId);
+            if (number == null) {
+                number = items.size();
+                items.add(line.itemId);
+                numbers.put(line.itemId, number);
+            }
+            lineItems[count] = number;
+            quantities[count] = quantity;
+            count++;
+        }
+        return new Explosion(Arrays.copyOf(lineItems, count), Arrays.copyOf(quantities, count));
+    }
+
+    // Whole stock units, without 0.1 + 0.2 turning into an extra unit
+    private static long roundUp(double quantity) {
+        return (long) Math.ceil(quantity - 1e-9);
+    }
+
+    private static String key(String productId, String variationId) {
+        return productId + '\n' + (variationId == null ? "" : variationId);
+    }
+
+    private static String errorKey(String productId, String variationId) {
+        return productId + '/' + variationId;
+    }
+
+    private static final class Explosion {
+        final int[] items;
+        // Per unit sold, in the item's stock unit
+        final double[] quantities;
+
+        Explosion(int[] items, double[] quantities) {
+            this.items = items;
+            this.quantities = quantities;
+        }
+    }
+
+    /**
+     * Whole stock units to deduct per inventory item, in order of first
+     * use, plus the order lines no recipe covered
+     */
+    public static final class Deduction {
+        public final String[] itemIds;
+        public final long[] quantities;
+        public final List<TransactionItem> unmatched;
+
+        Deduction(String[] itemIds, long[] quantities, List<TransactionItem> unmatched) {
+            this.itemIds = itemIds;
+            this.quantities = quantities;
+            this.unmatched = unmatched;
+        }
+
+        public int size() {
+            return itemIds.length;
+        }
+
+        /**
+         * As a cart for InventoryCounters.tryReserveAll()
+         */
+        public Map<String, Long> asMap() {
+            Map<String, Long> map = new LinkedHashMap<>();
+            for (int i = 0; i < itemIds.length; i++) {
+                map.put(itemIds[i], quantities[i]);
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.crofflestore.pos.database;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Conversion factors between the units recipes are written in and the
+ * units inventory items are stocked in
+ *
+ * Units convert only within their dimension: mass (g), volume (ml) and
+ * count (piece). Any other unit, serving say, converts only to itself.
+ * Names are matched case-insensitively; a missing unit means the item's
+ * own unit.
+ */
+public final class RecipeUnits {
+
+    private static final String MASS = "mass";
+    private static final String VOLUME = "volume";
+    private static final String COUNT = "count";
+
+    private static final Map<String, Unit> UNITS = new HashMap<>();
+
+    static {
+        define(MASS, 1, "g", "gram", "grams");
+        define(MASS, 1000, "kg", "kilo", "kilogram", "kilograms");
+        define(MASS, 0.001, "mg", "milligram", "milligrams");
+        define(VOLUME, 1, "ml", "milliliter", "milliliters", "millilitre", "millilitres");
+        define(VOLUME, 1000, "l", "liter", "liters", "litre", "litres");
+        define(COUNT, 1, "pc", "pcs", "piece", "pieces", "each");
+        define(COUNT, 2, "pair", "pairs");
+        define(COUNT, 12, "dozen");
+    }
+
+    private RecipeUnits() {}
+
+    /**
+     * What one from is worth in to: factor("kg", "g") is 1000
+     *
+     * @throws IllegalArgumentException if the units do not convert
+     */
+    public static double factor(String from, String to) {
+        String fromName = normalize(from);
+        String toName = normalize(to);
+        if (fromName.isEmpty() || toName.isEmpty() || fromName.equals(toName)) {
+            return 1.0;
+        }
+        Unit fromUnit = UNITS.get(fromName);
+        Unit toUnit = UNITS.get(toName);
+        if (fromUnit == null || toUnit == null || !fromUnit.dimension.equals(toUnit.dimension)) {
+            throw new IllegalArgumentException("Cannot convert " + from + " to " + to);
+        }
+        return fromUnit.scale / toUnit.scale;
+    }
+
+    private static String normalize(String unit) {
+        return unit == null ? "" : unit.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static void define(String dimension, double scale, String... names) {
+        Unit unit = new Unit(dimension, scale);
+        for (String name : names) {
+            UNITS.put(name, unit);
+        }
+    }
+
+    private static final class Unit {
+        final String dimension;
+        final double scale;
+
+        Unit(String dimension, double scale) {
+            this.dimension = dimension;
+            this.scale = scale;
+        }
+    }
+}
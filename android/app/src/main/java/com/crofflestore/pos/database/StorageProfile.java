@@ -0,0 +1,169 @@
+package com.crofflestore.pos.database;
+
+import android.database.Cursor;
+import android.util.Log;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import com.crofflestore.pos.BuildConfig;
+
+/**
+ * SQLite storage settings for the offline database
+ *
+ * Every profile runs in WAL mode; they differ in how much durability they
+ * trade for write throughput:
+ *
+ * - durable:    synchronous=FULL. A commit is fsynced before it returns, so
+ *               a sale survives a power cut the instant it is recorded.
+ * - balanced:   synchronous=NORMAL, the platform's own WAL setting. The WAL
+ *               is fsynced at checkpoints only; a power cut can lose the
+ *               last few commits but never corrupts the file.
+ * - throughput: synchronous=NORMAL with a larger cache, a larger mmap
+ *               window and a higher autocheckpoint backstop, for bulk
+ *               imports and benchmarking.
+ *
+ * Checkpoints normally run from {@link IdleWalCheckpointer} once writes go
+ * quiet; wal_autocheckpoint is only a backstop for a WAL that keeps
+ * growing under sustained load, where the commit that crosses it pays for
+ * the checkpoint.
+ *
+ * The pragmas are per connection and are applied to Room's write
+ * connection when it opens; reader connections keep the platform
+ * defaults. Only the writer commits and checkpoints, so synchronous and
+ * wal_autocheckpoint take full effect. page_size is left at the platform
+ * default: it cannot be changed once a file is in WAL mode.
+ *
+ * Selected at build time with the gradle property croffleStorageProfile.
+ */
+public final class StorageProfile {
+
+    private static final String TAG = "CroffleDB";
+
+    public static final String NAME_DURABLE = "durable";
+    public static final String NAME_BALANCED = "balanced";
+    public static final String NAME_THROUGHPUT = "throughput";
+
+    public static final StorageProfile DURABLE =
+            new StorageProfile(NAME_DURABLE, "FULL", 2048, 0, 1000, 2_000);
+    public static final StorageProfile BALANCED =
+            new StorageProfile(NAME_BALANCED, "NORMAL", 4096, 16L * 1024 * 1024, 4000, 2_000);
+    public static final StorageProfile THROUGHPUT =
+            new StorageProfile(NAME_THROUGHPUT, "NORMAL", 8192, 64L * 1024 * 1024, 10_000, 5_000);
+
+    public final String name;
+    /** PRAGMA synchronous: FULL or NORMAL */
+    public final String synchronous;
+    /** Page cache per connection, in KiB */
+    public final int cacheSizeKib;
+    /** Memory-mapped I/O window in bytes; 0 disables it */
+    public final long mmapSizeBytes;
+    /** WAL size, in pages, at which a committing writer checkpoints */
+    public final int walAutocheckpointPages;
+    /** Quiet period after the last write before the idle checkpoint */
+    public final long idleCheckpointDelayMs;
+
+    public StorageProfile(String name, String synchronous, int cacheSizeKib, long mmapSizeBytes,
+                          int walAutocheckpointPages, long idleCheckpointDelayMs) {
+        this.name = name;
+        this.synchronous = synchronous;
+        this.cacheSizeKib = cacheSizeKib;
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.walAutocheckpointPages = walAutocheckpointPages;
+        this.idleCheckpointDelayMs = idleCheckpointDelayMs;
+    }
+
+    /**
+     * The profile chosen at build time; balanced when unset or unknown
+     */
+    public static StorageProfile fromBuildConfig() {
+        return forName(BuildConfig.STORAGE_PROFILE);
+    }
+
+    public static StorageProfile forName(String name) {
+        if (NAME_DURABLE.equals(name)) {
+            return DURABLE;
+        }
+        if (NAME_THROUGHPUT.equals(name)) {
+            return THROUGHPUT;
+        }
+        if (name != null && !name.isEmpty() && !NAME_BALANCED.equals(name)) {
+            Log.w(TAG, "Unknown storage profile '" + name + "', using " + NAME_BALANCED);
+        }
+        return BALANCED;
+    }
+
+    /**
+     * WAL journal mode plus a callback applying the pragmas on open
+     */
+    public <T extends RoomDatabase> RoomDatabase.Builder<T> configure(RoomDatabase.Builder<T> builder) {
+        return builder
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .addCallback(new RoomDatabase.Callback() {
+                    @Override
+                    public void onOpen(SupportSQLiteDatabase db) {
+                        apply(db);
+                    }
+                });
+    }
+
+    /**
+     * Apply the pragmas to the write connection.
+     *
+     * SQLite counts these pragmas as read-only statements, and Android
+     * sends read-only statements to a reader connection when one is free.
+     * A transaction pins the write connection, so everything that may be
+     * set inside one is set there. synchronous may not be changed inside a
+     * transaction; it is set outside and read back from the write
+     * connection.
+     */
+    public void apply(SupportSQLiteDatabase db) {
+        pragma(db, "synchronous = " + synchronous);
+        db.beginTransaction();
+        try {
+            pragma(db, "cache_size = -" + cacheSizeKib);
+            pragma(db, "mmap_size = " + mmapSizeBytes);
+            pragma(db, "wal_autocheckpoint = " + walAutocheckpointPages);
+            long actual = longPragma(db, "synchronous");
+            if (actual != synchronousLevel()) {
+                Log.w(TAG, "synchronous=" + synchronous + " did not reach the write connection (is " + actual + ")");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "Storage profile " + name + " applied");
+    }
+
+    /**
+     * The numeric value PRAGMA synchronous reports for this profile
+     */
+    public int synchronousLevel() {
+        return "FULL".equals(synchronous) ? 2 : 1;
+    }
+
+    private static void pragma(SupportSQLiteDatabase db, String assignment) {
+        // Some of these report the new value as a row; drain each
+        try (Cursor cursor = db.query("PRAGMA " + assignment)) {
+            while (cursor.moveToNext()) {
+                // nothing to read
+            }
+        }
+    }
+
+    private static long longPragma(SupportSQLiteDatabase db, String name) {
+        try (Cursor cursor = db.query("PRAGMA " + name)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StorageProfile{" +
+                "name='" + name + '\'' +
+                ", synchronous=" + synchronous +
+                ", cacheSizeKib=" + cacheSizeKib +
+                ", mmapSizeBytes=" + mmapSizeBytes +
+                ", walAutocheckpointPages=" + walAutocheckpointPages +
+                ", idleCheckpointDelayMs=" + idleCheckpointDelayMs +
+                '}';
+    }
+}
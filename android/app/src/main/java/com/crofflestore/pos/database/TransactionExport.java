@@ -0,0 +1,298 @@
+package com.crofflestore.pos.database;
+
+import com.crofflestore.pos.database.dao.ExportFilter;
+import com.crofflestore.pos.database.dao.OfflineTransactionDao;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming export of offline transactions for end-of-day and month-end
+ * reports
+ *
+ * Rows are read PAGE_SIZE at a time in (timestamp, id) order (see
+ * OfflineTransactionQueries.EXPORT_PAGE) and written straight to the
+ * output, so memory holds one page however large the export is; getAll()
+ * and getByDateRange() decode every row into one list instead.
+ *
+ * - NDJSON: one object per line with every column, items and payment
+ *   details included, dates as epoch milliseconds.
+ * - CSV: one line per transaction under a header, local times, amounts to
+ *   two decimals and an item count instead of the items.
+ *
+ * Every CHECKPOINT_ROWS rows, and at the end, the output is flushed and a
+ * {@link Checkpoint} reported. Passing it back resumes the export after its
+ * last row; writeTo(File, ...) also cuts the file back to the checkpoint,
+ * dropping anything written after it. With gzip each checkpoint closes a
+ * gzip member, so a resumed file is a valid multi-member gzip stream.
+ *
+ * The export does not hold a transaction: rows written while it runs are
+ * picked up if they land past the current position, and a sale recorded
+ * with an earlier timestamp than the position is not. A row re-saved by
+ * insertAll()'s REPLACE gets a new rowid but keeps its (timestamp, id), so
+ * it keeps its place and is written once.
+ * Resume with the same filter and format the checkpoint was made with.
+ */
+public final class TransactionExport {
+
+    public static final int PAGE_SIZE = 200;
+    public static final int CHECKPOINT_ROWS = 5000;
+
+    public enum Format { NDJSON, CSV }
+
+    /**
+     * Up to limit rows in (timestamp, id) order after the given row; a null
+     * afterTimestamp sorts before every timestamp
+     */
+    public interface PageSource {
+        List<OfflineTransaction> page(Long afterTimestamp, String afterId, int limit);
+    }
+
+    public interface CheckpointListener {
+        void onCheckpoint(Checkpoint checkpoint);
+    }
+
+    /**
+     * Position of an export: the timestamp (epoch milliseconds, null if it
+     * had none) and id of the last row written, the rows written and the
+     * bytes of output they took, compressed if gzipped
+     */
+    public static final class Checkpoint {
+
+        public static final Checkpoint START = new Checkpoint(null, "", 0, 0);
+
+        public final Long afterTimestamp;
+        public final String afterId;
+        public final long rows;
+        public final long bytes;
+
+        public Checkpoint(Long afterTimestamp, String afterId, long rows, long bytes) {
+            this.afterTimestamp = afterTimestamp;
+            this.afterId = afterId;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+
+        boolean isStart() {
+            return afterTimestamp == null && afterId.isEmpty() && rows == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Checkpoint{afterTimestamp=" + afterTimestamp + ", afterId=" + afterId +
+                    ", rows=" + rows + ", bytes=" + bytes + "}";
+        }
+    }
+
+    static final String[] CSV_COLUMNS = {
+        "id", "receipt_number", "timestamp", "store_id", "user_id", "shift_id", "customer_id",
+        "order_type", "payment_method", "item_count", "subtotal", "tax", "discount", "total", "sync_status"
+    };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Gson NDJSON_GSON = new GsonBuilder()
+            .registerTypeAdapter(Date.class,
+                    (JsonSerializer<Date>) (date, type, context) -> new JsonPrimitive(date.getTime()))
+            .serializeNulls()
+            .create();
+
+    private final PageSource source;
+    private final Format format;
+    private final boolean gzip;
+    private final int checkpointRows;
+
+    public TransactionExport(PageSource source, Format format, boolean gzip) {
+        this(source, format, gzip, CHECKPOINT_ROWS);
+    }
+
+    TransactionExport(PageSource source, Format format, boolean gzip, int checkpointRows) {
+        this.source = source;
+        this.format = format;
+        this.gzip = gzip;
+        this.checkpointRows = checkpointRows;
+    }
+
+    public static TransactionExport of(OfflineTransactionDao dao, ExportFilter filter, Format format, boolean gzip) {
+        return new TransactionExport((afterTimestamp, afterId, limit) ->
+                dao.getExportPage(filter, afterTimestamp, afterId, limit), format, gzip);
+    }
+
+    /**
+     * Export to out, starting after from. out is flushed but not closed.
+     *
+     * @param listener told about each checkpoint, may be null
+     * @return the final checkpoint
+     * @throws InterruptedIOException if the thread is interrupted; the last
+     *         reported checkpoint is where to resume
+     */
+    public Checkpoint writeTo(OutputStream out, Checkpoint from, CheckpointListener listener) throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(out);
+        Long afterTimestamp = from.afterTimestamp;
+        String afterId = from.afterId;
+        long rows = from.rows;
+        Checkpoint checkpoint = from;
+        Writer writer = open(counted);
+        if (format == Format.CSV && from.isStart()) {
+            writeCsvHeader(writer);
+        }
+        int sinceCheckpoint = 0;
+        List<OfflineTransaction> page;
+        do {
+            if (Thread.interrupted()) {
+                writer.close();
+                throw new InterruptedIOException("Export interrupted after " + checkpoint);
+            }
+            page = source.page(afterTimestamp, afterId, PAGE_SIZE);
+            for (OfflineTransaction row : page) {
+                if (format == Format.CSV) {
+                    writeCsvRow(row, writer);
+                } else {
+                    NDJSON_GSON.toJson(row, writer);
+                    writer.write('\n');
+                }
+                afterTimestamp = row.timestamp != null ? row.timestamp.getTime() : null;
+                afterId = row.id;
+            }
+            rows += page.size();
+            sinceCheckpoint += page.size();
+            boolean last = page.size() < PAGE_SIZE;
+            if (last || sinceCheckpoint >= checkpointRows) {
+                // Ends the gzip member too, so the bytes so far stand alone
+                writer.close();
+                checkpoint = new Checkpoint(afterTimestamp, afterId, rows, from.bytes + counted.count);
+                if (listener != null) {
+                    listener.onCheckpoint(checkpoint);
+                }
+                sinceCheckpoint = 0;
+                if (!last) {
+                    writer = open(counted);
+                }
+            }
+        } while (page.size() == PAGE_SIZE);
+        return checkpoint;
+    }
+
+    /**
+     * Export to file, starting after from. A fresh export (from START)
+     * replaces the file; a resumed one cuts it back to from.bytes and
+     * appends. The file is synced before returning.
+     */
+    public Checkpoint writeTo(File file, Checkpoint from, CheckpointListener listener) throws IOException {
+        boolean resume = !from.isStart();
+        if (resume && file.length() < from.bytes) {
+            throw new IOException("Export file " + file + " is shorter than its checkpoint " + from);
+        }
+        try (FileOutputStream out = new FileOutputStream(file, resume)) {
+            if (resume) {
+                out.getChannel().truncate(from.bytes);
+            }
+            Checkpoint done = writeTo(out, from, listener);
+            out.getFD().sync();
+            return done;
+        }
+    }
+
+    private Writer open(CountingOutputStream counted) throws IOException {
+        OutputStream segment = gzip ? new GZIPOutputStream(counted, 8192) : counted;
+        return new BufferedWriter(new OutputStreamWriter(segment, UTF_8), 8192);
+    }
+
+    static void writeCsvHeader(Writer writer) throws IOException {
+        for (int i = 0; i < CSV_COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(CSV_COLUMNS[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    static void writeCsvRow(OfflineTransaction tx, Writer writer) throws IOException {
+        writeCsvField(writer, tx.id);
+        writeCsvField(writer, tx.receiptNumber);
+        writeCsvField(writer, tx.timestamp != null ? String.format(Locale.ROOT, "%tF %<tT", tx.timestamp) : null);
+        writeCsvField(writer, tx.storeId);
+        writeCsvField(writer, tx.userId);
+        writeCsvField(writer, tx.shiftId);
+        writeCsvField(writer, tx.customerId);
+        writeCsvField(writer, tx.orderType);
+        writeCsvField(writer, tx.paymentMethod);
+        writeCsvField(writer, String.valueOf(tx.items != null ? tx.items.size() : 0));
+        writeCsvField(writer, amount(tx.subtotal));
+        writeCsvField(writer, amount(tx.tax));
+        writeCsvField(writer, amount(tx.discount));
+        writeCsvField(writer, amount(tx.total));
+        writer.write(tx.syncStatus != null ? escapeCsv(tx.syncStatus) : "");
+        writer.write("\r\n");
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value != null) {
+            writer.write(escapeCsv(value));
+        }
+        writer.write(',');
+    }
+
+    /**
+     * RFC 4180: quote a field holding a comma, quote or line break and
+     * double its quotes
+     */
+    static String escapeCsv(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    private static String amount(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * Counts what reaches the target; closing it only flushes, so a gzip
+     * member can be finished without closing the target
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
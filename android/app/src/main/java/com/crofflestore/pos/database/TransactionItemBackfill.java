@@ -0,0 +1,122 @@
+package com.crofflestore.pos.database;
+
+import android.database.Cursor;
+import android.util.Log;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import com.crofflestore.pos.database.converters.TransactionItemConverter;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits existing items blobs into transaction_items rows
+ *
+ * Parents are read in rowid order, chunkSize at a time, and each chunk is
+ * decoded and inserted before the next one is read, so memory stays bounded
+ * by one chunk however large the table is. Rows whose blob cannot be
+ * decoded are skipped and logged; their items stay available in the blob.
+ */
+final class TransactionItemBackfill {
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final String TAG = "CroffleDB";
+
+    private static final String SELECT_CHUNK =
+            "SELECT rowid, id, store_id, timestamp, CAST(items AS BLOB) FROM offline_transactions " +
+            "WHERE rowid > ? ORDER BY rowid LIMIT ?";
+
+    private static final String INSERT_ITEM =
+            "INSERT INTO transaction_items (transaction_id, line_number, product_id, variation_id, name, " +
+            "sku, category, quantity, unit_price, total_price, tax_rate, store_id, sold_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private TransactionItemBackfill() {}
+
+    /**
+     * @return number of item rows written
+     */
+    static int run(SupportSQLiteDatabase db, int chunkSize) throws IOException {
+        int written = 0;
+        long lastRowId = Long.MIN_VALUE;
+        try (SupportSQLiteStatement insert = db.compileStatement(INSERT_ITEM)) {
+            while (true) {
+                List<Parent> chunk = new ArrayList<>(chunkSize);
+                try (Cursor cursor = db.query(SELECT_CHUNK, new Object[] {lastRowId, chunkSize})) {
+                    while (cursor.moveToNext()) {
+                        Parent parent = new Parent();
+                        lastRowId = cursor.getLong(0);
+                        parent.id = cursor.getString(1);
+                        parent.storeId = cursor.isNull(2) ? null : cursor.getString(2);
+                        parent.timestamp = cursor.isNull(3) ? null : cursor.getLong(3);
+                        parent.items = cursor.isNull(4) ? null : cursor.getBlob(4);
+                        chunk.add(parent);
+                    }
+                }
+                for (Parent parent : chunk) {
+                    written += insertItems(insert, parent);
+                }
+                if (chunk.size() < chunkSize) {
+                    return written;
+                }
+            }
+        }
+    }
+
+    private static int insertItems(SupportSQLiteStatement insert, Parent parent) {
+        List<TransactionItem> items;
+        try {
+            items = TransactionItemConverter.fromBytes(parent.items);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Skipping undecodable items for " + parent.id, e);
+            return 0;
+        }
+        if (items == null) {
+            return 0;
+        }
+        int written = 0;
+        for (int line = 0; line < items.size(); line++) {
+            TransactionItem item = items.get(line);
+            if (item == null) {
+                continue;
+            }
+            insert.clearBindings();
+            insert.bindString(1, parent.id);
+            insert.bindLong(2, line);
+            bindText(insert, 3, item.productId);
+            bindText(insert, 4, item.variationId);
+            bindText(insert, 5, item.name);
+            bindText(insert, 6, item.sku);
+            bindText(insert, 7, item.category);
+            insert.bindLong(8, item.quantity);
+            insert.bindDouble(9, item.unitPrice);
+            insert.bindDouble(10, item.totalPrice);
+            if (item.taxRate != null) {
+                insert.bindDouble(11, item.taxRate);
+            }
+            bindText(insert, 12, parent.storeId);
+            if (parent.timestamp != null) {
+                insert.bindLong(13, parent.timestamp);
+            }
+            insert.executeInsert();
+            written++;
+        }
+        return written;
+    }
+
+    // clearBindings() leaves every parameter NULL, so only non-null values are bound
+    private static void bindText(SupportSQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static final class Parent {
+        String id;
+        String storeId;
+        Long timestamp;
+        byte[] items;
+    }
+}
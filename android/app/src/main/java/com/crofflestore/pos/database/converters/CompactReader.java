@@ -0,0 +1,174 @@
+package com.crofflestore.pos.database.converters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Decoder for the compact binary column format written by CompactWriter
+ *
+ * Every read is bounds checked and malformed input fails with
+ * IllegalArgumentException, never with an out-of-range index or an
+ * allocation sized from corrupt data.
+ */
+final class CompactReader {
+
+    /**
+     * Format versions occupy the first byte. JSON text can only start with
+     * whitespace (0x09 and up) or a printable character, so any byte below
+     * 0x09 identifies the binary format and anything else is legacy JSON.
+     */
+    static final int MAX_FORMAT_VERSION_BYTE = 0x08;
+
+    private final byte[] data;
+    private int position;
+    private String[] dictionary;
+    private int dictionarySize;
+
+    CompactReader(byte[] data, int offset) {
+        this.data = data;
+        this.position = offset;
+    }
+
+    static boolean isBinary(byte[] data) {
+        return data.length > 0 && (data[0] & 0xFF) <= MAX_FORMAT_VERSION_BYTE;
+    }
+
+    /**
+     * Legacy JSON text. Reading a TEXT value as a blob can carry the
+     * terminating NUL along, which is dropped here.
+     */
+    static String legacyJson(byte[] data) {
+        int end = data.length;
+        while (end > 0 && data[end - 1] == 0) {
+            end--;
+        }
+        return new String(data, 0, end, StandardCharsets.UTF_8);
+    }
+
+    int readByte() {
+        require(1);
+        return data[position++] & 0xFF;
+    }
+
+    long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw corrupt("varint longer than 64 bits");
+    }
+
+    long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readSignedInt() {
+        long value = readSignedVarLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw corrupt("int out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * An element count, checked against the bytes left so corrupt input
+     * cannot drive a huge allocation
+     */
+    int readCount(int minBytesPerElement) {
+        long count = readVarLong();
+        if (count < 0 || count > (long) (data.length - position) / minBytesPerElement) {
+            throw corrupt("count " + count + " exceeds remaining input");
+        }
+        return (int) count;
+    }
+
+    long readFixed64() {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value |= (long) (data[position++] & 0xFF) << (i * 8);
+        }
+        return value;
+    }
+
+    String readString() {
+        long tag = readVarLong();
+        if (tag == CompactWriter.STRING_NULL) {
+            return null;
+        }
+        if (tag == CompactWriter.STRING_LITERAL) {
+            int length = readCount(1);
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            if (dictionary == null) {
+                dictionary = new String[8];
+            } else if (dictionarySize == dictionary.length) {
+                dictionary = Arrays.copyOf(dictionary, dictionarySize * 2);
+            }
+            dictionary[dictionarySize++] = value;
+            return value;
+        }
+        long index = tag - CompactWriter.STRING_REFERENCE_BASE;
+        if (index < 0 || index >= dictionarySize) {
+            throw corrupt("string reference " + index + " of " + dictionarySize);
+        }
+        return dictionary[(int) index];
+    }
+
+    Double readAmount() {
+        long tag = readVarLong();
+        if (tag == CompactWriter.AMOUNT_NULL) {
+            return null;
+        }
+        if (tag == CompactWriter.AMOUNT_RAW) {
+            return Double.longBitsToDouble(readFixed64());
+        }
+        long zigzag = tag - CompactWriter.AMOUNT_CENTS_BASE;
+        long cents = (zigzag >>> 1) ^ -(zigzag & 1);
+        if (cents <= -CompactWriter.MAX_CENTS || cents >= CompactWriter.MAX_CENTS) {
+            throw corrupt("amount out of range");
+        }
+        return cents / 100.0;
+    }
+
+    double readRequiredAmount() {
+        Double value = readAmount();
+        if (value == null) {
+            throw corrupt("missing amount");
+        }
+        return value;
+    }
+
+    Date readDate() {
+        int present = readByte();
+        if (present == 0) {
+            return null;
+        }
+        if (present != 1) {
+            throw corrupt("bad date marker " + present);
+        }
+        return new Date(readSignedVarLong());
+    }
+
+    void expectEnd() {
+        if (position != data.length) {
+            throw corrupt((data.length - position) + " trailing bytes");
+        }
+    }
+
+    IllegalArgumentException corrupt(String reason) {
+        return new IllegalArgumentException("Corrupt compact value at offset " + position + ": " + reason);
+    }
+
+    private void require(int bytes) {
+        if (bytes > data.length - position) {
+            throw corrupt("truncated");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.crofflestore.pos.database.converters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encoder for the compact binary column format
+ *
+ * Integers are LEB128 varints (zigzag for signed values). Strings go
+ * through a per-value dictionary: the first occurrence is written inline
+ * and every repeat is a one or two byte back reference, so a cart with
+ * the same product, SKU or category several times stores it once.
+ * Amounts that are a whole number of cents are written as a varint;
+ * anything else falls back to the raw 8-byte double, so every value
+ * round-trips exactly.
+ *
+ * See CompactReader for the matching decoder.
+ */
+final class CompactWriter {
+
+    static final int STRING_NULL = 0;
+    static final int STRING_LITERAL = 1;
+    static final int STRING_REFERENCE_BASE = 2;
+
+    static final int AMOUNT_NULL = 0;
+    static final int AMOUNT_RAW = 1;
+    static final int AMOUNT_CENTS_BASE = 2;
+
+    // Cent values below 2^52 are exact in a double and cannot overflow the tag
+    static final long MAX_CENTS = 1L << 52;
+
+    private byte[] buffer;
+    private int length;
+    private Map<String, Integer> dictionary;
+
+    CompactWriter(int capacity) {
+        buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeFixed64(long value) {
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[length++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    void writeString(String value) {
+        if (value == null) {
+            writeVarLong(STRING_NULL);
+            return;
+        }
+        if (dictionary == null) {
+            dictionary = new HashMap<>();
+        }
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            writeVarLong(STRING_REFERENCE_BASE + (long) index);
+            return;
+        }
+        dictionary.put(value, dictionary.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(STRING_LITERAL);
+        writeVarLong(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    void writeAmount(Double value) {
+        if (value == null) {
+            writeVarLong(AMOUNT_NULL);
+            return;
+        }
+        double amount = value;
+        long cents = Math.round(amount * 100);
+        if (cents > -MAX_CENTS && cents < MAX_CENTS && Double.compare(cents / 100.0, amount) == 0) {
+            writeVarLong(AMOUNT_CENTS_BASE + ((cents << 1) ^ (cents >> 63)));
+        } else {
+            writeVarLong(AMOUNT_RAW);
+            writeFixed64(Double.doubleToRawLongBits(amount));
+        }
+    }
+
+    void writeDate(Date value) {
+        if (value == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        writeSignedVarLong(value.getTime());
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
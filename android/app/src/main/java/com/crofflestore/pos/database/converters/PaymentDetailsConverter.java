@@ -6,24 +6,55 @@ import com.crofflestore.pos.database.entities.OfflineTransaction.PaymentDetails;
 
 /**
  * Room Type Converter for PaymentDetails objects
+ *
+ * Same compact binary form as TransactionItemConverter: a format version
+ * byte, then the fields in declaration order. Legacy JSON values are
+ * still read through Gson.
  */
 public class PaymentDetailsConverter {
-    
+
+    static final int FORMAT_VERSION = 1;
+
     private static final Gson gson = new Gson();
-    
+
     @TypeConverter
-    public static PaymentDetails fromString(String value) {
-        if (value == null) {
+    public static PaymentDetails fromBytes(byte[] value) {
+        if (value == null || value.length == 0) {
             return null;
         }
-        return gson.fromJson(value, PaymentDetails.class);
+        if (!CompactReader.isBinary(value)) {
+            return gson.fromJson(CompactReader.legacyJson(value), PaymentDetails.class);
+        }
+        CompactReader reader = new CompactReader(value, 1);
+        if (value[0] != FORMAT_VERSION) {
+            throw reader.corrupt("unknown payment format version " + value[0]);
+        }
+        PaymentDetails details = new PaymentDetails();
+        details.cardType = reader.readString();
+        details.cardLastFour = reader.readString();
+        details.transactionId = reader.readString();
+        details.authCode = reader.readString();
+        details.referenceNumber = reader.readString();
+        details.processorResponse = reader.readString();
+        details.processedAt = reader.readDate();
+        reader.expectEnd();
+        return details;
     }
-    
+
     @TypeConverter
-    public static String fromPaymentDetails(PaymentDetails paymentDetails) {
+    public static byte[] toBytes(PaymentDetails paymentDetails) {
         if (paymentDetails == null) {
             return null;
         }
-        return gson.toJson(paymentDetails);
+        CompactWriter writer = new CompactWriter(64);
+        writer.writeByte(FORMAT_VERSION);
+        writer.writeString(paymentDetails.cardType);
+        writer.writeString(paymentDetails.cardLastFour);
+        writer.writeString(paymentDetails.transactionId);
+        writer.writeString(paymentDetails.authCode);
+        writer.writeString(paymentDetails.referenceNumber);
+        writer.writeString(paymentDetails.processorResponse);
+        writer.writeDate(paymentDetails.processedAt);
+        return writer.toByteArray();
     }
 }
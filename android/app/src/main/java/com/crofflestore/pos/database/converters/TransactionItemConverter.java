@@ -5,29 +5,97 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Room Type Converter for TransactionItem lists
+ *
+ * Stores a hand-written compact binary form (see CompactWriter): a format
+ * version byte, the item count, then each item's fields in declaration
+ * order. Values written before the binary format existed are JSON; they
+ * are recognised by their first byte and still decoded through Gson.
  */
 public class TransactionItemConverter {
-    
+
+    static final int FORMAT_VERSION = 1;
+
+    // A null item is a single marker byte
+    private static final int MIN_ITEM_BYTES = 1;
+
     private static final Gson gson = new Gson();
-    
+    private static final Type LEGACY_LIST_TYPE = new TypeToken<List<TransactionItem>>(){}.getType();
+
     @TypeConverter
-    public static List<TransactionItem> fromString(String value) {
-        if (value == null) {
+    public static List<TransactionItem> fromBytes(byte[] value) {
+        if (value == null || value.length == 0) {
             return null;
         }
-        Type listType = new TypeToken<List<TransactionItem>>(){}.getType();
-        return gson.fromJson(value, listType);
+        if (!CompactReader.isBinary(value)) {
+            return gson.fromJson(CompactReader.legacyJson(value), LEGACY_LIST_TYPE);
+        }
+        CompactReader reader = new CompactReader(value, 1);
+        if (value[0] != FORMAT_VERSION) {
+            throw reader.corrupt("unknown item format version " + value[0]);
+        }
+        int count = reader.readCount(MIN_ITEM_BYTES);
+        List<TransactionItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(readItem(reader));
+        }
+        reader.expectEnd();
+        return items;
     }
-    
+
     @TypeConverter
-    public static String fromTransactionItemList(List<TransactionItem> list) {
+    public static byte[] toBytes(List<TransactionItem> list) {
         if (list == null) {
             return null;
         }
-        return gson.toJson(list);
+        CompactWriter writer = new CompactWriter(8 + list.size() * 32);
+        writer.writeByte(FORMAT_VERSION);
+        writer.writeVarLong(list.size());
+        for (TransactionItem item : list) {
+            writeItem(writer, item);
+        }
+        return writer.toByteArray();
+    }
+
+    private static void writeItem(CompactWriter writer, TransactionItem item) {
+        if (item == null) {
+            writer.writeByte(0);
+            return;
+        }
+        writer.writeByte(1);
+        writer.writeString(item.productId);
+        writer.writeString(item.variationId);
+        writer.writeString(item.name);
+        writer.writeString(item.sku);
+        writer.writeString(item.category);
+        writer.writeSignedVarLong(item.quantity);
+        writer.writeAmount(item.unitPrice);
+        writer.writeAmount(item.totalPrice);
+        writer.writeAmount(item.taxRate);
+    }
+
+    private static TransactionItem readItem(CompactReader reader) {
+        int present = reader.readByte();
+        if (present == 0) {
+            return null;
+        }
+        if (present != 1) {
+            throw reader.corrupt("bad item marker " + present);
+        }
+        TransactionItem item = new TransactionItem();
+        item.productId = reader.readString();
+        item.variationId = reader.readString();
+        item.name = reader.readString();
+        item.sku = reader.readString();
+        item.category = reader.readString();
+        item.quantity = reader.readSignedInt();
+        item.unitPrice = reader.readRequiredAmount();
+        item.totalPrice = reader.readRequiredAmount();
+        item.taxRate = reader.readAmount();
+        return item;
     }
 }
@@ -0,0 +1,160 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import com.crofflestore.pos.database.entities.CatalogCategory;
+import com.crofflestore.pos.database.entities.CatalogPrice;
+import com.crofflestore.pos.database.entities.CatalogProduct;
+import com.crofflestore.pos.database.entities.CatalogRecord;
+import com.crofflestore.pos.database.entities.CatalogSyncState;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Access Object for the local product catalog
+ *
+ * Lookups for the till and menu screens, and the write side of the
+ * catalog feed: each apply*() call stores one feed page (tombstones
+ * deleted, the rest inserted or replaced) and moves that kind's
+ * high-water mark in one transaction, so a refresh that dies halfway
+ * keeps every page it finished.
+ */
+@Dao
+public abstract class CatalogDao {
+
+    // SQLite's default host parameter limit on older platform versions is 999
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    /**
+     * The store's price if it has one, else the list price. A product has
+     * at most a handful of store prices, found through the
+     * (product_id, store_id) index.
+     */
+    private static final String SELECT_ITEM =
+            "SELECT p.id, p.sku, p.name, p.category_id, COALESCE((SELECT sp.price FROM catalog_prices sp " +
+            "WHERE sp.product_id = p.id AND sp.store_id = :storeId ORDER BY sp.updated_at DESC LIMIT 1), " +
+            "p.price) AS price FROM catalog_products p ";
+
+    // Till and menu lookups
+
+    @Query(SELECT_ITEM + "WHERE p.sku = :sku AND p.active ORDER BY p.updated_at DESC LIMIT 1")
+    public abstract CatalogItem getItemBySku(String storeId, String sku);
+
+    @Query(SELECT_ITEM + "WHERE p.id = :productId LIMIT 1")
+    public abstract CatalogItem getItemById(String storeId, String productId);
+
+    @Query(SELECT_ITEM + "WHERE p.category_id = :categoryId AND p.active ORDER BY p.name")
+    public abstract List<CatalogItem> getItemsByCategory(String storeId, String categoryId);
+
+    @Query("SELECT * FROM catalog_categories WHERE active ORDER BY sort_order, name")
+    public abstract List<CatalogCategory> getActiveCategories();
+
+    @Query("SELECT COUNT(*) FROM catalog_products")
+    public abstract int getProductCount();
+
+    // Feed state
+
+    @Query("SELECT * FROM catalog_sync_state WHERE kind = :kind")
+    public abstract CatalogSyncState getSyncState(String kind);
+
+    /**
+     * Forget every high-water mark, so the next refresh fetches the whole
+     * catalog again. Rows stay until replaced; use after the backend was
+     * restored or its clock stepped back.
+     */
+    @Query("DELETE FROM catalog_sync_state")
+    public abstract void resetSyncState();
+
+    // Feed pages
+
+    @Transaction
+    public void applyCategories(List<CatalogCategory> page, CatalogSyncState mark) {
+        List<String> deleted = deletedIds(page);
+        for (List<String> chunk : chunks(deleted)) {
+            deleteCategoryRows(chunk);
+        }
+        List<CatalogCategory> live = live(page);
+        if (!live.isEmpty()) {
+            upsertCategoryRows(live);
+        }
+        saveSyncState(mark);
+    }
+
+    @Transaction
+    public void applyProducts(List<CatalogProduct> page, CatalogSyncState mark) {
+        List<String> deleted = deletedIds(page);
+        for (List<String> chunk : chunks(deleted)) {
+            deleteProductRows(chunk);
+        }
+        List<CatalogProduct> live = live(page);
+        if (!live.isEmpty()) {
+            upsertProductRows(live);
+        }
+        saveSyncState(mark);
+    }
+
+    @Transaction
+    public void applyPrices(List<CatalogPrice> page, CatalogSyncState mark) {
+        List<String> deleted = deletedIds(page);
+        for (List<String> chunk : chunks(deleted)) {
+            deletePriceRows(chunk);
+        }
+        List<CatalogPrice> live = live(page);
+        if (!live.isEmpty()) {
+            upsertPriceRows(live);
+        }
+        saveSyncState(mark);
+    }
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract void upsertCategoryRows(List<CatalogCategory> rows);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract void upsertProductRows(List<CatalogProduct> rows);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract void upsertPriceRows(List<CatalogPrice> rows);
+
+    @Query("DELETE FROM catalog_categories WHERE id IN (:ids)")
+    protected abstract void deleteCategoryRows(List<String> ids);
+
+    @Query("DELETE FROM catalog_products WHERE id IN (:ids)")
+    protected abstract void deleteProductRows(List<String> ids);
+
+    @Query("DELETE FROM catalog_prices WHERE id IN (:ids)")
+    protected abstract void deletePriceRows(List<String> ids);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract void saveSyncState(CatalogSyncState state);
+
+    private static List<String> deletedIds(List<? extends CatalogRecord> page) {
+        List<String> ids = new ArrayList<>();
+        for (CatalogRecord record : page) {
+            if (record.isDeleted()) {
+                ids.add(record.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static <T extends CatalogRecord> List<T> live(List<T> page) {
+        List<T> live = new ArrayList<>(page.size());
+        for (T record : page) {
+            if (!record.isDeleted()) {
+                live.add(record);
+            }
+        }
+        return live;
+    }
+
+    private static List<List<String>> chunks(List<String> ids) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+            chunks.add(ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_QUERY)));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,25 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.ColumnInfo;
+
+/**
+ * A sellable product as the till sees it: the product with the price of
+ * one store (its CatalogPrice if it has one, else the list price)
+ */
+public class CatalogItem {
+
+    @ColumnInfo(name = "id")
+    public String id;
+
+    @ColumnInfo(name = "sku")
+    public String sku;
+
+    @ColumnInfo(name = "name")
+    public String name;
+
+    @ColumnInfo(name = "category_id")
+    public String categoryId;
+
+    @ColumnInfo(name = "price")
+    public double price;
+}
@@ -0,0 +1,117 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import com.crofflestore.pos.database.entities.DeadLetterTransaction;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Data Access Object for dead-lettered transactions
+ *
+ * Inspection, export and deletion of rows the sync queue gave up on.
+ * Moving rows in and out (OfflineTransactionDao.applySyncOutcomes(),
+ * requeueDeadLetters(), requeueAllDeadLetters()) stays on the queue DAO,
+ * which owns the queue stats those moves change.
+ *
+ * Nothing deletes a dead letter on its own: delete() is meant for rows an
+ * operator has exported and settled by hand.
+ */
+@Dao
+public abstract class DeadLetterDao {
+
+    public static final int EXPORT_PAGE_SIZE = 200;
+
+    // SQLite's default host parameter limit on older platform versions is 999
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private static final Gson EXPORT_GSON = new GsonBuilder()
+            .registerTypeAdapter(Date.class,
+                    (JsonSerializer<Date>) (date, type, context) -> new JsonPrimitive(date.getTime()))
+            .serializeNulls()
+            .create();
+
+    @Query("SELECT COUNT(*) FROM dead_letter_transactions")
+    public abstract int getCount();
+
+    @Query("SELECT COUNT(*) FROM dead_letter_transactions WHERE store_id = :storeId")
+    public abstract int getCountByStoreId(String storeId);
+
+    @Query("SELECT * FROM dead_letter_transactions WHERE id = :transactionId LIMIT 1")
+    public abstract DeadLetterTransaction getById(String transactionId);
+
+    @Query("SELECT * FROM dead_letter_transactions ORDER BY dead_lettered_at DESC LIMIT :limit")
+    public abstract List<DeadLetterTransaction> getRecent(int limit);
+
+    @Query("SELECT * FROM dead_letter_transactions WHERE store_id = :storeId " +
+           "ORDER BY dead_lettered_at DESC LIMIT :limit")
+    public abstract List<DeadLetterTransaction> getRecentByStoreId(String storeId, int limit);
+
+    @Query("SELECT id FROM dead_letter_transactions ORDER BY dead_lettered_at ASC")
+    public abstract List<String> getAllIds();
+
+    /**
+     * Keyset page in (dead_lettered_at, id) order after the given row; both
+     * arms are seeks into the dead_lettered_at index
+     */
+    @Query("SELECT * FROM dead_letter_transactions WHERE dead_lettered_at = :afterTime AND id > :afterId " +
+           "UNION ALL " +
+           "SELECT * FROM dead_letter_transactions WHERE dead_lettered_at > :afterTime " +
+           "ORDER BY dead_lettered_at ASC, id ASC LIMIT :limit")
+    public abstract List<DeadLetterTransaction> getPageAfter(long afterTime, String afterId, int limit);
+
+    /**
+     * Write every dead letter to out as newline-delimited JSON, oldest
+     * first, one object per line with every column (error history
+     * included) and dates as epoch milliseconds. Reads EXPORT_PAGE_SIZE
+     * rows at a time, so memory does not grow with the table.
+     *
+     * @return rows written
+     */
+    public int exportNdjson(Writer out) throws IOException {
+        int written = 0;
+        long afterTime = Long.MIN_VALUE;
+        String afterId = "";
+        List<DeadLetterTransaction> page;
+        do {
+            page = getPageAfter(afterTime, afterId, EXPORT_PAGE_SIZE);
+            for (DeadLetterTransaction row : page) {
+                EXPORT_GSON.toJson(row, out);
+                out.write('\n');
+                written++;
+            }
+            if (!page.isEmpty()) {
+                DeadLetterTransaction last = page.get(page.size() - 1);
+                afterTime = last.deadLetteredAt != null ? last.deadLetteredAt.getTime() : Long.MIN_VALUE;
+                afterId = last.id;
+            }
+        } while (page.size() == EXPORT_PAGE_SIZE);
+        out.flush();
+        return written;
+    }
+
+    @Query("DELETE FROM dead_letter_transactions WHERE id IN (:transactionIds)")
+    protected abstract int deleteRows(List<String> transactionIds);
+
+    /**
+     * Delete dead letters for good
+     *
+     * @return rows deleted
+     */
+    @Transaction
+    public int delete(List<String> transactionIds) {
+        int deleted = 0;
+        for (int start = 0; start < transactionIds.size(); start += MAX_IDS_PER_QUERY) {
+            int end = Math.min(transactionIds.size(), start + MAX_IDS_PER_QUERY);
+            deleted += deleteRows(transactionIds.subList(start, end));
+        }
+        return deleted;
+    }
+}
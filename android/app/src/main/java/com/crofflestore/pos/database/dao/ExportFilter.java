@@ -0,0 +1,49 @@
+package com.crofflestore.pos.database.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Which transactions an export covers. A null field does not filter.
+ *
+ * from is inclusive and to exclusive, so consecutive days or months never
+ * share a row.
+ */
+public final class ExportFilter {
+
+    public static final ExportFilter ALL = new ExportFilter(null, null, null, null);
+
+    public final Date from;
+    public final Date to;
+    public final String storeId;
+    /** sync_status values to include */
+    public final List<String> statuses;
+
+    public ExportFilter(Date from, Date to, String storeId, List<String> statuses) {
+        this.from = from != null ? new Date(from.getTime()) : null;
+        this.to = to != null ? new Date(to.getTime()) : null;
+        this.storeId = storeId;
+        this.statuses = statuses != null ? Collections.unmodifiableList(new ArrayList<>(statuses)) : null;
+    }
+
+    public static ExportFilter between(Date from, Date to) {
+        return new ExportFilter(from, to, null, null);
+    }
+
+    public ExportFilter forStore(String storeId) {
+        return new ExportFilter(from, to, storeId, statuses);
+    }
+
+    public ExportFilter withStatuses(String... statuses) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, statuses);
+        return new ExportFilter(from, to, storeId, list);
+    }
+
+    @Override
+    public String toString() {
+        return "ExportFilter{from=" + from + ", to=" + to + ", store=" + storeId + ", statuses=" + statuses + "}";
+    }
+}
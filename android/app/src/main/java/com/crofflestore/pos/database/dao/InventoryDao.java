@@ -0,0 +1,82 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import com.crofflestore.pos.database.entities.InventoryMovement;
+import com.crofflestore.pos.database.entities.StockLevel;
+import java.util.List;
+
+/**
+ * Data Access Object for the inventory ledger and stock levels
+ *
+ * Checkout does not come here: it reserves against
+ * CroffleOfflineDatabase.inventoryCounters(), which writes its movements
+ * and reservations back through applyBatch() in the background.
+ */
+@Dao
+public abstract class InventoryDao {
+
+    // Stock levels
+
+    @Query("SELECT * FROM stock_levels WHERE store_id = :storeId AND item_id = :itemId")
+    public abstract StockLevel getStockLevel(String storeId, String itemId);
+
+    @Query("SELECT * FROM stock_levels WHERE store_id = :storeId")
+    public abstract List<StockLevel> getStockLevels(String storeId);
+
+    @Query("SELECT * FROM stock_levels WHERE store_id = :storeId AND on_hand - reserved <= :threshold " +
+           "ORDER BY on_hand - reserved, item_id")
+    public abstract List<StockLevel> getLowStock(String storeId, long threshold);
+
+    // Ledger
+
+    /**
+     * An item's movements after afterId, oldest first
+     */
+    @Query("SELECT * FROM inventory_movements WHERE store_id = :storeId AND item_id = :itemId AND id > :afterId " +
+           "ORDER BY id LIMIT :limit")
+    public abstract List<InventoryMovement> getMovements(String storeId, String itemId, long afterId, int limit);
+
+    @Query("SELECT COALESCE(SUM(quantity_change), 0) FROM inventory_movements " +
+           "WHERE store_id = :storeId AND item_id = :itemId")
+    public abstract long getLedgerBalance(String storeId, String itemId);
+
+    @Insert
+    public abstract void insertMovement(InventoryMovement movement);
+
+    /**
+     * Append movements and store reservation counts in one transaction
+     */
+    @Transaction
+    public void applyBatch(List<InventoryMovement> movements, List<ReservedCount> reserved) {
+        if (!movements.isEmpty()) {
+            insertMovements(movements);
+        }
+        long now = System.currentTimeMillis();
+        for (ReservedCount count : reserved) {
+            ensureStockLevel(count.storeId, count.itemId, now);
+            updateReserved(count.storeId, count.itemId, count.reserved);
+        }
+    }
+
+    /**
+     * Zero the store's reservations; the checkouts holding them are gone
+     */
+    @Query("UPDATE stock_levels SET reserved = 0 WHERE store_id = :storeId AND reserved != 0")
+    public abstract void clearReservations(String storeId);
+
+    @Query(InventoryQueries.REBUILD_ON_HAND)
+    public abstract void rebuildOnHand();
+
+    @Insert
+    protected abstract void insertMovements(List<InventoryMovement> movements);
+
+    @Query("INSERT OR IGNORE INTO stock_levels (store_id, item_id, on_hand, reserved, last_movement_id, updated_at) " +
+           "VALUES (:storeId, :itemId, 0, 0, 0, :now)")
+    protected abstract void ensureStockLevel(String storeId, String itemId, long now);
+
+    @Query("UPDATE stock_levels SET reserved = :reserved WHERE store_id = :storeId AND item_id = :itemId")
+    protected abstract void updateReserved(String storeId, String itemId, long reserved);
+}
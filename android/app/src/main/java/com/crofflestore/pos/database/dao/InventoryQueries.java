@@ -0,0 +1,51 @@
+package com.crofflestore.pos.database.dao;
+
+/**
+ * SQL maintaining stock_levels from the inventory ledger
+ * ({@link com.crofflestore.pos.database.entities.InventoryMovement},
+ * {@link com.crofflestore.pos.database.entities.StockLevel})
+ *
+ * Installed by CroffleOfflineDatabase.createSchemaExtras(). As with
+ * SalesAggregateQueries, API 23 has no UPSERT: a movement inserts the
+ * zeroed level if missing and then adds itself, two primary key seeks in
+ * the statement that wrote it. The insert is guarded by NOT EXISTS rather
+ * than INSERT OR IGNORE: statements in a trigger take the conflict policy
+ * of the statement firing it, and Room's plain @Insert is INSERT OR ABORT,
+ * which would fail every movement after an item's first.
+ */
+public final class InventoryQueries {
+
+    public static final String[] TRIGGERS = {
+        "CREATE TRIGGER IF NOT EXISTS inventory_movements_ai " +
+            "AFTER INSERT ON inventory_movements " +
+            "BEGIN " +
+            "INSERT INTO stock_levels (store_id, item_id, on_hand, reserved, last_movement_id, updated_at) " +
+            "SELECT NEW.store_id, NEW.item_id, 0, 0, 0, NEW.created_at WHERE NOT EXISTS " +
+            "(SELECT 1 FROM stock_levels WHERE store_id = NEW.store_id AND item_id = NEW.item_id); " +
+            "UPDATE stock_levels SET on_hand = on_hand + NEW.quantity_change, last_movement_id = NEW.id, " +
+            "updated_at = NEW.created_at WHERE store_id = NEW.store_id AND item_id = NEW.item_id; " +
+            "END",
+        // Corrections are new movements
+        "CREATE TRIGGER IF NOT EXISTS inventory_movements_bu " +
+            "BEFORE UPDATE ON inventory_movements " +
+            "BEGIN SELECT RAISE(ABORT, 'inventory_movements is append-only'); END",
+        // Only a reset deletes ledger rows; on_hand stays their sum
+        "CREATE TRIGGER IF NOT EXISTS inventory_movements_ad " +
+            "AFTER DELETE ON inventory_movements " +
+            "BEGIN " +
+            "UPDATE stock_levels SET on_hand = on_hand - OLD.quantity_change " +
+            "WHERE store_id = OLD.store_id AND item_id = OLD.item_id; " +
+            "END"
+    };
+
+    /**
+     * Rebuild on_hand from the ledger, for repair after a restore. Keeps
+     * reserved; levels without movements are left at zero.
+     */
+    public static final String REBUILD_ON_HAND =
+            "UPDATE stock_levels SET on_hand = COALESCE((SELECT SUM(m.quantity_change) " +
+            "FROM inventory_movements m WHERE m.store_id = stock_levels.store_id " +
+            "AND m.item_id = stock_levels.item_id), 0)";
+
+    private InventoryQueries() {}
+}
@@ -1,14 +1,27 @@
 package com.crofflestore.pos.database.dao;
 
+import android.database.sqlite.SQLiteConstraintException;
+import androidx.room.ColumnInfo;
 import androidx.room.Dao;
-import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
+import androidx.room.RoomDatabase;
 import androidx.room.Update;
+import com.crofflestore.pos.database.entities.DeadLetterTransaction;
 import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.TransactionItemRow;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Data Access Object for Offline Transactions
@@ -17,165 +30,1036 @@ import java.util.List;
  * - CRUD operations on offline transactions
  * - Priority-based querying
  * - Sync status management
+ * - Batched sync state transitions (claim -> outcomes)
+ * - Per-row retry backoff (next_retry_at, see RetryBackoff)
+ * - Claim leases, so rows held by a dead worker return to the queue
+ * - Moving exhausted rows to dead_letter_transactions and back
  * - Statistics and reporting
+ * - Keeping transaction_items in step with each parent's items
+ * - Receipt lookups and ranked search (transaction_search)
+ * - Queue state for observers (counts, head, next retry)
+ *
+ * Every write goes through a public wrapper that reads the affected rows'
+ * stats columns first and applies the change to the in-memory
+ * QueueStatsTracker, so getQueueStats() never scans the table. The raw
+ * statements are protected and must not be called without that step.
+ * The wrappers run through tracked(), which reloads the tracker when a
+ * write rolls back after its deltas were applied.
  */
 @Dao
-public interface OfflineTransactionDao {
+public abstract class OfflineTransactionDao {
+    
+    private static final String TAG = "CroffleDB";
+    
+    /**
+     * How long a claim holds its rows. Comfortably longer than a batch
+     * spends between claim and commit (a few request timeouts), short
+     * enough that a crashed run's rows are back well before the next
+     * periodic run.
+     */
+    public static final long LEASE_MS = TimeUnit.MINUTES.toMillis(5);
+    
+    // SQLite's default host parameter limit on older platform versions is 999
+    private static final int MAX_IDS_PER_QUERY = 500;
+    
+    private final RoomDatabase database;
+    private final QueueStatsTracker queueStats = new QueueStatsTracker();
+    private final AtomicBoolean reconcileScheduled = new AtomicBoolean();
+    
+    public OfflineTransactionDao(RoomDatabase database) {
+        this.database = database;
+    }
     
     // Basic CRUD operations
     
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insert(OfflineTransaction transaction);
+    public void insert(OfflineTransaction transaction) {
+        insertAll(Collections.singletonList(transaction));
+    }
+    
+    /**
+     * Insert or replace, together with the transaction_items rows. Replaced
+     * rows are taken out of the queue stats before the new versions are added.
+     * REPLACE deletes the old row and inserts the new one, so a re-saved
+     * row gets a new rowid. The transaction_search triggers follow it;
+     * export positions are keyed on (timestamp, id) instead (see
+     * OfflineTransactionQueries.EXPORT_PAGE).
+     *
+     * @throws SQLiteConstraintException if a receipt number belongs to a
+     *         different transaction (see checkReceiptNumbers()); nothing in
+     *         the batch is written
+     */
+    public void insertAll(List<OfflineTransaction> transactions) {
+        trackedWrite(() -> {
+            // A later copy of the same id replaces the earlier one
+            Map<String, OfflineTransaction> byId = new LinkedHashMap<>();
+            for (OfflineTransaction transaction : transactions) {
+                fillQueueSchedule(transaction);
+                byId.put(transaction.id, transaction);
+            }
+            checkReceiptNumbers(byId);
+            List<String> ids = new ArrayList<>(byId.keySet());
+            List<TransactionStatsRow> replaced = getStatsRows(ids);
+        
+            // Lines go first: the search triggers index a parent's lines as the
+            // parent is written. REPLACE does not fire the parent delete
+            // trigger, so old lines are cleared here.
+            deleteItemRowsFor(ids);
+            List<TransactionStatsRow> inserted = new ArrayList<>(byId.size());
+            List<TransactionItemRow> items = new ArrayList<>();
+            for (OfflineTransaction transaction : byId.values()) {
+                inserted.add(TransactionStatsRow.of(transaction));
+                items.addAll(TransactionItemRow.forTransaction(transaction));
+            }
+            if (!items.isEmpty()) {
+                insertItemRows(items);
+            }
+            // Only the last copy of an id, as the lines and stats above
+            insertRows(new ArrayList<>(byId.values()));
+            queueStats.applyAll(replaced, inserted);
+        });
+    }
+    
+    public void update(OfflineTransaction transaction) {
+        trackedWrite(() -> {
+            fillQueueSchedule(transaction);
+            List<String> ids = Collections.singletonList(transaction.id);
+            List<TransactionStatsRow> before = getStatsRows(ids);
+            if (before.isEmpty()) {
+                return;
+            }
+            // Lines first, as in insertAll()
+            deleteItemRowsFor(ids);
+            List<TransactionItemRow> items = TransactionItemRow.forTransaction(transaction);
+            if (!items.isEmpty()) {
+                insertItemRows(items);
+            }
+            updateRow(transaction);
+            queueStats.applyAll(before, Collections.singletonList(TransactionStatsRow.of(transaction)));
+        });
+    }
+    
+    public void delete(OfflineTransaction transaction) {
+        deleteById(transaction.id);
+    }
+    
+    public void deleteById(String transactionId) {
+        trackedWrite(() -> {
+            List<TransactionStatsRow> before = getStatsRows(Collections.singletonList(transactionId));
+            deleteRowById(transactionId);
+            queueStats.applyAll(before, Collections.<TransactionStatsRow>emptyList());
+        });
+    }
     
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertAll(List<OfflineTransaction> transactions);
+    protected abstract void insertRows(List<OfflineTransaction> transactions);
     
     @Update
-    void update(OfflineTransaction transaction);
-    
-    @Delete
-    void delete(OfflineTransaction transaction);
+    protected abstract int updateRow(OfflineTransaction transaction);
     
     @Query("DELETE FROM offline_transactions WHERE id = :transactionId")
-    void deleteById(String transactionId);
+    protected abstract int deleteRowById(String transactionId);
+    
+    @Insert
+    protected abstract void insertItemRows(List<TransactionItemRow> items);
+    
+    @Query("DELETE FROM transaction_items WHERE transaction_id IN (:transactionIds)")
+    protected abstract void deleteItemRows(List<String> transactionIds);
+    
+    /**
+     * The claim queries only see failed rows with a next_retry_at, and only
+     * reclaim syncing rows with a lease. Rows written in either state
+     * without one get it from their last attempt.
+     */
+    private static void fillQueueSchedule(OfflineTransaction transaction) {
+        if (transaction.hasFailed() && transaction.nextRetryAt == null) {
+            transaction.nextRetryAt = RetryBackoff.nextRetryAt(Math.max(1, transaction.syncAttempts),
+                    transaction.lastSyncAttempt);
+        } else if (transaction.isSyncing() && transaction.leaseExpiresAt == null) {
+            long from = transaction.lastSyncAttempt != null
+                    ? transaction.lastSyncAttempt.getTime() : System.currentTimeMillis();
+            transaction.leaseExpiresAt = new Date(from + LEASE_MS);
+        }
+    }
+    
+    /**
+     * receipt_number is unique, and REPLACE resolves a unique conflict by
+     * deleting the other row: a reused receipt number would silently drop
+     * a different sale, bypassing the queue stats and the search index.
+     * Refuse the batch instead.
+     */
+    private void checkReceiptNumbers(Map<String, OfflineTransaction> byId) {
+        Map<String, String> owners = new HashMap<>();
+        for (OfflineTransaction transaction : byId.values()) {
+            if (transaction.receiptNumber == null) {
+                continue;
+            }
+            String other = owners.put(transaction.receiptNumber, transaction.id);
+            if (other != null) {
+                throw receiptConflict(transaction.receiptNumber, other, transaction.id);
+            }
+        }
+        List<String> receipts = new ArrayList<>(owners.keySet());
+        for (int start = 0; start < receipts.size(); start += MAX_IDS_PER_QUERY) {
+            int end = Math.min(receipts.size(), start + MAX_IDS_PER_QUERY);
+            for (TransactionSummary existing : getSummariesByReceiptNumbers(receipts.subList(start, end))) {
+                String owner = owners.get(existing.receiptNumber);
+                if (!existing.id.equals(owner)) {
+                    throw receiptConflict(existing.receiptNumber, existing.id, owner);
+                }
+            }
+        }
+    }
+    
+    private static SQLiteConstraintException receiptConflict(String receiptNumber, String id, String otherId) {
+        return new SQLiteConstraintException("Receipt number " + receiptNumber + " of transaction " + id +
+                " reused by " + otherId);
+    }
+    
+    @Query(OfflineTransactionQueries.SUMMARIES_BY_RECEIPTS)
+    protected abstract List<TransactionSummary> getSummariesByReceiptNumbers(List<String> receiptNumbers);
+    
+    private void deleteItemRowsFor(List<String> transactionIds) {
+        for (int start = 0; start < transactionIds.size(); start += MAX_IDS_PER_QUERY) {
+            int end = Math.min(transactionIds.size(), start + MAX_IDS_PER_QUERY);
+            deleteItemRows(transactionIds.subList(start, end));
+        }
+    }
     
     // Query operations
+    //
+    // Queries returning OfflineTransaction decode every row's items and
+    // payment details. Scans that only schedule or list rows should use the
+    // QueueEntry and TransactionSummary projections further down.
     
     @Query("SELECT * FROM offline_transactions WHERE id = :transactionId LIMIT 1")
-    OfflineTransaction getById(String transactionId);
+    public abstract OfflineTransaction getById(String transactionId);
     
     @Query("SELECT * FROM offline_transactions ORDER BY timestamp DESC")
-    List<OfflineTransaction> getAll();
+    public abstract List<OfflineTransaction> getAll();
     
     @Query("SELECT * FROM offline_transactions WHERE store_id = :storeId ORDER BY timestamp DESC")
-    List<OfflineTransaction> getByStoreId(String storeId);
+    public abstract List<OfflineTransaction> getByStoreId(String storeId);
     
     // Sync status queries
     
-    @Query("SELECT * FROM offline_transactions WHERE sync_status = 'pending' ORDER BY priority DESC, timestamp ASC")
-    List<OfflineTransaction> getPendingTransactions();
+    @Query(OfflineTransactionQueries.PENDING_TRANSACTIONS)
+    public abstract List<OfflineTransaction> getPendingTransactions();
     
-    @Query("SELECT * FROM offline_transactions WHERE sync_status = 'failed' AND sync_attempts < 5 ORDER BY priority DESC, last_sync_attempt ASC")
-    List<OfflineTransaction> getFailedTransactionsForRetry();
+    /**
+     * Failed rows with retries left whose backoff has run out by now
+     */
+    @Query(OfflineTransactionQueries.FAILED_TRANSACTIONS_FOR_RETRY)
+    public abstract List<OfflineTransaction> getFailedTransactionsForRetry(Date now);
     
-    @Query("SELECT * FROM offline_transactions WHERE sync_status = 'syncing' ORDER BY last_sync_attempt ASC")
-    List<OfflineTransaction> getSyncingTransactions();
+    /**
+     * When the earliest failed row comes due, or null if none are failed
+     */
+    @Query(OfflineTransactionQueries.NEXT_RETRY_AT)
+    public abstract Date getNextRetryTime();
+    
+    @Query(OfflineTransactionQueries.SYNCING_TRANSACTIONS)
+    public abstract List<OfflineTransaction> getSyncingTransactions();
     
     @Query("SELECT * FROM offline_transactions WHERE sync_status = 'conflict' ORDER BY timestamp DESC")
-    List<OfflineTransaction> getConflictTransactions();
+    public abstract List<OfflineTransaction> getConflictTransactions();
     
     @Query("SELECT * FROM offline_transactions WHERE sync_status = 'synced' AND timestamp < :cutoffDate")
-    List<OfflineTransaction> getSyncedTransactionsOlderThan(Date cutoffDate);
+    public abstract List<OfflineTransaction> getSyncedTransactionsOlderThan(Date cutoffDate);
     
     // Priority-based queries
     
-    @Query("SELECT * FROM offline_transactions WHERE priority = :priority AND sync_status IN ('pending', 'failed') ORDER BY timestamp ASC LIMIT :limit")
-    List<OfflineTransaction> getTransactionsByPriority(String priority, int limit);
+    @Query("SELECT * FROM offline_transactions WHERE sync_status IN ('pending', 'failed') AND priority = :priority ORDER BY timestamp ASC LIMIT :limit")
+    public abstract List<OfflineTransaction> getTransactionsByPriority(String priority, int limit);
     
-    @Query("SELECT * FROM offline_transactions WHERE priority = 'high' AND sync_status IN ('pending', 'failed') ORDER BY timestamp ASC")
-    List<OfflineTransaction> getHighPriorityTransactions();
+    @Query("SELECT * FROM offline_transactions WHERE sync_status IN ('pending', 'failed') AND priority_rank = 1 ORDER BY timestamp ASC")
+    public abstract List<OfflineTransaction> getHighPriorityTransactions();
     
     @Query("SELECT * FROM offline_transactions WHERE payment_method = 'cash' AND sync_status IN ('pending', 'failed') ORDER BY timestamp ASC")
-    List<OfflineTransaction> getCashTransactionsForSync();
+    public abstract List<OfflineTransaction> getCashTransactionsForSync();
     
     // Batch operations for sync
     
-    @Query("SELECT * FROM offline_transactions WHERE sync_status IN ('pending', 'failed') ORDER BY " +
-           "CASE priority WHEN 'high' THEN 1 WHEN 'medium' THEN 2 WHEN 'low' THEN 3 END, " +
-           "timestamp ASC LIMIT :batchSize")
-    List<OfflineTransaction> getNextBatchForSync(int batchSize);
+    // Failed rows are only returned once due at now
+    
+    @Query(OfflineTransactionQueries.NEXT_BATCH_FOR_SYNC)
+    public abstract List<OfflineTransaction> getNextBatchForSync(Date now, int batchSize);
+    
+    @Query(OfflineTransactionQueries.NEXT_BATCH_AFTER)
+    public abstract List<QueueEntry> getNextBatchAfter(int afterRank, long afterTimestamp, String afterId,
+                                                       Date now, int batchSize);
+    
+    @Query(OfflineTransactionQueries.NEXT_BATCH_AFTER_AT_RANK)
+    public abstract List<QueueEntry> getNextBatchAfterAtRank(int afterRank, long afterTimestamp, String afterId,
+                                                             Date now, int batchSize);
+    
+    // Projections: scheduling and list screens without decoding payloads
+    
+    @Query(OfflineTransactionQueries.NEXT_QUEUE_ENTRIES)
+    public abstract List<QueueEntry> getNextQueueEntries(Date now, int batchSize);
+    
+    @Query(OfflineTransactionQueries.PENDING_QUEUE_ENTRIES)
+    public abstract List<QueueEntry> getPendingQueueEntries();
+    
+    @Query(OfflineTransactionQueries.QUEUE_ENTRIES_FOR_RETRY)
+    public abstract List<QueueEntry> getQueueEntriesForRetry(Date now);
+    
+    @Query(OfflineTransactionQueries.SYNCING_QUEUE_ENTRIES)
+    public abstract List<QueueEntry> getSyncingQueueEntries();
+    
+    @Query(OfflineTransactionQueries.RECENT_SUMMARIES)
+    public abstract List<TransactionSummary> getRecentSummaries(int limit);
+    
+    @Query(OfflineTransactionQueries.SUMMARIES_BY_STORE)
+    public abstract List<TransactionSummary> getSummariesByStoreId(String storeId, int limit);
+    
+    @Query(OfflineTransactionQueries.SUMMARIES_BY_STATUS)
+    public abstract List<TransactionSummary> getSummariesByStatus(String syncStatus, int limit);
+    
+    @Query(OfflineTransactionQueries.ROWS_BY_ID)
+    protected abstract List<OfflineTransaction> getRowsById(List<String> transactionIds);
+    
+    /**
+     * Full rows, payloads decoded, for the given ids in the given order.
+     * Ids with no row are skipped.
+     */
+    public List<OfflineTransaction> loadPayloads(List<String> transactionIds) {
+        Map<String, OfflineTransaction> byId = new HashMap<>();
+        for (int start = 0; start < transactionIds.size(); start += MAX_IDS_PER_QUERY) {
+            int end = Math.min(transactionIds.size(), start + MAX_IDS_PER_QUERY);
+            for (OfflineTransaction transaction : getRowsById(transactionIds.subList(start, end))) {
+                byId.put(transaction.id, transaction);
+            }
+        }
+        List<OfflineTransaction> rows = new ArrayList<>(byId.size());
+        for (String id : transactionIds) {
+            OfflineTransaction transaction = byId.get(id);
+            if (transaction != null) {
+                rows.add(transaction);
+            }
+        }
+        return rows;
+    }
+    
+    // Outcome statements that take an owner only touch a row while that
+    // owner's claim on it stands; a null owner matches any row. Synced and
+    // conflict are the server's answer and are recorded whoever asked.
+    
+    @Query("UPDATE offline_transactions SET sync_status = 'syncing', claim_owner = :owner, " +
+           "lease_expires_at = :leaseExpiresAt, last_sync_attempt = :syncTime, updated_at = :syncTime " +
+           "WHERE id IN (:transactionIds)")
+    protected abstract void markRowsAsSyncing(List<String> transactionIds, String owner, Date syncTime,
+                                              Date leaseExpiresAt);
+    
+    @Query("UPDATE offline_transactions SET sync_status = 'synced', claim_owner = NULL, lease_expires_at = NULL, " +
+           "sync_error_history = NULL, updated_at = :syncTime WHERE id = :transactionId")
+    protected abstract int markRowAsSynced(String transactionId, Date syncTime);
+    
+    @Query("UPDATE offline_transactions SET sync_status = 'failed', sync_error = :error, sync_attempts = sync_attempts + 1, " +
+           "sync_error_history = COALESCE(sync_error_history || char(10), '') || :historyLine, " +
+           "last_sync_attempt = :syncTime, next_retry_at = :nextRetryAt, claim_owner = NULL, lease_expires_at = NULL, " +
+           "updated_at = :syncTime " +
+           "WHERE id = :transactionId AND (:owner IS NULL OR (claim_owner = :owner AND sync_status = 'syncing'))")
+    protected abstract int markRowAsFailed(String transactionId, String owner, String error, String historyLine,
+                                           Date syncTime, Date nextRetryAt);
+    
+    // No attempt is counted and no history line written: the server never
+    // judged the row, and an outage must not use up its retries
+    @Query("UPDATE offline_transactions SET sync_status = 'failed', sync_error = :error, " +
+           "last_sync_attempt = :syncTime, next_retry_at = :nextRetryAt, claim_owner = NULL, lease_expires_at = NULL, " +
+           "updated_at = :syncTime " +
+           "WHERE id = :transactionId AND (:owner IS NULL OR (claim_owner = :owner AND sync_status = 'syncing'))")
+    protected abstract int markRowAsDeferred(String transactionId, String owner, String error,
+                                             Date syncTime, Date nextRetryAt);
+    
+    @Query("UPDATE offline_transactions SET sync_status = 'conflict', conflict_data = :conflictData, " +
+           "claim_owner = NULL, lease_expires_at = NULL, updated_at = :updateTime WHERE id = :transactionId")
+    protected abstract int markRowAsConflict(String transactionId, String conflictData, Date updateTime);
+    
+    // A row released back to failed was due when claimed, so it stays due
+    @Query("UPDATE offline_transactions SET sync_status = CASE WHEN sync_attempts > 0 THEN 'failed' ELSE 'pending' END, " +
+           "next_retry_at = CASE WHEN sync_attempts > 0 THEN COALESCE(next_retry_at, :updateTime) END, " +
+           "claim_owner = NULL, lease_expires_at = NULL, updated_at = :updateTime " +
+           "WHERE id = :transactionId AND sync_status = 'syncing' AND (:owner IS NULL OR claim_owner = :owner)")
+    protected abstract int releaseRow(String transactionId, String owner, Date updateTime);
+    
+    @Query("UPDATE offline_transactions SET sync_status = CASE WHEN sync_attempts > 0 THEN 'failed' ELSE 'pending' END, " +
+           "next_retry_at = CASE WHEN sync_attempts > 0 THEN COALESCE(next_retry_at, :now) END, " +
+           "claim_owner = NULL, lease_expires_at = NULL, updated_at = :now " +
+           "WHERE id IN (:transactionIds) AND sync_status = 'syncing' AND lease_expires_at <= :now")
+    protected abstract int releaseExpiredRows(List<String> transactionIds, Date now);
+    
+    @Query(OfflineTransactionQueries.EXPIRED_LEASE_STATS_ROWS)
+    protected abstract List<TransactionStatsRow> getExpiredLeaseStatsRows(Date now, int limit);
+    
+    /**
+     * Mark rows as syncing under an anonymous lease of LEASE_MS
+     */
+    public void markTransactionsAsSyncing(List<String> transactionIds, Date syncTime) {
+        trackedWrite(() -> {
+            List<TransactionStatsRow> before = getStatsRows(transactionIds);
+            markRowsAsSyncing(transactionIds, null, syncTime, new Date(syncTime.getTime() + LEASE_MS));
+            queueStats.applyAll(before, withStatus(before, "syncing"));
+        });
+    }
+    
+    public void markTransactionAsSynced(String transactionId, Date syncTime) {
+        applySyncOutcomes(Collections.singletonList(SyncOutcome.synced(transactionId)), syncTime);
+    }
+    
+    public void markTransactionAsFailed(String transactionId, String error, Date syncTime) {
+        applySyncOutcomes(Collections.singletonList(SyncOutcome.failed(transactionId, error)), syncTime);
+    }
+    
+    public void markTransactionAsConflict(String transactionId, String conflictData, Date updateTime) {
+        applySyncOutcomes(Collections.singletonList(SyncOutcome.conflict(transactionId, conflictData)), updateTime);
+    }
+    
+    /**
+     * Return a syncing row to the queue without counting an attempt
+     */
+    public void releaseTransaction(String transactionId, Date updateTime) {
+        applySyncOutcomes(Collections.singletonList(SyncOutcome.released(transactionId)), updateTime);
+    }
+    
+    // Batched sync state machine
+    //
+    // A sync cycle is one claim transaction (pending/failed -> syncing) followed
+    // by one outcome transaction (syncing -> synced/failed/conflict) per batch.
+    // Both only touch the status columns, never the item/payment blobs; the
+    // payloads of claimed rows are read after the claim commits.
+    //
+    // A claim is a lease: the rows carry the claiming owner and expire
+    // LEASE_MS after the claim. Every claim first hands expired rows back to
+    // the queue, so rows stranded by a crash or a hung worker are retried
+    // without anyone calling releaseTransaction(). Claims are write
+    // transactions, so two workers never select the same row; outcomes
+    // carrying the owner only land while that owner's lease stands.
+    
+    /**
+     * Select the next batch after the cursor in queue order and mark it as
+     * syncing under owner's lease, atomically. Failed rows are included once
+     * due at claimTime. The returned entries already reflect the syncing
+     * state; pass QueueCursor.after(last entry) to continue.
+     *
+     * SQLite on our oldest devices has no UPDATE ... RETURNING, so the claim
+     * is a SELECT and an UPDATE in one immediate transaction, which is
+     * equally atomic: no other writer can run between them.
+     */
+    public List<QueueEntry> claimEntriesForSync(String owner, QueueCursor after, int batchSize, Date claimTime) {
+        return tracked(() -> {
+            reclaimExpiredLeases(claimTime);
+            return markClaimed(getNextBatchAfter(after.priorityRank, after.timestamp, after.id, claimTime, batchSize),
+                    owner, claimTime);
+        });
+    }
+    
+    /**
+     * Same as claimEntriesForSync() but restricted to a single priority label
+     */
+    public List<QueueEntry> claimEntriesByPriority(String owner, String priority, QueueCursor after, int batchSize,
+                                                   Date claimTime) {
+        return tracked(() -> {
+            reclaimExpiredLeases(claimTime);
+            int rank = OfflineTransaction.rankOf(priority);
+            QueueCursor from = after.priorityRank == rank ? after : new QueueCursor(rank, Long.MIN_VALUE, "");
+            return markClaimed(getNextBatchAfterAtRank(rank, from.timestamp, from.id, claimTime, batchSize),
+                    owner, claimTime);
+        });
+    }
+    
+    /**
+     * claimEntriesForSync() followed by loadPayloads() for the claimed rows,
+     * outside the claim transaction
+     */
+    public List<OfflineTransaction> claimBatchForSync(String owner, QueueCursor after, int batchSize, Date claimTime) {
+        return loadPayloads(idsOf(claimEntriesForSync(owner, after, batchSize, claimTime)));
+    }
     
-    @Query("UPDATE offline_transactions SET sync_status = 'syncing', last_sync_attempt = :syncTime, updated_at = :syncTime WHERE id IN (:transactionIds)")
-    void markTransactionsAsSyncing(List<String> transactionIds, Date syncTime);
+    /**
+     * claimEntriesByPriority() followed by loadPayloads() for the claimed rows
+     */
+    public List<OfflineTransaction> claimBatchByPriority(String owner, String priority, QueueCursor after,
+                                                         int batchSize, Date claimTime) {
+        return loadPayloads(idsOf(claimEntriesByPriority(owner, priority, after, batchSize, claimTime)));
+    }
     
-    @Query("UPDATE offline_transactions SET sync_status = 'synced', updated_at = :syncTime WHERE id = :transactionId")
-    void markTransactionAsSynced(String transactionId, Date syncTime);
+    /**
+     * Hand syncing rows whose lease ran out by now back to the queue: to
+     * failed if they were attempted before, else to pending. No attempt is
+     * counted, the upload's fate is unknown.
+     *
+     * @return rows handed back
+     */
+    public int reclaimExpiredLeases(Date now) {
+        return tracked(() -> {
+            int reclaimed = 0;
+            List<TransactionStatsRow> expired;
+            do {
+                expired = getExpiredLeaseStatsRows(now, MAX_IDS_PER_QUERY);
+                if (expired.isEmpty()) {
+                    break;
+                }
+                List<String> ids = new ArrayList<>(expired.size());
+                List<TransactionStatsRow> released = new ArrayList<>(expired.size());
+                for (TransactionStatsRow row : expired) {
+                    ids.add(row.id);
+                    released.add(row.withStatus(row.syncAttempts > 0 ? "failed" : "pending"));
+                }
+                reclaimed += releaseExpiredRows(ids, now);
+                queueStats.applyAll(expired, released);
+            } while (expired.size() == MAX_IDS_PER_QUERY);
+            if (reclaimed > 0) {
+                android.util.Log.w(TAG, "Reclaimed " + reclaimed + " rows with expired sync leases");
+            }
+            return reclaimed;
+        });
+    }
     
-    @Query("UPDATE offline_transactions SET sync_status = 'failed', sync_error = :error, sync_attempts = sync_attempts + 1, last_sync_attempt = :syncTime, updated_at = :syncTime WHERE id = :transactionId")
-    void markTransactionAsFailed(String transactionId, String error, Date syncTime);
+    /**
+     * Commit outcomes without a lease check, for callers that did not claim
+     * the rows
+     */
+    public void applySyncOutcomes(List<SyncOutcome> outcomes, Date syncTime) {
+        applySyncOutcomes(null, outcomes, syncTime);
+    }
     
-    @Query("UPDATE offline_transactions SET sync_status = 'conflict', conflict_data = :conflictData, updated_at = :updateTime WHERE id = :transactionId")
-    void markTransactionAsConflict(String transactionId, String conflictData, Date updateTime);
+    /**
+     * Commit the per-row outcomes of one uploaded batch in a single write
+     * transaction. A failed row is scheduled for its next attempt with
+     * RetryBackoff from its new attempt count; a row failing for the
+     * OfflineTransaction.MAX_SYNC_ATTEMPTS time is moved to the dead-letter
+     * table instead, in the same transaction. A deferred row, one the
+     * request never got an answer for, waits out the backoff of its next
+     * attempt without using it up, so an outage of any length dead-letters
+     * nothing.
+     *
+     * Failed and released outcomes are dropped for rows owner no longer
+     * holds: its lease expired and the row went back to the queue, possibly
+     * to another worker, whose result counts instead.
+     */
+    public void applySyncOutcomes(String owner, List<SyncOutcome> outcomes, Date syncTime) {
+        trackedWrite(() -> {
+            List<String> ids = new ArrayList<>(outcomes.size());
+            for (SyncOutcome outcome : outcomes) {
+                ids.add(outcome.transactionId);
+            }
+            Map<String, TransactionStatsRow> before = new HashMap<>();
+            for (TransactionStatsRow row : getStatsRows(ids)) {
+                before.put(row.id, row);
+            }
+        
+            List<TransactionStatsRow> changedFrom = new ArrayList<>(outcomes.size());
+            List<TransactionStatsRow> changedTo = new ArrayList<>(outcomes.size());
+            List<String> exhausted = new ArrayList<>();
+            for (SyncOutcome outcome : outcomes) {
+                TransactionStatsRow row = before.get(outcome.transactionId);
+                String newStatus;
+                int updated;
+                switch (outcome.status) {
+                    case SYNCED:
+                        updated = markRowAsSynced(outcome.transactionId, syncTime);
+                        newStatus = "synced";
+                        break;
+                    case CONFLICT:
+                        updated = markRowAsConflict(outcome.transactionId, outcome.conflictData, syncTime);
+                        newStatus = "conflict";
+                        break;
+                    case RELEASED:
+                        updated = releaseRow(outcome.transactionId, owner, syncTime);
+                        newStatus = row != null && row.syncAttempts > 0 ? "failed" : "pending";
+                        break;
+                    case DEFERRED:
+                        int attempted = row != null ? row.syncAttempts : 0;
+                        updated = markRowAsDeferred(outcome.transactionId, owner, outcome.error, syncTime,
+                                RetryBackoff.nextRetryAt(attempted + 1, syncTime));
+                        newStatus = "failed";
+                        break;
+                    case FAILED:
+                    default:
+                        int attempts = row != null ? row.syncAttempts + 1 : 1;
+                        updated = markRowAsFailed(outcome.transactionId, owner, outcome.error,
+                                SyncErrorHistory.line(attempts, syncTime, outcome.error), syncTime,
+                                RetryBackoff.nextRetryAt(attempts, syncTime));
+                        if (updated > 0 && attempts >= OfflineTransaction.MAX_SYNC_ATTEMPTS) {
+                            exhausted.add(outcome.transactionId);
+                            newStatus = null;
+                        } else {
+                            newStatus = "failed";
+                        }
+                        break;
+                }
+                if (row != null && updated > 0) {
+                    changedFrom.add(row);
+                    if (newStatus != null) {
+                        changedTo.add(row.withStatus(newStatus));
+                    }
+                }
+            }
+            moveToDeadLetter(exhausted, syncTime);
+            queueStats.applyAll(changedFrom, changedTo);
+        });
+    }
+    
+    private List<QueueEntry> markClaimed(List<QueueEntry> batch, String owner, Date claimTime) {
+        if (batch.isEmpty()) {
+            return batch;
+        }
+        List<TransactionStatsRow> before = new ArrayList<>(batch.size());
+        for (QueueEntry entry : batch) {
+            before.add(TransactionStatsRow.of(entry));
+            entry.syncStatus = "syncing";
+            entry.lastSyncAttempt = claimTime;
+        }
+        markRowsAsSyncing(idsOf(batch), owner, claimTime, new Date(claimTime.getTime() + LEASE_MS));
+        queueStats.applyAll(before, withStatus(before, "syncing"));
+        return batch;
+    }
+    
+    private static List<String> idsOf(List<QueueEntry> entries) {
+        List<String> ids = new ArrayList<>(entries.size());
+        for (QueueEntry entry : entries) {
+            ids.add(entry.id);
+        }
+        return ids;
+    }
     
     // Statistics and reporting
     
     @Query("SELECT COUNT(*) FROM offline_transactions")
-    int getTotalTransactionCount();
+    public abstract int getTotalTransactionCount();
     
     @Query("SELECT COUNT(*) FROM offline_transactions WHERE sync_status = 'pending'")
-    int getPendingTransactionCount();
+    public abstract int getPendingTransactionCount();
     
     @Query("SELECT COUNT(*) FROM offline_transactions WHERE sync_status = 'failed'")
-    int getFailedTransactionCount();
+    public abstract int getFailedTransactionCount();
+    
+    /**
+     * Network quality recorded with the most recently written transaction;
+     * rowid order, so no index or scan is needed
+     */
+    @Query("SELECT network_quality FROM offline_transactions ORDER BY rowid DESC LIMIT 1")
+    public abstract String getLatestNetworkQuality();
+    
+    /**
+     * Failed rows whose backoff has run out; rows still waiting are not
+     * work for a sync started now
+     */
+    @Query(OfflineTransactionQueries.COUNT_DUE_FOR_RETRY)
+    public abstract int countDueForRetry(Date now);
     
     @Query("SELECT COUNT(*) FROM offline_transactions WHERE sync_status = 'syncing'")
-    int getSyncingTransactionCount();
+    public abstract int getSyncingTransactionCount();
     
     @Query("SELECT COUNT(*) FROM offline_transactions WHERE sync_status = 'conflict'")
-    int getConflictTransactionCount();
+    public abstract int getConflictTransactionCount();
+    
+    @Query("SELECT COUNT(*) FROM offline_transactions WHERE sync_status IN ('pending', 'failed') AND priority_rank = 1")
+    public abstract int getHighPriorityPendingCount();
     
-    @Query("SELECT COUNT(*) FROM offline_transactions WHERE priority = 'high' AND sync_status IN ('pending', 'failed')")
-    int getHighPriorityPendingCount();
+    @Query("SELECT COUNT(*) FROM offline_transactions WHERE sync_status IN ('pending', 'failed') AND priority_rank = 2")
+    public abstract int getMediumPriorityPendingCount();
     
-    @Query("SELECT COUNT(*) FROM offline_transactions WHERE priority = 'medium' AND sync_status IN ('pending', 'failed')")
-    int getMediumPriorityPendingCount();
+    @Query("SELECT COUNT(*) FROM offline_transactions WHERE sync_status IN ('pending', 'failed') AND priority_rank = 3")
+    public abstract int getLowPriorityPendingCount();
     
-    @Query("SELECT COUNT(*) FROM offline_transactions WHERE priority = 'low' AND sync_status IN ('pending', 'failed')")
-    int getLowPriorityPendingCount();
+    @Query(OfflineTransactionQueries.COUNT_BY_STATUS)
+    public abstract int countByStatus(String syncStatus);
+    
+    @Query(OfflineTransactionQueries.COUNT_QUEUED_BY_PRIORITY_RANK)
+    public abstract int countQueuedByPriorityRank(int priorityRank);
     
     @Query("SELECT MIN(timestamp) FROM offline_transactions WHERE sync_status IN ('pending', 'failed')")
-    Date getOldestPendingTransactionTime();
+    public abstract Date getOldestPendingTransactionTime();
     
     @Query("SELECT MAX(timestamp) FROM offline_transactions WHERE sync_status IN ('pending', 'failed')")
-    Date getNewestPendingTransactionTime();
+    public abstract Date getNewestPendingTransactionTime();
     
     @Query("SELECT SUM(total) FROM offline_transactions WHERE sync_status = 'pending'")
-    Double getTotalPendingAmount();
+    public abstract Double getTotalPendingAmount();
+    
+    // Pre-summed in sales_aggregates, see SalesReportDao for the full reports
+    @Query(SalesAggregateQueries.TODAYS_SYNCED_AMOUNT)
+    public abstract Double getTodaysSyncedAmount();
+    
+    @Query(OfflineTransactionQueries.STATS_BY_STATUS_AND_RANK)
+    public abstract List<StatusRankAggregate> aggregateStatsByStatusAndRank(long dayStart, long dayEnd);
+    
+    @Query(OfflineTransactionQueries.QUEUED_TIMESTAMP_BOUNDS)
+    public abstract TimestampBounds getQueuedTimestampBounds();
     
-    @Query("SELECT SUM(total) FROM offline_transactions WHERE sync_status = 'synced' AND DATE(timestamp) = DATE('now')")
-    Double getTodaysSyncedAmount();
+    @Query(OfflineTransactionQueries.STATS_ROWS_BY_ID)
+    protected abstract List<TransactionStatsRow> getStatsRowsById(List<String> transactionIds);
+    
+    /**
+     * Queue statistics from the in-memory tracker.
+     *
+     * The first call loads the tracker with the grouped aggregate query;
+     * after that a read is O(1), and a reconciliation is queued on Room's
+     * query executor once the last one is older than
+     * QueueStatsTracker.RECONCILE_INTERVAL_MS.
+     */
+    public QueueStatsTracker.Snapshot getQueueStats() {
+        long now = System.currentTimeMillis();
+        if (!queueStats.isLoaded()) {
+            reconcileQueueStats();
+        } else if (queueStats.needsReconcile(now)) {
+            scheduleQueueStatsReconcile();
+        }
+        if (queueStats.areBoundsStale()) {
+            refreshQueuedBounds();
+        }
+        return queueStats.snapshot(now);
+    }
+
+    /**
+     * Counts from the tracker plus the queue head and next retry time, read
+     * together so they agree. Two index seeks on top of getQueueStats().
+     * Observed through CroffleOfflineDatabase.queueState().
+     */
+    @Transaction
+    public QueueState getQueueState(Date now) {
+        List<QueueEntry> head = getNextQueueEntries(now, 1);
+        return QueueState.of(getQueueStats(), head.isEmpty() ? null : head.get(0), getNextRetryTime());
+    }
+
+    /**
+     * Reload the tracker from SQL. Runs in a write transaction so no tracked
+     * write can land between the query and the reset.
+     */
+    @Transaction
+    public void reconcileQueueStats() {
+        long now = System.currentTimeMillis();
+        long[] day = QueueStatsTracker.dayBounds(now);
+        queueStats.reset(aggregateStatsByStatusAndRank(day[0], day[1]), day[0], day[1], now);
+    }
+    
+    @Transaction
+    protected void refreshQueuedBounds() {
+        TimestampBounds bounds = getQueuedTimestampBounds();
+        queueStats.setQueuedBounds(bounds.oldest, bounds.newest);
+    }
+    
+    private void scheduleQueueStatsReconcile() {
+        if (!reconcileScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        database.getQueryExecutor().execute(() -> {
+            try {
+                reconcileQueueStats();
+            } catch (RuntimeException e) {
+                android.util.Log.w(TAG, "Queue stats reconciliation failed", e);
+            } finally {
+                reconcileScheduled.set(false);
+            }
+        });
+    }
+    
+    /**
+     * Run a tracked write in one transaction. Its deltas reach the tracker
+     * inside it, so reconcileQueueStats(), itself a write transaction, never
+     * sees a committed write without its delta. If the transaction throws,
+     * in the body or on commit, it rolled back after some deltas were
+     * applied: the tracker is marked dirty and reloaded at once.
+     */
+    private <T> T tracked(Callable<T> write) {
+        try {
+            return database.runInTransaction(write);
+        } catch (RuntimeException | Error e) {
+            queueStats.invalidate();
+            scheduleQueueStatsReconcile();
+            throw e;
+        }
+    }
+    
+    private void trackedWrite(Runnable write) {
+        tracked(() -> {
+            write.run();
+            return null;
+        });
+    }
+    
+    private List<TransactionStatsRow> getStatsRows(List<String> transactionIds) {
+        if (transactionIds.size() <= MAX_IDS_PER_QUERY) {
+            return getStatsRowsById(transactionIds);
+        }
+        List<TransactionStatsRow> rows = new ArrayList<>(transactionIds.size());
+        for (int start = 0; start < transactionIds.size(); start += MAX_IDS_PER_QUERY) {
+            int end = Math.min(transactionIds.size(), start + MAX_IDS_PER_QUERY);
+            rows.addAll(getStatsRowsById(transactionIds.subList(start, end)));
+        }
+        return rows;
+    }
+    
+    private static List<TransactionStatsRow> withStatus(List<TransactionStatsRow> rows, String status) {
+        List<TransactionStatsRow> changed = new ArrayList<>(rows.size());
+        for (TransactionStatsRow row : rows) {
+            changed.add(row.withStatus(status));
+        }
+        return changed;
+    }
     
     // Cleanup operations
+    //
+    // Bulk deletes reload the stats in the same transaction rather than
+    // reading every deleted row first.
+    
+    public int deleteSyncedTransactionsOlderThan(Date cutoffDate) {
+        return tracked(() -> {
+            int deleted = deleteSyncedRowsOlderThan(cutoffDate);
+            if (deleted > 0) {
+                reconcileQueueStats();
+            }
+            return deleted;
+        });
+    }
     
     @Query("DELETE FROM offline_transactions WHERE sync_status = 'synced' AND timestamp < :cutoffDate")
-    int deleteSyncedTransactionsOlderThan(Date cutoffDate);
+    protected abstract int deleteSyncedRowsOlderThan(Date cutoffDate);
+    
+    // Chunked retention: each chunk is its own short write transaction, so
+    // checkout writes can interleave between chunks. The deleted rows are
+    // read first and applied to the tracker as a delta. A chunk is at most
+    // MAX_IDS_PER_QUERY rows.
+    
+    /**
+     * Delete up to limit synced rows older than the cutoff
+     *
+     * @return rows deleted; fewer than limit means none are left
+     */
+    public int deleteSyncedChunkOlderThan(Date cutoffDate, int limit) {
+        return tracked(() -> {
+            return deleteTracked(getSyncedStatsRowsOlderThan(cutoffDate, Math.min(limit, MAX_IDS_PER_QUERY)));
+        });
+    }
+    
+    /**
+     * Move up to limit failed rows with no retries left to the dead-letter
+     * table. Rows only stay behind like this when written as failed
+     * directly or left by a version without the dead-letter table.
+     *
+     * @return rows moved; fewer than limit means none are left
+     */
+    public int deadLetterExhaustedChunk(Date now, int limit) {
+        return tracked(() -> {
+            List<TransactionStatsRow> rows = getExhaustedStatsRows(Math.min(limit, MAX_IDS_PER_QUERY));
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            List<String> ids = new ArrayList<>(rows.size());
+            for (TransactionStatsRow row : rows) {
+                ids.add(row.id);
+            }
+            int moved = moveToDeadLetter(ids, now);
+            queueStats.applyAll(rows, Collections.<TransactionStatsRow>emptyList());
+            return moved;
+        });
+    }
+    
+    @Query(OfflineTransactionQueries.RETENTION_SYNCED_STATS_ROWS)
+    protected abstract List<TransactionStatsRow> getSyncedStatsRowsOlderThan(Date cutoffDate, int limit);
+    
+    @Query(OfflineTransactionQueries.EXHAUSTED_STATS_ROWS)
+    protected abstract List<TransactionStatsRow> getExhaustedStatsRows(int limit);
+    
+    @Query("DELETE FROM offline_transactions WHERE id IN (:transactionIds)")
+    protected abstract int deleteRowsById(List<String> transactionIds);
+    
+    private int deleteTracked(List<TransactionStatsRow> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<String> ids = new ArrayList<>(rows.size());
+        for (TransactionStatsRow row : rows) {
+            ids.add(row.id);
+        }
+        int deleted = deleteRowsById(ids);
+        queueStats.applyAll(rows, Collections.<TransactionStatsRow>emptyList());
+        return deleted;
+    }
+    
+    // Dead letters
+    //
+    // Rows move between the two tables with their blobs copied in SQL, so
+    // dead-lettering never decodes a payload. transaction_items follow the
+    // parent out through the delete trigger and are rebuilt from the items
+    // on requeue. Moves in both directions adjust the queue stats here;
+    // DeadLetterDao only reads, exports and deletes.
+    
+    @Query(OfflineTransactionQueries.COPY_TO_DEAD_LETTER)
+    protected abstract void copyRowsToDeadLetter(List<String> transactionIds, Date deadLetteredAt, String reason);
+    
+    @Query("SELECT * FROM dead_letter_transactions WHERE id IN (:transactionIds)")
+    protected abstract List<DeadLetterTransaction> getDeadLetterRowsById(List<String> transactionIds);
+    
+    @Query("SELECT id FROM dead_letter_transactions ORDER BY dead_lettered_at ASC LIMIT :limit")
+    protected abstract List<String> getOldestDeadLetterIds(int limit);
     
-    @Query("DELETE FROM offline_transactions WHERE sync_status = 'failed' AND sync_attempts >= 5 AND timestamp < :cutoffDate")
-    int deleteFailedTransactionsOlderThan(Date cutoffDate);
+    @Query("DELETE FROM dead_letter_transactions WHERE id IN (:transactionIds)")
+    protected abstract int deleteDeadLetterRows(List<String> transactionIds);
+    
+    /**
+     * Copy rows to the dead-letter table and delete them here. The caller
+     * takes them out of the queue stats.
+     */
+    private int moveToDeadLetter(List<String> transactionIds, Date deadLetteredAt) {
+        int moved = 0;
+        for (int start = 0; start < transactionIds.size(); start += MAX_IDS_PER_QUERY) {
+            int end = Math.min(transactionIds.size(), start + MAX_IDS_PER_QUERY);
+            List<String> chunk = transactionIds.subList(start, end);
+            copyRowsToDeadLetter(chunk, deadLetteredAt, DeadLetterTransaction.REASON_RETRIES_EXHAUSTED);
+            moved += deleteRowsById(chunk);
+        }
+        if (moved > 0) {
+            android.util.Log.w(TAG, "Moved " + moved + " transactions with no retries left to dead letters");
+        }
+        return moved;
+    }
+    
+    /**
+     * Put dead-lettered rows back in the queue as pending with a fresh
+     * attempt count. The last error and the error history are kept, so a
+     * row that fails again shows every round. Ids with no dead letter are
+     * skipped.
+     *
+     * @return rows requeued
+     */
+    public int requeueDeadLetters(List<String> transactionIds, Date now) {
+        return tracked(() -> {
+            int requeued = 0;
+            for (int start = 0; start < transactionIds.size(); start += MAX_IDS_PER_QUERY) {
+                int end = Math.min(transactionIds.size(), start + MAX_IDS_PER_QUERY);
+                List<String> chunk = transactionIds.subList(start, end);
+                List<DeadLetterTransaction> rows = getDeadLetterRowsById(chunk);
+                if (rows.isEmpty()) {
+                    continue;
+                }
+                List<OfflineTransaction> queued = new ArrayList<>(rows.size());
+                List<String> ids = new ArrayList<>(rows.size());
+                for (DeadLetterTransaction row : rows) {
+                    row.syncStatus = "pending";
+                    row.syncAttempts = 0;
+                    row.nextRetryAt = null;
+                    row.claimOwner = null;
+                    row.leaseExpiresAt = null;
+                    row.updatedAt = now;
+                    queued.add(row);
+                    ids.add(row.id);
+                }
+                insertAll(queued);
+                requeued += deleteDeadLetterRows(ids);
+            }
+            return requeued;
+        });
+    }
+    
+    /**
+     * requeueDeadLetters() for the whole dead-letter table, oldest first,
+     * one transaction per MAX_IDS_PER_QUERY rows
+     *
+     * @return rows requeued
+     */
+    public int requeueAllDeadLetters(Date now) {
+        int requeued = 0;
+        List<String> ids;
+        do {
+            ids = getOldestDeadLetterIds(MAX_IDS_PER_QUERY);
+            requeued += requeueDeadLetters(ids, now);
+        } while (ids.size() == MAX_IDS_PER_QUERY);
+        return requeued;
+    }
     
     // Search and filtering
     
-    @Query("SELECT * FROM offline_transactions WHERE receipt_number LIKE :receiptNumber LIMIT 1")
-    OfflineTransaction getByReceiptNumber(String receiptNumber);
+    @Query(OfflineTransactionQueries.TRANSACTION_BY_RECEIPT)
+    public abstract OfflineTransaction getByReceiptNumber(String receiptNumber);
+    
+    @Query(OfflineTransactionQueries.RECEIPT_PREFIX_SUMMARIES)
+    protected abstract List<TransactionSummary> getSummariesByReceiptRange(String prefix, String upperBound,
+                                                                           int limit);
+    
+    /**
+     * Transactions whose receipt number starts with prefix (case
+     * sensitive), in receipt order
+     */
+    public List<TransactionSummary> getSummariesByReceiptPrefix(String prefix, int limit) {
+        String upperBound = SearchTerms.upperBound(prefix);
+        if (upperBound == null) {
+            return Collections.emptyList();
+        }
+        return getSummariesByReceiptRange(prefix, upperBound, limit);
+    }
+    
+    @Query(OfflineTransactionQueries.SEARCH_SUMMARIES)
+    protected abstract List<TransactionSummary> searchSummaries(String prefix, String upperBound,
+                                                                String textMatch, int limit);
+    
+    /**
+     * Search-as-you-type over receipt numbers, customer ids and item
+     * names/SKUs. Receipts starting with the input rank first, then
+     * customers, then transactions matching every word anywhere (the one
+     * being typed as a prefix, see SearchTerms), newest first within each
+     * (see OfflineTransactionQueries.SEARCH_SUMMARIES).
+     */
+    public List<TransactionSummary> search(String input, int limit) {
+        String prefix = input == null ? "" : input.trim();
+        String upperBound = SearchTerms.upperBound(prefix);
+        if (upperBound == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return searchSummaries(prefix, upperBound, SearchTerms.match(input), limit);
+    }
     
     @Query("SELECT * FROM offline_transactions WHERE customer_id = :customerId ORDER BY timestamp DESC")
-    List<OfflineTransaction> getByCustomerId(String customerId);
+    public abstract List<OfflineTransaction> getByCustomerId(String customerId);
     
     @Query("SELECT * FROM offline_transactions WHERE payment_method = :paymentMethod AND sync_status = :syncStatus ORDER BY timestamp DESC")
-    List<OfflineTransaction> getByPaymentMethodAndStatus(String paymentMethod, String syncStatus);
+    public abstract List<OfflineTransaction> getByPaymentMethodAndStatus(String paymentMethod, String syncStatus);
     
     @Query("SELECT * FROM offline_transactions WHERE total >= :minAmount AND total <= :maxAmount ORDER BY timestamp DESC")
-    List<OfflineTransaction> getByAmountRange(double minAmount, double maxAmount);
+    public abstract List<OfflineTransaction> getByAmountRange(double minAmount, double maxAmount);
     
     @Query("SELECT * FROM offline_transactions WHERE timestamp BETWEEN :startDate AND :endDate ORDER BY timestamp DESC")
-    List<OfflineTransaction> getByDateRange(Date startDate, Date endDate);
+    public abstract List<OfflineTransaction> getByDateRange(Date startDate, Date endDate);
+    
+    // Streaming export: exports of more than a screenful go through
+    // TransactionExport, which reads these pages, instead of getAll(),
+    // getByStoreId() or getByDateRange()
+    
+    @Query(OfflineTransactionQueries.EXPORT_PAGE)
+    protected abstract List<OfflineTransaction> getExportRows(Long afterTimestamp, String afterId, Date fromTime,
+                                                              Date toTime, String storeId, boolean anyStatus,
+                                                              List<String> statuses, int limit);
+    
+    /**
+     * Up to limit rows matching filter, in (timestamp, id) order after the
+     * given row. A null afterTimestamp with an empty afterId is the start.
+     */
+    public List<OfflineTransaction> getExportPage(ExportFilter filter, Long afterTimestamp, String afterId, int limit) {
+        boolean anyStatus = filter.statuses == null;
+        return getExportRows(afterTimestamp, afterId, filter.from, filter.to, filter.storeId, anyStatus,
+                anyStatus ? Collections.<String>emptyList() : filter.statuses, limit);
+    }
     
     // Advanced queries for reporting
     
-    @Query("SELECT payment_method, COUNT(*) as count, SUM(total) as total_amount FROM offline_transactions WHERE sync_status = 'synced' AND DATE(timestamp) = DATE('now') GROUP BY payment_method")
-    List<PaymentMethodSummary> getTodaysPaymentMethodSummary();
+    @Query(SalesAggregateQueries.TODAYS_SYNCED_BY_PAYMENT_METHOD)
+    public abstract List<PaymentMethodSummary> getTodaysPaymentMethodSummary();
     
     @Query("SELECT priority, COUNT(*) as count FROM offline_transactions WHERE sync_status IN ('pending', 'failed') GROUP BY priority")
-    List<PrioritySummary> getPendingTransactionsByPriority();
+    public abstract List<PrioritySummary> getPendingTransactionsByPriority();
     
     // Inner classes for query results
-    class PaymentMethodSummary {
+    public static class PaymentMethodSummary {
+        @ColumnInfo(name = "payment_method")
         public String paymentMethod;
+        @ColumnInfo(name = "count")
         public int count;
+        @ColumnInfo(name = "total_amount")
         public double totalAmount;
     }
     
-    class PrioritySummary {
+    public static class PrioritySummary {
         public String priority;
         public int count;
     }
@@ -0,0 +1,377 @@
+package com.crofflestore.pos.database.dao;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+
+/**
+ * SQL for the sync queue hot paths
+ *
+ * Kept as constants so the DAO annotations, the query plan tests and the
+ * benchmarks all run exactly the same statements. Every statement here is
+ * expected to be answered from the queue indexes declared on
+ * {@link com.crofflestore.pos.database.entities.OfflineTransaction}.
+ */
+public final class OfflineTransactionQueries {
+
+    /**
+     * The columns of {@link QueueEntry}: everything queue scheduling needs,
+     * none of the converted payload columns
+     */
+    public static final String QUEUE_ENTRY_COLUMNS =
+            "id, timestamp, total, sync_status, priority, priority_rank, sync_attempts, last_sync_attempt";
+
+    private static final String SELECT_QUEUE_ENTRY =
+            "SELECT " + QUEUE_ENTRY_COLUMNS + " FROM offline_transactions ";
+
+    /**
+     * The columns of {@link TransactionSummary}, for list screens
+     */
+    public static final String SUMMARY_COLUMNS =
+            "id, timestamp, store_id, customer_id, receipt_number, total, payment_method, order_type, " +
+            "sync_status, priority";
+
+    private static final String SELECT_SUMMARY =
+            "SELECT " + SUMMARY_COLUMNS + " FROM offline_transactions ";
+
+
+    /**
+     * Failed rows whose backoff has run out. Every row stored as failed has
+     * a next_retry_at (OfflineTransactionDao sets it, MIGRATION_6_7 filled it
+     * in), so the plain comparison is enough.
+     */
+    private static final String DUE = "AND next_retry_at <= :now ";
+
+    /**
+     * Exhausted rows move to dead_letter_transactions, so this only screens
+     * out rows written as failed with no retries left
+     */
+    private static final String RETRIES_LEFT =
+            "AND sync_attempts < " + OfflineTransaction.MAX_SYNC_ATTEMPTS + " ";
+
+    /**
+     * DUE as a filter on the queue order walk. The unary + keeps SQLite
+     * from switching the arm to the next_retry_at index, which would need
+     * a sort of every due row ahead of the merge.
+     */
+    private static final String DUE_IN_QUEUE_ORDER = "AND +next_retry_at <= :now ";
+
+    /**
+     * Sales of one (store_id, shift_id) reach the server in (timestamp, id)
+     * order across runs, not just within one. A row is held back while an
+     * earlier sale of its shift is failed and still backing off, or is
+     * queued at a lower priority, which the walk would only reach after it.
+     * Both are seeks into (store_id, shift_id, sync_status, priority_rank,
+     * timestamp) that only read queued rows of the shift; the unary + keeps
+     * the first off the next_retry_at index, which spans every shift. Rows
+     * without a store or shift are not held: = never matches NULL, and IS
+     * cannot use the index on the platform SQLite of our oldest devices.
+     */
+    private static final String IN_SHIFT_ORDER =
+            "AND NOT EXISTS (SELECT 1 FROM offline_transactions AS earlier " +
+            "WHERE earlier.store_id = offline_transactions.store_id " +
+            "AND earlier.shift_id = offline_transactions.shift_id AND earlier.sync_status = 'failed' " +
+            "AND +earlier.next_retry_at > :now " +
+            "AND (earlier.timestamp < offline_transactions.timestamp " +
+            "OR (earlier.timestamp = offline_transactions.timestamp AND earlier.id < offline_transactions.id))) " +
+            "AND NOT EXISTS (SELECT 1 FROM offline_transactions AS earlier " +
+            "WHERE earlier.store_id = offline_transactions.store_id " +
+            "AND earlier.shift_id = offline_transactions.shift_id AND earlier.sync_status IN ('pending', 'failed') " +
+            "AND earlier.priority_rank > offline_transactions.priority_rank " +
+            "AND (earlier.timestamp < offline_transactions.timestamp " +
+            "OR (earlier.timestamp = offline_transactions.timestamp AND earlier.id < offline_transactions.id))) ";
+
+    private static final String AFTER_CURSOR_AT_RANK_PENDING =
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'pending' AND priority_rank = :afterRank " +
+            "AND timestamp = :afterTimestamp AND id > :afterId " + IN_SHIFT_ORDER +
+            "UNION ALL " +
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'pending' AND priority_rank = :afterRank " +
+            "AND timestamp > :afterTimestamp " + IN_SHIFT_ORDER;
+
+    private static final String AFTER_CURSOR_AT_RANK_FAILED =
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'failed' AND priority_rank = :afterRank " +
+            "AND timestamp = :afterTimestamp AND id > :afterId " + DUE_IN_QUEUE_ORDER + IN_SHIFT_ORDER +
+            "UNION ALL " +
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'failed' AND priority_rank = :afterRank " +
+            "AND timestamp > :afterTimestamp " + DUE_IN_QUEUE_ORDER + IN_SHIFT_ORDER;
+
+    /**
+     * Pending and due failed rows in priority order.
+     *
+     * Written as a UNION ALL of two index range scans so SQLite can merge the
+     * already-sorted (priority_rank, timestamp) runs instead of sorting the
+     * whole queue in a temp B-tree.
+     */
+    public static final String NEXT_BATCH_FOR_SYNC =
+            "SELECT * FROM offline_transactions WHERE sync_status = 'pending' " +
+            "UNION ALL " +
+            "SELECT * FROM offline_transactions WHERE sync_status = 'failed' " + DUE_IN_QUEUE_ORDER +
+            "ORDER BY priority_rank ASC, timestamp ASC LIMIT :batchSize";
+
+    /**
+     * Keyset page of the queue: the next pending/failed rows strictly after
+     * (:afterRank, :afterTimestamp, :afterId) in (priority_rank, timestamp, id)
+     * order.
+     *
+     * Row-value comparisons need SQLite 3.15, newer than the platform SQLite
+     * on our oldest devices, so "after the cursor" is spelled out as three
+     * index seeks per status: same rank and timestamp with a greater id, same
+     * rank with a later timestamp, and any later rank. Each seek starts at the
+     * cursor, so a page costs the same at the end of a 100k row backlog as at
+     * the start. Rows with a NULL timestamp are only reached when a page
+     * enters their rank.
+     *
+     * Failed rows still backing off are skipped: their due check is a filter
+     * on the same index walk, so the merge order is unchanged and a row that
+     * keeps failing costs one index entry per page instead of a slot in
+     * every batch. Rows held back by IN_SHIFT_ORDER are skipped the same
+     * way and picked up by a later run.
+     *
+     * Selects QueueEntry columns only: the claim transaction never decodes
+     * a payload.
+     */
+    public static final String NEXT_BATCH_AFTER =
+            AFTER_CURSOR_AT_RANK_PENDING + "UNION ALL " +
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'pending' AND priority_rank > :afterRank " + IN_SHIFT_ORDER +
+            "UNION ALL " +
+            AFTER_CURSOR_AT_RANK_FAILED + "UNION ALL " +
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'failed' AND priority_rank > :afterRank " +
+            DUE_IN_QUEUE_ORDER + IN_SHIFT_ORDER +
+            "ORDER BY priority_rank ASC, timestamp ASC, id ASC LIMIT :batchSize";
+
+    /**
+     * NEXT_BATCH_AFTER restricted to the cursor's own rank, for priority syncs
+     */
+    public static final String NEXT_BATCH_AFTER_AT_RANK =
+            AFTER_CURSOR_AT_RANK_PENDING + "UNION ALL " +
+            AFTER_CURSOR_AT_RANK_FAILED +
+            "ORDER BY timestamp ASC, id ASC LIMIT :batchSize";
+
+    /**
+     * NEXT_BATCH_FOR_SYNC as queue entries
+     */
+    public static final String NEXT_QUEUE_ENTRIES =
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'pending' " +
+            "UNION ALL " +
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'failed' " + DUE_IN_QUEUE_ORDER +
+            "ORDER BY priority_rank ASC, timestamp ASC LIMIT :batchSize";
+
+    public static final String PENDING_QUEUE_ENTRIES =
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'pending' ORDER BY priority_rank ASC, timestamp ASC";
+
+    /**
+     * Failed rows with retries left that are due, longest overdue first.
+     * A range seek on (sync_status, next_retry_at), so rows still backing
+     * off are never read.
+     */
+    public static final String QUEUE_ENTRIES_FOR_RETRY =
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'failed' " + RETRIES_LEFT + DUE +
+            "ORDER BY next_retry_at ASC";
+
+    public static final String SYNCING_QUEUE_ENTRIES =
+            SELECT_QUEUE_ENTRY + "WHERE sync_status = 'syncing' ORDER BY last_sync_attempt ASC";
+
+    public static final String RECENT_SUMMARIES =
+            SELECT_SUMMARY + "ORDER BY timestamp DESC LIMIT :limit";
+
+    public static final String SUMMARIES_BY_STORE =
+            SELECT_SUMMARY + "WHERE store_id = :storeId ORDER BY timestamp DESC LIMIT :limit";
+
+    public static final String SUMMARIES_BY_STATUS =
+            SELECT_SUMMARY + "WHERE sync_status = :syncStatus ORDER BY timestamp DESC LIMIT :limit";
+
+    /**
+     * Full rows, payloads included, for ids already claimed
+     */
+    public static final String ROWS_BY_ID =
+            "SELECT * FROM offline_transactions WHERE id IN (:transactionIds)";
+
+    public static final String PENDING_TRANSACTIONS =
+            "SELECT * FROM offline_transactions WHERE sync_status = 'pending' " +
+            "ORDER BY priority_rank ASC, timestamp ASC";
+
+    public static final String FAILED_TRANSACTIONS_FOR_RETRY =
+            "SELECT * FROM offline_transactions WHERE sync_status = 'failed' " + RETRIES_LEFT + DUE +
+            "ORDER BY next_retry_at ASC";
+
+    /**
+     * When the next failed row comes due: one seek into
+     * (sync_status, next_retry_at)
+     */
+    public static final String NEXT_RETRY_AT =
+            "SELECT MIN(next_retry_at) FROM offline_transactions WHERE sync_status = 'failed'";
+
+    /**
+     * Failed rows with retries left that are due now; the same range seek
+     * as QUEUE_ENTRIES_FOR_RETRY
+     */
+    public static final String COUNT_DUE_FOR_RETRY =
+            "SELECT COUNT(*) FROM offline_transactions WHERE sync_status = 'failed' " + RETRIES_LEFT + DUE;
+
+    public static final String SYNCING_TRANSACTIONS =
+            "SELECT * FROM offline_transactions WHERE sync_status = 'syncing' ORDER BY last_sync_attempt ASC";
+
+    public static final String COUNT_BY_STATUS =
+            "SELECT COUNT(*) FROM offline_transactions WHERE sync_status = :syncStatus";
+
+    public static final String COUNT_QUEUED_BY_PRIORITY_RANK =
+            "SELECT COUNT(*) FROM offline_transactions " +
+            "WHERE sync_status IN ('pending', 'failed') AND priority_rank = :priorityRank";
+
+    /**
+     * Every figure of DatabaseStats in one pass: counts, amounts and
+     * timestamp bounds per (sync_status, priority_rank). The callers fold the
+     * at most 15 groups into totals.
+     */
+    public static final String STATS_BY_STATUS_AND_RANK =
+            "SELECT sync_status, priority_rank, COUNT(*) AS row_count, TOTAL(total) AS amount, " +
+            "TOTAL(CASE WHEN timestamp >= :dayStart AND timestamp < :dayEnd THEN total END) AS amount_in_day, " +
+            "MIN(timestamp) AS oldest, MAX(timestamp) AS newest " +
+            "FROM offline_transactions GROUP BY sync_status, priority_rank";
+
+    /**
+     * Oldest and newest queued timestamps. Each correlated MIN/MAX is a
+     * single seek into the (sync_status, priority_rank, timestamp) index.
+     */
+    public static final String QUEUED_TIMESTAMP_BOUNDS =
+            "SELECT " +
+            "MIN((SELECT MIN(timestamp) FROM offline_transactions o " +
+            "WHERE o.sync_status = q.status AND o.priority_rank = q.queue_rank)) AS oldest, " +
+            "MAX((SELECT MAX(timestamp) FROM offline_transactions o " +
+            "WHERE o.sync_status = q.status AND o.priority_rank = q.queue_rank)) AS newest " +
+            "FROM (SELECT 'pending' AS status, 1 AS queue_rank UNION ALL SELECT 'pending', 2 UNION ALL " +
+            "SELECT 'pending', 3 UNION ALL SELECT 'failed', 1 UNION ALL SELECT 'failed', 2 UNION ALL " +
+            "SELECT 'failed', 3) q";
+
+    /**
+     * One retention chunk of synced rows past the cutoff. The rank IN list
+     * turns the lookup into three (sync_status, priority_rank, timestamp)
+     * range seeks instead of a walk over every synced row.
+     */
+    public static final String RETENTION_SYNCED_STATS_ROWS =
+            "SELECT id, sync_status, priority_rank, sync_attempts, total, timestamp FROM offline_transactions " +
+            "WHERE sync_status = 'synced' AND priority_rank IN (1, 2, 3) AND timestamp < :cutoffDate " +
+            "LIMIT :limit";
+
+    /**
+     * One chunk of failed rows that have used up their retries and are
+     * still in the queue table: written there directly, or left by a
+     * version without the dead-letter table
+     */
+    public static final String EXHAUSTED_STATS_ROWS =
+            "SELECT id, sync_status, priority_rank, sync_attempts, total, timestamp FROM offline_transactions " +
+            "WHERE sync_status = 'failed' AND sync_attempts >= " + OfflineTransaction.MAX_SYNC_ATTEMPTS + " " +
+            "LIMIT :limit";
+
+    /**
+     * Every column of offline_transactions, in the order of
+     * {@link OfflineTransaction}. The dead-letter statements copy rows
+     * with it, so it must list each column the entity declares.
+     */
+    public static final String TRANSACTION_COLUMNS =
+            "id, timestamp, store_id, user_id, shift_id, customer_id, items, subtotal, tax, discount, " +
+            "discount_type, discount_id_number, total, amount_tendered, change_amount, payment_method, " +
+            "payment_details, order_type, delivery_platform, delivery_order_number, sync_status, " +
+            "sync_attempts, last_sync_attempt, next_retry_at, claim_owner, lease_expires_at, sync_error, " +
+            "sync_error_history, priority, priority_rank, receipt_number, device_id, network_quality, " +
+            "conflict_data, created_at, updated_at";
+
+    /**
+     * Copy rows, blobs untouched, into dead_letter_transactions. A row
+     * already there (requeued and exhausted again) is replaced.
+     */
+    public static final String COPY_TO_DEAD_LETTER =
+            "INSERT OR REPLACE INTO dead_letter_transactions (" + TRANSACTION_COLUMNS +
+            ", dead_lettered_at, dead_letter_reason) " +
+            "SELECT " + TRANSACTION_COLUMNS + ", :deadLetteredAt, :reason " +
+            "FROM offline_transactions WHERE id IN (:transactionIds)";
+
+    /**
+     * One chunk of syncing rows whose claim lease has run out: the claiming
+     * worker died or hung. A range seek on (sync_status, lease_expires_at).
+     */
+    public static final String EXPIRED_LEASE_STATS_ROWS =
+            "SELECT id, sync_status, priority_rank, sync_attempts, total, timestamp FROM offline_transactions " +
+            "WHERE sync_status = 'syncing' AND lease_expires_at <= :now LIMIT :limit";
+
+    public static final String TRANSACTION_BY_RECEIPT =
+            "SELECT * FROM offline_transactions WHERE receipt_number = :receiptNumber LIMIT 1";
+
+    /**
+     * Current holders of receipt numbers, for the REPLACE guard in
+     * OfflineTransactionDao.insertAll()
+     */
+    public static final String SUMMARIES_BY_RECEIPTS =
+            SELECT_SUMMARY + "WHERE receipt_number IN (:receiptNumbers)";
+
+    /**
+     * Receipts starting with a prefix, as a range seek on the unique
+     * receipt_number index (SearchTerms.upperBound() gives the bound)
+     */
+    public static final String RECEIPT_PREFIX_SUMMARIES =
+            SELECT_SUMMARY + "WHERE receipt_number >= :prefix AND receipt_number < :upperBound " +
+            "ORDER BY receipt_number LIMIT :limit";
+
+    /**
+     * Ranked search-as-you-type over receipts, customers and item
+     * names/SKUs. Each tier contributes at most :limit rows, a transaction
+     * keeps its best tier, and results come back best tier first, newest
+     * first within a tier:
+     * 1. receipt_number starts with the input (receipt_number index range)
+     * 2. customer_id starts with the input ((customer_id, timestamp) range,
+     *    newest first for an exact customer)
+     * 3. transaction_search matches :textMatch (SearchTerms.match()) in any
+     *    column: a receipt or customer fragment, an item name or SKU
+     * Tier 3 has no column filter on purpose: FTS4 applies a column filter
+     * only after walking every document holding the term in any column.
+     * Rows tie to transaction_search by rowid, so the join back is a
+     * primary-key lookup.
+     */
+    public static final String SEARCH_SUMMARIES =
+            "SELECT " + SUMMARY_COLUMNS + " FROM offline_transactions JOIN (" +
+            "SELECT hit, MIN(tier) AS tier FROM (" +
+            "SELECT * FROM (SELECT rowid AS hit, 1 AS tier FROM offline_transactions " +
+            "WHERE receipt_number >= :prefix AND receipt_number < :upperBound " +
+            "ORDER BY receipt_number LIMIT :limit) " +
+            "UNION ALL " +
+            "SELECT * FROM (SELECT rowid AS hit, 2 AS tier FROM offline_transactions " +
+            "WHERE customer_id >= :prefix AND customer_id < :upperBound " +
+            "ORDER BY customer_id DESC, timestamp DESC LIMIT :limit) " +
+            "UNION ALL " +
+            "SELECT * FROM (SELECT rowid AS hit, 3 AS tier FROM transaction_search " +
+            "WHERE transaction_search MATCH :textMatch ORDER BY rowid DESC LIMIT :limit)" +
+            ") GROUP BY hit) AS ranked ON offline_transactions.rowid = ranked.hit " +
+            "ORDER BY ranked.tier, ranked.hit DESC LIMIT :limit";
+
+    private static final String EXPORT_FILTERS =
+            "AND (:fromTime IS NULL OR timestamp >= :fromTime) AND (:toTime IS NULL OR timestamp < :toTime) " +
+            "AND (:storeId IS NULL OR store_id = :storeId) AND (:anyStatus OR sync_status IN (:statuses)) ";
+
+    /**
+     * One page of a streaming export (TransactionExport), in (timestamp, id)
+     * order after (:afterTimestamp, :afterId). Rows without a timestamp
+     * sort first, so a null :afterTimestamp is a position among them, or
+     * the start with an empty :afterId. Every arm is a seek into the
+     * (timestamp, id) index and a whole export reads it once however
+     * selective the filters are. A null bound or store and :anyStatus turn
+     * their filter off.
+     *
+     * The key is the row's own columns rather than its rowid: insertAll()'s
+     * REPLACE deletes a re-saved row and inserts it again under a new rowid,
+     * and VACUUM may renumber rowids, but neither moves (timestamp, id).
+     */
+    public static final String EXPORT_PAGE =
+            "SELECT * FROM offline_transactions WHERE timestamp IS NULL AND :afterTimestamp IS NULL " +
+            "AND id > :afterId " + EXPORT_FILTERS +
+            "UNION ALL " +
+            "SELECT * FROM offline_transactions WHERE timestamp = :afterTimestamp AND id > :afterId " +
+            EXPORT_FILTERS +
+            "UNION ALL " +
+            "SELECT * FROM offline_transactions WHERE timestamp > COALESCE(:afterTimestamp, " + Long.MIN_VALUE + ") " +
+            EXPORT_FILTERS +
+            "ORDER BY timestamp, id LIMIT :limit";
+
+    public static final String STATS_ROWS_BY_ID =
+            "SELECT id, sync_status, priority_rank, sync_attempts, total, timestamp " +
+            "FROM offline_transactions WHERE id IN (:transactionIds)";
+
+    private OfflineTransactionQueries() {}
+}
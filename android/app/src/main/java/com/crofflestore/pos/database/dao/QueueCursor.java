@@ -0,0 +1,53 @@
+package com.crofflestore.pos.database.dao;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+
+/**
+ * Keyset position in the sync queue
+ *
+ * The queue is ordered by (priority_rank, timestamp, id). A cursor holds the
+ * last key handed out so the next page is an index seek past it instead of
+ * an OFFSET or a re-scan of rows already tried in this run. Rows updated
+ * behind the cursor (failed, released) are not revisited until a new run
+ * starts from {@link #START}.
+ */
+public final class QueueCursor {
+
+    /**
+     * Before the first row of the queue
+     */
+    public static final QueueCursor START = new QueueCursor(0, Long.MIN_VALUE, "");
+
+    public final int priorityRank;
+    public final long timestamp;
+    public final String id;
+
+    public QueueCursor(int priorityRank, long timestamp, String id) {
+        this.priorityRank = priorityRank;
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * Position just after the given row.
+     *
+     * Rows without a timestamp sort ahead of every dated row of their rank;
+     * they are treated as the earliest instant.
+     */
+    public static QueueCursor after(OfflineTransaction transaction) {
+        return new QueueCursor(transaction.priorityRank,
+                transaction.timestamp != null ? transaction.timestamp.getTime() : Long.MIN_VALUE,
+                transaction.id);
+    }
+
+    public static QueueCursor after(QueueEntry entry) {
+        return new QueueCursor(entry.priorityRank,
+                entry.timestamp != null ? entry.timestamp.getTime() : Long.MIN_VALUE,
+                entry.id);
+    }
+
+    @Override
+    public String toString() {
+        return "QueueCursor{" + priorityRank + ", " + timestamp + ", " + id + '}';
+    }
+}
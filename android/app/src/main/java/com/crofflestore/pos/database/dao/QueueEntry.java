@@ -0,0 +1,38 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.ColumnInfo;
+import java.util.Date;
+
+/**
+ * Scheduling view of one queued transaction: the columns the sync queue
+ * orders, claims and counts by, without the items and payment blobs.
+ *
+ * Reading a QueueEntry never runs the payload converters. Rows about to be
+ * uploaded are loaded in full with OfflineTransactionDao.loadPayloads().
+ */
+public class QueueEntry {
+
+    @ColumnInfo(name = "id")
+    public String id;
+
+    @ColumnInfo(name = "timestamp")
+    public Date timestamp;
+
+    @ColumnInfo(name = "total")
+    public double total;
+
+    @ColumnInfo(name = "sync_status")
+    public String syncStatus;
+
+    @ColumnInfo(name = "priority")
+    public String priority;
+
+    @ColumnInfo(name = "priority_rank")
+    public int priorityRank;
+
+    @ColumnInfo(name = "sync_attempts")
+    public int syncAttempts;
+
+    @ColumnInfo(name = "last_sync_attempt")
+    public Date lastSyncAttempt;
+}
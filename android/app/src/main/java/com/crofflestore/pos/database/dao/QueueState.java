@@ -0,0 +1,100 @@
+package com.crofflestore.pos.database.dao;
+
+import java.util.Date;
+
+/**
+ * Immutable view of the sync queue for the status banner and the
+ * scheduler: counts per status and the row the next batch starts with
+ *
+ * Two states are equal when they would show and schedule the same thing,
+ * so observers are only told about real changes. The head is compared by
+ * id and status, not by its attempt counters.
+ */
+public final class QueueState {
+
+    public static final QueueState EMPTY = new QueueState(0, 0, 0, 0, null, null, null);
+
+    public final int pending;
+    public final int failed;
+    public final int syncing;
+    public final int conflict;
+    /** Id of the next row to sync (pending, or failed and due), or null */
+    public final String headId;
+    public final String headStatus;
+    /** When the earliest failed row comes due, or null if none are failed */
+    public final Date nextRetryAt;
+
+    public QueueState(int pending, int failed, int syncing, int conflict,
+                      String headId, String headStatus, Date nextRetryAt) {
+        this.pending = pending;
+        this.failed = failed;
+        this.syncing = syncing;
+        this.conflict = conflict;
+        this.headId = headId;
+        this.headStatus = headStatus;
+        this.nextRetryAt = nextRetryAt != null ? new Date(nextRetryAt.getTime()) : null;
+    }
+
+    public static QueueState of(QueueStatsTracker.Snapshot stats, QueueEntry head, Date nextRetryAt) {
+        return new QueueState(stats.pending, stats.failed, stats.syncing, stats.conflict,
+                head != null ? head.id : null, head != null ? head.syncStatus : null, nextRetryAt);
+    }
+
+    /** Pending plus failed rows, due or not */
+    public int queued() {
+        return pending + failed;
+    }
+
+    /** Whether a sync run would find a row to send right now */
+    public boolean hasDueWork() {
+        return headId != null;
+    }
+
+    /**
+     * Milliseconds from now until a failed row comes due, or -1 if no
+     * failed row is waiting on its backoff
+     */
+    public long millisUntilNextRetry(long now) {
+        if (nextRetryAt == null || nextRetryAt.getTime() <= now) {
+            return -1;
+        }
+        return nextRetryAt.getTime() - now;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof QueueState)) {
+            return false;
+        }
+        QueueState that = (QueueState) other;
+        return pending == that.pending && failed == that.failed
+                && syncing == that.syncing && conflict == that.conflict
+                && equal(headId, that.headId) && equal(headStatus, that.headStatus)
+                && equal(nextRetryAt, that.nextRetryAt);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = pending;
+        hash = 31 * hash + failed;
+        hash = 31 * hash + syncing;
+        hash = 31 * hash + conflict;
+        hash = 31 * hash + (headId != null ? headId.hashCode() : 0);
+        hash = 31 * hash + (headStatus != null ? headStatus.hashCode() : 0);
+        return 31 * hash + (nextRetryAt != null ? nextRetryAt.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "QueueState{pending=" + pending + ", failed=" + failed + ", syncing=" + syncing
+                + ", conflict=" + conflict + ", head=" + headId + "/" + headStatus
+                + ", nextRetryAt=" + nextRetryAt + "}";
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
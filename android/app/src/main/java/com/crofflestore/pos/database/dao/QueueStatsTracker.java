@@ -0,0 +1,302 @@
+package com.crofflestore.pos.database.dao;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory queue statistics kept current by the DAO write paths
+ *
+ * Every tracked write passes the affected rows' before and after
+ * {@link TransactionStatsRow} to {@link #apply}, so reading a snapshot is
+ * O(1) instead of a pass over the table. The tracker is loaded from, and
+ * periodically reconciled against, the grouped aggregate query
+ * (OfflineTransactionQueries.STATS_BY_STATUS_AND_RANK); reconciliation
+ * also repairs drift from writes that bypass the DAO or roll back after
+ * being applied.
+ *
+ * The oldest/newest queued timestamps cannot be maintained exactly when
+ * the current extreme leaves the queue, so they are then flagged stale and
+ * re-read with the index-only bounds query.
+ */
+public final class QueueStatsTracker {
+
+    public static final long RECONCILE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String[] STATUSES = {"pending", "failed", "syncing", "conflict", "synced"};
+    private static final int PENDING = 0;
+    private static final int FAILED = 1;
+    private static final int SYNCING = 2;
+    private static final int CONFLICT = 3;
+    private static final int SYNCED = 4;
+    // Rows with any other status only count toward the total
+    private static final int OTHER = STATUSES.length;
+
+    /**
+     * Immutable copy of the tracked statistics
+     */
+    public static final class Snapshot {
+        public final int total;
+        public final int pending;
+        public final int failed;
+        public final int syncing;
+        public final int conflict;
+        public final int synced;
+        // Pending plus failed, per priority rank
+        public final int highQueued;
+        public final int mediumQueued;
+        public final int lowQueued;
+        // Pending rows only, as the original reporting query did
+        public final double pendingAmount;
+        public final double todaysSyncedAmount;
+        public final Date oldestQueued;
+        public final Date newestQueued;
+
+        private Snapshot(QueueStatsTracker tracker) {
+            int[][] counts = tracker.counts;
+            int all = 0;
+            for (int[] byRank : counts) {
+                all += sum(byRank);
+            }
+            total = all;
+            pending = sum(counts[PENDING]);
+            failed = sum(counts[FAILED]);
+            syncing = sum(counts[SYNCING]);
+            conflict = sum(counts[CONFLICT]);
+            synced = sum(counts[SYNCED]);
+            highQueued = counts[PENDING][1] + counts[FAILED][1];
+            mediumQueued = counts[PENDING][2] + counts[FAILED][2];
+            lowQueued = counts[PENDING][3] + counts[FAILED][3];
+            pendingAmount = tracker.pendingAmount;
+            todaysSyncedAmount = tracker.dayAmount;
+            oldestQueued = tracker.oldestQueued != null ? new Date(tracker.oldestQueued) : null;
+            newestQueued = tracker.newestQueued != null ? new Date(tracker.newestQueued) : null;
+        }
+
+        private static int sum(int[] values) {
+            int sum = 0;
+            for (int value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    // [status][priority_rank], ranks 1..3; out-of-range ranks count as medium
+    private final int[][] counts = new int[STATUSES.length + 1][4];
+    private double pendingAmount;
+    private double dayAmount;
+    private long dayStart;
+    private long dayEnd;
+    private Long oldestQueued;
+    private Long newestQueued;
+    private boolean boundsStale;
+
+    private boolean loaded;
+    private boolean dirty;
+    private long reconciledAt;
+
+    /**
+     * Replace the tracked state with the result of the grouped aggregate
+     * query run for the local day [dayStart, dayEnd)
+     */
+    public void reset(List<StatusRankAggregate> groups, long dayStart, long dayEnd, long now) {
+        synchronized (lock) {
+            for (int[] byRank : counts) {
+                Arrays.fill(byRank, 0);
+            }
+            pendingAmount = 0;
+            dayAmount = 0;
+            oldestQueued = null;
+            newestQueued = null;
+            this.dayStart = dayStart;
+            this.dayEnd = dayEnd;
+
+            for (StatusRankAggregate group : groups) {
+                int status = statusIndex(group.syncStatus);
+                counts[status][rankIndex(group.priorityRank)] += group.rowCount;
+                if (status == PENDING) {
+                    pendingAmount += group.amount;
+                } else if (status == SYNCED) {
+                    dayAmount += group.amountInDay;
+                }
+                if (status == PENDING || status == FAILED) {
+                    if (group.oldest != null) {
+                        oldestQueued = min(oldestQueued, group.oldest.getTime());
+                    }
+                    if (group.newest != null) {
+                        newestQueued = max(newestQueued, group.newest.getTime());
+                    }
+                }
+            }
+
+            boundsStale = false;
+            dirty = false;
+            loaded = true;
+            reconciledAt = now;
+        }
+    }
+
+    /**
+     * Apply one row change. before is null for an insert, after is null for
+     * a delete.
+     */
+    public void apply(TransactionStatsRow before, TransactionStatsRow after) {
+        synchronized (lock) {
+            if (before != null) {
+                add(before, -1);
+            }
+            if (after != null) {
+                add(after, 1);
+            }
+        }
+    }
+
+    public void applyAll(List<TransactionStatsRow> before, List<TransactionStatsRow> after) {
+        synchronized (lock) {
+            for (TransactionStatsRow row : before) {
+                add(row, -1);
+            }
+            for (TransactionStatsRow row : after) {
+                add(row, 1);
+            }
+        }
+    }
+
+    /**
+     * Flag the tracked state as unreliable until the next reconciliation
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            dirty = true;
+        }
+    }
+
+    public boolean isLoaded() {
+        synchronized (lock) {
+            return loaded;
+        }
+    }
+
+    public boolean needsReconcile(long now) {
+        synchronized (lock) {
+            return !loaded || dirty || now - reconciledAt >= RECONCILE_INTERVAL_MS;
+        }
+    }
+
+    public boolean areBoundsStale() {
+        synchronized (lock) {
+            return boundsStale;
+        }
+    }
+
+    /**
+     * Install freshly queried oldest/newest queued timestamps
+     */
+    public void setQueuedBounds(Date oldest, Date newest) {
+        synchronized (lock) {
+            oldestQueued = oldest != null ? oldest.getTime() : null;
+            newestQueued = newest != null ? newest.getTime() : null;
+            boundsStale = false;
+        }
+    }
+
+    public Snapshot snapshot(long now) {
+        synchronized (lock) {
+            if (now >= dayEnd) {
+                rollDay(now);
+            }
+            return new Snapshot(this);
+        }
+    }
+
+    /**
+     * Local-time [start, end) of the day containing time, in epoch millis
+     */
+    public static long[] dayBounds(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long start = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return new long[] {start, calendar.getTimeInMillis()};
+    }
+
+    private void add(TransactionStatsRow row, int sign) {
+        int status = statusIndex(row.syncStatus);
+        counts[status][rankIndex(row.priorityRank)] += sign;
+        Long time = row.timestamp != null ? row.timestamp.getTime() : null;
+
+        if (status == PENDING) {
+            pendingAmount += sign * row.total;
+        } else if (status == SYNCED && time != null) {
+            // Sales are stamped at the till, so the first row of a new day
+            // arrives after midnight and nothing of that day is counted yet
+            if (sign > 0 && time >= dayEnd) {
+                rollDay(time);
+            }
+            if (time >= dayStart && time < dayEnd) {
+                dayAmount += sign * row.total;
+            }
+        }
+
+        if ((status == PENDING || status == FAILED) && time != null) {
+            if (sign > 0) {
+                if (!boundsStale) {
+                    oldestQueued = min(oldestQueued, time);
+                    newestQueued = max(newestQueued, time);
+                }
+            } else if (time.equals(oldestQueued) || time.equals(newestQueued)) {
+                boundsStale = true;
+            }
+        }
+        if (sign < 0 && queuedCount() == 0) {
+            oldestQueued = null;
+            newestQueued = null;
+            boundsStale = false;
+        }
+    }
+
+    private void rollDay(long time) {
+        long[] bounds = dayBounds(time);
+        dayStart = bounds[0];
+        dayEnd = bounds[1];
+        dayAmount = 0;
+    }
+
+    private int queuedCount() {
+        int queued = 0;
+        for (int rank = 0; rank < 4; rank++) {
+            queued += counts[PENDING][rank] + counts[FAILED][rank];
+        }
+        return queued;
+    }
+
+    private static int statusIndex(String status) {
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (STATUSES[i].equals(status)) {
+                return i;
+            }
+        }
+        return OTHER;
+    }
+
+    private static int rankIndex(int priorityRank) {
+        return priorityRank >= 1 && priorityRank <= 3 ? priorityRank : 2;
+    }
+
+    private static Long min(Long current, long value) {
+        return current == null || value < current ? value : current;
+    }
+
+    private static Long max(Long current, long value) {
+        return current == null || value > current ? value : current;
+    }
+}
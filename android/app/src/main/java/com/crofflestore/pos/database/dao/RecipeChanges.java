@@ -0,0 +1,20 @@
+package com.crofflestore.pos.database.dao;
+
+import com.crofflestore.pos.database.entities.Recipe;
+import com.crofflestore.pos.database.entities.RecipeIngredient;
+import java.util.List;
+
+/**
+ * Recipes changed after a version, with the ingredient lines of those
+ * still active, read in one transaction
+ */
+public final class RecipeChanges {
+
+    public final List<Recipe> recipes;
+    public final List<RecipeIngredient> ingredients;
+
+    public RecipeChanges(List<Recipe> recipes, List<RecipeIngredient> ingredients) {
+        this.recipes = recipes;
+        this.ingredients = ingredients;
+    }
+}
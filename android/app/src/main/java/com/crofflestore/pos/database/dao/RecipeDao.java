@@ -0,0 +1,78 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import com.crofflestore.pos.database.entities.Recipe;
+import com.crofflestore.pos.database.entities.RecipeIngredient;
+import java.util.List;
+
+/**
+ * Data Access Object for recipes
+ *
+ * Sales do not read recipes here: they explode through
+ * CroffleOfflineDatabase.recipeExplosions(), which recompiles only the
+ * recipes whose version moved (getChangesSince()).
+ */
+@Dao
+public abstract class RecipeDao {
+
+    @Query(RecipeQueries.INGREDIENTS_OF)
+    public abstract List<RecipeIngredient> getIngredients(String productId, String variationId);
+
+    @Query("SELECT * FROM recipes WHERE product_id = :productId AND variation_id = :variationId")
+    public abstract Recipe getRecipe(String productId, String variationId);
+
+    @Transaction
+    public RecipeChanges getChangesSince(long version) {
+        return new RecipeChanges(getRecipesChangedSince(version), getIngredientsChangedSince(version));
+    }
+
+    /**
+     * Replace a recipe's ingredient lines and stamp it with the next version
+     *
+     * @param variationId '' for the product's own recipe
+     */
+    @Transaction
+    public void saveRecipe(String productId, String variationId, List<RecipeIngredient> ingredients) {
+        deleteIngredients(productId, variationId);
+        for (RecipeIngredient ingredient : ingredients) {
+            ingredient.productId = productId;
+            ingredient.variationId = variationId;
+        }
+        if (!ingredients.isEmpty()) {
+            insertIngredients(ingredients);
+        }
+        saveHeader(new Recipe(productId, variationId, nextVersion(), true));
+    }
+
+    /**
+     * Remove a recipe; its sales deduct nothing (or fall back to the
+     * product's recipe, for a variation) from the next compile on
+     */
+    @Transaction
+    public void removeRecipe(String productId, String variationId) {
+        deleteIngredients(productId, variationId);
+        saveHeader(new Recipe(productId, variationId, nextVersion(), false));
+    }
+
+    @Query(RecipeQueries.RECIPES_CHANGED_SINCE)
+    protected abstract List<Recipe> getRecipesChangedSince(long version);
+
+    @Query(RecipeQueries.INGREDIENTS_CHANGED_SINCE)
+    protected abstract List<RecipeIngredient> getIngredientsChangedSince(long version);
+
+    @Query(RecipeQueries.NEXT_VERSION)
+    protected abstract long nextVersion();
+
+    @Query("DELETE FROM recipe_ingredients WHERE product_id = :productId AND variation_id = :variationId")
+    protected abstract void deleteIngredients(String productId, String variationId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract void insertIngredients(List<RecipeIngredient> ingredients);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract void saveHeader(Recipe recipe);
+}
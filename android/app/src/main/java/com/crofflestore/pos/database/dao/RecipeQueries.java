@@ -0,0 +1,23 @@
+package com.crofflestore.pos.database.dao;
+
+/**
+ * SQL of RecipeDao, shared with the benchmarks
+ */
+public final class RecipeQueries {
+
+    /** One recipe's ingredient lines: a primary key prefix range */
+    public static final String INGREDIENTS_OF =
+            "SELECT * FROM recipe_ingredients WHERE product_id = :productId AND variation_id = :variationId";
+
+    public static final String RECIPES_CHANGED_SINCE =
+            "SELECT * FROM recipes WHERE version > :version ORDER BY version";
+
+    public static final String INGREDIENTS_CHANGED_SINCE =
+            "SELECT i.* FROM recipes r JOIN recipe_ingredients i " +
+            "ON i.product_id = r.product_id AND i.variation_id = r.variation_id " +
+            "WHERE r.version > :version AND r.active";
+
+    public static final String NEXT_VERSION = "SELECT COALESCE(MAX(version), 0) + 1 FROM recipes";
+
+    private RecipeQueries() {}
+}
@@ -0,0 +1,17 @@
+package com.crofflestore.pos.database.dao;
+
+/**
+ * What open checkouts hold of one item, as InventoryCounters flushes it
+ */
+public final class ReservedCount {
+
+    public final String storeId;
+    public final String itemId;
+    public final long reserved;
+
+    public ReservedCount(String storeId, String itemId, long reserved) {
+        this.storeId = storeId;
+        this.itemId = itemId;
+        this.reserved = reserved;
+    }
+}
@@ -0,0 +1,59 @@
+package com.crofflestore.pos.database.dao;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-transaction retry schedule for failed uploads
+ *
+ * The delay after the nth failed attempt is BASE_DELAY_MS * 4^(n-1),
+ * capped at MAX_DELAY_MS, with "equal jitter": the row becomes due at a
+ * uniformly random point in the upper half of that window. Jitter keeps
+ * rows that failed together (one bad request, one outage) from all coming
+ * due in the same claim again; the lower bound keeps a row from being
+ * retried straight away.
+ *
+ * The schedule is sized to OfflineTransaction.MAX_SYNC_ATTEMPTS: the four
+ * retries after attempts 1..4 come due after 30-60 s, 2-4 min, 8-16 min
+ * and 30-60 min, so a row the server keeps rejecting is dead-lettered
+ * about 40-80 min after it first failed. Deferred rows, which got no
+ * answer at all, wait out the window of their next attempt without using
+ * it up.
+ */
+public final class RetryBackoff {
+
+    public static final long BASE_DELAY_MS = 60_000;
+    public static final long MAX_DELAY_MS = 60 * 60_000;
+
+    // 4^3 * 1 min is already past the cap
+    private static final int MAX_POWER = 3;
+
+    private RetryBackoff() {}
+
+    /**
+     * Upper bound of the delay window after the given number of failed
+     * attempts
+     */
+    public static long maxDelayMillis(int attempts) {
+        int power = Math.min(MAX_POWER, Math.max(0, attempts - 1));
+        return Math.min(MAX_DELAY_MS, BASE_DELAY_MS << (2 * power));
+    }
+
+    /**
+     * Delay for the given attempt count and a jitter value in [0, 1)
+     */
+    public static long delayMillis(int attempts, double jitter) {
+        long window = maxDelayMillis(attempts);
+        long half = window / 2;
+        return half + (long) (Math.min(Math.max(jitter, 0), 1) * (window - half));
+    }
+
+    /**
+     * When a row that has now failed attempts times, the last at failedAt,
+     * is due again
+     */
+    public static Date nextRetryAt(int attempts, Date failedAt) {
+        long base = failedAt != null ? failedAt.getTime() : System.currentTimeMillis();
+        return new Date(base + delayMillis(attempts, ThreadLocalRandom.current().nextDouble()));
+    }
+}
@@ -0,0 +1,221 @@
+package com.crofflestore.pos.database.dao;
+
+/**
+ * SQL maintaining and reading sales_aggregates
+ * ({@link com.crofflestore.pos.database.entities.SalesAggregate})
+ *
+ * The triggers are installed by CroffleOfflineDatabase.createSchemaExtras()
+ * and by the benchmark schema from here, so both run the same statements.
+ * SQLite on API 23 predates UPSERT, so adding a sale to its bucket is an
+ * insert of the zeroed row if missing followed by an UPDATE; both are
+ * primary key seeks. A sale without a timestamp has no bucket and is not
+ * counted.
+ *
+ * The report queries read one day or one shift: at most 24 rows per shift
+ * and payment method.
+ */
+public final class SalesAggregateQueries {
+
+    /** Columns of a row still in offline_transactions, from inside its BEFORE INSERT trigger */
+    private static final String REPLACED_ROW = "(SELECT %s FROM offline_transactions WHERE id = NEW.id)";
+
+    /**
+     * The row is moving to or from dead_letter_transactions: the copy is
+     * written before the delete, and the requeue inserts before removing it
+     */
+    private static final String NOT_DEAD_LETTER =
+            "NOT EXISTS (SELECT 1 FROM dead_letter_transactions WHERE id = %s.id)";
+
+    /**
+     * Triggers on offline_transactions, and one on dead_letter_transactions
+     * for discarded dead letters. A REPLACE deletes the old row
+     * without firing delete triggers, so the BEFORE INSERT trigger takes
+     * the old figures out itself. Claims and failures do not touch a
+     * watched column or change whether a row is synced, so they cost
+     * nothing here.
+     *
+     * The figures follow the sale, not its sync state: a sale moved to
+     * dead_letter_transactions, or requeued from there, stays counted once.
+     * Only deleting an unsynced sale outright, a void, or discarding its
+     * dead letter takes it out.
+     */
+    public static final String[] TRIGGERS = {
+        "CREATE TRIGGER IF NOT EXISTS sales_aggregates_bi " +
+            "BEFORE INSERT ON offline_transactions " +
+            "WHEN EXISTS (SELECT 1 FROM offline_transactions WHERE id = NEW.id) " +
+            "BEGIN " + apply(REPLACED_ROW, "-") + "; END",
+        "CREATE TRIGGER IF NOT EXISTS sales_aggregates_ai " +
+            "AFTER INSERT ON offline_transactions " +
+            "WHEN " + String.format(NOT_DEAD_LETTER, "NEW") + " " +
+            "BEGIN " + bucket("NEW.%s") + "; " + apply("NEW.%s", "+") + "; END",
+        "CREATE TRIGGER IF NOT EXISTS sales_aggregates_au " +
+            "AFTER UPDATE OF timestamp, shift_id, payment_method, subtotal, tax, discount, total, sync_status " +
+            "ON offline_transactions " +
+            "WHEN OLD.timestamp IS NOT NEW.timestamp OR OLD.shift_id IS NOT NEW.shift_id " +
+            "OR OLD.payment_method IS NOT NEW.payment_method OR OLD.subtotal IS NOT NEW.subtotal " +
+            "OR OLD.tax IS NOT NEW.tax OR OLD.discount IS NOT NEW.discount OR OLD.total IS NOT NEW.total " +
+            "OR (OLD.sync_status IS 'synced') != (NEW.sync_status IS 'synced') " +
+            "BEGIN " + apply("OLD.%s", "-") + "; " + bucket("NEW.%s") + "; " + apply("NEW.%s", "+") + "; END",
+        // Retention deletes synced rows; their sales stay reported
+        "CREATE TRIGGER IF NOT EXISTS sales_aggregates_ad " +
+            "AFTER DELETE ON offline_transactions " +
+            "WHEN OLD.sync_status IS NOT 'synced' AND " + String.format(NOT_DEAD_LETTER, "OLD") + " " +
+            "BEGIN " + apply("OLD.%s", "-") + "; END",
+        // A discarded dead letter; a requeue has written the row back first
+        "CREATE TRIGGER IF NOT EXISTS sales_aggregates_dead_letter_ad " +
+            "AFTER DELETE ON dead_letter_transactions " +
+            "WHEN NOT EXISTS (SELECT 1 FROM offline_transactions WHERE id = OLD.id) " +
+            "BEGIN " + apply("OLD.%s", "-") + "; END"
+    };
+
+    /**
+     * Rebuild sales_aggregates from offline_transactions, for the migration
+     * that creates it. Sales already removed by retention cannot be
+     * recovered, so this is not a general repair.
+     */
+    public static final String FILL = fill("sales_aggregates", "offline_transactions");
+
+    private static final String SAME_BUCKET =
+            "d.business_day = sales_aggregates.business_day AND d.hour = sales_aggregates.hour " +
+            "AND d.shift_id = sales_aggregates.shift_id AND d.payment_method = sales_aggregates.payment_method";
+
+    /**
+     * Add the sales in dead_letter_transactions, for the migration that
+     * stops dead-lettering from taking them out. Summed per bucket first,
+     * so each bucket is one primary key seek. Dead letters never synced,
+     * so the synced figures are left alone.
+     */
+    public static final String[] ADD_DEAD_LETTERS = {
+        "CREATE TEMP TABLE dead_letter_sales (business_day TEXT NOT NULL, hour INTEGER NOT NULL, " +
+            "shift_id TEXT NOT NULL, payment_method TEXT NOT NULL, transaction_count INTEGER NOT NULL, " +
+            "subtotal_cents INTEGER NOT NULL, tax_cents INTEGER NOT NULL, discount_cents INTEGER NOT NULL, " +
+            "total_cents INTEGER NOT NULL, synced_count INTEGER NOT NULL, synced_cents INTEGER NOT NULL, " +
+            "PRIMARY KEY (business_day, hour, shift_id, payment_method))",
+        fill("dead_letter_sales", "dead_letter_transactions"),
+        "INSERT INTO sales_aggregates (business_day, hour, shift_id, payment_method) " +
+            "SELECT business_day, hour, shift_id, payment_method FROM dead_letter_sales AS d " +
+            "WHERE NOT EXISTS (SELECT 1 FROM sales_aggregates WHERE " + SAME_BUCKET + ")",
+        "UPDATE sales_aggregates SET " +
+            "transaction_count = transaction_count + " + fromBucket("transaction_count") + ", " +
+            "subtotal_cents = subtotal_cents + " + fromBucket("subtotal_cents") + ", " +
+            "tax_cents = tax_cents + " + fromBucket("tax_cents") + ", " +
+            "discount_cents = discount_cents + " + fromBucket("discount_cents") + ", " +
+            "total_cents = total_cents + " + fromBucket("total_cents") + " " +
+            "WHERE EXISTS (SELECT 1 FROM dead_letter_sales AS d WHERE " + SAME_BUCKET + ")",
+        "DROP TABLE dead_letter_sales"
+    };
+
+    private static final String SUMS =
+            "SUM(transaction_count) AS transaction_count, TOTAL(subtotal_cents) / 100.0 AS subtotal, " +
+            "TOTAL(tax_cents) / 100.0 AS tax, TOTAL(discount_cents) / 100.0 AS discount, " +
+            "TOTAL(total_cents) / 100.0 AS total, SUM(synced_count) AS synced_count, " +
+            "TOTAL(synced_cents) / 100.0 AS synced_total ";
+
+    // Buckets emptied by a replace, update or delete are left in place
+    private static final String NOT_EMPTY = "HAVING SUM(transaction_count) > 0 ";
+
+    public static final String DAY_TOTALS =
+            "SELECT " + SUMS + "FROM sales_aggregates WHERE business_day = :businessDay";
+
+    public static final String DAY_BY_PAYMENT_METHOD =
+            "SELECT NULLIF(payment_method, '') AS payment_method, " + SUMS +
+            "FROM sales_aggregates WHERE business_day = :businessDay " +
+            "GROUP BY payment_method " + NOT_EMPTY + "ORDER BY payment_method";
+
+    public static final String DAY_BY_HOUR =
+            "SELECT hour, " + SUMS + "FROM sales_aggregates WHERE business_day = :businessDay " +
+            "GROUP BY hour " + NOT_EMPTY + "ORDER BY hour";
+
+    public static final String SHIFT_TOTALS =
+            "SELECT " + SUMS + "FROM sales_aggregates WHERE shift_id = :shiftId";
+
+    public static final String SHIFT_BY_PAYMENT_METHOD =
+            "SELECT NULLIF(payment_method, '') AS payment_method, " + SUMS +
+            "FROM sales_aggregates WHERE shift_id = :shiftId " +
+            "GROUP BY payment_method " + NOT_EMPTY + "ORDER BY payment_method";
+
+    private static final String TODAY = "business_day = strftime('%Y-%m-%d', 'now', 'localtime') ";
+
+    public static final String TODAYS_SYNCED_AMOUNT =
+            "SELECT TOTAL(synced_cents) / 100.0 FROM sales_aggregates WHERE " + TODAY;
+
+    public static final String TODAYS_SYNCED_BY_PAYMENT_METHOD =
+            "SELECT NULLIF(payment_method, '') AS payment_method, SUM(synced_count) AS count, " +
+            "TOTAL(synced_cents) / 100.0 AS total_amount FROM sales_aggregates WHERE " + TODAY +
+            "GROUP BY payment_method HAVING SUM(synced_count) > 0";
+
+    private SalesAggregateQueries() {}
+
+    /**
+     * Sum the rows of source into the buckets of target, which must hold
+     * none of them yet
+     */
+    private static String fill(String target, String source) {
+        return "INSERT INTO " + target + " (business_day, hour, shift_id, payment_method, transaction_count, " +
+                "subtotal_cents, tax_cents, discount_cents, total_cents, synced_count, synced_cents) " +
+                "SELECT " + day("%s") + ", " + hour("%s") + ", COALESCE(shift_id, ''), COALESCE(payment_method, ''), " +
+                "COUNT(*), SUM(" + cents("subtotal") + "), SUM(" + cents("tax") + "), SUM(" + cents("discount") + "), " +
+                "SUM(" + cents("total") + "), SUM(" + synced("%s") + "), SUM(" + syncedCents("%s") + ") " +
+                "FROM " + source + " WHERE timestamp IS NOT NULL GROUP BY 1, 2, 3, 4";
+    }
+
+    private static String fromBucket(String column) {
+        return "(SELECT d." + column + " FROM dead_letter_sales AS d WHERE " + SAME_BUCKET + ")";
+    }
+
+    /**
+     * Add (sign "+") or take out (sign "-") one transaction's figures.
+     * row formats a column name into an expression for that row's value.
+     */
+    private static String apply(String row, String sign) {
+        return "UPDATE sales_aggregates SET " +
+                "transaction_count = transaction_count " + sign + " 1, " +
+                "subtotal_cents = subtotal_cents " + sign + " " + cents(String.format(row, "subtotal")) + ", " +
+                "tax_cents = tax_cents " + sign + " " + cents(String.format(row, "tax")) + ", " +
+                "discount_cents = discount_cents " + sign + " " + cents(String.format(row, "discount")) + ", " +
+                "total_cents = total_cents " + sign + " " + cents(String.format(row, "total")) + ", " +
+                "synced_count = synced_count " + sign + " " + synced(row) + ", " +
+                "synced_cents = synced_cents " + sign + " " + syncedCents(row) + " WHERE " + key(row);
+    }
+
+    /**
+     * Create the zeroed bucket of a row unless it exists. Not INSERT OR
+     * IGNORE: a trigger's statements take the conflict policy of the
+     * statement firing it, and Room's INSERT OR REPLACE would turn that
+     * into a reset of the bucket.
+     */
+    private static String bucket(String row) {
+        String values = day(row) + ", " + hour(row) + ", COALESCE(" + String.format(row, "shift_id") + ", ''), " +
+                "COALESCE(" + String.format(row, "payment_method") + ", '')";
+        return "INSERT INTO sales_aggregates (business_day, hour, shift_id, payment_method) " +
+                "SELECT " + values + " WHERE " + day(row) + " IS NOT NULL AND NOT EXISTS " +
+                "(SELECT 1 FROM sales_aggregates WHERE " + key(row) + ")";
+    }
+
+    private static String key(String row) {
+        return "business_day = " + day(row) + " AND hour = " + hour(row) + " " +
+                "AND shift_id = COALESCE(" + String.format(row, "shift_id") + ", '') " +
+                "AND payment_method = COALESCE(" + String.format(row, "payment_method") + ", '')";
+    }
+
+    private static String day(String row) {
+        return "strftime('%Y-%m-%d', " + String.format(row, "timestamp") + " / 1000, 'unixepoch', 'localtime')";
+    }
+
+    private static String hour(String row) {
+        return "CAST(strftime('%H', " + String.format(row, "timestamp") + " / 1000, 'unixepoch', 'localtime') AS INTEGER)";
+    }
+
+    private static String cents(String amount) {
+        return "CAST(ROUND(" + amount + " * 100) AS INTEGER)";
+    }
+
+    private static String synced(String row) {
+        return "(" + String.format(row, "sync_status") + " IS 'synced')";
+    }
+
+    private static String syncedCents(String row) {
+        return "(CASE WHEN " + String.format(row, "sync_status") + " IS 'synced' THEN " +
+                cents(String.format(row, "total")) + " ELSE 0 END)";
+    }
+}
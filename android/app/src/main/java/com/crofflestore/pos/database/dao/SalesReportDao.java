@@ -0,0 +1,33 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.RoomWarnings;
+import java.util.List;
+
+/**
+ * Data Access Object for X/Z reports and shift close
+ *
+ * Read-only: sales_aggregates is kept current by triggers on
+ * offline_transactions (SalesAggregateQueries). Days are
+ * SalesAggregate.businessDay() keys.
+ */
+@Dao
+@SuppressWarnings(RoomWarnings.CURSOR_MISMATCH) // SalesTotals' grouping columns are optional
+public interface SalesReportDao {
+
+    @Query(SalesAggregateQueries.DAY_TOTALS)
+    SalesTotals getDayTotals(String businessDay);
+
+    @Query(SalesAggregateQueries.DAY_BY_PAYMENT_METHOD)
+    List<SalesTotals> getDayByPaymentMethod(String businessDay);
+
+    @Query(SalesAggregateQueries.DAY_BY_HOUR)
+    List<SalesTotals> getDayByHour(String businessDay);
+
+    @Query(SalesAggregateQueries.SHIFT_TOTALS)
+    SalesTotals getShiftTotals(String shiftId);
+
+    @Query(SalesAggregateQueries.SHIFT_BY_PAYMENT_METHOD)
+    List<SalesTotals> getShiftByPaymentMethod(String shiftId);
+}
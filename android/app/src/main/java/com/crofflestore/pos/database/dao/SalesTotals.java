@@ -0,0 +1,40 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.ColumnInfo;
+
+/**
+ * Summed sales_aggregates rows, for X/Z reports and shift close
+ *
+ * paymentMethod and hour are only filled in by the queries that group by
+ * them.
+ */
+public class SalesTotals {
+
+    // Null when the sales had no payment method
+    @ColumnInfo(name = "payment_method")
+    public String paymentMethod;
+
+    @ColumnInfo(name = "hour")
+    public int hour;
+
+    @ColumnInfo(name = "transaction_count")
+    public int transactionCount;
+
+    @ColumnInfo(name = "subtotal")
+    public double subtotal;
+
+    @ColumnInfo(name = "tax")
+    public double tax;
+
+    @ColumnInfo(name = "discount")
+    public double discount;
+
+    @ColumnInfo(name = "total")
+    public double total;
+
+    @ColumnInfo(name = "synced_count")
+    public int syncedCount;
+
+    @ColumnInfo(name = "synced_total")
+    public double syncedTotal;
+}
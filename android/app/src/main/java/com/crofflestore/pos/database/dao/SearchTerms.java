@@ -0,0 +1,104 @@
+package com.crofflestore.pos.database.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Turns what a cashier typed into the bound arguments of
+ * OfflineTransactionQueries.SEARCH_SUMMARIES
+ *
+ * FTS4's unicode61 tokenizer splits on anything that is not a letter or
+ * digit and folds case, so the input is split the same way. Words already
+ * finished (followed by a space or punctuation) must match whole; the
+ * word still being typed matches as a prefix ("choco cara*").
+ * Whole words and the 2 and 3 character prefixes the search table indexes
+ * (TransactionSearchEntry) are read lazily, newest first, so a LIMIT
+ * stops early; a longer prefix reads every matching document. A
+ * one-character word being typed only matches whole, which keeps the
+ * first keystroke from expanding to every term. Words are ANDed, as FTS4
+ * does for space-separated terms.
+ *
+ * The receipt and customer prefix tiers are matched on their indexes
+ * instead, as a half-open range (upperBound()).
+ */
+public final class SearchTerms {
+
+    /** Longest input considered; the rest is dropped */
+    public static final int MAX_INPUT_CHARS = 64;
+
+    /** Shortest word still being typed that is matched as a prefix */
+    public static final int MIN_PREFIX_CHARS = 2;
+
+    private SearchTerms() {}
+
+    /**
+     * Letter and digit runs of input, lower-cased
+     */
+    public static List<String> tokens(String input) {
+        if (input == null) {
+            return Collections.emptyList();
+        }
+        String text = clip(input);
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * MATCH argument requiring every word of input, the last as a prefix
+     * while it is still being typed. Empty when input has no words, which
+     * matches nothing.
+     */
+    public static String match(String input) {
+        List<String> tokens = tokens(input);
+        String text = input == null ? "" : clip(input);
+        boolean typing = !text.isEmpty() && Character.isLetterOrDigit(text.charAt(text.length() - 1));
+        StringBuilder match = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (i > 0) {
+                match.append(' ');
+            }
+            match.append(token);
+            if (typing && i == tokens.size() - 1 && token.length() >= MIN_PREFIX_CHARS) {
+                match.append('*');
+            }
+        }
+        return match.toString();
+    }
+
+    private static String clip(String input) {
+        return input.length() > MAX_INPUT_CHARS ? input.substring(0, MAX_INPUT_CHARS) : input;
+    }
+
+    /**
+     * Smallest string greater than every string starting with prefix, so
+     * that {@code value >= prefix AND value < upperBound(prefix)} is a
+     * prefix match an index can seek. Null when no such bound exists (an
+     * empty prefix, or one made only of U+FFFF).
+     */
+    public static String upperBound(String prefix) {
+        if (prefix == null) {
+            return null;
+        }
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+}
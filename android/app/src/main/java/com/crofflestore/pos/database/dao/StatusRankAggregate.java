@@ -0,0 +1,32 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.ColumnInfo;
+import java.util.Date;
+
+/**
+ * One (sync_status, priority_rank) group of the single-pass statistics query
+ */
+public class StatusRankAggregate {
+
+    @ColumnInfo(name = "sync_status")
+    public String syncStatus;
+
+    @ColumnInfo(name = "priority_rank")
+    public int priorityRank;
+
+    @ColumnInfo(name = "row_count")
+    public int rowCount;
+
+    @ColumnInfo(name = "amount")
+    public double amount;
+
+    // Sum of total over rows whose timestamp is inside the requested day
+    @ColumnInfo(name = "amount_in_day")
+    public double amountInDay;
+
+    @ColumnInfo(name = "oldest")
+    public Date oldest;
+
+    @ColumnInfo(name = "newest")
+    public Date newest;
+}
@@ -0,0 +1,70 @@
+package com.crofflestore.pos.database.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The sync_error_history column: one line per failed attempt,
+ *
+ *   attempt TAB epoch millis TAB error
+ *
+ * appended by OfflineTransactionDao in the same UPDATE that records the
+ * failure. sync_error only holds the latest error; the history is what a
+ * dead-lettered row carries to show how it got there. Errors are
+ * flattened to one line and cut at MAX_ERROR_CHARS, so a row's history
+ * stays a few KB at most.
+ */
+public final class SyncErrorHistory {
+
+    public static final int MAX_ERROR_CHARS = 500;
+
+    public static final class Entry {
+        public final int attempt;
+        public final Date at;
+        public final String error;
+
+        Entry(int attempt, Date at, String error) {
+            this.attempt = attempt;
+            this.at = at;
+            this.error = error;
+        }
+    }
+
+    private SyncErrorHistory() {}
+
+    /**
+     * The line recorded for a failed attempt
+     */
+    public static String line(int attempt, Date at, String error) {
+        String text = error == null ? "" : error.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+        if (text.length() > MAX_ERROR_CHARS) {
+            text = text.substring(0, MAX_ERROR_CHARS);
+        }
+        return attempt + "\t" + (at != null ? at.getTime() : 0) + "\t" + text;
+    }
+
+    /**
+     * Entries of a stored history, oldest first. Malformed lines are
+     * skipped.
+     */
+    public static List<Entry> parse(String history) {
+        if (history == null || history.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (String line : history.split("\n")) {
+            String[] parts = line.split("\t", 3);
+            if (parts.length < 3) {
+                continue;
+            }
+            try {
+                entries.add(new Entry(Integer.parseInt(parts[0]), new Date(Long.parseLong(parts[1])), parts[2]));
+            } catch (NumberFormatException e) {
+                // not one of ours
+            }
+        }
+        return entries;
+    }
+}
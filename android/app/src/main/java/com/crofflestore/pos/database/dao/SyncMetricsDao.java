@@ -0,0 +1,71 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import com.crofflestore.pos.database.entities.SyncMetricsSample;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Data Access Object for sync run metrics
+ *
+ * The table is a rolling window: every record() drops samples older than
+ * RETENTION_MS and beyond the newest MAX_SAMPLES, so it stays a few hundred
+ * KB however often sync runs. The read side is what the back office polls
+ * to spot devices that are falling behind.
+ */
+@Dao
+public abstract class SyncMetricsDao {
+
+    public static final long RETENTION_MS = TimeUnit.DAYS.toMillis(7);
+    public static final int MAX_SAMPLES = 1000;
+
+    /**
+     * Insert one run's sample and trim the window
+     */
+    @Transaction
+    public void record(SyncMetricsSample sample) {
+        insert(sample);
+        deleteRecordedBefore(new Date(sample.recordedAt.getTime() - RETENTION_MS));
+        deleteAllButNewest(MAX_SAMPLES);
+    }
+
+    @Insert
+    protected abstract long insert(SyncMetricsSample sample);
+
+    @Query("DELETE FROM sync_metrics WHERE recorded_at < :cutoff")
+    protected abstract int deleteRecordedBefore(Date cutoff);
+
+    @Query("DELETE FROM sync_metrics WHERE id <= " +
+           "(SELECT id FROM sync_metrics ORDER BY id DESC LIMIT 1 OFFSET :keep)")
+    protected abstract int deleteAllButNewest(int keep);
+
+    @Query("SELECT * FROM sync_metrics ORDER BY id DESC LIMIT 1")
+    public abstract SyncMetricsSample getLatest();
+
+    @Query("SELECT * FROM sync_metrics ORDER BY id DESC LIMIT :limit")
+    public abstract List<SyncMetricsSample> getRecent(int limit);
+
+    @Query("SELECT * FROM sync_metrics WHERE recorded_at >= :since ORDER BY recorded_at ASC")
+    public abstract List<SyncMetricsSample> getSince(Date since);
+
+    /**
+     * Totals and worst cases over every run recorded since the given time
+     */
+    @Query("SELECT COUNT(*) AS runs, " +
+           "IFNULL(SUM(synced_count), 0) AS synced_count, " +
+           "IFNULL(SUM(failed_count), 0) AS failed_count, " +
+           "IFNULL(SUM(conflict_count), 0) AS conflict_count, " +
+           "IFNULL(SUM(bytes_uploaded), 0) AS bytes_uploaded, " +
+           "IFNULL(SUM(duration_ms), 0) AS duration_ms, " +
+           "IFNULL(MAX(upload_p99_us), 0) AS worst_upload_p99_us, " +
+           "MAX(oldest_queued_age_ms) AS worst_oldest_queued_age_ms " +
+           "FROM sync_metrics WHERE recorded_at >= :since")
+    public abstract SyncMetricsSummary getSummarySince(Date since);
+
+    @Query("DELETE FROM sync_metrics")
+    public abstract void deleteAll();
+}
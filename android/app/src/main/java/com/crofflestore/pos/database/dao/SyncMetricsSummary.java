@@ -0,0 +1,56 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.ColumnInfo;
+
+/**
+ * Sync metrics aggregated over a period (SyncMetricsDao.getSummarySince)
+ */
+public class SyncMetricsSummary {
+
+    @ColumnInfo(name = "runs")
+    public int runs;
+
+    @ColumnInfo(name = "synced_count")
+    public long syncedCount;
+
+    @ColumnInfo(name = "failed_count")
+    public long failedCount;
+
+    @ColumnInfo(name = "conflict_count")
+    public long conflictCount;
+
+    @ColumnInfo(name = "bytes_uploaded")
+    public long bytesUploaded;
+
+    // Time spent inside sync runs, not wall time over the period
+    @ColumnInfo(name = "duration_ms")
+    public long durationMs;
+
+    @ColumnInfo(name = "worst_upload_p99_us")
+    public long worstUploadP99Micros;
+
+    // Null when no run of the period ended with anything queued
+    @ColumnInfo(name = "worst_oldest_queued_age_ms")
+    public Long worstOldestQueuedAgeMs;
+
+    /**
+     * Synced transactions per second of sync run time
+     */
+    public double getTransactionsPerSecond() {
+        return durationMs == 0 ? 0 : syncedCount * 1000.0 / durationMs;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncMetricsSummary{" +
+                "runs=" + runs +
+                ", synced=" + syncedCount +
+                ", failed=" + failedCount +
+                ", conflicts=" + conflictCount +
+                ", bytesUploaded=" + bytesUploaded +
+                ", tps=" + getTransactionsPerSecond() +
+                ", worstUploadP99us=" + worstUploadP99Micros +
+                ", worstOldestQueuedAgeMs=" + worstOldestQueuedAgeMs +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.crofflestore.pos.database.dao;
+
+/**
+ * Result of uploading a single offline transaction
+ *
+ * Produced by the sync path and committed in bulk through
+ * {@link OfflineTransactionDao#applySyncOutcomes}.
+ */
+public final class SyncOutcome {
+    
+    public enum Status {
+        SYNCED,
+        FAILED,   // rejected by the server; counts toward MAX_SYNC_ATTEMPTS
+        DEFERRED, // no answer (offline, timeout, retryable status); retried without counting an attempt
+        CONFLICT,
+        RELEASED // not uploaded, handed back to the queue without counting an attempt
+    }
+    
+    public final String transactionId;
+    public final Status status;
+    public final String error;        // set for FAILED and DEFERRED
+    public final String conflictData; // set for CONFLICT, JSON payload from the server
+    
+    private SyncOutcome(String transactionId, Status status, String error, String conflictData) {
+        this.transactionId = transactionId;
+        this.status = status;
+        this.error = error;
+        this.conflictData = conflictData;
+    }
+    
+    public static SyncOutcome synced(String transactionId) {
+        return new SyncOutcome(transactionId, Status.SYNCED, null, null);
+    }
+    
+    public static SyncOutcome failed(String transactionId, String error) {
+        return new SyncOutcome(transactionId, Status.FAILED, error, null);
+    }
+    
+    public static SyncOutcome deferred(String transactionId, String error) {
+        return new SyncOutcome(transactionId, Status.DEFERRED, error, null);
+    }
+    
+    public static SyncOutcome conflict(String transactionId, String conflictData) {
+        return new SyncOutcome(transactionId, Status.CONFLICT, null, conflictData);
+    }
+    
+    public static SyncOutcome released(String transactionId) {
+        return new SyncOutcome(transactionId, Status.RELEASED, null, null);
+    }
+    
+    @Override
+    public String toString() {
+        return "SyncOutcome{" +
+                "transactionId='" + transactionId + '\'' +
+                ", status=" + status +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,16 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.ColumnInfo;
+import java.util.Date;
+
+/**
+ * Oldest and newest timestamp of a set of rows, null when the set is empty
+ */
+public class TimestampBounds {
+
+    @ColumnInfo(name = "oldest")
+    public Date oldest;
+
+    @ColumnInfo(name = "newest")
+    public Date newest;
+}
@@ -0,0 +1,85 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Dao;
+import androidx.room.Query;
+import com.crofflestore.pos.database.entities.TransactionItemRow;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Data Access Object for transaction line items
+ *
+ * Read-only: rows are written and deleted together with their parent by
+ * OfflineTransactionDao. All sales aggregates take a [from, to) range on
+ * sold_at, the parent's timestamp.
+ */
+@Dao
+public interface TransactionItemDao {
+
+    @Query("SELECT * FROM transaction_items WHERE transaction_id = :transactionId ORDER BY line_number ASC")
+    List<TransactionItemRow> getByTransactionId(String transactionId);
+
+    // Product and category sales
+
+    @Query("SELECT product_id, MAX(sku) AS sku, MAX(name) AS name, SUM(quantity) AS units_sold, " +
+           "TOTAL(total_price) AS revenue, COUNT(DISTINCT transaction_id) AS transaction_count " +
+           "FROM transaction_items WHERE sold_at >= :from AND sold_at < :to " +
+           "GROUP BY product_id ORDER BY units_sold DESC")
+    List<ProductSales> getProductSales(Date from, Date to);
+
+    @Query("SELECT product_id, MAX(sku) AS sku, MAX(name) AS name, SUM(quantity) AS units_sold, " +
+           "TOTAL(total_price) AS revenue, COUNT(DISTINCT transaction_id) AS transaction_count " +
+           "FROM transaction_items WHERE store_id = :storeId AND sold_at >= :from AND sold_at < :to " +
+           "GROUP BY product_id ORDER BY units_sold DESC")
+    List<ProductSales> getProductSalesForStore(String storeId, Date from, Date to);
+
+    @Query("SELECT category, SUM(quantity) AS units_sold, TOTAL(total_price) AS revenue, " +
+           "COUNT(DISTINCT transaction_id) AS transaction_count " +
+           "FROM transaction_items WHERE sold_at >= :from AND sold_at < :to " +
+           "GROUP BY category ORDER BY revenue DESC")
+    List<CategorySales> getCategorySales(Date from, Date to);
+
+    @Query("SELECT IFNULL(SUM(quantity), 0) FROM transaction_items " +
+           "WHERE product_id = :productId AND sold_at >= :from AND sold_at < :to")
+    int getUnitsSoldByProduct(String productId, Date from, Date to);
+
+    @Query("SELECT IFNULL(SUM(quantity), 0) FROM transaction_items " +
+           "WHERE sku = :sku AND sold_at >= :from AND sold_at < :to")
+    int getUnitsSoldBySku(String sku, Date from, Date to);
+
+    @Query("SELECT IFNULL(SUM(quantity), 0) FROM transaction_items " +
+           "WHERE category = :category AND sold_at >= :from AND sold_at < :to")
+    int getUnitsSoldByCategory(String category, Date from, Date to);
+
+    @Query("SELECT COUNT(*) FROM transaction_items")
+    int getItemRowCount();
+
+    // Query results
+
+    class ProductSales {
+        @ColumnInfo(name = "product_id")
+        public String productId;
+        @ColumnInfo(name = "sku")
+        public String sku;
+        @ColumnInfo(name = "name")
+        public String name;
+        @ColumnInfo(name = "units_sold")
+        public int unitsSold;
+        @ColumnInfo(name = "revenue")
+        public double revenue;
+        @ColumnInfo(name = "transaction_count")
+        public int transactionCount;
+    }
+
+    class CategorySales {
+        @ColumnInfo(name = "category")
+        public String category;
+        @ColumnInfo(name = "units_sold")
+        public int unitsSold;
+        @ColumnInfo(name = "revenue")
+        public double revenue;
+        @ColumnInfo(name = "transaction_count")
+        public int transactionCount;
+    }
+}
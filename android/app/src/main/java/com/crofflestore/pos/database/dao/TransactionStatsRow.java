@@ -0,0 +1,74 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.ColumnInfo;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.Date;
+
+/**
+ * The columns of one offline transaction that queue statistics depend on,
+ * read before a write so the write can be applied to QueueStatsTracker as
+ * a delta
+ */
+public class TransactionStatsRow {
+
+    @ColumnInfo(name = "id")
+    public String id;
+
+    @ColumnInfo(name = "sync_status")
+    public String syncStatus;
+
+    @ColumnInfo(name = "priority_rank")
+    public int priorityRank;
+
+    @ColumnInfo(name = "sync_attempts")
+    public int syncAttempts;
+
+    @ColumnInfo(name = "total")
+    public double total;
+
+    @ColumnInfo(name = "timestamp")
+    public Date timestamp;
+
+    /**
+     * Stats view of an entity as it will be stored. The rank follows the
+     * priority label, as the priority_rank triggers enforce.
+     */
+    public static TransactionStatsRow of(OfflineTransaction transaction) {
+        TransactionStatsRow row = new TransactionStatsRow();
+        row.id = transaction.id;
+        row.syncStatus = transaction.syncStatus;
+        row.priorityRank = OfflineTransaction.rankOf(transaction.priority);
+        row.syncAttempts = transaction.syncAttempts;
+        row.total = transaction.total;
+        row.timestamp = transaction.timestamp;
+        return row;
+    }
+
+    /**
+     * Stats view of a queue entry as read from the table
+     */
+    public static TransactionStatsRow of(QueueEntry entry) {
+        TransactionStatsRow row = new TransactionStatsRow();
+        row.id = entry.id;
+        row.syncStatus = entry.syncStatus;
+        row.priorityRank = entry.priorityRank;
+        row.syncAttempts = entry.syncAttempts;
+        row.total = entry.total;
+        row.timestamp = entry.timestamp;
+        return row;
+    }
+
+    /**
+     * Copy with a different sync status
+     */
+    TransactionStatsRow withStatus(String status) {
+        TransactionStatsRow row = new TransactionStatsRow();
+        row.id = id;
+        row.syncStatus = status;
+        row.priorityRank = priorityRank;
+        row.syncAttempts = syncAttempts;
+        row.total = total;
+        row.timestamp = timestamp;
+        return row;
+    }
+}
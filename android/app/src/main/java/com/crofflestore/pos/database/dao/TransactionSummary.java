@@ -0,0 +1,42 @@
+package com.crofflestore.pos.database.dao;
+
+import androidx.room.ColumnInfo;
+import java.util.Date;
+
+/**
+ * One row of a transaction list screen: everything shown in the list,
+ * nothing that needs the items or payment converters. Open the full
+ * transaction with OfflineTransactionDao.getById().
+ */
+public class TransactionSummary {
+
+    @ColumnInfo(name = "id")
+    public String id;
+
+    @ColumnInfo(name = "timestamp")
+    public Date timestamp;
+
+    @ColumnInfo(name = "store_id")
+    public String storeId;
+
+    @ColumnInfo(name = "customer_id")
+    public String customerId;
+
+    @ColumnInfo(name = "receipt_number")
+    public String receiptNumber;
+
+    @ColumnInfo(name = "total")
+    public double total;
+
+    @ColumnInfo(name = "payment_method")
+    public String paymentMethod;
+
+    @ColumnInfo(name = "order_type")
+    public String orderType;
+
+    @ColumnInfo(name = "sync_status")
+    public String syncStatus;
+
+    @ColumnInfo(name = "priority")
+    public String priority;
+}
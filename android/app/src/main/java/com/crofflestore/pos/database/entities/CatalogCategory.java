@@ -0,0 +1,53 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity for a menu category of the local product catalog
+ *
+ * Filled and kept current by CatalogRefresher from the catalog feed.
+ */
+@Entity(tableName = "catalog_categories")
+public class CatalogCategory implements CatalogRecord {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "id")
+    public String id = "";
+
+    @ColumnInfo(name = "name")
+    public String name;
+
+    @ColumnInfo(name = "sort_order")
+    public int sortOrder;
+
+    @ColumnInfo(name = "active")
+    public boolean active = true;
+
+    @ColumnInfo(name = "updated_at")
+    public long updatedAt;
+
+    // Feed only: a tombstone, never stored
+    @Ignore
+    public boolean deleted;
+
+    @NonNull
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return deleted;
+    }
+}
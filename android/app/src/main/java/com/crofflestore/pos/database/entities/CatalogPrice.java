@@ -0,0 +1,58 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity for a store's price of a product, overriding
+ * CatalogProduct.price at that store
+ */
+@Entity(
+    tableName = "catalog_prices",
+    indices = {
+        @Index(value = {"product_id", "store_id"})
+    }
+)
+public class CatalogPrice implements CatalogRecord {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "id")
+    public String id = "";
+
+    @ColumnInfo(name = "product_id")
+    public String productId;
+
+    @ColumnInfo(name = "store_id")
+    public String storeId;
+
+    @ColumnInfo(name = "price")
+    public double price;
+
+    @ColumnInfo(name = "updated_at")
+    public long updatedAt;
+
+    // Feed only: a tombstone, never stored
+    @Ignore
+    public boolean deleted;
+
+    @NonNull
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return deleted;
+    }
+}
@@ -0,0 +1,69 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity for a product of the local product catalog
+ *
+ * price is the list price; a store may override it with a CatalogPrice.
+ * The sku index serves barcode and keypad lookups, category_id the menu
+ * screens. sku is not unique: the feed is the authority, and a REPLACE on
+ * a unique conflict would silently drop the other product.
+ */
+@Entity(
+    tableName = "catalog_products",
+    indices = {
+        @Index(value = {"sku"}),
+        @Index(value = {"category_id"})
+    }
+)
+public class CatalogProduct implements CatalogRecord {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "id")
+    public String id = "";
+
+    @ColumnInfo(name = "sku")
+    public String sku;
+
+    @ColumnInfo(name = "name")
+    public String name;
+
+    @ColumnInfo(name = "category_id")
+    public String categoryId;
+
+    @ColumnInfo(name = "price")
+    public double price;
+
+    @ColumnInfo(name = "active")
+    public boolean active = true;
+
+    @ColumnInfo(name = "updated_at")
+    public long updatedAt;
+
+    // Feed only: a tombstone, never stored
+    @Ignore
+    public boolean deleted;
+
+    @NonNull
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return deleted;
+    }
+}
@@ -0,0 +1,17 @@
+package com.crofflestore.pos.database.entities;
+
+/**
+ * A row of the local product catalog as the catalog feed sends it
+ *
+ * The feed hands out changes in (updated_at, id) order; a record with
+ * deleted set is a tombstone and removes the local row.
+ */
+public interface CatalogRecord {
+
+    String getId();
+
+    /** Server modification time, epoch milliseconds */
+    long getUpdatedAt();
+
+    boolean isDeleted();
+}
@@ -0,0 +1,46 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity for the catalog feed's high-water mark of one record kind
+ *
+ * The (updated_at, id) of the last record applied. It is written in the
+ * same transaction as the page it ends, so after a restart or a failed
+ * refresh the next one asks only for what came after.
+ */
+@Entity(tableName = "catalog_sync_state")
+public class CatalogSyncState {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "kind")
+    public String kind = "";
+
+    @ColumnInfo(name = "high_water_updated_at")
+    public long highWaterUpdatedAt;
+
+    @NonNull
+    @ColumnInfo(name = "high_water_id")
+    public String highWaterId = "";
+
+    // Local time the mark last moved, epoch milliseconds
+    @ColumnInfo(name = "refreshed_at")
+    public long refreshedAt;
+
+    public CatalogSyncState() {
+    }
+
+    @Ignore
+    public CatalogSyncState(@NonNull String kind, long highWaterUpdatedAt, @NonNull String highWaterId,
+                            long refreshedAt) {
+        this.kind = kind;
+        this.highWaterUpdatedAt = highWaterUpdatedAt;
+        this.highWaterId = highWaterId;
+        this.refreshedAt = refreshedAt;
+    }
+}
@@ -0,0 +1,61 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.RoomWarnings;
+import androidx.room.TypeConverters;
+import com.crofflestore.pos.database.converters.DateConverter;
+import com.crofflestore.pos.database.converters.PaymentDetailsConverter;
+import com.crofflestore.pos.database.converters.TransactionItemConverter;
+import java.util.Date;
+
+/**
+ * Room Entity for transactions the sync queue gave up on
+ *
+ * A row that fails OfflineTransaction.MAX_SYNC_ATTEMPTS times is moved
+ * here whole (payload, last error and sync_error_history) in the same
+ * transaction that records its last failure, so the queue indexes only
+ * hold live work. Rows stay until an operator requeues them
+ * (OfflineTransactionDao.requeueDeadLetters()) or exports and deletes
+ * them through DeadLetterDao; nothing here is removed by retention.
+ *
+ * Same columns as offline_transactions plus when and why the row was
+ * moved. None of the queue indexes are repeated.
+ */
+@SuppressWarnings(RoomWarnings.INDEX_FROM_PARENT_IS_DROPPED)
+@Entity(
+    tableName = "dead_letter_transactions",
+    indices = {
+        @Index(value = {"dead_lettered_at"}),
+        @Index(value = {"store_id", "dead_lettered_at"})
+    }
+)
+@TypeConverters({DateConverter.class, TransactionItemConverter.class, PaymentDetailsConverter.class})
+public class DeadLetterTransaction extends OfflineTransaction {
+
+    public static final String REASON_RETRIES_EXHAUSTED = "retries_exhausted";
+
+    @ColumnInfo(name = "dead_lettered_at")
+    public Date deadLetteredAt;
+
+    @ColumnInfo(name = "dead_letter_reason")
+    public String deadLetterReason;
+
+    public DeadLetterTransaction() {
+        super();
+    }
+
+    @Override
+    public String toString() {
+        return "DeadLetterTransaction{" +
+                "id='" + id + '\'' +
+                ", receiptNumber='" + receiptNumber + '\'' +
+                ", total=" + total +
+                ", syncAttempts=" + syncAttempts +
+                ", syncError='" + syncError + '\'' +
+                ", deadLetteredAt=" + deadLetteredAt +
+                ", deadLetterReason='" + deadLetterReason + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,81 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity for one line of the inventory ledger
+ *
+ * The ledger is append-only: a correction is a new adjustment, never an
+ * edit, and a trigger rejects UPDATE (see InventoryQueries). Each insert
+ * moves the item's StockLevel.onHand by quantityChange in the same
+ * statement; a DELETE, which only a reset does, takes it back out, so the
+ * ledger and the stock level cannot disagree.
+ *
+ * Quantities are whole units of the item's base unit (pieces, grams,
+ * millilitres), so sums are exact.
+ */
+@Entity(
+    tableName = "inventory_movements",
+    indices = {
+        @Index(value = {"store_id", "item_id"})
+    }
+)
+public class InventoryMovement {
+
+    public static final String TYPE_RECEIVE = "receive";
+    public static final String TYPE_SALE = "sale";
+    public static final String TYPE_ADJUSTMENT = "adjustment";
+    public static final String TYPE_WASTE = "waste";
+
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "id")
+    public long id;
+
+    @NonNull
+    @ColumnInfo(name = "store_id")
+    public String storeId = "";
+
+    @NonNull
+    @ColumnInfo(name = "item_id")
+    public String itemId = "";
+
+    // One of the TYPE_ constants
+    @NonNull
+    @ColumnInfo(name = "movement_type")
+    public String movementType = TYPE_ADJUSTMENT;
+
+    // Signed: receipts add, sales and waste subtract
+    @ColumnInfo(name = "quantity_change")
+    public long quantityChange;
+
+    // What caused it, e.g. "transaction" and the transaction id
+    @ColumnInfo(name = "reference_type")
+    public String referenceType;
+
+    @ColumnInfo(name = "reference_id")
+    public String referenceId;
+
+    // Epoch milliseconds
+    @ColumnInfo(name = "created_at")
+    public long createdAt;
+
+    public InventoryMovement() {
+    }
+
+    @Ignore
+    public InventoryMovement(@NonNull String storeId, @NonNull String itemId, @NonNull String movementType,
+                             long quantityChange, String referenceType, String referenceId, long createdAt) {
+        this.storeId = storeId;
+        this.itemId = itemId;
+        this.movementType = movementType;
+        this.quantityChange = quantityChange;
+        this.referenceType = referenceType;
+        this.referenceId = referenceId;
+        this.createdAt = createdAt;
+    }
+}
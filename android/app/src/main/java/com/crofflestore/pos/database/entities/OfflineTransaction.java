@@ -1,6 +1,8 @@
 package com.crofflestore.pos.database.entities;
 
+import androidx.annotation.NonNull;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.ColumnInfo;
 import androidx.room.TypeConverters;
@@ -18,12 +20,49 @@ import java.util.List;
  * - Sync status tracking
  * - Priority-based processing
  * - Conflict resolution data
+ *
+ * The composite indexes back the sync queue queries: (sync_status,
+ * priority_rank, timestamp) serves batch selection and the per-priority
+ * counters, (sync_status, last_sync_attempt) serves stuck-row scans,
+ * (sync_status, next_retry_at) finds failed rows that are due again and
+ * (sync_status, lease_expires_at) finds claims whose worker went away.
+ * total rides along in the first so the statistics pass is index-only.
+ *
+ * receipt_number is unique: exact receipt lookups and receipt prefix
+ * searches seek it, and two sales can never share a printed receipt.
+ * (customer_id, timestamp) serves a customer's history and customer
+ * prefix searches. Free-text search goes through TransactionSearchEntry.
+ * (store_id, shift_id, sync_status, priority_rank, timestamp) finds the
+ * earlier queued sales of a shift that hold a row back from a claim.
+ * (timestamp, id) is the position of a streaming export.
  */
-@Entity(tableName = "offline_transactions")
+@Entity(
+    tableName = "offline_transactions",
+    indices = {
+        @Index(value = {"sync_status", "priority_rank", "timestamp", "total"}),
+        @Index(value = {"sync_status", "last_sync_attempt"}),
+        @Index(value = {"sync_status", "next_retry_at"}),
+        @Index(value = {"sync_status", "lease_expires_at"}),
+        @Index(value = {"receipt_number"}, unique = true),
+        @Index(value = {"customer_id", "timestamp"}),
+        @Index(value = {"store_id", "shift_id", "sync_status", "priority_rank", "timestamp"}),
+        @Index(value = {"timestamp", "id"})
+    }
+)
 @TypeConverters({DateConverter.class, TransactionItemConverter.class, PaymentDetailsConverter.class})
 public class OfflineTransaction {
     
+    // Numeric priority ranks, lower syncs first
+    public static final int PRIORITY_RANK_HIGH = 1;
+    public static final int PRIORITY_RANK_MEDIUM = 2;
+    public static final int PRIORITY_RANK_LOW = 3;
+    
+    // Failed attempts after which a row leaves the queue for
+    // dead_letter_transactions, see DeadLetterTransaction
+    public static final int MAX_SYNC_ATTEMPTS = 5;
+    
     @PrimaryKey
+    @NonNull
     @ColumnInfo(name = "id")
     public String id;
     
@@ -93,12 +132,32 @@ public class OfflineTransaction {
     @ColumnInfo(name = "last_sync_attempt")
     public Date lastSyncAttempt;
     
+    // When a failed row may be claimed again, see RetryBackoff. Set by
+    // OfflineTransactionDao whenever a row is stored as failed.
+    @ColumnInfo(name = "next_retry_at")
+    public Date nextRetryAt;
+    
+    // Who holds a syncing row and until when; see
+    // OfflineTransactionDao.claimEntriesForSync(). Null unless syncing.
+    @ColumnInfo(name = "claim_owner")
+    public String claimOwner;
+    
+    @ColumnInfo(name = "lease_expires_at")
+    public Date leaseExpiresAt;
+    
     @ColumnInfo(name = "sync_error")
     public String syncError;
     
+    // Every failed attempt's error, see SyncErrorHistory. Cleared once synced.
+    @ColumnInfo(name = "sync_error_history")
+    public String syncErrorHistory;
+    
     @ColumnInfo(name = "priority")
     public String priority; // 'high', 'medium', 'low'
     
+    @ColumnInfo(name = "priority_rank", defaultValue = "2")
+    public int priorityRank = PRIORITY_RANK_MEDIUM; // derived from priority, see setPriority()
+    
     @ColumnInfo(name = "receipt_number")
     public String receiptNumber;
     
@@ -159,6 +218,20 @@ public class OfflineTransaction {
         return "high".equals(priority);
     }
     
+    public void setPriority(String priority) {
+        this.priority = priority;
+        this.priorityRank = rankOf(priority);
+    }
+    
+    /**
+     * Map a priority label to its sort rank. Unknown labels sort with medium.
+     */
+    public static int rankOf(String priority) {
+        if ("high".equals(priority)) return PRIORITY_RANK_HIGH;
+        if ("low".equals(priority)) return PRIORITY_RANK_LOW;
+        return PRIORITY_RANK_MEDIUM;
+    }
+    
     public boolean isCashTransaction() {
         return "cash".equals(paymentMethod);
     }
@@ -189,7 +262,7 @@ public class OfflineTransaction {
     }
     
     public boolean shouldRetry() {
-        return hasFailed() && syncAttempts < 5;
+        return hasFailed() && syncAttempts < MAX_SYNC_ATTEMPTS;
     }
     
     public long getTimeSinceLastSync() {
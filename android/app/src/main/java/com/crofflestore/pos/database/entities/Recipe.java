@@ -0,0 +1,52 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+
+/**
+ * Room Entity for the recipe of a product, or of one variation of it
+ *
+ * A variation without a recipe of its own uses the product's (variation
+ * id ''). Every save or removal stamps the next version, one higher than
+ * any recipe has, so RecipeExplosionCache can ask for exactly the recipes
+ * that changed since it last compiled. A removed recipe stays as an
+ * inactive row with no ingredients, so its removal is seen the same way.
+ */
+@Entity(
+    tableName = "recipes",
+    primaryKeys = {"product_id", "variation_id"},
+    indices = {
+        @Index(value = {"version"})
+    }
+)
+public class Recipe {
+
+    @NonNull
+    @ColumnInfo(name = "product_id")
+    public String productId = "";
+
+    // '' for the product's own recipe
+    @NonNull
+    @ColumnInfo(name = "variation_id")
+    public String variationId = "";
+
+    @ColumnInfo(name = "version")
+    public long version;
+
+    @ColumnInfo(name = "active")
+    public boolean active = true;
+
+    public Recipe() {
+    }
+
+    @Ignore
+    public Recipe(@NonNull String productId, @NonNull String variationId, long version, boolean active) {
+        this.productId = productId;
+        this.variationId = variationId;
+        this.version = version;
+        this.active = active;
+    }
+}
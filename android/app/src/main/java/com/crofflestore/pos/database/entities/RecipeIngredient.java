@@ -0,0 +1,54 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+
+/**
+ * Room Entity for one ingredient line of a Recipe
+ *
+ * quantity is per unit sold, in the recipe's unit; baseUnit is the unit
+ * the inventory item is stocked in (InventoryMovement quantities), so the
+ * conversion between them is known without another lookup. See
+ * RecipeUnits for the units understood.
+ */
+@Entity(
+    tableName = "recipe_ingredients",
+    primaryKeys = {"product_id", "variation_id", "item_id"}
+)
+public class RecipeIngredient {
+
+    @NonNull
+    @ColumnInfo(name = "product_id")
+    public String productId = "";
+
+    @NonNull
+    @ColumnInfo(name = "variation_id")
+    public String variationId = "";
+
+    // Inventory item deducted
+    @NonNull
+    @ColumnInfo(name = "item_id")
+    public String itemId = "";
+
+    @ColumnInfo(name = "quantity")
+    public double quantity;
+
+    @ColumnInfo(name = "unit")
+    public String unit;
+
+    @ColumnInfo(name = "base_unit")
+    public String baseUnit;
+
+    public RecipeIngredient() {
+    }
+
+    @Ignore
+    public RecipeIngredient(@NonNull String itemId, double quantity, String unit, String baseUnit) {
+        this.itemId = itemId;
+        this.quantity = quantity;
+        this.unit = unit;
+        this.baseUnit = baseUnit;
+    }
+}
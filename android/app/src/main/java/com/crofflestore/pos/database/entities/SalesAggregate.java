@@ -0,0 +1,85 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Room Entity for pre-summed sales, one row per (business day, hour,
+ * shift, payment method)
+ *
+ * Maintained by triggers on offline_transactions (see
+ * SalesAggregateQueries) in the same transaction as every insert, replace,
+ * update and status change, so X/Z reports and shift close read a few
+ * dozen rows instead of scanning the day's sales. Day and hour are the
+ * device's local time. A missing shift or payment method is stored as ''
+ * so it still has a key.
+ *
+ * Amounts are whole centavos: a trigger subtracting exactly what it added
+ * earlier leaves no floating-point residue behind.
+ *
+ * Deleting a synced transaction (retention) leaves its sale here, so
+ * reports outlive the rows they were built from. A sale moved to
+ * dead_letter_transactions stays too, as does one requeued from there:
+ * its upload gave up, the sale did not. Only deleting an unsynced
+ * transaction outright, a void, takes it out.
+ */
+@Entity(
+    tableName = "sales_aggregates",
+    primaryKeys = {"business_day", "hour", "shift_id", "payment_method"},
+    indices = {
+        @Index(value = {"shift_id"})
+    }
+)
+public class SalesAggregate {
+
+    // yyyy-MM-dd, see businessDay()
+    @NonNull
+    @ColumnInfo(name = "business_day")
+    public String businessDay = "";
+
+    // 0-23
+    @ColumnInfo(name = "hour")
+    public int hour;
+
+    @NonNull
+    @ColumnInfo(name = "shift_id")
+    public String shiftId = "";
+
+    @NonNull
+    @ColumnInfo(name = "payment_method")
+    public String paymentMethod = "";
+
+    @ColumnInfo(name = "transaction_count", defaultValue = "0")
+    public int transactionCount;
+
+    @ColumnInfo(name = "subtotal_cents", defaultValue = "0")
+    public long subtotalCents;
+
+    @ColumnInfo(name = "tax_cents", defaultValue = "0")
+    public long taxCents;
+
+    @ColumnInfo(name = "discount_cents", defaultValue = "0")
+    public long discountCents;
+
+    @ColumnInfo(name = "total_cents", defaultValue = "0")
+    public long totalCents;
+
+    // The synced share of transaction_count and total_cents
+    @ColumnInfo(name = "synced_count", defaultValue = "0")
+    public int syncedCount;
+
+    @ColumnInfo(name = "synced_cents", defaultValue = "0")
+    public long syncedCents;
+
+    /**
+     * The business_day key of a local time, matching the triggers'
+     * strftime('%Y-%m-%d', ..., 'localtime')
+     */
+    public static String businessDay(Date time) {
+        return String.format(Locale.ROOT, "%tF", time);
+    }
+}
@@ -0,0 +1,46 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * Room Entity for the materialized stock of one item at one store
+ *
+ * onHand is the sum of the item's inventory_movements, kept by the ledger
+ * insert trigger; nothing else writes it. reserved is what open checkouts
+ * hold, written in batches by InventoryCounters and cleared when a store
+ * is loaded again, since the carts holding it did not survive the process.
+ */
+@Entity(
+    tableName = "stock_levels",
+    primaryKeys = {"store_id", "item_id"}
+)
+public class StockLevel {
+
+    @NonNull
+    @ColumnInfo(name = "store_id")
+    public String storeId = "";
+
+    @NonNull
+    @ColumnInfo(name = "item_id")
+    public String itemId = "";
+
+    @ColumnInfo(name = "on_hand")
+    public long onHand;
+
+    @ColumnInfo(name = "reserved")
+    public long reserved;
+
+    // Last ledger row counted in onHand
+    @ColumnInfo(name = "last_movement_id")
+    public long lastMovementId;
+
+    // Epoch milliseconds
+    @ColumnInfo(name = "updated_at")
+    public long updatedAt;
+
+    public long available() {
+        return onHand - reserved;
+    }
+}
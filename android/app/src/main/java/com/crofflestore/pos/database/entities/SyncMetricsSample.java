@@ -0,0 +1,132 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+import androidx.room.TypeConverters;
+import com.crofflestore.pos.database.converters.DateConverter;
+import java.util.Date;
+
+/**
+ * Room Entity for the metrics of one sync run
+ *
+ * Written once at the end of every OfflineSyncWorker run; the table is a
+ * rolling window (see SyncMetricsDao.record). Stage latencies are kept as
+ * p50/p99/max columns for querying, and the full histograms of all stages
+ * in latency_histograms (SyncMetrics.decodeHistograms) so runs can be
+ * merged into exact percentiles over any period.
+ *
+ * Queue gauges are read when the run ends, so a device that is falling
+ * behind shows a growing oldest_queued_age_ms across runs.
+ */
+@Entity(
+    tableName = "sync_metrics",
+    indices = {@Index(value = {"recorded_at"})}
+)
+@TypeConverters({DateConverter.class})
+public class SyncMetricsSample {
+
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "id")
+    public long id;
+
+    @ColumnInfo(name = "recorded_at")
+    public Date recordedAt;
+
+    @ColumnInfo(name = "sync_type")
+    public String syncType;
+
+    @ColumnInfo(name = "duration_ms")
+    public long durationMs;
+
+    // Run totals
+
+    @ColumnInfo(name = "synced_count")
+    public int syncedCount;
+
+    @ColumnInfo(name = "failed_count")
+    public int failedCount;
+
+    @ColumnInfo(name = "conflict_count")
+    public int conflictCount;
+
+    @ColumnInfo(name = "requests")
+    public int requests;
+
+    @ColumnInfo(name = "bytes_uploaded")
+    public long bytesUploaded;
+
+    @ColumnInfo(name = "transactions_per_second")
+    public double transactionsPerSecond;
+
+    // Stage latencies, microseconds
+
+    @ColumnInfo(name = "claim_p50_us")
+    public long claimP50Micros;
+
+    @ColumnInfo(name = "claim_p99_us")
+    public long claimP99Micros;
+
+    @ColumnInfo(name = "encode_p50_us")
+    public long encodeP50Micros;
+
+    @ColumnInfo(name = "encode_p99_us")
+    public long encodeP99Micros;
+
+    @ColumnInfo(name = "upload_p50_us")
+    public long uploadP50Micros;
+
+    @ColumnInfo(name = "upload_p99_us")
+    public long uploadP99Micros;
+
+    @ColumnInfo(name = "upload_max_us")
+    public long uploadMaxMicros;
+
+    @ColumnInfo(name = "commit_p50_us")
+    public long commitP50Micros;
+
+    @ColumnInfo(name = "commit_p99_us")
+    public long commitP99Micros;
+
+    @ColumnInfo(name = "latency_histograms")
+    public byte[] latencyHistograms;
+
+    // Queue gauges at the end of the run
+
+    @ColumnInfo(name = "queued_high")
+    public int queuedHigh;
+
+    @ColumnInfo(name = "queued_medium")
+    public int queuedMedium;
+
+    @ColumnInfo(name = "queued_low")
+    public int queuedLow;
+
+    // Null when nothing is queued
+    @ColumnInfo(name = "oldest_queued_age_ms")
+    public Long oldestQueuedAgeMs;
+
+    public int getQueuedTotal() {
+        return queuedHigh + queuedMedium + queuedLow;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncMetricsSample{" +
+                "recordedAt=" + recordedAt +
+                ", syncType='" + syncType + '\'' +
+                ", durationMs=" + durationMs +
+                ", synced=" + syncedCount +
+                ", failed=" + failedCount +
+                ", conflicts=" + conflictCount +
+                ", requests=" + requests +
+                ", bytesUploaded=" + bytesUploaded +
+                ", tps=" + transactionsPerSecond +
+                ", uploadP50us=" + uploadP50Micros +
+                ", uploadP99us=" + uploadP99Micros +
+                ", queued=" + getQueuedTotal() +
+                ", oldestQueuedAgeMs=" + oldestQueuedAgeMs +
+                '}';
+    }
+}
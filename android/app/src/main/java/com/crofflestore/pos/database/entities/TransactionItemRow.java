@@ -0,0 +1,122 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+import androidx.room.TypeConverters;
+import com.crofflestore.pos.database.converters.DateConverter;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Room Entity for the line items of an offline transaction
+ *
+ * One row per TransactionItem, written in the same transaction as the
+ * parent so product and category sales can be answered with indexed
+ * aggregates instead of decoding every parent's items blob. The parent's
+ * store and timestamp are copied in (store_id, sold_at) so date-bounded
+ * sales queries never join back to offline_transactions.
+ *
+ * The parent keeps its items column as the upload payload. Deleting a
+ * parent deletes its items through a trigger (see CroffleOfflineDatabase).
+ */
+@Entity(
+    tableName = "transaction_items",
+    indices = {
+        @Index(value = {"transaction_id", "line_number"}, unique = true),
+        @Index(value = {"sold_at"}),
+        @Index(value = {"product_id", "sold_at"}),
+        @Index(value = {"sku", "sold_at"}),
+        @Index(value = {"category", "sold_at"})
+    }
+)
+@TypeConverters({DateConverter.class})
+public class TransactionItemRow {
+
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "id")
+    public long id;
+
+    @NonNull
+    @ColumnInfo(name = "transaction_id")
+    public String transactionId;
+
+    @ColumnInfo(name = "line_number")
+    public int lineNumber;
+
+    @ColumnInfo(name = "product_id")
+    public String productId;
+
+    @ColumnInfo(name = "variation_id")
+    public String variationId;
+
+    @ColumnInfo(name = "name")
+    public String name;
+
+    @ColumnInfo(name = "sku")
+    public String sku;
+
+    @ColumnInfo(name = "category")
+    public String category;
+
+    @ColumnInfo(name = "quantity")
+    public int quantity;
+
+    @ColumnInfo(name = "unit_price")
+    public double unitPrice;
+
+    @ColumnInfo(name = "total_price")
+    public double totalPrice;
+
+    @ColumnInfo(name = "tax_rate")
+    public Double taxRate;
+
+    @ColumnInfo(name = "store_id")
+    public String storeId;
+
+    @ColumnInfo(name = "sold_at")
+    public Date soldAt;
+
+    public TransactionItemRow() {
+        this.transactionId = "";
+    }
+
+    public static TransactionItemRow of(OfflineTransaction transaction, int lineNumber, TransactionItem item) {
+        TransactionItemRow row = new TransactionItemRow();
+        row.transactionId = transaction.id;
+        row.lineNumber = lineNumber;
+        row.productId = item.productId;
+        row.variationId = item.variationId;
+        row.name = item.name;
+        row.sku = item.sku;
+        row.category = item.category;
+        row.quantity = item.quantity;
+        row.unitPrice = item.unitPrice;
+        row.totalPrice = item.totalPrice;
+        row.taxRate = item.taxRate;
+        row.storeId = transaction.storeId;
+        row.soldAt = transaction.timestamp;
+        return row;
+    }
+
+    /**
+     * Child rows for a transaction's items, numbered in list order
+     */
+    public static List<TransactionItemRow> forTransaction(OfflineTransaction transaction) {
+        if (transaction.items == null) {
+            return new ArrayList<>();
+        }
+        List<TransactionItemRow> rows = new ArrayList<>(transaction.items.size());
+        for (int i = 0; i < transaction.items.size(); i++) {
+            TransactionItem item = transaction.items.get(i);
+            if (item != null) {
+                rows.add(of(transaction, i, item));
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,41 @@
+package com.crofflestore.pos.database.entities;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room Entity for the transaction search index
+ *
+ * An FTS4 shadow of offline_transactions: one document per transaction,
+ * with the same rowid, holding its receipt number, customer id and the
+ * names and SKUs of its line items. Triggers on offline_transactions (see
+ * CroffleOfflineDatabase) build each document from transaction_items as
+ * the transaction is written, so nothing writes here directly. Queried
+ * through OfflineTransactionDao.search().
+ *
+ * Documents are kept newest first (order=DESC) because search results
+ * are ranked newest first within each tier, and 2 and 3 character
+ * prefixes are indexed so the first keystrokes of a word are read lazily
+ * too (see SearchTerms); that roughly doubles the index size.
+ */
+@Fts4(tokenizer = FtsOptions.TOKENIZER_UNICODE61, prefix = {2, 3}, order = FtsOptions.Order.DESC)
+@Entity(tableName = "transaction_search")
+public class TransactionSearchEntry {
+
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    public long rowid;
+
+    @ColumnInfo(name = "receipt_number")
+    public String receiptNumber;
+
+    @ColumnInfo(name = "customer_id")
+    public String customerId;
+
+    // Item names and SKUs, space separated
+    @ColumnInfo(name = "items")
+    public String items;
+}
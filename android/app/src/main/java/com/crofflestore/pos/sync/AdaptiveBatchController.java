@@ -0,0 +1,210 @@
+package com.crofflestore.pos.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD controller for the sync batch size and request concurrency
+ *
+ * Every upload request reports its latency and how it ended. Requests are
+ * judged in windows of WINDOW_REQUESTS:
+ *
+ * - a timeout cuts at once: batch size and concurrency are halved
+ * - more than a quarter of the window failing (5xx, connection errors)
+ *   halves the batch size
+ * - most of the window slower than the latency target shrinks the batch
+ *   size to three quarters; concurrency is left alone
+ * - otherwise the window was healthy: the batch size grows by
+ *   INCREASE_STEP rows, and every HEALTHY_WINDOWS_PER_LANE healthy windows
+ *   in a row add one concurrent request
+ *
+ * Requests already in flight when a cut happens were sized before it, so
+ * their results are ignored rather than cutting again for the same
+ * congestion. The batch size therefore saws around the largest size the
+ * link and backend answer within the target.
+ *
+ * The network quality recorded with the latest captured sale caps both
+ * values on a poor or fair link. Capped values do not grow, so the
+ * controller picks up near where it was once the link recovers.
+ *
+ * Batch size changes apply from the next claim; concurrency fixes the
+ * pipeline's ordering lanes and so applies from the next run. Thread safe.
+ */
+public class AdaptiveBatchController {
+
+    public enum Outcome {
+        OK, ERROR, TIMEOUT
+    }
+
+    public static final int DEFAULT_MIN_BATCH_SIZE = 5;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 200;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    public static final long DEFAULT_TARGET_LATENCY_MS = 2000;
+
+    // What the worker used before the controller existed
+    public static final int INITIAL_BATCH_SIZE = 10;
+    public static final int INITIAL_IN_FLIGHT = 2;
+
+    static final int WINDOW_REQUESTS = 4;
+    static final int INCREASE_STEP = 5;
+    static final int HEALTHY_WINDOWS_PER_LANE = 3;
+    static final double ERROR_RATE_LIMIT = 0.25;
+    static final double FAILURE_DECREASE = 0.5;
+    static final double SLOW_DECREASE = 0.75;
+
+    // Caps by network quality label
+    private static final int POOR_BATCH_CAP = 20;
+    private static final int FAIR_BATCH_CAP = 50;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int maxInFlight;
+    private final long targetLatencyNanos;
+
+    private int batchSize;
+    private int inFlight;
+    private int batchCap = Integer.MAX_VALUE;
+    private int inFlightCap = Integer.MAX_VALUE;
+
+    private int windowRequests;
+    private int windowErrors;
+    private int windowSlow;
+    private int healthyWindows;
+    private int ignoreRequests;
+
+    public AdaptiveBatchController() {
+        this(DEFAULT_MIN_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_IN_FLIGHT, DEFAULT_TARGET_LATENCY_MS);
+    }
+
+    public AdaptiveBatchController(int minBatchSize, int maxBatchSize, int maxInFlight, long targetLatencyMs) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, targetLatencyMs));
+        restore(INITIAL_BATCH_SIZE, INITIAL_IN_FLIGHT);
+    }
+
+    /**
+     * Continue from state saved by an earlier run; out-of-range values are
+     * clamped
+     */
+    public synchronized void restore(int batchSize, int inFlight) {
+        this.batchSize = clamp(batchSize, minBatchSize, maxBatchSize);
+        this.inFlight = clamp(inFlight, 1, maxInFlight);
+        resetWindow();
+        healthyWindows = 0;
+        ignoreRequests = 0;
+    }
+
+    /**
+     * Cap both values for the link the device last reported: excellent,
+     * good, fair, poor or offline. Unknown or null labels remove the cap.
+     */
+    public synchronized void setNetworkQuality(String quality) {
+        if ("poor".equals(quality) || "offline".equals(quality)) {
+            batchCap = POOR_BATCH_CAP;
+            inFlightCap = 1;
+        } else if ("fair".equals(quality)) {
+            batchCap = FAIR_BATCH_CAP;
+            inFlightCap = 2;
+        } else {
+            batchCap = Integer.MAX_VALUE;
+            inFlightCap = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Rows to claim next
+     */
+    public synchronized int getBatchSize() {
+        return Math.max(minBatchSize, Math.min(batchSize, batchCap));
+    }
+
+    /**
+     * Concurrent requests for the next run
+     */
+    public synchronized int getMaxInFlight() {
+        return Math.max(1, Math.min(inFlight, inFlightCap));
+    }
+
+    /**
+     * Learned batch size, without the network quality cap; what to persist
+     */
+    public synchronized int getLearnedBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Learned concurrency, without the network quality cap; what to persist
+     */
+    public synchronized int getLearnedInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Report one finished upload request
+     */
+    public synchronized void onRequest(long latencyNanos, Outcome outcome) {
+        if (ignoreRequests > 0) {
+            ignoreRequests--;
+            return;
+        }
+        if (outcome == Outcome.TIMEOUT) {
+            decrease(FAILURE_DECREASE, true);
+            return;
+        }
+        windowRequests++;
+        if (outcome == Outcome.ERROR) {
+            windowErrors++;
+        } else if (latencyNanos > targetLatencyNanos) {
+            windowSlow++;
+        }
+        if (windowRequests < WINDOW_REQUESTS) {
+            return;
+        }
+
+        if (windowErrors > windowRequests * ERROR_RATE_LIMIT) {
+            decrease(FAILURE_DECREASE, false);
+        } else if (windowSlow * 2 > windowRequests) {
+            decrease(SLOW_DECREASE, false);
+        } else {
+            // A capped value is not being exercised, so it does not grow
+            if (batchSize < batchCap) {
+                batchSize = Math.min(maxBatchSize, batchSize + INCREASE_STEP);
+            }
+            if (++healthyWindows >= HEALTHY_WINDOWS_PER_LANE) {
+                healthyWindows = 0;
+                if (inFlight < inFlightCap) {
+                    inFlight = Math.min(maxInFlight, inFlight + 1);
+                }
+            }
+            resetWindow();
+        }
+    }
+
+    private void decrease(double factor, boolean concurrency) {
+        // Everything else in flight was sent at the old size
+        ignoreRequests = getMaxInFlight() - 1;
+        batchSize = Math.max(minBatchSize, (int) (getBatchSize() * factor));
+        if (concurrency) {
+            inFlight = Math.max(1, getMaxInFlight() / 2);
+        }
+        healthyWindows = 0;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowRequests = 0;
+        windowErrors = 0;
+        windowSlow = 0;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveBatchController{batchSize=" + getBatchSize() + ", maxInFlight=" + getMaxInFlight()
+                + ", learned=" + batchSize + "/" + inFlight + '}';
+    }
+}
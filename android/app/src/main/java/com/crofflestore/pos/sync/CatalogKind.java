@@ -0,0 +1,26 @@
+package com.crofflestore.pos.sync;
+
+import com.crofflestore.pos.database.entities.CatalogCategory;
+import com.crofflestore.pos.database.entities.CatalogPrice;
+import com.crofflestore.pos.database.entities.CatalogProduct;
+import com.crofflestore.pos.database.entities.CatalogRecord;
+
+/**
+ * The record kinds of the catalog feed, in the order a refresh fetches
+ * them: categories before the products filed under them, products before
+ * their store prices
+ */
+public enum CatalogKind {
+    CATEGORIES("categories", CatalogCategory.class),
+    PRODUCTS("products", CatalogProduct.class),
+    PRICES("prices", CatalogPrice.class);
+
+    /** Path segment of the feed, and the key of the kind's high-water mark */
+    public final String wireName;
+    public final Class<? extends CatalogRecord> recordClass;
+
+    CatalogKind(String wireName, Class<? extends CatalogRecord> recordClass) {
+        this.wireName = wireName;
+        this.recordClass = recordClass;
+    }
+}
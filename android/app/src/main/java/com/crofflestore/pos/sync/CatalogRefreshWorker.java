@@ -0,0 +1,117 @@
+package com.crofflestore.pos.sync;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.crofflestore.pos.database.CroffleOfflineDatabase;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Android WorkManager Worker for Catalog Refresh
+ *
+ * Pulls catalog changes since the stored high-water marks; see
+ * CatalogRefresher. Runs hourly on any network, and on demand after
+ * sign-in or a manual refresh. Pages stored before a failure are kept,
+ * so a retry picks up where the run stopped.
+ */
+public class CatalogRefreshWorker extends Worker {
+
+    private static final String TAG = "CatalogRefreshWorker";
+    private static final String WORK_NAME_PERIODIC = "catalog_refresh_periodic";
+    private static final String WORK_NAME_IMMEDIATE = "catalog_refresh_immediate";
+
+    // Output data keys
+    public static final String OUTPUT_CHANGED = "changed";
+    public static final String OUTPUT_DELETED = "deleted";
+    public static final String OUTPUT_REQUESTS = "requests";
+
+    public CatalogRefreshWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        CatalogTransport transport = HttpCatalogTransport.fromBuildConfig();
+        if (transport == null) {
+            Log.d(TAG, "Catalog endpoint not configured");
+            return Result.success();
+        }
+        CroffleOfflineDatabase database = CroffleOfflineDatabase.getInstance(getApplicationContext());
+        try {
+            CatalogRefresher.Result result = CatalogRefresher.forDao(transport, database.catalogDao()).refresh();
+            Log.d(TAG, "Catalog refreshed: " + result);
+            return Result.success(new Data.Builder()
+                    .putInt(OUTPUT_CHANGED, result.changed())
+                    .putInt(OUTPUT_DELETED, result.deleted)
+                    .putInt(OUTPUT_REQUESTS, result.requests)
+                    .build());
+        } catch (SyncTransportException e) {
+            Log.w(TAG, "Catalog feed rejected the request", e);
+            return e.isRetryable() ? Result.retry() : Result.failure();
+        } catch (IOException e) {
+            Log.w(TAG, "Catalog refresh interrupted", e);
+            return Result.retry();
+        }
+    }
+
+    /**
+     * Schedule hourly refresh while connected
+     */
+    public static void schedulePeriodicRefresh(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+
+        PeriodicWorkRequest refreshWork = new PeriodicWorkRequest.Builder(
+                CatalogRefreshWorker.class,
+                1, TimeUnit.HOURS
+        )
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build();
+
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME_PERIODIC, ExistingPeriodicWorkPolicy.KEEP, refreshWork);
+
+        Log.d(TAG, "Periodic catalog refresh scheduled");
+    }
+
+    /**
+     * Refresh as soon as there is a network; a refresh already queued or
+     * running is kept
+     */
+    public static void refreshNow(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+
+        OneTimeWorkRequest refreshWork = new OneTimeWorkRequest.Builder(CatalogRefreshWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 10, TimeUnit.SECONDS)
+                .build();
+
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME_IMMEDIATE, ExistingWorkPolicy.KEEP, refreshWork);
+    }
+
+    /**
+     * Cancel scheduled refreshes
+     */
+    public static void cancelRefresh(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME_PERIODIC);
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME_IMMEDIATE);
+    }
+}
@@ -0,0 +1,149 @@
+package com.crofflestore.pos.sync;
+
+import com.crofflestore.pos.database.dao.CatalogDao;
+import com.crofflestore.pos.database.entities.CatalogCategory;
+import com.crofflestore.pos.database.entities.CatalogPrice;
+import com.crofflestore.pos.database.entities.CatalogProduct;
+import com.crofflestore.pos.database.entities.CatalogRecord;
+import com.crofflestore.pos.database.entities.CatalogSyncState;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Brings the local product catalog up to date with the catalog feed
+ *
+ * Each kind is fetched from its stored high-water mark, PAGE_SIZE records
+ * at a time, and every page is stored together with the mark it ends at.
+ * After a restart, then, the catalog is already on disk and a refresh
+ * costs one empty page per kind unless something changed; a refresh
+ * that fails halfway resumes after the last page it stored.
+ *
+ * Plain Java, so it runs as a local unit test; CatalogRefreshWorker logs
+ * the Result.
+ */
+public class CatalogRefresher {
+
+    public static final int PAGE_SIZE = 500;
+
+    /**
+     * Where pages and marks are stored
+     */
+    public interface Store {
+        /** The kind's mark, or null before its first page */
+        CatalogSyncState getSyncState(String kind);
+
+        /** Store a page and its mark atomically */
+        void apply(CatalogKind kind, List<? extends CatalogRecord> page, CatalogSyncState mark);
+    }
+
+    /**
+     * Totals of one refresh
+     */
+    public static final class Result {
+        public final int categories;
+        public final int products;
+        public final int prices;
+        /** Tombstones among the records above */
+        public final int deleted;
+        public final int requests;
+
+        Result(int[] applied, int deleted, int requests) {
+            this.categories = applied[CatalogKind.CATEGORIES.ordinal()];
+            this.products = applied[CatalogKind.PRODUCTS.ordinal()];
+            this.prices = applied[CatalogKind.PRICES.ordinal()];
+            this.deleted = deleted;
+            this.requests = requests;
+        }
+
+        public int changed() {
+            return categories + products + prices;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{categories=" + categories + ", products=" + products + ", prices=" + prices
+                    + ", deleted=" + deleted + ", requests=" + requests + "}";
+        }
+    }
+
+    private final CatalogTransport transport;
+    private final Store store;
+
+    public CatalogRefresher(CatalogTransport transport, Store store) {
+        this.transport = transport;
+        this.store = store;
+    }
+
+    public static CatalogRefresher forDao(CatalogTransport transport, CatalogDao dao) {
+        return new CatalogRefresher(transport, storeFor(dao));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Store storeFor(CatalogDao dao) {
+        return new Store() {
+            @Override
+            public CatalogSyncState getSyncState(String kind) {
+                return dao.getSyncState(kind);
+            }
+
+            @Override
+            public void apply(CatalogKind kind, List<? extends CatalogRecord> page, CatalogSyncState mark) {
+                // Each kind's pages hold only its record class, see CatalogKind
+                switch (kind) {
+                    case CATEGORIES:
+                        dao.applyCategories((List<CatalogCategory>) page, mark);
+                        break;
+                    case PRODUCTS:
+                        dao.applyProducts((List<CatalogProduct>) page, mark);
+                        break;
+                    case PRICES:
+                        dao.applyPrices((List<CatalogPrice>) page, mark);
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * Fetch and store everything after the current marks
+     *
+     * @throws IOException if a fetch fails; pages stored before it are kept
+     */
+    public Result refresh() throws IOException {
+        int[] applied = new int[CatalogKind.values().length];
+        int deleted = 0;
+        int requests = 0;
+        for (CatalogKind kind : CatalogKind.values()) {
+            CatalogSyncState mark = store.getSyncState(kind.wireName);
+            long afterUpdatedAt = mark != null ? mark.highWaterUpdatedAt : 0;
+            String afterId = mark != null ? mark.highWaterId : "";
+            CatalogTransport.Page page;
+            do {
+                page = transport.fetch(kind, afterUpdatedAt, afterId, PAGE_SIZE);
+                requests++;
+                if (page.records.isEmpty()) {
+                    break;
+                }
+                for (CatalogRecord record : page.records) {
+                    if (isAfter(record, afterUpdatedAt, afterId)) {
+                        afterUpdatedAt = record.getUpdatedAt();
+                        afterId = record.getId();
+                    }
+                    if (record.isDeleted()) {
+                        deleted++;
+                    }
+                }
+                store.apply(kind, page.records,
+                        new CatalogSyncState(kind.wireName, afterUpdatedAt, afterId, System.currentTimeMillis()));
+                applied[kind.ordinal()] += page.records.size();
+            } while (page.hasMore);
+        }
+        return new Result(applied, deleted, requests);
+    }
+
+    // The mark only moves forward, whatever order a page comes in
+    private static boolean isAfter(CatalogRecord record, long updatedAt, String id) {
+        return record.getUpdatedAt() > updatedAt
+                || (record.getUpdatedAt() == updatedAt && record.getId().compareTo(id) > 0);
+    }
+}
@@ -0,0 +1,39 @@
+package com.crofflestore.pos.sync;
+
+import com.crofflestore.pos.database.entities.CatalogRecord;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads the catalog feed from the backend
+ *
+ * The feed lists every record of a kind in (updated_at, id) order,
+ * deletions included as tombstones. A fetch returns the records strictly
+ * after the given position, so paging is a keyset walk that never skips
+ * or repeats a record, even when many share an updated_at. The backend
+ * must stamp updated_at when a change becomes visible; a change stamped
+ * earlier than a mark a device already holds is not seen until a full
+ * reload (CatalogDao.resetSyncState()).
+ */
+public interface CatalogTransport {
+
+    /**
+     * One page of the feed
+     */
+    final class Page {
+        public final List<? extends CatalogRecord> records;
+        /** Whether more records follow the last one */
+        public final boolean hasMore;
+
+        public Page(List<? extends CatalogRecord> records, boolean hasMore) {
+            this.records = records;
+            this.hasMore = hasMore;
+        }
+    }
+
+    /**
+     * Up to limit records of kind after (afterUpdatedAt, afterId); (0, "")
+     * starts from the beginning
+     */
+    Page fetch(CatalogKind kind, long afterUpdatedAt, String afterId, int limit) throws IOException;
+}
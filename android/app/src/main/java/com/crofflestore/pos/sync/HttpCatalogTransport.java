@@ -0,0 +1,157 @@
+package com.crofflestore.pos.sync;
+
+import com.crofflestore.pos.BuildConfig;
+import com.crofflestore.pos.database.entities.CatalogRecord;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP implementation of {@link CatalogTransport}
+ *
+ *   GET {endpoint}/{kind}?after_updated_at=1700000000000&after_id=...&limit=500
+ *
+ * answered with
+ *
+ *   {"records": [{"id": "...", "updated_at": 1700000000000, "deleted": false, ...}],
+ *    "has_more": true}
+ *
+ * Record fields are the snake_case column names of the catalog entities.
+ * The response is read record by record, so a full page is never held as
+ * text or as a JSON tree.
+ */
+public class HttpCatalogTransport implements CatalogTransport {
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MS = 10_000;
+    private static final int DEFAULT_READ_TIMEOUT_MS = 30_000;
+    private static final int MAX_ERROR_BODY_BYTES = 2048;
+
+    private static final Gson GSON = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .create();
+
+    private final String endpoint;
+    private final String apiKey;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    public HttpCatalogTransport(URL endpoint, String apiKey) {
+        this(endpoint, apiKey, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    public HttpCatalogTransport(URL endpoint, String apiKey, int connectTimeoutMs, int readTimeoutMs) {
+        String base = endpoint.toString();
+        this.endpoint = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+        this.apiKey = apiKey;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * Transport for the feed configured at build time, or null when the
+     * build has no catalog endpoint (gradle property croffleCatalogEndpoint).
+     */
+    public static HttpCatalogTransport fromBuildConfig() {
+        String url = BuildConfig.CATALOG_ENDPOINT_URL;
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        try {
+            return new HttpCatalogTransport(new URL(url), BuildConfig.SYNC_API_KEY);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Page fetch(CatalogKind kind, long afterUpdatedAt, String afterId, int limit) throws IOException {
+        URL url = new URL(endpoint + "/" + kind.wireName
+                + "?after_updated_at=" + afterUpdatedAt
+                + "&after_id=" + URLEncoder.encode(afterId, "UTF-8")
+                + "&limit=" + limit);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (apiKey != null && !apiKey.isEmpty()) {
+                connection.setRequestProperty("Authorization", "Bearer " + apiKey);
+                connection.setRequestProperty("apikey", apiKey);
+            }
+
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new SyncTransportException(status, readErrorBody(connection));
+            }
+
+            try (JsonReader reader = new JsonReader(new InputStreamReader(
+                    decode(connection, connection.getInputStream()), "UTF-8"))) {
+                return readPage(reader, kind);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static Page readPage(JsonReader reader, CatalogKind kind) throws IOException {
+        List<CatalogRecord> records = new ArrayList<>();
+        boolean hasMore = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("records".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    CatalogRecord record = GSON.fromJson(reader, kind.recordClass);
+                    if (record == null || record.getId() == null || record.getId().isEmpty()) {
+                        throw new IOException("Catalog " + kind.wireName + " record without an id");
+                    }
+                    records.add(record);
+                }
+                reader.endArray();
+            } else if ("has_more".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+                hasMore = reader.nextBoolean();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Page(records, hasMore);
+    }
+
+    private static InputStream decode(HttpURLConnection connection, InputStream in) throws IOException {
+        return "gzip".equalsIgnoreCase(connection.getContentEncoding()) ? new GZIPInputStream(in) : in;
+    }
+
+    private static String readErrorBody(HttpURLConnection connection) {
+        InputStream errorStream = connection.getErrorStream();
+        if (errorStream == null) {
+            return "no response body";
+        }
+        try (InputStream in = decode(connection, errorStream)) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[512];
+            int read;
+            while (body.size() < MAX_ERROR_BODY_BYTES && (read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return body.toString("UTF-8");
+        } catch (IOException e) {
+            return "unreadable response body";
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.crofflestore.pos.sync;
+
+import com.crofflestore.pos.BuildConfig;
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP implementation of {@link SyncTransport}
+ *
+ * Sends one gzip-compressed JSON request per batch:
+ *
+ *   POST {endpoint}
+ *   {"sent_at": 1700000000000, "transactions": [{...}, ...]}
+ *
+ * and expects a per-transaction result list back:
+ *
+ *   {"results": [{"id": "...", "status": "synced|duplicate|failed|conflict",
+ *                 "error": "...", "conflict": {...}}]}
+ *
+ * Dates are sent as epoch milliseconds. Local sync bookkeeping columns are
+ * not part of the payload.
+ */
+public class HttpSyncTransport implements SyncTransport {
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MS = 10_000;
+    private static final int DEFAULT_READ_TIMEOUT_MS = 30_000;
+    private static final int GZIP_BUFFER_SIZE = 8192;
+    private static final int MAX_ERROR_BODY_BYTES = 2048;
+
+    // Fields that only describe local queue state
+    private static final Set<String> LOCAL_ONLY_FIELDS = new HashSet<>(Arrays.asList(
+            "syncStatus", "syncAttempts", "lastSyncAttempt", "nextRetryAt", "claimOwner", "leaseExpiresAt",
+            "syncError", "syncErrorHistory", "conflictData", "priorityRank"));
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new EpochMillisAdapter().nullSafe())
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getDeclaringClass() == OfflineTransaction.class
+                            && LOCAL_ONLY_FIELDS.contains(field.getName());
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz) {
+                    return false;
+                }
+            })
+            .create();
+
+    private final URL endpoint;
+    private final String apiKey;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private volatile SyncMetrics metrics;
+
+    public HttpSyncTransport(URL endpoint, String apiKey) {
+        this(endpoint, apiKey, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    public HttpSyncTransport(URL endpoint, String apiKey, int connectTimeoutMs, int readTimeoutMs) {
+        this.endpoint = endpoint;
+        this.apiKey = apiKey;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * Transport for the endpoint configured at build time, or null when the
+     * build has no sync endpoint (gradle property croffleSyncEndpoint).
+     */
+    public static HttpSyncTransport fromBuildConfig() {
+        String url = BuildConfig.SYNC_ENDPOINT_URL;
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        try {
+            return new HttpSyncTransport(new URL(url), BuildConfig.SYNC_API_KEY);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Record body encode time and compressed bytes sent into metrics
+     */
+    public void setMetrics(SyncMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<SyncOutcome> upload(List<OfflineTransaction> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setChunkedStreamingMode(0);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (apiKey != null && !apiKey.isEmpty()) {
+                connection.setRequestProperty("Authorization", "Bearer " + apiKey);
+                connection.setRequestProperty("apikey", apiKey);
+            }
+
+            long encodeStarted = System.nanoTime();
+            CountingOutputStream body = new CountingOutputStream(connection.getOutputStream());
+            try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(body, GZIP_BUFFER_SIZE), StandardCharsets.UTF_8))) {
+                writeBatch(writer, batch);
+            }
+            SyncMetrics current = metrics;
+            if (current != null) {
+                current.record(SyncMetrics.Stage.ENCODE, System.nanoTime() - encodeStarted);
+                current.addBytesUploaded(body.count);
+            }
+
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new SyncTransportException(status, readErrorBody(connection));
+            }
+
+            try (Reader reader = new InputStreamReader(
+                    decode(connection, connection.getInputStream()), StandardCharsets.UTF_8)) {
+                return readOutcomes(reader, batch);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void writeBatch(JsonWriter writer, List<OfflineTransaction> batch) throws IOException {
+        writer.beginObject();
+        writer.name("sent_at").value(System.currentTimeMillis());
+        writer.name("transactions").beginArray();
+        for (OfflineTransaction transaction : batch) {
+            GSON.toJson(transaction, OfflineTransaction.class, writer);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     * Map the server response onto the uploaded batch. Transactions the
+     * server did not mention fail like a rejection, so one the server keeps
+     * leaving out is dead-lettered rather than retried forever. A body that
+     * is not a result list throws JsonParseException; the connection
+     * failing while it is read stays an IOException.
+     */
+    private static List<SyncOutcome> readOutcomes(Reader reader, List<OfflineTransaction> batch)
+            throws IOException {
+        BatchResponse response;
+        try {
+            response = GSON.fromJson(reader, BatchResponse.class);
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        Map<String, ResultEntry> byId = new HashMap<>();
+        if (response != null && response.results != null) {
+            for (ResultEntry entry : response.results) {
+                if (entry != null && entry.id != null) {
+                    byId.put(entry.id, entry);
+                }
+            }
+        }
+
+        List<SyncOutcome> outcomes = new ArrayList<>(batch.size());
+        for (OfflineTransaction transaction : batch) {
+            ResultEntry entry = byId.get(transaction.id);
+            if (entry == null) {
+                outcomes.add(SyncOutcome.failed(transaction.id, "No result returned by server"));
+            } else if ("synced".equals(entry.status) || "duplicate".equals(entry.status)) {
+                outcomes.add(SyncOutcome.synced(transaction.id));
+            } else if ("conflict".equals(entry.status)) {
+                outcomes.add(SyncOutcome.conflict(transaction.id,
+                        entry.conflict != null ? entry.conflict.toString() : "{}"));
+            } else {
+                outcomes.add(SyncOutcome.failed(transaction.id,
+                        entry.error != null ? entry.error : "Rejected by server"));
+            }
+        }
+        return outcomes;
+    }
+
+    private static InputStream decode(HttpURLConnection connection, InputStream in) throws IOException {
+        return "gzip".equalsIgnoreCase(connection.getContentEncoding()) ? new GZIPInputStream(in) : in;
+    }
+
+    private static String readErrorBody(HttpURLConnection connection) {
+        InputStream errorStream = connection.getErrorStream();
+        if (errorStream == null) {
+            return "no response body";
+        }
+        try (InputStream in = decode(connection, errorStream)) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[512];
+            int read;
+            while (body.size() < MAX_ERROR_BODY_BYTES && (read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return body.toString("UTF-8");
+        } catch (IOException e) {
+            return "unreadable response body";
+        }
+    }
+
+    /**
+     * Counts the bytes that reach the connection, i.e. after gzip
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Response body shape
+     */
+    private static class BatchResponse {
+        List<ResultEntry> results;
+    }
+
+    private static class ResultEntry {
+        String id;
+        String status;
+        String error;
+        JsonElement conflict;
+    }
+
+    private static class EpochMillisAdapter extends TypeAdapter<Date> {
+        @Override
+        public void write(JsonWriter out, Date value) throws IOException {
+            out.value(value.getTime());
+        }
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NUMBER) {
+                return new Date(in.nextLong());
+            }
+            in.skipValue();
+            return null;
+        }
+    }
+}
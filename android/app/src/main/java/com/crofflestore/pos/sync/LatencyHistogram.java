@@ -0,0 +1,194 @@
+package com.crofflestore.pos.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size latency histogram in the HDR style
+ *
+ * Values are microseconds in log-linear buckets: exact below 16, then 16
+ * sub-buckets per power of two, so any reported value is within 1/16
+ * (6.25%) of what was recorded, from 1us up to MAX_VALUE_US (about 19
+ * hours; larger values are clamped). Recording is a bucket index
+ * computation and an atomic increment with no allocation, safe from any
+ * number of threads.
+ *
+ * Percentiles report the highest value of the bucket the rank falls in,
+ * capped at the largest value recorded, so they never under-report.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 35;
+
+    public static final long MAX_VALUE_US = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private static final int ENCODING_VERSION = 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.min(MAX_VALUE_US, Math.max(0, micros));
+        counts.incrementAndGet(bucketOf(value));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(value);
+        long max;
+        while (value > (max = maxMicros.get())) {
+            if (maxMicros.compareAndSet(max, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Add every value recorded in other
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalMicros.addAndGet(other.totalMicros.get());
+        long otherMax = other.maxMicros.get();
+        long max;
+        while (otherMax > (max = maxMicros.get())) {
+            if (maxMicros.compareAndSet(max, otherMax)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public long getMeanMicros() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : totalMicros.get() / count;
+    }
+
+    /**
+     * Value at the given percentile (0-100] in microseconds; 0 when empty
+     */
+    public long percentileMicros(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Sparse binary form: version, count, sum and max, then (bucket index
+     * delta, count) varint pairs for the non-empty buckets only. A run's
+     * histogram is typically a few dozen bytes.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        writeVarLong(out, ENCODING_VERSION);
+        writeVarLong(out, totalCount.get());
+        writeVarLong(out, totalMicros.get());
+        writeVarLong(out, maxMicros.get());
+        int previous = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                writeVarLong(out, i - previous);
+                writeVarLong(out, count);
+                previous = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if value is not an encoded histogram
+     */
+    public static LatencyHistogram decode(byte[] value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int[] position = {0};
+        if (readVarLong(value, position) != ENCODING_VERSION) {
+            throw new IllegalArgumentException("Unknown histogram encoding");
+        }
+        histogram.totalCount.set(readVarLong(value, position));
+        histogram.totalMicros.set(readVarLong(value, position));
+        histogram.maxMicros.set(readVarLong(value, position));
+        int index = 0;
+        while (position[0] < value.length) {
+            index += (int) readVarLong(value, position);
+            if (index < 0 || index >= BUCKET_COUNT) {
+                throw new IllegalArgumentException("Histogram bucket out of range: " + index);
+            }
+            histogram.counts.set(index, readVarLong(value, position));
+        }
+        return histogram;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    static long highestInBucket(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] in, int[] position) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= in.length) {
+                throw new IllegalArgumentException("Truncated histogram");
+            }
+            byte b = in[position[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in histogram");
+    }
+}
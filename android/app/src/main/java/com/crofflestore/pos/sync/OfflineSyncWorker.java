@@ -1,8 +1,19 @@
 package com.crofflestore.pos.sync;
 
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.app.NotificationCompat;
+import androidx.work.ForegroundInfo;
+import androidx.work.OutOfQuotaPolicy;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 import androidx.work.Data;
@@ -13,9 +24,14 @@ import androidx.work.PeriodicWorkRequest;
 import androidx.work.WorkManager;
 import androidx.work.BackoffPolicy;
 import com.crofflestore.pos.database.CroffleOfflineDatabase;
-import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.R;
 import com.crofflestore.pos.database.dao.OfflineTransactionDao;
-import java.util.List;
+import com.crofflestore.pos.database.QueueStateMonitor;
+import com.crofflestore.pos.database.dao.QueueCursor;
+import com.crofflestore.pos.database.dao.QueueState;
+import com.crofflestore.pos.database.dao.QueueStatsTracker;
+import com.crofflestore.pos.database.entities.SyncMetricsSample;
+import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -24,38 +40,89 @@ import java.util.concurrent.TimeUnit;
  * Handles:
  * - Periodic background sync of offline transactions
  * - Network-aware sync scheduling
- * - Retry logic with exponential backoff
+ * - Pipelined batch upload (see SyncPipeline)
+ * - Batch size and concurrency adapted to measured latency and timeouts
+ *   (see AdaptiveBatchController), carried over between runs
+ * - Draining the queue until empty within a time budget
+ * - Leased claims, so concurrent runs never send the same row and rows
+ *   left syncing by a killed run go back to the queue
+ * - Per-row retry backoff (see RetryBackoff); a run whose rows all failed
+ *   still succeeds, so WorkManager does not add its own backoff on top
  * - Battery optimization compliance
  * - Sync progress reporting
+ * - Per-run metrics (stage latencies, throughput, queue gauges) kept in
+ *   the sync_metrics table
+ * - Foreground promotion for large backlogs
+ * - Starting a run when the observed queue gains due rows (watchQueue)
  */
 public class OfflineSyncWorker extends Worker {
     
     private static final String TAG = "OfflineSyncWorker";
     private static final String WORK_NAME_PERIODIC = "offline_sync_periodic";
     private static final String WORK_NAME_IMMEDIATE = "offline_sync_immediate";
+    private static final String WORK_NAME_DRAIN = "offline_sync_drain";
     
     // Input data keys
     public static final String KEY_SYNC_TYPE = "sync_type";
     public static final String KEY_PRIORITY_FILTER = "priority_filter";
     public static final String KEY_BATCH_SIZE = "batch_size";
     public static final String KEY_FORCE_SYNC = "force_sync";
+    public static final String KEY_MAX_IN_FLIGHT = "max_in_flight";
+    public static final String KEY_TIME_BUDGET_MS = "time_budget_ms";
+    
+    // Progress data keys
+    public static final String PROGRESS_SYNCED = "synced_count";
+    public static final String PROGRESS_FAILED = "failed_count";
+    public static final String PROGRESS_CONFLICTS = "conflict_count";
+    public static final String PROGRESS_REMAINING = "remaining_count";
     
     // Sync types
     public static final String SYNC_TYPE_PERIODIC = "periodic";
     public static final String SYNC_TYPE_IMMEDIATE = "immediate";
     public static final String SYNC_TYPE_PRIORITY = "priority";
     
-    // Default values
-    private static final int DEFAULT_BATCH_SIZE = 10;
-    private static final int MAX_RETRY_ATTEMPTS = 3;
+    // Adaptive batch controller state, kept between runs
+    private static final String CONTROLLER_PREFS = "offline_sync_controller";
+    private static final String PREF_BATCH_SIZE = "batch_size";
+    private static final String PREF_IN_FLIGHT = "max_in_flight";
+    
+    // WorkManager stops background workers after 10 minutes; leave room to
+    // finish the batches already claimed when the budget runs out
+    private static final long DEFAULT_TIME_BUDGET_MS = TimeUnit.MINUTES.toMillis(8);
+    // Foreground workers are not subject to that limit
+    private static final long FOREGROUND_TIME_BUDGET_MS = TimeUnit.MINUTES.toMillis(30);
+    // Queued rows at which a run asks to be promoted to a foreground service
+    private static final int FOREGROUND_BACKLOG_THRESHOLD = 500;
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+    
+    private static final String NOTIFICATION_CHANNEL_ID = "offline_sync";
+    private static final int NOTIFICATION_ID = 7301;
+    
+    // Started by watchQueue(), at most once per process
+    private static QueueStateMonitor.Listener queueWatcher;
+    
+    // Replaces the build-configured transport, e.g. with a local stand-in server
+    private static volatile SyncTransport transportOverride;
     
     private CroffleOfflineDatabase database;
     private OfflineTransactionDao transactionDao;
+    private SyncTransport transport;
+    private volatile SyncPipeline activePipeline;
+    private SyncMetrics metrics;
+    private int backlogAtStart;
+    private boolean foreground;
+    private long lastProgressAt;
     
     public OfflineSyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
         database = CroffleOfflineDatabase.getInstance(context);
         transactionDao = database.offlineTransactionDao();
+        transport = transportOverride != null ? transportOverride : HttpSyncTransport.fromBuildConfig();
+    }
+    
+    @VisibleForTesting
+    public static void setTransportOverride(SyncTransport override) {
+        transportOverride = override;
     }
     
     @NonNull
@@ -67,41 +134,81 @@ public class OfflineSyncWorker extends Worker {
             // Get input parameters
             String syncType = getInputData().getString(KEY_SYNC_TYPE);
             String priorityFilter = getInputData().getString(KEY_PRIORITY_FILTER);
-            int batchSize = getInputData().getInt(KEY_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+            // An explicit batch size turns the adaptive controller off
+            int fixedBatchSize = getInputData().getInt(KEY_BATCH_SIZE, 0);
             boolean forceSync = getInputData().getBoolean(KEY_FORCE_SYNC, false);
             
-            Log.d(TAG, String.format("Sync parameters: type=%s, priority=%s, batchSize=%d, force=%b", 
-                    syncType, priorityFilter, batchSize, forceSync));
+            Log.d(TAG, String.format("Sync parameters: type=%s, priority=%s, batchSize=%s, force=%b", 
+                    syncType, priorityFilter, fixedBatchSize > 0 ? fixedBatchSize : "adaptive", forceSync));
+            
+            if (transport == null) {
+                Log.w(TAG, "No sync endpoint configured, skipping...");
+                return Result.success(createOutputData(0, 0, 0, "Sync endpoint not configured"));
+            }
             
             // Check if sync is needed
-            if (!forceSync && !isSyncNeeded()) {
+            backlogAtStart = queuedCount();
+            if (!forceSync && backlogAtStart == 0) {
                 Log.d(TAG, "No sync needed, skipping...");
                 return Result.success(createOutputData(0, 0, 0, "No sync needed"));
             }
             
+            // Large backlogs run as a foreground service so they can outlast
+            // the background execution limit
+            long timeBudgetMs = getInputData().getLong(KEY_TIME_BUDGET_MS, DEFAULT_TIME_BUDGET_MS);
+            if (backlogAtStart >= FOREGROUND_BACKLOG_THRESHOLD && promoteToForeground()) {
+                timeBudgetMs = Math.max(timeBudgetMs, FOREGROUND_TIME_BUDGET_MS);
+            }
+            
             // Perform sync based on type
-            SyncResult result;
-            switch (syncType != null ? syncType : SYNC_TYPE_PERIODIC) {
+            AdaptiveBatchController controller = fixedBatchSize > 0 ? null : loadBatchController();
+            int batchSize = controller != null ? controller.getBatchSize() : fixedBatchSize;
+            int maxInFlight = getInputData().getInt(KEY_MAX_IN_FLIGHT,
+                    controller != null ? controller.getMaxInFlight() : AdaptiveBatchController.INITIAL_IN_FLIGHT);
+            String runType = syncType != null ? syncType : SYNC_TYPE_PERIODIC;
+            QueueDrainSource source;
+            switch (runType) {
                 case SYNC_TYPE_IMMEDIATE:
-                    result = performImmediateSync(batchSize);
+                    source = immediateSyncSource(timeBudgetMs);
                     break;
                 case SYNC_TYPE_PRIORITY:
-                    result = performPrioritySync(priorityFilter, batchSize);
+                    source = prioritySyncSource(priorityFilter, timeBudgetMs);
                     break;
                 case SYNC_TYPE_PERIODIC:
                 default:
-                    result = performPeriodicSync(batchSize);
+                    source = periodicSyncSource(timeBudgetMs);
                     break;
             }
+            metrics = new SyncMetrics();
+            if (transport instanceof HttpSyncTransport) {
+                ((HttpSyncTransport) transport).setMetrics(metrics);
+            }
+            SyncPipeline.Stats result = null;
+            try {
+                result = runPipeline(source, batchSize, maxInFlight, controller);
+            } finally {
+                recordMetrics(runType, result);
+                if (controller != null) {
+                    saveBatchController(controller);
+                }
+            }
             
             // Log results
-            Log.d(TAG, String.format("Sync completed: synced=%d, failed=%d, conflicts=%d", 
-                    result.syncedCount, result.failedCount, result.conflictCount));
+            Log.d(TAG, "Sync completed: " + result + ", drained=" + source.isDrained()
+                    + (controller != null ? ", " + controller : ""));
+            
+            // Out of time with rows left: continue in an expedited follow-up
+            // rather than waiting for the next periodic slot
+            if (source.isBudgetExhausted() && !isStopped()) {
+                scheduleDrainContinuation(getApplicationContext(), fixedBatchSize);
+            }
             
-            // Determine work result
-            if (result.failedCount > 0 && result.syncedCount == 0) {
-                // All transactions failed - retry
-                return Result.retry();
+            // Determine work result. Failed and deferred rows already carry
+            // their own next_retry_at, so WorkManager's backoff is not
+            // stacked on top with Result.retry()
+            if (result.failedCount + result.deferredCount > 0 && result.syncedCount == 0) {
+                return Result.success(createOutputData(result.syncedCount, result.failedCount, 
+                        result.conflictCount, "Sync failed, rows scheduled for retry"));
             } else if (result.conflictCount > 0) {
                 // Some conflicts - success but with conflicts
                 return Result.success(createOutputData(result.syncedCount, result.failedCount, 
@@ -118,131 +225,211 @@ public class OfflineSyncWorker extends Worker {
         }
     }
     
+    @Override
+    public void onStopped() {
+        super.onStopped();
+        SyncPipeline pipeline = activePipeline;
+        if (pipeline != null) {
+            pipeline.cancel();
+        }
+    }
+    
     /**
-     * Check if sync is needed
+     * Pending plus due failed rows, used to decide whether and how to sync.
+     * Pending comes from the in-memory queue statistics; failed rows still
+     * backing off are left out, so they neither start a run nor count
+     * toward foreground promotion.
      */
-    private boolean isSyncNeeded() {
+    private int queuedCount() {
         try {
-            int pendingCount = transactionDao.getPendingTransactionCount();
-            int failedCount = transactionDao.getFailedTransactionCount();
+            QueueStatsTracker.Snapshot stats = transactionDao.getQueueStats();
+            int due = stats.failed > 0 ? transactionDao.countDueForRetry(new Date()) : 0;
             
-            Log.d(TAG, String.format("Sync check: pending=%d, failed=%d", pendingCount, failedCount));
-            return (pendingCount + failedCount) > 0;
+            Log.d(TAG, String.format("Sync check: pending=%d, failed=%d, due=%d", stats.pending, stats.failed, due));
+            return stats.pending + due;
         } catch (Exception e) {
             Log.e(TAG, "Failed to check sync status", e);
-            return false;
+            return 0;
         }
     }
     
     /**
-     * Perform immediate sync (all pending transactions)
+     * Immediate sync (all pending transactions)
      */
-    private SyncResult performImmediateSync(int batchSize) {
+    private QueueDrainSource immediateSyncSource(long timeBudgetMs) {
         Log.d(TAG, "Performing immediate sync...");
         
-        List<OfflineTransaction> transactions = transactionDao.getNextBatchForSync(batchSize);
-        return syncTransactions(transactions);
+        return new QueueDrainSource(
+                (after, size) -> transactionDao.claimBatchForSync(claimOwner(), after, size, new Date()),
+                timeBudgetMs);
     }
     
     /**
-     * Perform priority-based sync
+     * Priority-based sync
      */
-    private SyncResult performPrioritySync(String priority, int batchSize) {
+    private QueueDrainSource prioritySyncSource(String priority, long timeBudgetMs) {
         Log.d(TAG, "Performing priority sync for: " + priority);
         
-        List<OfflineTransaction> transactions;
-        if (priority != null) {
-            transactions = transactionDao.getTransactionsByPriority(priority, batchSize);
-        } else {
-            // Default to high priority
-            transactions = transactionDao.getHighPriorityTransactions();
-            if (transactions.size() > batchSize) {
-                transactions = transactions.subList(0, batchSize);
-            }
-        }
-        
-        return syncTransactions(transactions);
+        // Default to high priority
+        final String label = priority != null ? priority : "high";
+        return new QueueDrainSource(
+                (after, size) -> transactionDao.claimBatchByPriority(claimOwner(), label, after, size, new Date()),
+                timeBudgetMs);
     }
     
     /**
-     * Perform periodic sync (balanced approach)
+     * Periodic sync (balanced approach)
      */
-    private SyncResult performPeriodicSync(int batchSize) {
+    private QueueDrainSource periodicSyncSource(long timeBudgetMs) {
         Log.d(TAG, "Performing periodic sync...");
         
-        // Prioritize cash transactions and high priority items
-        List<OfflineTransaction> cashTransactions = transactionDao.getCashTransactionsForSync();
-        List<OfflineTransaction> highPriorityTransactions = transactionDao.getHighPriorityTransactions();
-        
-        // Combine and limit to batch size
-        List<OfflineTransaction> transactions = transactionDao.getNextBatchForSync(batchSize);
-        
-        return syncTransactions(transactions);
+        // Queue order already puts high priority items first
+        return new QueueDrainSource(
+                (after, size) -> transactionDao.claimBatchForSync(claimOwner(), after, size, new Date()),
+                timeBudgetMs);
     }
     
     /**
-     * Sync a list of transactions
+     * Lease owner for this run's claims. Work ids are unique per run, so
+     * overlapping periodic, immediate and drain runs never act on each
+     * other's rows.
      */
-    private SyncResult syncTransactions(List<OfflineTransaction> transactions) {
-        SyncResult result = new SyncResult();
-        
-        if (transactions.isEmpty()) {
-            Log.d(TAG, "No transactions to sync");
-            return result;
+    private String claimOwner() {
+        return getId().toString();
+    }
+    
+    /**
+     * Drive the read/upload/write pipeline until the source stops claiming
+     */
+    private SyncPipeline.Stats runPipeline(QueueDrainSource source, int batchSize, int maxInFlight,
+                                           AdaptiveBatchController controller) throws InterruptedException {
+        SyncPipeline pipeline = new SyncPipeline(transport, source,
+                outcomes -> transactionDao.applySyncOutcomes(claimOwner(), outcomes, new Date()),
+                batchSize, maxInFlight);
+        pipeline.setProgressListener(totals -> reportProgress(totals, source));
+        pipeline.setMetrics(metrics);
+        pipeline.setBatchController(controller);
+        activePipeline = pipeline;
+        try {
+            return pipeline.run();
+        } finally {
+            activePipeline = null;
         }
+    }
+    
+    /**
+     * Controller state saved by the previous run, capped for the network
+     * quality recorded with the latest sale
+     */
+    private AdaptiveBatchController loadBatchController() {
+        AdaptiveBatchController controller = new AdaptiveBatchController();
+        SharedPreferences prefs = getApplicationContext()
+                .getSharedPreferences(CONTROLLER_PREFS, Context.MODE_PRIVATE);
+        controller.restore(prefs.getInt(PREF_BATCH_SIZE, AdaptiveBatchController.INITIAL_BATCH_SIZE),
+                prefs.getInt(PREF_IN_FLIGHT, AdaptiveBatchController.INITIAL_IN_FLIGHT));
+        try {
+            controller.setNetworkQuality(transactionDao.getLatestNetworkQuality());
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to read network quality", e);
+        }
+        return controller;
+    }
+    
+    private void saveBatchController(AdaptiveBatchController controller) {
+        getApplicationContext().getSharedPreferences(CONTROLLER_PREFS, Context.MODE_PRIVATE)
+                .edit()
+                .putInt(PREF_BATCH_SIZE, controller.getLearnedBatchSize())
+                .putInt(PREF_IN_FLIGHT, controller.getLearnedInFlight())
+                .apply();
+    }
+    
+    /**
+     * Persist this run's metrics with the queue gauges as of now. Never
+     * fails the run.
+     */
+    private void recordMetrics(String syncType, SyncPipeline.Stats stats) {
+        try {
+            SyncMetricsSample sample = metrics.toSample(syncType, stats,
+                    transactionDao.getQueueStats(), System.currentTimeMillis());
+            database.syncMetricsDao().record(sample);
+            Log.d(TAG, "Sync metrics: " + sample);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to record sync metrics", e);
+        }
+    }
+    
+    /**
+     * Publish progress at most once per PROGRESS_INTERVAL_MS (writer thread)
+     */
+    private void reportProgress(SyncPipeline.Stats totals, QueueDrainSource source) {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastProgressAt < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        lastProgressAt = now;
         
-        Log.d(TAG, String.format("Syncing %d transactions...", transactions.size()));
-        
-        for (OfflineTransaction transaction : transactions) {
-            try {
-                // Mark as syncing
-                transaction.markAsSyncing();
-                transactionDao.update(transaction);
-                
-                // Simulate sync process (in real implementation, this would call the web service)
-                boolean syncSuccess = simulateTransactionSync(transaction);
-                
-                if (syncSuccess) {
-                    transaction.markAsSynced();
-                    transactionDao.update(transaction);
-                    result.syncedCount++;
-                    Log.d(TAG, "Successfully synced transaction: " + transaction.receiptNumber);
-                } else {
-                    transaction.markAsFailed("Sync failed - server error");
-                    transactionDao.update(transaction);
-                    result.failedCount++;
-                    Log.w(TAG, "Failed to sync transaction: " + transaction.receiptNumber);
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error syncing transaction: " + transaction.receiptNumber, e);
-                transaction.markAsFailed("Sync failed - " + e.getMessage());
-                transactionDao.update(transaction);
-                result.failedCount++;
+        int done = totals.syncedCount + totals.failedCount + totals.deferredCount
+                + totals.conflictCount + totals.releasedCount;
+        // Rows queued during the run are not in the start count
+        int remaining = Math.max(0, Math.max(backlogAtStart, source.getClaimedCount()) - done);
+        try {
+            setProgressAsync(new Data.Builder()
+                    .putInt(PROGRESS_SYNCED, totals.syncedCount)
+                    .putInt(PROGRESS_FAILED, totals.failedCount)
+                    .putInt(PROGRESS_CONFLICTS, totals.conflictCount)
+                    .putInt(PROGRESS_REMAINING, remaining)
+                    .build());
+            if (foreground) {
+                setForegroundAsync(createForegroundInfo(done, done + remaining));
             }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to report sync progress", e);
         }
-        
-        return result;
     }
     
     /**
-     * Simulate transaction sync (placeholder for actual implementation)
+     * Ask WorkManager to run this worker as a foreground service.
+     * Android 12+ refuses this when the app is in the background; the run
+     * then keeps the normal budget and continues via an expedited request.
      */
-    private boolean simulateTransactionSync(OfflineTransaction transaction) {
+    private boolean promoteToForeground() {
         try {
-            // In real implementation, this would:
-            // 1. Convert transaction to API format
-            // 2. Send HTTP request to server
-            // 3. Handle response and conflicts
-            // 4. Return success/failure
-            
-            // For now, simulate success for most transactions
-            return Math.random() > 0.1; // 90% success rate
-            
+            setForegroundAsync(createForegroundInfo(0, backlogAtStart)).get();
+            foreground = true;
+            Log.d(TAG, "Promoted to foreground for backlog of " + backlogAtStart);
         } catch (Exception e) {
-            Log.e(TAG, "Sync simulation failed", e);
-            return false;
+            Log.w(TAG, "Foreground promotion refused, staying in background", e);
+        }
+        return foreground;
+    }
+    
+    /**
+     * Required for expedited work on Android 11 and below
+     */
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        return createForegroundInfo(0, 0);
+    }
+    
+    private ForegroundInfo createForegroundInfo(int done, int total) {
+        Context context = getApplicationContext();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = context.getSystemService(NotificationManager.class);
+            manager.createNotificationChannel(new NotificationChannel(NOTIFICATION_CHANNEL_ID,
+                    context.getString(R.string.sync_notification_channel), NotificationManager.IMPORTANCE_LOW));
+        }
+        Notification notification = new NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_notify_sync)
+                .setContentTitle(context.getString(R.string.sync_notification_title))
+                .setProgress(total, done, total == 0)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .build();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new ForegroundInfo(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
         }
+        return new ForegroundInfo(NOTIFICATION_ID, notification);
     }
     
     /**
@@ -275,7 +462,6 @@ public class OfflineSyncWorker extends Worker {
                 .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
                 .setInputData(new Data.Builder()
                         .putString(KEY_SYNC_TYPE, SYNC_TYPE_PERIODIC)
-                        .putInt(KEY_BATCH_SIZE, DEFAULT_BATCH_SIZE)
                         .build())
                 .build();
         
@@ -290,25 +476,85 @@ public class OfflineSyncWorker extends Worker {
      * Schedule immediate sync
      */
     public static void scheduleImmediateSync(Context context, boolean forceSync) {
+        enqueueImmediateSync(context, forceSync, androidx.work.ExistingWorkPolicy.REPLACE);
+        
+        Log.d(TAG, "Immediate sync scheduled");
+    }
+    
+    /**
+     * Start an immediate sync whenever the queue goes from nothing to send
+     * to something due: a new sale, or a failed row whose backoff ran out.
+     * Driven by CroffleOfflineDatabase.queueState(), so it reacts within
+     * the monitor's debounce delay without polling. An immediate run
+     * already queued or running is kept rather than replaced.
+     */
+    public static synchronized void watchQueue(Context context) {
+        if (queueWatcher != null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        queueWatcher = new QueueStateMonitor.Listener() {
+            private boolean due;
+            
+            @Override
+            public void onQueueStateChanged(QueueState state) {
+                if (state.hasDueWork() && !due) {
+                    enqueueImmediateSync(appContext, false, androidx.work.ExistingWorkPolicy.KEEP);
+                    Log.d(TAG, "Queue has due rows, immediate sync requested: " + state);
+                }
+                due = state.hasDueWork();
+            }
+        };
+        CroffleOfflineDatabase.getInstance(appContext).queueState().addListener(queueWatcher);
+    }
+    
+    private static void enqueueImmediateSync(Context context, boolean forceSync,
+                                             androidx.work.ExistingWorkPolicy policy) {
         Constraints constraints = new Constraints.Builder()
                 .setRequiredNetworkType(NetworkType.CONNECTED)
                 .build();
         
         OneTimeWorkRequest syncWork = new OneTimeWorkRequest.Builder(OfflineSyncWorker.class)
                 .setConstraints(constraints)
+                .setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
                 .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 10, TimeUnit.SECONDS)
                 .setInputData(new Data.Builder()
                         .putString(KEY_SYNC_TYPE, SYNC_TYPE_IMMEDIATE)
                         .putBoolean(KEY_FORCE_SYNC, forceSync)
-                        .putInt(KEY_BATCH_SIZE, 20) // Larger batch for immediate sync
                         .build())
                 .build();
         
         WorkManager.getInstance(context)
-                .enqueueUniqueWork(WORK_NAME_IMMEDIATE, 
-                        androidx.work.ExistingWorkPolicy.REPLACE, syncWork);
+                .enqueueUniqueWork(WORK_NAME_IMMEDIATE, policy, syncWork);
+    }
+    
+    /**
+     * Schedule an expedited run that continues draining the queue after a
+     * run ran out of time. Appended so it starts once the current run ends.
+     * A fixed batch size carries over; 0 keeps the run adaptive.
+     */
+    private static void scheduleDrainContinuation(Context context, int fixedBatchSize) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        
+        Data.Builder input = new Data.Builder()
+                .putString(KEY_SYNC_TYPE, SYNC_TYPE_IMMEDIATE);
+        if (fixedBatchSize > 0) {
+            input.putInt(KEY_BATCH_SIZE, fixedBatchSize);
+        }
+        OneTimeWorkRequest syncWork = new OneTimeWorkRequest.Builder(OfflineSyncWorker.class)
+                .setConstraints(constraints)
+                .setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 10, TimeUnit.SECONDS)
+                .setInputData(input.build())
+                .build();
+        
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME_DRAIN, 
+                        androidx.work.ExistingWorkPolicy.APPEND_OR_REPLACE, syncWork);
         
-        Log.d(TAG, "Immediate sync scheduled");
+        Log.d(TAG, "Drain continuation scheduled");
     }
     
     /**
@@ -317,15 +563,7 @@ public class OfflineSyncWorker extends Worker {
     public static void cancelAllSync(Context context) {
         WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME_PERIODIC);
         WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME_IMMEDIATE);
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME_DRAIN);
         Log.d(TAG, "All sync work cancelled");
     }
-    
-    /**
-     * Sync result class
-     */
-    private static class SyncResult {
-        int syncedCount = 0;
-        int failedCount = 0;
-        int conflictCount = 0;
-    }
 }
@@ -0,0 +1,94 @@
+package com.crofflestore.pos.sync;
+
+import com.crofflestore.pos.database.dao.QueueCursor;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch source that walks the queue with a keyset cursor until it is empty
+ * or the time budget runs out
+ *
+ * Every claim continues after the last row handed out, so rows that fail or
+ * are released during the run are not claimed again by the same run, while
+ * rows queued during the run are still picked up if they sort later. The
+ * budget is only checked between claims; batches already claimed are always
+ * finished by the pipeline.
+ */
+public class QueueDrainSource implements SyncPipeline.BatchSource {
+
+    /**
+     * Claims up to batchSize rows after the cursor
+     */
+    public interface Claim {
+        List<OfflineTransaction> claim(QueueCursor after, int batchSize);
+    }
+
+    interface Clock {
+        long nanoTime();
+    }
+
+    private static final Clock SYSTEM_CLOCK = System::nanoTime;
+
+    private final Claim claim;
+    private final Clock clock;
+    private final long deadlineNanos;
+
+    // Advanced on the pipeline's reader thread, read by progress reporting
+    private volatile QueueCursor cursor = QueueCursor.START;
+    private volatile int claimedCount;
+    private volatile boolean drained;
+    private volatile boolean budgetExhausted;
+
+    public QueueDrainSource(Claim claim, long timeBudgetMillis) {
+        this(claim, timeBudgetMillis, SYSTEM_CLOCK);
+    }
+
+    QueueDrainSource(Claim claim, long timeBudgetMillis, Clock clock) {
+        this.claim = claim;
+        this.clock = clock;
+        this.deadlineNanos = clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeBudgetMillis));
+    }
+
+    @Override
+    public List<OfflineTransaction> nextBatch(int batchSize) {
+        if (drained) {
+            return Collections.emptyList();
+        }
+        if (clock.nanoTime() - deadlineNanos >= 0) {
+            budgetExhausted = true;
+            return Collections.emptyList();
+        }
+        List<OfflineTransaction> batch = claim.claim(cursor, batchSize);
+        if (batch.isEmpty()) {
+            drained = true;
+            return batch;
+        }
+        claimedCount += batch.size();
+        cursor = QueueCursor.after(batch.get(batch.size() - 1));
+        return batch;
+    }
+
+    /**
+     * True once a claim came back empty: nothing is left after the cursor
+     */
+    public boolean isDrained() {
+        return drained;
+    }
+
+    /**
+     * True if the run stopped because the time budget ran out
+     */
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    public int getClaimedCount() {
+        return claimedCount;
+    }
+
+    public QueueCursor getCursor() {
+        return cursor;
+    }
+}
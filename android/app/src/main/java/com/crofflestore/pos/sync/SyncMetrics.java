@@ -0,0 +1,168 @@
+package com.crofflestore.pos.sync;
+
+import com.crofflestore.pos.database.dao.QueueStatsTracker;
+import com.crofflestore.pos.database.entities.SyncMetricsSample;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instrumentation for one sync run
+ *
+ * The pipeline and transport record into it from their own threads as they
+ * go; each record is a nanoTime difference and an atomic increment, nothing
+ * is formatted or allocated per row. When the run ends the worker turns it
+ * into a SyncMetricsSample together with the queue gauges of that moment.
+ *
+ * Stages:
+ * - CLAIM: one batch claim on the reader thread, including the empty
+ *   claim that ends the run
+ * - ENCODE: writing one request body (JSON + gzip). The body is streamed,
+ *   so this includes time blocked on a slow connection.
+ * - UPLOAD: one request round trip as the pipeline sees it, encode included
+ * - COMMIT: one outcome commit on the writer thread
+ */
+public final class SyncMetrics {
+
+    public enum Stage {
+        CLAIM, ENCODE, UPLOAD, COMMIT
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final long startedAtNanos = System.nanoTime();
+
+    public SyncMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].recordNanos(nanos);
+    }
+
+    /**
+     * Request body bytes as sent, i.e. after compression
+     */
+    public void addBytesUploaded(long bytes) {
+        bytesUploaded.addAndGet(bytes);
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded.get();
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos);
+    }
+
+    /**
+     * The persisted form of this run
+     *
+     * @param stats the pipeline totals, or null if the run failed before
+     *              producing any
+     * @param queue queue gauges as of now, or null if unavailable
+     */
+    public SyncMetricsSample toSample(String syncType, SyncPipeline.Stats stats,
+                                      QueueStatsTracker.Snapshot queue, long now) {
+        SyncMetricsSample sample = new SyncMetricsSample();
+        sample.recordedAt = new Date(now);
+        sample.syncType = syncType;
+        sample.durationMs = getElapsedMillis();
+        if (stats != null) {
+            sample.syncedCount = stats.syncedCount;
+            sample.failedCount = stats.failedCount;
+            sample.conflictCount = stats.conflictCount;
+            sample.requests = stats.requests;
+            sample.transactionsPerSecond = sample.durationMs == 0
+                    ? 0 : stats.syncedCount * 1000.0 / sample.durationMs;
+        }
+        sample.bytesUploaded = getBytesUploaded();
+
+        LatencyHistogram claim = histogram(Stage.CLAIM);
+        LatencyHistogram encode = histogram(Stage.ENCODE);
+        LatencyHistogram upload = histogram(Stage.UPLOAD);
+        LatencyHistogram commit = histogram(Stage.COMMIT);
+        sample.claimP50Micros = claim.percentileMicros(50);
+        sample.claimP99Micros = claim.percentileMicros(99);
+        sample.encodeP50Micros = encode.percentileMicros(50);
+        sample.encodeP99Micros = encode.percentileMicros(99);
+        sample.uploadP50Micros = upload.percentileMicros(50);
+        sample.uploadP99Micros = upload.percentileMicros(99);
+        sample.uploadMaxMicros = upload.getMaxMicros();
+        sample.commitP50Micros = commit.percentileMicros(50);
+        sample.commitP99Micros = commit.percentileMicros(99);
+        sample.latencyHistograms = encodeHistograms();
+
+        if (queue != null) {
+            sample.queuedHigh = queue.highQueued;
+            sample.queuedMedium = queue.mediumQueued;
+            sample.queuedLow = queue.lowQueued;
+            if (queue.oldestQueued != null) {
+                sample.oldestQueuedAgeMs = Math.max(0, now - queue.oldestQueued.getTime());
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * Every stage's histogram as (stage ordinal, length, LatencyHistogram
+     * encoding) records
+     */
+    public byte[] encodeHistograms() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Stage stage : STAGES) {
+                byte[] encoded = histogram(stage).encode();
+                out.writeByte(stage.ordinal());
+                out.writeShort(encoded.length);
+                out.write(encoded);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Histograms of a stored sample, indexed by Stage ordinal. Stages
+     * missing from the value come back empty, unknown ones are skipped.
+     *
+     * @throws IllegalArgumentException if value is malformed
+     */
+    public static LatencyHistogram[] decodeHistograms(byte[] value) {
+        LatencyHistogram[] result = new LatencyHistogram[STAGES.length];
+        if (value != null) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+                while (in.available() > 0) {
+                    int ordinal = in.readUnsignedByte();
+                    byte[] encoded = new byte[in.readUnsignedShort()];
+                    in.readFully(encoded);
+                    if (ordinal < result.length) {
+                        result[ordinal] = LatencyHistogram.decode(encoded);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Malformed latency histograms", e);
+            }
+        }
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] == null) {
+                result[i] = new LatencyHistogram();
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,432 @@
+package com.crofflestore.pos.sync;
+
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLException;
+
+/**
+ * Three-stage sync engine
+ *
+ * - Read: the calling thread claims batches from a {@link BatchSource}
+ * - Upload: each batch is split into ordering lanes by (store_id, shift_id);
+ *   every lane is a serial executor, so up to {@code maxInFlightRequests}
+ *   requests overlap while rows sharing a key go up in claim order
+ * - Write: a single writer thread commits finished outcomes, coalescing
+ *   whatever has completed since its last commit into one transaction
+ *
+ * The number of claimed-but-uncommitted batches is bounded, so reading
+ * stalls when uploads fall behind. Once a row of some key fails, later rows
+ * of that key are released back to the queue for this run instead of being
+ * uploaded ahead of it. Across runs the claim itself holds them back while
+ * the failed row backs off (see OfflineTransactionQueries.NEXT_BATCH_AFTER).
+ *
+ * A request that gets no answer (no connection, timeout, or a status the
+ * server asks to be retried) defers its rows: they wait out a backoff
+ * without using up an attempt. The server is then taken to be unreachable
+ * for the rest of the run, so no more batches are claimed and rows already
+ * claimed are released unsent. A request the server rejects outright, or
+ * whose response cannot be read, fails its rows instead (see
+ * {@link #isTransient}).
+ */
+public class SyncPipeline {
+
+    /**
+     * Claims the next batch (marking it syncing); an empty list ends the run
+     */
+    public interface BatchSource {
+        List<OfflineTransaction> nextBatch(int batchSize);
+    }
+
+    /**
+     * Persists outcomes, all in one write transaction
+     */
+    public interface OutcomeSink {
+        void commit(List<SyncOutcome> outcomes);
+    }
+
+    /**
+     * Notified on the writer thread after each commit with the running
+     * totals; the Stats instance is live and must not be kept
+     */
+    public interface ProgressListener {
+        void onCommitted(Stats totals);
+    }
+
+    /**
+     * Totals for one pipeline run
+     */
+    public static class Stats {
+        public int batches;
+        public int requests;
+        public int syncedCount;
+        public int failedCount;
+        public int deferredCount;
+        public int conflictCount;
+        public int releasedCount;
+        public int commits;
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "batches=" + batches +
+                    ", requests=" + requests +
+                    ", synced=" + syncedCount +
+                    ", failed=" + failedCount +
+                    ", deferred=" + deferredCount +
+                    ", conflicts=" + conflictCount +
+                    ", released=" + releasedCount +
+                    ", commits=" + commits +
+                    '}';
+        }
+    }
+
+    private final SyncTransport transport;
+    private final BatchSource source;
+    private final OutcomeSink sink;
+    private final int batchSize;
+    private final int lanes;
+    private final int maxClaimedBatches;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicBoolean unreachable = new AtomicBoolean();
+    private final ConcurrentLinkedQueue<LaneResult> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile RuntimeException writeFailure;
+    private volatile ProgressListener progressListener;
+    private volatile SyncMetrics metrics;
+    private volatile AdaptiveBatchController batchController;
+
+    // Guarded by the writer thread, published after run() joins it
+    private final Stats stats = new Stats();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    public SyncPipeline(SyncTransport transport, BatchSource source, OutcomeSink sink,
+                        int batchSize, int maxInFlightRequests) {
+        this.transport = transport;
+        this.source = source;
+        this.sink = sink;
+        this.batchSize = Math.max(1, batchSize);
+        this.lanes = Math.max(1, maxInFlightRequests);
+        // One batch being uploaded per lane plus one read ahead per lane
+        this.maxClaimedBatches = this.lanes * 2;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Record claim, upload and commit latencies into metrics
+     */
+    public void setMetrics(SyncMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Take each claim's size from controller, and report every request's
+     * latency and outcome to it. Without one, every claim is batchSize.
+     */
+    public void setBatchController(AdaptiveBatchController controller) {
+        this.batchController = controller;
+    }
+
+    /**
+     * Stop claiming new batches; work already claimed is finished and committed
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * Run until the source is drained or cancel() is called.
+     *
+     * @throws RuntimeException if committing outcomes failed
+     */
+    public Stats run() throws InterruptedException {
+        ExecutorService[] laneExecutors = new ExecutorService[lanes];
+        for (int i = 0; i < lanes; i++) {
+            laneExecutors[i] = Executors.newSingleThreadExecutor();
+        }
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        Semaphore claimPermits = new Semaphore(maxClaimedBatches);
+        List<Set<String>> blockedKeys = new ArrayList<>(lanes);
+        for (int i = 0; i < lanes; i++) {
+            blockedKeys.add(new HashSet<>());
+        }
+
+        int batches = 0;
+        try {
+            while (!cancelled.get() && !unreachable.get() && writeFailure == null) {
+                claimPermits.acquire();
+                AdaptiveBatchController controller = batchController;
+                int size = controller != null ? controller.getBatchSize() : batchSize;
+                long claimStarted = System.nanoTime();
+                List<OfflineTransaction> batch = source.nextBatch(size);
+                record(SyncMetrics.Stage.CLAIM, claimStarted);
+                if (batch.isEmpty()) {
+                    claimPermits.release();
+                    break;
+                }
+                batches++;
+                dispatch(batch, laneExecutors, blockedKeys, writer, claimPermits);
+            }
+            // Every claimed batch returns its permit once committed
+            claimPermits.acquire(maxClaimedBatches);
+        } finally {
+            for (ExecutorService lane : laneExecutors) {
+                lane.shutdown();
+            }
+            writer.shutdown();
+            for (ExecutorService lane : laneExecutors) {
+                lane.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+        stats.batches = batches;
+        stats.requests = requests.get();
+        return stats;
+    }
+
+    private void dispatch(List<OfflineTransaction> batch, ExecutorService[] laneExecutors,
+                          List<Set<String>> blockedKeys, ExecutorService writer, Semaphore claimPermits) {
+        List<List<OfflineTransaction>> byLane = new ArrayList<>(lanes);
+        for (int i = 0; i < lanes; i++) {
+            byLane.add(null);
+        }
+        int used = 0;
+        for (OfflineTransaction transaction : batch) {
+            int lane = laneOf(orderingKey(transaction));
+            List<OfflineTransaction> rows = byLane.get(lane);
+            if (rows == null) {
+                rows = new ArrayList<>();
+                byLane.set(lane, rows);
+                used++;
+            }
+            rows.add(transaction);
+        }
+
+        BatchTracker tracker = new BatchTracker(used, claimPermits);
+        for (int lane = 0; lane < lanes; lane++) {
+            List<OfflineTransaction> rows = byLane.get(lane);
+            if (rows != null) {
+                Set<String> blocked = blockedKeys.get(lane);
+                laneExecutors[lane].execute(() -> {
+                    completed.add(new LaneResult(uploadLane(rows, blocked), tracker));
+                    scheduleFlush(writer);
+                });
+            }
+        }
+    }
+
+    /**
+     * Runs on a lane thread; blocked keys are only ever touched by their lane
+     */
+    private List<SyncOutcome> uploadLane(List<OfflineTransaction> rows, Set<String> blocked) {
+        List<SyncOutcome> outcomes = new ArrayList<>(rows.size());
+        List<OfflineTransaction> upload = new ArrayList<>(rows.size());
+        boolean offline = unreachable.get();
+        for (OfflineTransaction transaction : rows) {
+            if (offline || blocked.contains(orderingKey(transaction))) {
+                outcomes.add(SyncOutcome.released(transaction.id));
+            } else {
+                upload.add(transaction);
+            }
+        }
+        if (upload.isEmpty()) {
+            return outcomes;
+        }
+
+        List<SyncOutcome> uploaded;
+        AdaptiveBatchController.Outcome requestOutcome = AdaptiveBatchController.Outcome.OK;
+        long uploadStarted = System.nanoTime();
+        try {
+            requests.incrementAndGet();
+            uploaded = transport.upload(upload);
+        } catch (IOException | RuntimeException e) {
+            requestOutcome = e instanceof SocketTimeoutException
+                    ? AdaptiveBatchController.Outcome.TIMEOUT : AdaptiveBatchController.Outcome.ERROR;
+            boolean retryable = isTransient(e);
+            if (retryable) {
+                unreachable.set(true);
+            }
+            String error = "Sync failed - " + e.getMessage();
+            uploaded = new ArrayList<>(upload.size());
+            for (OfflineTransaction transaction : upload) {
+                uploaded.add(retryable ? SyncOutcome.deferred(transaction.id, error)
+                        : SyncOutcome.failed(transaction.id, error));
+            }
+        } finally {
+            record(SyncMetrics.Stage.UPLOAD, uploadStarted);
+        }
+        AdaptiveBatchController controller = batchController;
+        if (controller != null) {
+            controller.onRequest(System.nanoTime() - uploadStarted, requestOutcome);
+        }
+
+        Set<String> failedIds = new HashSet<>();
+        for (SyncOutcome outcome : uploaded) {
+            if (outcome.status == SyncOutcome.Status.FAILED || outcome.status == SyncOutcome.Status.DEFERRED) {
+                failedIds.add(outcome.transactionId);
+            }
+        }
+        if (!failedIds.isEmpty()) {
+            for (OfflineTransaction transaction : upload) {
+                if (failedIds.contains(transaction.id)) {
+                    blocked.add(orderingKey(transaction));
+                }
+            }
+        }
+        outcomes.addAll(uploaded);
+        return outcomes;
+    }
+
+    /**
+     * Whether a request that failed as a whole left its rows unjudged: the
+     * server could not be reached or did not answer in time, or answered
+     * with a status worth retrying (408, 429, 5xx). Anything else, a status
+     * the server would give again (400, 401, 413, ...) or a response that
+     * could not be read, counts as an attempt so the rows can reach the
+     * dead letters.
+     */
+    static boolean isTransient(Exception e) {
+        if (e instanceof SyncTransportException) {
+            return ((SyncTransportException) e).isRetryable();
+        }
+        // Timeouts, refused or reset connections, DNS and TLS handshakes
+        return e instanceof InterruptedIOException || e instanceof SocketException
+                || e instanceof UnknownHostException || e instanceof SSLException;
+    }
+
+    private void scheduleFlush(ExecutorService writer) {
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.execute(this::flush);
+        }
+    }
+
+    /**
+     * Runs on the writer thread: commit everything completed so far at once
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        List<LaneResult> results = new ArrayList<>();
+        LaneResult result;
+        while ((result = completed.poll()) != null) {
+            results.add(result);
+        }
+        if (results.isEmpty()) {
+            return;
+        }
+
+        List<SyncOutcome> outcomes = new ArrayList<>();
+        for (LaneResult laneResult : results) {
+            outcomes.addAll(laneResult.outcomes);
+        }
+        try {
+            if (writeFailure == null) {
+                long commitStarted = System.nanoTime();
+                sink.commit(outcomes);
+                record(SyncMetrics.Stage.COMMIT, commitStarted);
+                stats.commits++;
+                stats.requests = requests.get();
+                count(outcomes);
+                ProgressListener listener = progressListener;
+                if (listener != null) {
+                    listener.onCommitted(stats);
+                }
+            }
+        } catch (RuntimeException e) {
+            writeFailure = e;
+        } finally {
+            for (LaneResult laneResult : results) {
+                laneResult.tracker.laneDone();
+            }
+        }
+    }
+
+    private void count(List<SyncOutcome> outcomes) {
+        for (SyncOutcome outcome : outcomes) {
+            switch (outcome.status) {
+                case SYNCED:
+                    stats.syncedCount++;
+                    break;
+                case CONFLICT:
+                    stats.conflictCount++;
+                    break;
+                case RELEASED:
+                    stats.releasedCount++;
+                    break;
+                case DEFERRED:
+                    stats.deferredCount++;
+                    break;
+                case FAILED:
+                default:
+                    stats.failedCount++;
+                    break;
+            }
+        }
+    }
+
+    private void record(SyncMetrics.Stage stage, long startedNanos) {
+        SyncMetrics current = metrics;
+        if (current != null) {
+            current.record(stage, System.nanoTime() - startedNanos);
+        }
+    }
+
+    private int laneOf(String key) {
+        return (key.hashCode() & 0x7fffffff) % lanes;
+    }
+
+    static String orderingKey(OfflineTransaction transaction) {
+        return transaction.storeId + '\u0000' + transaction.shiftId;
+    }
+
+    private static final class LaneResult {
+        final List<SyncOutcome> outcomes;
+        final BatchTracker tracker;
+
+        LaneResult(List<SyncOutcome> outcomes, BatchTracker tracker) {
+            this.outcomes = outcomes;
+            this.tracker = tracker;
+        }
+    }
+
+    /**
+     * Returns the claim permit once every lane of a batch is committed
+     */
+    private static final class BatchTracker {
+        private final AtomicInteger remainingLanes;
+        private final Semaphore claimPermits;
+
+        BatchTracker(int lanes, Semaphore claimPermits) {
+            this.remainingLanes = new AtomicInteger(lanes);
+            this.claimPermits = claimPermits;
+        }
+
+        void laneDone() {
+            if (remainingLanes.decrementAndGet() == 0) {
+                claimPermits.release();
+            }
+        }
+    }
+}
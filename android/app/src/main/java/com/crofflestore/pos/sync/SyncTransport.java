@@ -0,0 +1,31 @@
+package com.crofflestore.pos.sync;
+
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Uploads offline transactions to the backend
+ *
+ * Implementations send a whole batch in one round trip and report a result
+ * for every transaction in it. A thrown exception means the request as a
+ * whole did not complete, and the caller judges every transaction in the
+ * batch by it (see SyncPipeline.isTransient()):
+ *
+ * - no connection, a timeout, or a {@link SyncTransportException} that
+ *   {@link SyncTransportException#isRetryable() isRetryable()}: the rows
+ *   are deferred, retried later without counting an attempt
+ * - any other status, or a response that cannot be read (a
+ *   RuntimeException such as Gson's JsonParseException): the rows fail and
+ *   count toward MAX_SYNC_ATTEMPTS
+ */
+public interface SyncTransport {
+    
+    /**
+     * Upload a batch in a single request.
+     *
+     * @return one outcome per transaction in the batch, in any order
+     */
+    List<SyncOutcome> upload(List<OfflineTransaction> batch) throws IOException;
+}
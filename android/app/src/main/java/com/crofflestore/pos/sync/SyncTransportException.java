@@ -0,0 +1,27 @@
+package com.crofflestore.pos.sync;
+
+import java.io.IOException;
+
+/**
+ * A batch upload the server rejected as a whole
+ */
+public class SyncTransportException extends IOException {
+    
+    private final int statusCode;
+    
+    public SyncTransportException(int statusCode, String message) {
+        super("HTTP " + statusCode + ": " + message);
+        this.statusCode = statusCode;
+    }
+    
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
+    /**
+     * Whether retrying the same batch later can succeed
+     */
+    public boolean isRetryable() {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,116 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.dao.CatalogItem;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class CatalogCacheTest {
+
+    private final Map<String, CatalogItem> table = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void repeatedLookupsHitTheCache() {
+        table.put("store-1/SKU-1", item("p-1", "SKU-1", 120.0));
+        CatalogCache cache = new CatalogCache(this::load, 8);
+
+        assertEquals("p-1", cache.get("store-1", "SKU-1").id);
+        assertEquals("p-1", cache.get("store-1", "SKU-1").id);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        // Same SKU, another store: its own entry
+        assertNull(cache.get("store-2", "SKU-1"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void unknownSkusAreCachedToo() {
+        CatalogCache cache = new CatalogCache(this::load, 8);
+        assertNull(cache.get("store-1", "BAD-SCAN"));
+        assertNull(cache.get("store-1", "BAD-SCAN"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        for (int i = 1; i <= 4; i++) {
+            table.put("store-1/SKU-" + i, item("p-" + i, "SKU-" + i, 100.0));
+        }
+        CatalogCache cache = new CatalogCache(this::load, 3);
+        cache.get("store-1", "SKU-1");
+        cache.get("store-1", "SKU-2");
+        cache.get("store-1", "SKU-3");
+        cache.get("store-1", "SKU-1");
+        cache.get("store-1", "SKU-4");
+        assertEquals(3, cache.size());
+        assertEquals(4, loads.get());
+
+        cache.get("store-1", "SKU-1");
+        assertEquals(4, loads.get());
+        // SKU-2 was the least recently used
+        cache.get("store-1", "SKU-2");
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    public void clearDropsEntries() {
+        table.put("store-1/SKU-1", item("p-1", "SKU-1", 120.0));
+        CatalogCache cache = new CatalogCache(this::load, 8);
+        cache.get("store-1", "SKU-1");
+
+        table.put("store-1/SKU-1", item("p-1", "SKU-1", 135.0));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(135.0, cache.get("store-1", "SKU-1").price, 0.0);
+    }
+
+    @Test
+    public void loadThatRacedAClearIsNotStored() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch cleared = new CountDownLatch(1);
+        CatalogCache cache = new CatalogCache((storeId, sku) -> {
+            CatalogItem old = item("p-1", sku, 120.0);
+            loading.countDown();
+            try {
+                cleared.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return old;
+        }, 8);
+
+        AtomicReference<CatalogItem> seen = new AtomicReference<>();
+        Thread reader = new Thread(() -> seen.set(cache.get("store-1", "SKU-1")));
+        reader.start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        // A refresh commits a new price while the read is in flight
+        cache.clear();
+        cleared.countDown();
+        reader.join(5000);
+
+        assertEquals(120.0, seen.get().price, 0.0);
+        assertEquals(0, cache.size());
+    }
+
+    private CatalogItem load(String storeId, String sku) {
+        loads.incrementAndGet();
+        return table.get(storeId + "/" + sku);
+    }
+
+    private static CatalogItem item(String id, String sku, double price) {
+        CatalogItem item = new CatalogItem();
+        item.id = id;
+        item.sku = sku;
+        item.price = price;
+        return item;
+    }
+}
@@ -0,0 +1,240 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class GroupCommitWriterTest {
+
+    @Test
+    public void concurrentCallersLoseNothingAndKeepTheirOrder() throws Exception {
+        int threads = 8;
+        int perThread = 250;
+        RecordingSink sink = new RecordingSink(1);
+        GroupCommitWriter writer = new GroupCommitWriter(sink, 5, 32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<String> notDurable = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> callers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            String prefix = "t" + t + "-";
+            Thread caller = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        String id = prefix + i;
+                        writer.submit(tx(id)).get();
+                        // The future completes only after the row's commit
+                        if (!sink.isCommitted(id)) {
+                            notDurable.add(id);
+                        }
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            callers.add(caller);
+            caller.start();
+        }
+        start.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        writer.close();
+
+        assertTrue(notDurable.toString(), notDurable.isEmpty());
+        List<String> committed = sink.committedIds();
+        assertEquals(threads * perThread, committed.size());
+        assertEquals(threads * perThread, new HashSet<>(committed).size());
+
+        // Each caller's rows were committed in the order it submitted them
+        Map<String, Integer> lastIndex = new HashMap<>();
+        for (String id : committed) {
+            String prefix = id.substring(0, id.indexOf('-'));
+            int index = Integer.parseInt(id.substring(id.indexOf('-') + 1));
+            Integer previous = lastIndex.put(prefix, index);
+            assertEquals(previous == null ? 0 : previous + 1, index);
+        }
+        assertTrue("commits=" + writer.getCommitCount(), writer.getCommitCount() < threads * perThread);
+        assertEquals(threads * perThread, writer.getRowsCommitted());
+    }
+
+    @Test
+    public void rowsFromOneThreadCommitInSubmissionOrder() throws Exception {
+        RecordingSink sink = new RecordingSink(0);
+        GroupCommitWriter writer = new GroupCommitWriter(sink, 5, 7);
+        List<Future<Void>> futures = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add("tx-" + i);
+            futures.add(writer.submit(tx("tx-" + i)));
+        }
+        for (Future<Void> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        writer.close();
+
+        assertEquals(expected, sink.committedIds());
+        for (List<String> batch : sink.batches) {
+            assertTrue(batch.size() <= 7);
+        }
+    }
+
+    @Test
+    public void failedCommitFailsEveryRowOfItsBatchOnly() throws Exception {
+        AtomicBoolean diskFull = new AtomicBoolean(true);
+        List<String> committed = Collections.synchronizedList(new ArrayList<>());
+        GroupCommitWriter writer = new GroupCommitWriter(rows -> {
+            if (diskFull.get()) {
+                throw new IllegalStateException("disk full");
+            }
+            for (OfflineTransaction row : rows) {
+                committed.add(row.id);
+            }
+        }, 50, 100);
+
+        Future<Void> a = writer.submit(tx("a"));
+        Future<Void> b = writer.submit(tx("b"));
+        assertFailed(a, "disk full");
+        assertFailed(b, "disk full");
+
+        diskFull.set(false);
+        writer.insert(tx("c"));
+        writer.close();
+        assertEquals(Collections.singletonList("c"), committed);
+    }
+
+    @Test
+    public void badRowFailsOnlyItsOwnCaller() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        List<String> committed = Collections.synchronizedList(new ArrayList<>());
+        GroupCommitWriter writer = new GroupCommitWriter(rows -> {
+            calls.incrementAndGet();
+            for (OfflineTransaction row : rows) {
+                if (row.id.equals("tx-5")) {
+                    // As insertAll() rejects a receipt number of another sale
+                    throw new IllegalStateException("receipt R-5 belongs to another transaction");
+                }
+            }
+            for (OfflineTransaction row : rows) {
+                committed.add(row.id);
+            }
+        }, 1_000, 16);
+
+        List<Future<Void>> futures = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(writer.submit(tx("tx-" + i)));
+            if (i != 5) {
+                expected.add("tx-" + i);
+            }
+        }
+        for (int i = 0; i < 16; i++) {
+            if (i == 5) {
+                assertFailed(futures.get(i), "receipt R-5 belongs to another transaction");
+            } else {
+                futures.get(i).get(5, TimeUnit.SECONDS);
+            }
+        }
+        writer.close();
+
+        assertEquals(expected, committed);
+        // Halved down to the bad row: the batch, then two commits per level
+        assertEquals(9, calls.get());
+    }
+
+    @Test
+    public void closeCommitsWhatWasSubmittedAndRejectsMore() throws Exception {
+        RecordingSink sink = new RecordingSink(0);
+        GroupCommitWriter writer = new GroupCommitWriter(sink, 1_000, 1_000);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(writer.submit(tx("tx-" + i)));
+        }
+
+        writer.close();
+
+        for (Future<Void> future : futures) {
+            assertTrue(future.isDone());
+            future.get();
+        }
+        assertEquals(10, sink.committedIds().size());
+        try {
+            writer.submit(tx("late"));
+            fail("submit after close");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    private static void assertFailed(Future<Void> future, String message) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("expected the commit to fail");
+        } catch (ExecutionException e) {
+            assertEquals(message, e.getCause().getMessage());
+        }
+    }
+
+    private static OfflineTransaction tx(String id) {
+        return new OfflineTransaction(id, "store-1", "user-1", "shift-1");
+    }
+
+    /**
+     * Records each batch; sleeps per commit to stand in for the fsync
+     */
+    private static final class RecordingSink implements GroupCommitWriter.BatchSink {
+        final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        private final Set<String> committed = Collections.synchronizedSet(new HashSet<>());
+        private final long commitMillis;
+
+        RecordingSink(long commitMillis) {
+            this.commitMillis = commitMillis;
+        }
+
+        @Override
+        public void insertAll(List<OfflineTransaction> rows) {
+            if (commitMillis > 0) {
+                try {
+                    Thread.sleep(commitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            List<String> ids = new ArrayList<>(rows.size());
+            for (OfflineTransaction row : rows) {
+                ids.add(row.id);
+            }
+            batches.add(ids);
+            committed.addAll(ids);
+        }
+
+        boolean isCommitted(String id) {
+            return committed.contains(id);
+        }
+
+        List<String> committedIds() {
+            List<String> all = new ArrayList<>();
+            synchronized (batches) {
+                for (List<String> batch : batches) {
+                    all.addAll(batch);
+                }
+            }
+            return all;
+        }
+    }
+}
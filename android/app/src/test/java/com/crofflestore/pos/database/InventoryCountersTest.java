@@ -0,0 +1,261 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.dao.ReservedCount;
+import com.crofflestore.pos.database.entities.InventoryMovement;
+import com.crofflestore.pos.database.entities.StockLevel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class InventoryCountersTest {
+
+    private final MemoryStore store = new MemoryStore();
+    private InventoryCounters counters;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (counters != null) {
+            counters.close();
+        }
+    }
+
+    @Test
+    public void reservationsNeverOversell() {
+        store.level("store-1", "ube-jam", 5, 3);
+        counters = new InventoryCounters(store, 60_000, 1000);
+        counters.prime("store-1");
+        // Reservations of the last process are gone with its carts
+        assertEquals(5, counters.available("store-1", "ube-jam"));
+        assertEquals(1, store.clears.get());
+
+        assertTrue(counters.tryReserve("store-1", "ube-jam", 3));
+        assertFalse(counters.tryReserve("store-1", "ube-jam", 3));
+        assertTrue(counters.tryReserve("store-1", "ube-jam", 2));
+        assertEquals(0, counters.available("store-1", "ube-jam"));
+        assertEquals(5, counters.reserved("store-1", "ube-jam"));
+
+        counters.release("store-1", "ube-jam", 2);
+        assertEquals(2, counters.available("store-1", "ube-jam"));
+        counters.commitSale("store-1", "ube-jam", 3, "tx-1");
+        assertEquals(2, counters.onHand("store-1", "ube-jam"));
+        assertEquals(2, counters.available("store-1", "ube-jam"));
+        assertEquals(0, counters.reserved("store-1", "ube-jam"));
+
+        // Nothing known of an item means nothing in stock
+        assertFalse(counters.tryReserve("store-1", "matcha", 1));
+        assertEquals(0, counters.available("store-1", "matcha"));
+    }
+
+    @Test
+    public void cartReservesAllOrNothing() {
+        store.level("store-1", "croffle-dough", 10, 0);
+        store.level("store-1", "biscoff", 1, 0);
+        counters = new InventoryCounters(store, 60_000, 1000);
+        counters.prime("store-1");
+
+        Map<String, Long> cart = new LinkedHashMap<>();
+        cart.put("croffle-dough", 2L);
+        cart.put("biscoff", 2L);
+        assertFalse(counters.tryReserveAll("store-1", cart));
+        assertEquals(10, counters.available("store-1", "croffle-dough"));
+
+        cart.put("biscoff", 1L);
+        assertTrue(counters.tryReserveAll("store-1", cart));
+        assertEquals(8, counters.available("store-1", "croffle-dough"));
+        assertEquals(0, counters.available("store-1", "biscoff"));
+    }
+
+    @Test
+    public void movementsAndReservationsAreFlushedInOneBatch() {
+        counters = new InventoryCounters(store, 60_000, 1000);
+        counters.prime("store-1");
+        counters.record("store-1", "ube-jam", InventoryMovement.TYPE_RECEIVE, 40, "delivery", "dr-1");
+        for (int i = 0; i < 10; i++) {
+            assertTrue(counters.tryReserve("store-1", "ube-jam", 1));
+            counters.commitSale("store-1", "ube-jam", 1, "tx-" + i);
+        }
+        assertTrue(counters.tryReserve("store-1", "ube-jam", 4));
+        assertEquals(11, counters.pendingMovements());
+        assertTrue(store.batches.isEmpty());
+
+        assertEquals(11, counters.flush());
+        assertEquals(1, store.batches.size());
+        assertEquals(30, store.onHand("store-1", "ube-jam"));
+        assertEquals(4, store.reserved("store-1", "ube-jam"));
+        assertEquals("tx-9", store.movements.get(10).referenceId);
+        assertEquals(-1, store.movements.get(10).quantityChange);
+        assertEquals(0, counters.flush());
+        assertEquals(1, counters.getFlushCount());
+    }
+
+    @Test
+    public void fullBatchFlushesWithoutWaitingForTheDelay() throws Exception {
+        counters = new InventoryCounters(store, 60_000, 50);
+        counters.prime("store-1");
+        for (int i = 0; i < 50; i++) {
+            counters.record("store-1", "item-" + i, InventoryMovement.TYPE_RECEIVE, 1, null, null);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.movementCount() < 50 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(50, store.movementCount());
+    }
+
+    @Test
+    public void failedFlushKeepsItsBatch() {
+        counters = new InventoryCounters(store, 60_000, 1000);
+        counters.prime("store-1");
+        counters.record("store-1", "ube-jam", InventoryMovement.TYPE_RECEIVE, 10, null, null);
+        assertTrue(counters.tryReserve("store-1", "ube-jam", 2));
+
+        store.failNext = true;
+        try {
+            counters.flush();
+            fail("expected the write to fail");
+        } catch (IllegalStateException expected) {
+            // Disk full, say
+        }
+        assertEquals(1, counters.pendingMovements());
+        assertEquals(1, counters.flush());
+        assertEquals(10, store.onHand("store-1", "ube-jam"));
+        assertEquals(2, store.reserved("store-1", "ube-jam"));
+    }
+
+    @Test
+    public void concurrentReservationsSellExactlyTheStock() throws Exception {
+        store.level("store-1", "ube-jam", 1000, 0);
+        counters = new InventoryCounters(store, 5, 64);
+        counters.prime("store-1");
+
+        int threads = 8;
+        AtomicInteger sold = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> tills = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int till = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (counters.tryReserve("store-1", "ube-jam", 1)) {
+                        counters.commitSale("store-1", "ube-jam", 1, "tx-" + till + "-" + i);
+                        sold.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            tills.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : tills) {
+            thread.join();
+        }
+
+        assertEquals(1000, sold.get());
+        assertEquals(0, counters.available("store-1", "ube-jam"));
+        counters.close();
+        counters = null;
+        assertEquals(1000, store.movements.size());
+        assertEquals(0, store.onHand("store-1", "ube-jam"));
+        assertEquals(0, store.reserved("store-1", "ube-jam"));
+    }
+
+    @Test
+    public void unprimedStoreIsRejected() {
+        counters = new InventoryCounters(store, 60_000, 1000);
+        try {
+            counters.tryReserve("store-1", "ube-jam", 1);
+            fail("expected the store to need loading");
+        } catch (IllegalStateException expected) {
+            assertFalse(counters.isPrimed("store-1"));
+        }
+    }
+
+    /**
+     * Applies batches the way InventoryDao and the ledger trigger do
+     */
+    static final class MemoryStore implements InventoryCounters.Store {
+        final Map<String, StockLevel> levels = new HashMap<>();
+        final List<InventoryMovement> movements = new ArrayList<>();
+        final List<Integer> batches = new ArrayList<>();
+        final AtomicInteger clears = new AtomicInteger();
+        volatile boolean failNext;
+
+        void level(String storeId, String itemId, long onHand, long reserved) {
+            StockLevel level = levelOf(storeId, itemId);
+            level.onHand = onHand;
+            level.reserved = reserved;
+        }
+
+        synchronized int movementCount() {
+            return movements.size();
+        }
+
+        synchronized long onHand(String storeId, String itemId) {
+            return levelOf(storeId, itemId).onHand;
+        }
+
+        synchronized long reserved(String storeId, String itemId) {
+            return levelOf(storeId, itemId).reserved;
+        }
+
+        @Override
+        public synchronized List<StockLevel> getStockLevels(String storeId) {
+            List<StockLevel> result = new ArrayList<>();
+            for (StockLevel level : levels.values()) {
+                if (level.storeId.equals(storeId)) {
+                    result.add(level);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized void clearReservations(String storeId) {
+            clears.incrementAndGet();
+            for (StockLevel level : getStockLevels(storeId)) {
+                level.reserved = 0;
+            }
+        }
+
+        @Override
+        public synchronized void applyBatch(List<InventoryMovement> batch, List<ReservedCount> reserved) {
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("write failed");
+            }
+            for (InventoryMovement movement : batch) {
+                movements.add(movement);
+                levelOf(movement.storeId, movement.itemId).onHand += movement.quantityChange;
+            }
+            for (ReservedCount count : reserved) {
+                levelOf(count.storeId, count.itemId).reserved = count.reserved;
+            }
+            batches.add(batch.size());
+        }
+
+        private StockLevel levelOf(String storeId, String itemId) {
+            String key = storeId + "/" + itemId;
+            StockLevel level = levels.get(key);
+            if (level == null) {
+                level = new StockLevel();
+                level.storeId = storeId;
+                level.itemId = itemId;
+                levels.put(key, level);
+            }
+            return level;
+        }
+    }
+}
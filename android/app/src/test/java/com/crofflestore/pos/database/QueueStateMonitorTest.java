@@ -0,0 +1,139 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.dao.QueueState;
+import java.util.Date;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+public class QueueStateMonitorTest {
+
+    private final AtomicReference<QueueState> table = new AtomicReference<>(QueueState.EMPTY);
+    private final AtomicInteger reads = new AtomicInteger();
+    private final LinkedBlockingQueue<QueueState> heard = new LinkedBlockingQueue<>();
+    private QueueStateMonitor monitor;
+
+    @After
+    public void tearDown() {
+        if (monitor != null) {
+            monitor.stop();
+        }
+    }
+
+    @Test
+    public void burstOfChangesIsOneRead() throws Exception {
+        monitor = start(50);
+        assertEquals(QueueState.EMPTY, next());
+        assertEquals(1, reads.get());
+
+        for (int i = 1; i <= 100; i++) {
+            table.set(state(i, 0, "tx-1", null));
+            monitor.invalidate();
+        }
+        assertEquals(state(100, 0, "tx-1", null), next());
+        assertNull(heard.poll(150, TimeUnit.MILLISECONDS));
+        assertEquals(2, reads.get());
+        assertEquals(100, monitor.current().pending);
+    }
+
+    @Test
+    public void unchangedStateIsNotRedelivered() throws Exception {
+        monitor = start(10);
+        next();
+
+        // A write that leaves counts and head alone, e.g. a claim renewal
+        monitor.invalidate();
+        monitor.invalidate();
+        assertNull(heard.poll(150, TimeUnit.MILLISECONDS));
+        assertEquals(2, reads.get());
+
+        table.set(state(1, 0, "tx-1", null));
+        monitor.invalidate();
+        assertTrue(next().hasDueWork());
+    }
+
+    @Test
+    public void lateListenerGetsTheCurrentState() throws Exception {
+        table.set(state(3, 1, "tx-1", null));
+        monitor = new QueueStateMonitor(this::read, 10);
+        LinkedBlockingQueue<QueueState> late = new LinkedBlockingQueue<>();
+        Thread.sleep(50);
+        monitor.addListener(late::add);
+
+        QueueState state = late.poll(1, TimeUnit.SECONDS);
+        assertEquals(4, state.queued());
+        assertNull(late.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void retryComingDueIsReadWithoutAWrite() throws Exception {
+        Date due = new Date(System.currentTimeMillis() + 200);
+        table.set(state(0, 1, null, due));
+        monitor = start(10);
+        QueueState waiting = next();
+        assertFalse(waiting.hasDueWork());
+        assertTrue(waiting.millisUntilNextRetry(System.currentTimeMillis()) > 0);
+
+        // What the head query returns once the backoff has run out
+        table.set(state(0, 1, "tx-1", due));
+        QueueState ready = heard.poll(2, TimeUnit.SECONDS);
+        assertNotNull("no read at the retry time", ready);
+        assertEquals("tx-1", ready.headId);
+        assertEquals(-1, ready.millisUntilNextRetry(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void failedReadKeepsTheLastStateUntilTheNextChange() throws Exception {
+        monitor = start(10);
+        next();
+
+        table.set(null);
+        monitor.invalidate();
+        assertNull(heard.poll(150, TimeUnit.MILLISECONDS));
+        assertEquals(QueueState.EMPTY, monitor.current());
+
+        table.set(state(2, 0, "tx-1", null));
+        monitor.invalidate();
+        assertEquals(2, next().pending);
+    }
+
+    @Test
+    public void equalityIgnoresNothingTheBannerShows() {
+        Date retry = new Date(1_000);
+        assertEquals(state(1, 2, "tx-1", retry), state(1, 2, "tx-1", new Date(1_000)));
+        assertEquals(state(1, 2, "tx-1", retry).hashCode(), state(1, 2, "tx-1", new Date(1_000)).hashCode());
+        assertNotEquals(state(1, 2, "tx-1", retry), state(1, 2, "tx-2", retry));
+        assertNotEquals(state(1, 2, "tx-1", retry), state(1, 2, "tx-1", null));
+        assertNotEquals(state(1, 2, null, null), new QueueState(1, 2, 0, 1, null, null, null));
+    }
+
+    private QueueStateMonitor start(long debounceMs) {
+        QueueStateMonitor started = new QueueStateMonitor(this::read, debounceMs);
+        started.addListener(heard::add);
+        return started;
+    }
+
+    private QueueState read() {
+        reads.incrementAndGet();
+        QueueState state = table.get();
+        if (state == null) {
+            throw new IllegalStateException("database closed");
+        }
+        return state;
+    }
+
+    private QueueState next() throws InterruptedException {
+        QueueState state = heard.poll(2, TimeUnit.SECONDS);
+        assertNotNull("no state delivered", state);
+        return state;
+    }
+
+    private static QueueState state(int pending, int failed, String headId, Date nextRetryAt) {
+        return new QueueState(pending, failed, 0, 0, headId, headId != null ? "pending" : null, nextRetryAt);
+    }
+}
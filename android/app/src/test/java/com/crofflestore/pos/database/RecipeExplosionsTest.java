@@ -0,0 +1,178 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.dao.RecipeChanges;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.crofflestore.pos.database.entities.Recipe;
+import com.crofflestore.pos.database.entities.RecipeIngredient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class RecipeExplosionsTest {
+
+    @Test
+    public void orderIsSummedInStockUnits() {
+        RecipeExplosions explosions = RecipeExplosions.EMPTY.withChanges(
+                Arrays.asList(recipe("classic", "", 1), recipe("ube", "", 2)),
+                Arrays.asList(
+                        line("classic", "", "croffle-dough", 1, "pc", "pc"),
+                        line("classic", "", "sugar", 12, "g", "g"),
+                        line("ube", "", "croffle-dough", 1, "pc", "pc"),
+                        line("ube", "", "ube-jam", 0.03, "kg", "g"),
+                        line("ube", "", "cream", 25, "ml", "l")));
+
+        RecipeExplosions.Deduction deduction = explosions.explode(Arrays.asList(
+                sold("classic", null, 2), sold("ube", null, 3)));
+        Map<String, Long> cart = deduction.asMap();
+        assertEquals(4, deduction.size());
+        assertEquals(Long.valueOf(5), cart.get("croffle-dough"));
+        assertEquals(Long.valueOf(24), cart.get("sugar"));
+        assertEquals(Long.valueOf(90), cart.get("ube-jam"));
+        // 75 ml of a litre-stocked item is rounded up once, not per line
+        assertEquals(Long.valueOf(1), cart.get("cream"));
+        assertTrue(deduction.unmatched.isEmpty());
+        assertEquals(2, explosions.version());
+    }
+
+    @Test
+    public void variationFallsBackToItsProduct() {
+        RecipeExplosions explosions = RecipeExplosions.EMPTY.withChanges(
+                Arrays.asList(recipe("latte", "", 1), recipe("latte", "large", 2)),
+                Arrays.asList(
+                        line("latte", "", "espresso", 1, null, null),
+                        line("latte", "large", "espresso", 2, null, null)));
+
+        Map<String, Long> cart = explosions.explode(Arrays.asList(
+                sold("latte", "large", 1), sold("latte", "iced", 1))).asMap();
+        assertEquals(Long.valueOf(3), cart.get("espresso"));
+
+        RecipeExplosions.Deduction none = explosions.explode(Collections.singletonList(sold("muffin", null, 1)));
+        assertEquals(0, none.size());
+        assertEquals("muffin", none.unmatched.get(0).productId);
+    }
+
+    @Test
+    public void changesRecompileOnlyWhatChanged() {
+        RecipeExplosions v1 = RecipeExplosions.EMPTY.withChanges(
+                Arrays.asList(recipe("classic", "", 1), recipe("ube", "", 2)),
+                Arrays.asList(
+                        line("classic", "", "sugar", 12, "g", "g"),
+                        line("ube", "", "ube-jam", 30, "g", "g")));
+        RecipeExplosions v2 = v1.withChanges(
+                Collections.singletonList(recipe("classic", "", 3)),
+                Collections.singletonList(line("classic", "", "sugar", 10, "g", "g")));
+
+        assertEquals(Long.valueOf(12), v1.explode(Collections.singletonList(sold("classic", null, 1))).asMap().get("sugar"));
+        assertEquals(Long.valueOf(10), v2.explode(Collections.singletonList(sold("classic", null, 1))).asMap().get("sugar"));
+        assertEquals(Long.valueOf(30), v2.explode(Collections.singletonList(sold("ube", null, 1))).asMap().get("ube-jam"));
+        assertEquals(3, v2.version());
+
+        // Removed: its sales deduct nothing
+        RecipeExplosions v3 = v2.withChanges(
+                Collections.singletonList(inactive("ube", "", 4)), Collections.<RecipeIngredient>emptyList());
+        assertEquals(1, v3.size());
+        assertEquals(1, v3.explode(Collections.singletonList(sold("ube", null, 1))).unmatched.size());
+    }
+
+    @Test
+    public void unconvertibleRecipeIsLeftOut() {
+        RecipeExplosions explosions = RecipeExplosions.EMPTY.withChanges(
+                Arrays.asList(recipe("latte", "", 1), recipe("latte", "large", 2)),
+                Arrays.asList(
+                        line("latte", "", "milk", 200, "ml", "ml"),
+                        line("latte", "large", "milk", 300, "g", "ml")));
+
+        assertEquals(1, explosions.size());
+        assertTrue(explosions.errors().containsKey("latte/large"));
+        // Not the small recipe instead
+        RecipeExplosions.Deduction deduction = explosions.explode(Collections.singletonList(sold("latte", "large", 1)));
+        assertEquals(0, deduction.size());
+        assertEquals(1, deduction.unmatched.size());
+
+        RecipeExplosions fixed = explosions.withChanges(
+                Collections.singletonList(recipe("latte", "large", 3)),
+                Collections.singletonList(line("latte", "large", "milk", 0.3, "l", "ml")));
+        assertTrue(fixed.errors().isEmpty());
+        assertEquals(Long.valueOf(300), fixed.explode(Collections.singletonList(sold("latte", "large", 1))).asMap().get("milk"));
+    }
+
+    @Test
+    public void unitFactors() {
+        assertEquals(1000.0, RecipeUnits.factor("kg", "g"), 0.0);
+        assertEquals(0.001, RecipeUnits.factor("ml", "L"), 1e-12);
+        assertEquals(12.0, RecipeUnits.factor("dozen", "pcs"), 0.0);
+        assertEquals(1.0, RecipeUnits.factor("serving", "Serving"), 0.0);
+        assertEquals(1.0, RecipeUnits.factor(null, "g"), 0.0);
+        try {
+            RecipeUnits.factor("serving", "g");
+            fail("expected no conversion");
+        } catch (IllegalArgumentException expected) {
+            // Different dimensions
+        }
+    }
+
+    @Test
+    public void cacheReadsOnlyNewVersions() {
+        List<Long> asked = new ArrayList<>();
+        AtomicInteger reads = new AtomicInteger();
+        List<RecipeChanges> answers = new ArrayList<>(Arrays.asList(
+                new RecipeChanges(Collections.singletonList(recipe("classic", "", 1)),
+                        Collections.singletonList(line("classic", "", "sugar", 12, "g", "g"))),
+                new RecipeChanges(Collections.singletonList(recipe("classic", "", 2)),
+                        Collections.singletonList(line("classic", "", "sugar", 14, "g", "g")))));
+        RecipeExplosionCache cache = new RecipeExplosionCache(version -> {
+            synchronized (asked) {
+                asked.add(version);
+                reads.incrementAndGet();
+                return answers.isEmpty()
+                        ? new RecipeChanges(Collections.<Recipe>emptyList(), Collections.<RecipeIngredient>emptyList())
+                        : answers.remove(0);
+            }
+        });
+        try {
+            List<TransactionItem> order = Collections.singletonList(sold("classic", null, 1));
+            assertEquals(Long.valueOf(12), cache.explode(order).asMap().get("sugar"));
+            // Not stale: no read
+            cache.explode(order);
+            assertEquals(1, reads.get());
+
+            cache.invalidate();
+            assertEquals(Long.valueOf(14), cache.explode(order).asMap().get("sugar"));
+            assertEquals(2, cache.current().version());
+            // The background refresh may have run too, asking from version 2
+            synchronized (asked) {
+                assertEquals(Arrays.asList(0L, 1L), asked.subList(0, 2));
+            }
+        } finally {
+            cache.stop();
+        }
+    }
+
+    private static Recipe recipe(String productId, String variationId, long version) {
+        return new Recipe(productId, variationId, version, true);
+    }
+
+    private static Recipe inactive(String productId, String variationId, long version) {
+        return new Recipe(productId, variationId, version, false);
+    }
+
+    private static RecipeIngredient line(String productId, String variationId, String itemId,
+                                         double quantity, String unit, String baseUnit) {
+        RecipeIngredient ingredient = new RecipeIngredient(itemId, quantity, unit, baseUnit);
+        ingredient.productId = productId;
+        ingredient.variationId = variationId;
+        return ingredient;
+    }
+
+    private static TransactionItem sold(String productId, String variationId, int quantity) {
+        TransactionItem item = new TransactionItem(productId, productId, quantity, 100.0);
+        item.variationId = variationId;
+        return item;
+    }
+}
@@ -0,0 +1,246 @@
+package com.crofflestore.pos.database;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+public class TransactionExportTest {
+
+    private static final int HEAP_CAP_MB = 24;
+    private static final int LARGE_EXPORT_ROWS = 200_000;
+
+    @Test
+    public void ndjsonHasOneObjectPerRowInTimestampOrder() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransactionExport.Checkpoint done = new TransactionExport(new GeneratedRows(450),
+                TransactionExport.Format.NDJSON, false).writeTo(out, TransactionExport.Checkpoint.START, null);
+
+        List<String> lines = lines(new ByteArrayInputStream(out.toByteArray()), false);
+        assertEquals(450, lines.size());
+        assertEquals(450, done.rows);
+        assertEquals(Long.valueOf(GeneratedRows.timestampOf(450)), done.afterTimestamp);
+        assertEquals("tx-450", done.afterId);
+        assertEquals(out.size(), done.bytes);
+        assertTrue(lines.get(0), lines.get(0).startsWith("{\"id\":\"tx-1\","));
+        assertTrue(lines.get(0), lines.get(0).contains("\"timestamp\":1700000060000"));
+        assertTrue(lines.get(0), lines.get(0).contains("\"name\":\"Ube Croffle\""));
+        assertTrue(lines.get(449), lines.get(449).startsWith("{\"id\":\"tx-450\","));
+    }
+
+    @Test
+    public void csvEscapesFieldsAndCountsItems() throws IOException {
+        OfflineTransaction tx = GeneratedRows.transaction(7);
+        tx.customerId = "Cruz, \"Bea\"";
+        tx.total = 155.5;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TransactionExport((afterTimestamp, afterId, limit) -> afterTimestamp == null
+                ? Arrays.asList(tx) : new ArrayList<OfflineTransaction>(),
+                TransactionExport.Format.CSV, false).writeTo(out, TransactionExport.Checkpoint.START, null);
+
+        String[] lines = out.toString("UTF-8").split("\r\n");
+        assertEquals(2, lines.length);
+        assertEquals(String.join(",", TransactionExport.CSV_COLUMNS), lines[0]);
+        assertTrue(lines[1], lines[1].startsWith("tx-7,R-7,"));
+        assertTrue(lines[1], lines[1].contains(",\"Cruz, \"\"Bea\"\"\",dine_in,cash,3,"));
+        assertTrue(lines[1], lines[1].endsWith(",155.50,pending"));
+        assertEquals("plain", TransactionExport.escapeCsv("plain"));
+        assertEquals("\"two\nlines\"", TransactionExport.escapeCsv("two\nlines"));
+    }
+
+    @Test
+    public void interruptedFileExportResumesFromItsLastCheckpoint() throws IOException {
+        for (TransactionExport.Format format : TransactionExport.Format.values()) {
+            for (boolean gzip : new boolean[] {false, true}) {
+                File file = File.createTempFile("export", gzip ? ".gz" : ".txt");
+                try {
+                    GeneratedRows rows = new GeneratedRows(1234);
+                    TransactionExport export = new TransactionExport(rows, format, gzip, 400);
+                    List<TransactionExport.Checkpoint> saved = new ArrayList<>();
+                    try {
+                        export.writeTo(file, TransactionExport.Checkpoint.START, checkpoint -> {
+                            saved.add(checkpoint);
+                            if (saved.size() == 2) {
+                                // Dies after reporting, with rows past the checkpoint buffered
+                                rows.failAfter = GeneratedRows.numberAt(checkpoint.afterTimestamp) + 250;
+                            }
+                        });
+                        fail("expected the source to fail");
+                    } catch (IllegalStateException expected) {
+                        // The process went away mid-export
+                    }
+                    rows.failAfter = Long.MAX_VALUE;
+                    TransactionExport.Checkpoint resumeAt = saved.get(saved.size() - 1);
+                    assertEquals(800, resumeAt.rows);
+
+                    TransactionExport.Checkpoint done = export.writeTo(file, resumeAt, null);
+                    assertEquals(1234, done.rows);
+                    assertEquals(file.length(), done.bytes);
+
+                    List<String> lines = lines(new FileInputStream(file), gzip);
+                    int header = format == TransactionExport.Format.CSV ? 1 : 0;
+                    assertEquals(format + " gzip=" + gzip, 1234 + header, lines.size());
+                    for (int i = 0; i < 1234; i++) {
+                        String prefix = format == TransactionExport.Format.CSV
+                                ? "tx-" + (i + 1) + "," : "{\"id\":\"tx-" + (i + 1) + "\",";
+                        assertTrue(lines.get(i + header), lines.get(i + header).startsWith(prefix));
+                    }
+                } finally {
+                    assertTrue(file.delete());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void interruptionStopsAtAPageBoundary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thread.currentThread().interrupt();
+        try {
+            new TransactionExport(new GeneratedRows(1000), TransactionExport.Format.NDJSON, false)
+                    .writeTo(out, TransactionExport.Checkpoint.START, null);
+            fail("expected the export to stop");
+        } catch (java.io.InterruptedIOException expected) {
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+        assertEquals(0, out.size());
+    }
+
+    /**
+     * Runs the export in a separate JVM whose heap could not hold the rows
+     * it writes, let alone all of them decoded at once
+     */
+    @Test
+    public void largeExportRunsUnderAFixedHeapCap() throws Exception {
+        File file = File.createTempFile("export", ".ndjson.gz");
+        try {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            Process process = new ProcessBuilder(java, "-Xmx" + HEAP_CAP_MB + "m",
+                    "-cp", System.getProperty("java.class.path"),
+                    HeapCappedExport.class.getName(), file.getPath(), String.valueOf(LARGE_EXPORT_ROWS))
+                    .redirectErrorStream(true)
+                    .start();
+            String output = readAll(process.getInputStream());
+            assertTrue("export did not finish", process.waitFor(5, TimeUnit.MINUTES));
+            assertEquals(output, 0, process.exitValue());
+
+            long lines = 0;
+            long uncompressed = 0;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(file)), "UTF-8"))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    assertTrue(line, line.startsWith("{\"id\":\"tx-" + (lines + 1) + "\","));
+                    lines++;
+                    uncompressed += line.length() + 1;
+                }
+            }
+            assertEquals(LARGE_EXPORT_ROWS, lines);
+            assertTrue("export smaller than the heap cap: " + uncompressed,
+                    uncompressed > 4L * HEAP_CAP_MB * 1024 * 1024);
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Entry point of the heap-capped export: args are the output file and
+     * the row count
+     */
+    public static final class HeapCappedExport {
+        public static void main(String[] args) throws IOException {
+            long rows = Long.parseLong(args[1]);
+            TransactionExport.Checkpoint done = new TransactionExport(new GeneratedRows(rows),
+                    TransactionExport.Format.NDJSON, true)
+                    .writeTo(new File(args[0]), TransactionExport.Checkpoint.START, null);
+            if (done.rows != rows) {
+                throw new IllegalStateException("exported " + done);
+            }
+        }
+    }
+
+    /**
+     * Rows 1..count made up page by page, as the database would hand them out
+     */
+    static final class GeneratedRows implements TransactionExport.PageSource {
+        final long count;
+        long failAfter = Long.MAX_VALUE;
+
+        GeneratedRows(long count) {
+            this.count = count;
+        }
+
+        @Override
+        public List<OfflineTransaction> page(Long afterTimestamp, String afterId, int limit) {
+            List<OfflineTransaction> page = new ArrayList<>(limit);
+            for (long n = numberAt(afterTimestamp) + 1; n <= count && page.size() < limit; n++) {
+                if (n > failAfter) {
+                    throw new IllegalStateException("source failed at " + n);
+                }
+                page.add(transaction(n));
+            }
+            return page;
+        }
+
+        // Row n is a minute after row n - 1, so the timestamp alone places it
+        static long timestampOf(long n) {
+            return 1_700_000_000_000L + n * 60_000L;
+        }
+
+        static long numberAt(Long timestamp) {
+            return timestamp == null ? 0 : (timestamp - timestampOf(0)) / 60_000L;
+        }
+
+        static OfflineTransaction transaction(long n) {
+            OfflineTransaction tx = new OfflineTransaction("tx-" + n, "store-1", "user-" + (n % 7), "shift-" + (n / 500));
+            tx.timestamp = new Date(timestampOf(n));
+            tx.receiptNumber = "R-" + n;
+            tx.orderType = "dine_in";
+            tx.paymentMethod = "cash";
+            tx.items = new ArrayList<>();
+            tx.items.add(new TransactionItem("p-1", "Ube Croffle", 2, 125.0));
+            tx.items.add(new TransactionItem("p-2", "Biscoff Croffle", 1, 145.0));
+            tx.items.add(new TransactionItem("p-3", "Iced Americano", 1, 110.0));
+            tx.subtotal = 505.0;
+            tx.total = 505.0;
+            return tx;
+        }
+    }
+
+    private static List<String> lines(InputStream in, boolean gzip) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                gzip ? new GZIPInputStream(in) : in, "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,302 @@
+package com.crofflestore.pos.database.converters;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction.PaymentDetails;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class CompactCodecTest {
+
+    private static final Gson gson = new Gson();
+
+    private static final String[] NAMES = {"Classic Croffle", "Biscoff Croffle", "Iced Americano", "Ube Latte", ""};
+    private static final String[] CATEGORIES = {"croffles", "espresso", "drinks"};
+    private static final double[] ODD_AMOUNTS = {
+        0.0, -0.0, 0.1 + 0.2, 1e-300, -1e300, Double.MIN_VALUE, Double.MAX_VALUE,
+        Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 45035996273704.96, 0.125
+    };
+
+    @Test
+    public void randomItemListsRoundTrip() {
+        Random random = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            List<TransactionItem> items = randomItems(random);
+            assertItemsEqual(items, TransactionItemConverter.fromBytes(TransactionItemConverter.toBytes(items)));
+        }
+    }
+
+    @Test
+    public void randomPaymentDetailsRoundTrip() {
+        Random random = new Random(43);
+        for (int i = 0; i < 5_000; i++) {
+            PaymentDetails details = randomPayment(random);
+            assertPaymentEqual(details, PaymentDetailsConverter.fromBytes(PaymentDetailsConverter.toBytes(details)));
+        }
+    }
+
+    @Test
+    public void nullAndEmptyValues() {
+        assertNull(TransactionItemConverter.toBytes(null));
+        assertNull(TransactionItemConverter.fromBytes(null));
+        assertNull(TransactionItemConverter.fromBytes(new byte[0]));
+        assertTrue(TransactionItemConverter.fromBytes(TransactionItemConverter.toBytes(new ArrayList<TransactionItem>())).isEmpty());
+        assertNull(PaymentDetailsConverter.toBytes(null));
+        assertNull(PaymentDetailsConverter.fromBytes(null));
+    }
+
+    @Test
+    public void repeatedStringsAreStoredOnce() {
+        List<TransactionItem> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(item("prod-1", "Classic Croffle", "croffles", 1, 125.0));
+        }
+        byte[] encoded = TransactionItemConverter.toBytes(items);
+        int occurrences = 0;
+        String text = new String(encoded, StandardCharsets.ISO_8859_1);
+        for (int at = text.indexOf("Classic Croffle"); at >= 0; at = text.indexOf("Classic Croffle", at + 1)) {
+            occurrences++;
+        }
+        assertEquals(1, occurrences);
+        assertTrue(encoded.length * 5 < gson.toJson(items).length());
+    }
+
+    @Test
+    public void legacyJsonIsReadTransparently() {
+        Random random = new Random(44);
+        for (int i = 0; i < 500; i++) {
+            List<TransactionItem> items = randomFiniteItems(random);
+            String json = gson.toJson(items);
+            assertItemsEqual(items, TransactionItemConverter.fromBytes(json.getBytes(StandardCharsets.UTF_8)));
+            // As read back from a TEXT cell: with its terminating NUL
+            assertItemsEqual(items, TransactionItemConverter.fromBytes((json + "\0").getBytes(StandardCharsets.UTF_8)));
+        }
+        assertItemsEqual(
+                Arrays.asList(item("p", "Croffle", "croffles", 2, 100.0)),
+                TransactionItemConverter.fromBytes(" \n[{\"productId\":\"p\",\"name\":\"Croffle\",\"sku\":\"SKU-p\",\"category\":\"croffles\",\"quantity\":2,\"unitPrice\":100.0,\"totalPrice\":200.0}]"
+                        .getBytes(StandardCharsets.UTF_8)));
+
+        PaymentDetails details = new PaymentDetails("visa", "4242");
+        details.authCode = "A1";
+        String json = gson.toJson(details);
+        assertPaymentEqual(gson.fromJson(json, PaymentDetails.class),
+                PaymentDetailsConverter.fromBytes(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void truncatedInputIsRejected() {
+        Random random = new Random(45);
+        for (int i = 0; i < 200; i++) {
+            byte[] items = TransactionItemConverter.toBytes(randomItems(random));
+            for (int length = 1; length < items.length; length++) {
+                assertRejected(Arrays.copyOf(items, length), true);
+            }
+            byte[] payment = PaymentDetailsConverter.toBytes(randomPayment(random));
+            for (int length = 1; length < payment.length; length++) {
+                assertRejected(Arrays.copyOf(payment, length), false);
+            }
+        }
+    }
+
+    @Test
+    public void corruptInputDecodesOrFailsCleanly() {
+        Random random = new Random(46);
+        for (int i = 0; i < 20_000; i++) {
+            boolean itemsValue = random.nextBoolean();
+            byte[] value = itemsValue
+                    ? TransactionItemConverter.toBytes(randomItems(random))
+                    : PaymentDetailsConverter.toBytes(randomPayment(random));
+            if (value.length < 2) {
+                continue;
+            }
+            // The version byte is left alone: flipping it selects the JSON path
+            for (int flips = 1 + random.nextInt(3); flips > 0; flips--) {
+                value[1 + random.nextInt(value.length - 1)] = (byte) random.nextInt(256);
+            }
+            if (random.nextInt(4) == 0) {
+                value = Arrays.copyOf(value, value.length + 1 + random.nextInt(8));
+            }
+            try {
+                decode(value, itemsValue);
+            } catch (IllegalArgumentException expected) {
+                // Rejected without any other kind of failure
+            }
+        }
+    }
+
+    @Test
+    public void unknownFormatVersionIsRejected() {
+        byte[] value = TransactionItemConverter.toBytes(randomItems(new Random(47)));
+        value[0] = 2;
+        assertRejected(value, true);
+    }
+
+    @Test
+    public void hugeCountsDoNotAllocate() {
+        // Version 1, count 2^62
+        byte[] value = {1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x40};
+        assertRejected(value, true);
+    }
+
+    private static void assertRejected(byte[] value, boolean itemsValue) {
+        try {
+            decode(value, itemsValue);
+            fail("decoded " + Arrays.toString(value));
+        } catch (IllegalArgumentException expected) {
+            // Corrupt binary input
+        } catch (JsonParseException e) {
+            fail("took the JSON path: " + Arrays.toString(value));
+        }
+    }
+
+    private static void decode(byte[] value, boolean itemsValue) {
+        if (itemsValue) {
+            TransactionItemConverter.fromBytes(value);
+        } else {
+            PaymentDetailsConverter.fromBytes(value);
+        }
+    }
+
+    private static List<TransactionItem> randomItems(Random random) {
+        int count = random.nextInt(12) == 0 ? random.nextInt(200) : random.nextInt(8);
+        List<TransactionItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(20) == 0) {
+                items.add(null);
+                continue;
+            }
+            TransactionItem item = new TransactionItem();
+            item.productId = randomString(random);
+            item.variationId = random.nextBoolean() ? null : randomString(random);
+            item.name = randomString(random);
+            item.sku = randomString(random);
+            item.category = random.nextBoolean() ? CATEGORIES[random.nextInt(CATEGORIES.length)] : randomString(random);
+            item.quantity = random.nextInt(10) == 0 ? random.nextInt() : random.nextInt(5);
+            item.unitPrice = randomAmount(random);
+            item.totalPrice = randomAmount(random);
+            item.taxRate = random.nextBoolean() ? null : randomAmount(random);
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * Items JSON can carry: Gson cannot write NaN or infinities
+     */
+    private static List<TransactionItem> randomFiniteItems(Random random) {
+        List<TransactionItem> items = randomItems(random);
+        for (TransactionItem item : items) {
+            if (item != null) {
+                item.unitPrice = finite(item.unitPrice);
+                item.totalPrice = finite(item.totalPrice);
+                item.taxRate = item.taxRate == null ? null : finite(item.taxRate);
+            }
+        }
+        return items;
+    }
+
+    private static PaymentDetails randomPayment(Random random) {
+        PaymentDetails details = new PaymentDetails();
+        details.cardType = random.nextBoolean() ? "visa" : randomString(random);
+        details.cardLastFour = random.nextBoolean() ? null : String.valueOf(1000 + random.nextInt(9000));
+        details.transactionId = randomString(random);
+        details.authCode = randomString(random);
+        details.referenceNumber = random.nextBoolean() ? details.transactionId : randomString(random);
+        details.processorResponse = randomString(random);
+        switch (random.nextInt(4)) {
+            case 0: details.processedAt = null; break;
+            case 1: details.processedAt = new Date(random.nextLong()); break;
+            default: details.processedAt = new Date(1_700_000_000_000L + random.nextInt());
+        }
+        return details;
+    }
+
+    private static String randomString(Random random) {
+        switch (random.nextInt(5)) {
+            case 0: return null;
+            case 1: case 2: return NAMES[random.nextInt(NAMES.length)];
+            default:
+                StringBuilder builder = new StringBuilder();
+                for (int i = random.nextInt(20); i > 0; i--) {
+                    int kind = random.nextInt(10);
+                    if (kind < 6) {
+                        builder.append((char) (' ' + random.nextInt(95)));
+                    } else if (kind < 8) {
+                        builder.append((char) (0xA0 + random.nextInt(0xD000)));
+                    } else {
+                        // Supplementary code points, e.g. emoji in a customer's note
+                        builder.appendCodePoint(0x10000 + random.nextInt(0x10000));
+                    }
+                }
+                return builder.toString();
+        }
+    }
+
+    private static double randomAmount(Random random) {
+        switch (random.nextInt(4)) {
+            case 0: return ODD_AMOUNTS[random.nextInt(ODD_AMOUNTS.length)];
+            case 1: return random.nextDouble() * 1e6 - 5e5;
+            default: return (random.nextInt(2_000_000) - 100_000) / 100.0;
+        }
+    }
+
+    private static double finite(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? 0.5 : value;
+    }
+
+    private static TransactionItem item(String productId, String name, String category, int quantity, double price) {
+        TransactionItem item = new TransactionItem(productId, name, quantity, price);
+        item.sku = "SKU-" + productId;
+        item.category = category;
+        return item;
+    }
+
+    private static void assertItemsEqual(List<TransactionItem> expected, List<TransactionItem> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            TransactionItem e = expected.get(i);
+            TransactionItem a = actual.get(i);
+            if (e == null) {
+                assertNull(a);
+                continue;
+            }
+            assertEquals(e.productId, a.productId);
+            assertEquals(e.variationId, a.variationId);
+            assertEquals(e.name, a.name);
+            assertEquals(e.sku, a.sku);
+            assertEquals(e.category, a.category);
+            assertEquals(e.quantity, a.quantity);
+            assertSameDouble(e.unitPrice, a.unitPrice);
+            assertSameDouble(e.totalPrice, a.totalPrice);
+            if (e.taxRate == null) {
+                assertNull(a.taxRate);
+            } else {
+                assertSameDouble(e.taxRate, a.taxRate);
+            }
+        }
+    }
+
+    private static void assertPaymentEqual(PaymentDetails expected, PaymentDetails actual) {
+        assertEquals(expected.cardType, actual.cardType);
+        assertEquals(expected.cardLastFour, actual.cardLastFour);
+        assertEquals(expected.transactionId, actual.transactionId);
+        assertEquals(expected.authCode, actual.authCode);
+        assertEquals(expected.referenceNumber, actual.referenceNumber);
+        assertEquals(expected.processorResponse, actual.processorResponse);
+        assertEquals(expected.processedAt, actual.processedAt);
+    }
+
+    // Bit-exact, so -0.0 and 0.0 differ
+    private static void assertSameDouble(double expected, double actual) {
+        assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+}
@@ -0,0 +1,221 @@
+package com.crofflestore.pos.database.dao;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class QueueStatsTrackerTest {
+
+    private static final String[] STATUSES = {"pending", "failed", "syncing", "conflict", "synced"};
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long[] TODAY = QueueStatsTracker.dayBounds(NOW);
+
+    @Test
+    public void randomWritesMatchRecomputedStats() {
+        Random random = new Random(42);
+        Map<String, TransactionStatsRow> table = new LinkedHashMap<>();
+        QueueStatsTracker tracker = new QueueStatsTracker();
+        tracker.reset(Collections.<StatusRankAggregate>emptyList(), TODAY[0], TODAY[1], NOW);
+
+        for (int step = 0; step < 20_000; step++) {
+            int op = random.nextInt(10);
+            if (op < 4 || table.isEmpty()) {
+                TransactionStatsRow row = randomRow(random, "tx-" + random.nextInt(2_000));
+                tracker.apply(table.put(row.id, row), row);
+            } else if (op < 9) {
+                TransactionStatsRow before = pick(random, table);
+                TransactionStatsRow after = before.withStatus(STATUSES[random.nextInt(STATUSES.length)]);
+                table.put(after.id, after);
+                tracker.apply(before, after);
+            } else {
+                TransactionStatsRow removed = table.remove(pick(random, table).id);
+                tracker.apply(removed, null);
+            }
+
+            if (tracker.areBoundsStale()) {
+                TimestampBounds bounds = queuedBounds(table.values());
+                tracker.setQueuedBounds(bounds.oldest, bounds.newest);
+            }
+            if (step % 500 == 0) {
+                assertMatches(table.values(), tracker.snapshot(NOW));
+            }
+        }
+        assertMatches(table.values(), tracker.snapshot(NOW));
+    }
+
+    @Test
+    public void resetFoldsGroupedAggregates() {
+        List<TransactionStatsRow> rows = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            rows.add(randomRow(random, "tx-" + i));
+        }
+        QueueStatsTracker tracker = new QueueStatsTracker();
+
+        tracker.reset(groupBy(rows), TODAY[0], TODAY[1], NOW);
+
+        assertMatches(rows, tracker.snapshot(NOW));
+        assertFalse(tracker.needsReconcile(NOW));
+        assertTrue(tracker.needsReconcile(NOW + QueueStatsTracker.RECONCILE_INTERVAL_MS));
+    }
+
+    @Test
+    public void removingTheOldestQueuedRowMarksBoundsStale() {
+        QueueStatsTracker tracker = new QueueStatsTracker();
+        tracker.reset(Collections.<StatusRankAggregate>emptyList(), TODAY[0], TODAY[1], NOW);
+        TransactionStatsRow oldest = row("a", "pending", 2, 10, NOW - 3_000);
+        TransactionStatsRow middle = row("b", "pending", 2, 10, NOW - 2_000);
+        tracker.apply(null, oldest);
+        tracker.apply(null, middle);
+
+        tracker.apply(oldest, oldest.withStatus("syncing"));
+        assertTrue(tracker.areBoundsStale());
+
+        tracker.apply(middle, middle.withStatus("syncing"));
+        // Queue is empty: the bounds are known to be null
+        assertFalse(tracker.areBoundsStale());
+        assertNull(tracker.snapshot(NOW).oldestQueued);
+    }
+
+    @Test
+    public void todaysSyncedAmountRollsOverAtMidnight() {
+        QueueStatsTracker tracker = new QueueStatsTracker();
+        tracker.reset(Collections.<StatusRankAggregate>emptyList(), TODAY[0], TODAY[1], NOW);
+        tracker.apply(null, row("a", "synced", 1, 100, NOW));
+        assertEquals(100, tracker.snapshot(NOW).todaysSyncedAmount, 0.001);
+
+        long tomorrow = TODAY[1] + 60_000;
+        assertEquals(0, tracker.snapshot(tomorrow).todaysSyncedAmount, 0.001);
+        tracker.apply(null, row("b", "synced", 1, 40, tomorrow));
+        assertEquals(40, tracker.snapshot(tomorrow).todaysSyncedAmount, 0.001);
+    }
+
+    @Test
+    public void invalidateForcesReconcile() {
+        QueueStatsTracker tracker = new QueueStatsTracker();
+        assertTrue(tracker.needsReconcile(NOW));
+        tracker.reset(Collections.<StatusRankAggregate>emptyList(), TODAY[0], TODAY[1], NOW);
+        assertFalse(tracker.needsReconcile(NOW));
+        tracker.invalidate();
+        assertTrue(tracker.needsReconcile(NOW));
+    }
+
+    private static void assertMatches(Iterable<TransactionStatsRow> rows, QueueStatsTracker.Snapshot snapshot) {
+        int[] byStatus = new int[STATUSES.length];
+        int[] queuedByRank = new int[4];
+        int total = 0;
+        double pendingAmount = 0;
+        double todaysSynced = 0;
+        List<TransactionStatsRow> all = new ArrayList<>();
+        for (TransactionStatsRow row : rows) {
+            all.add(row);
+            total++;
+            for (int i = 0; i < STATUSES.length; i++) {
+                if (STATUSES[i].equals(row.syncStatus)) {
+                    byStatus[i]++;
+                }
+            }
+            if (isQueued(row)) {
+                queuedByRank[row.priorityRank]++;
+            }
+            if ("pending".equals(row.syncStatus)) {
+                pendingAmount += row.total;
+            }
+            long time = row.timestamp.getTime();
+            if ("synced".equals(row.syncStatus) && time >= TODAY[0] && time < TODAY[1]) {
+                todaysSynced += row.total;
+            }
+        }
+        TimestampBounds bounds = queuedBounds(all);
+
+        assertEquals(total, snapshot.total);
+        assertEquals(byStatus[0], snapshot.pending);
+        assertEquals(byStatus[1], snapshot.failed);
+        assertEquals(byStatus[2], snapshot.syncing);
+        assertEquals(byStatus[3], snapshot.conflict);
+        assertEquals(byStatus[4], snapshot.synced);
+        assertEquals(queuedByRank[1], snapshot.highQueued);
+        assertEquals(queuedByRank[2], snapshot.mediumQueued);
+        assertEquals(queuedByRank[3], snapshot.lowQueued);
+        assertEquals(pendingAmount, snapshot.pendingAmount, 0.01);
+        assertEquals(todaysSynced, snapshot.todaysSyncedAmount, 0.01);
+        assertEquals(bounds.oldest, snapshot.oldestQueued);
+        assertEquals(bounds.newest, snapshot.newestQueued);
+    }
+
+    private static TimestampBounds queuedBounds(Iterable<TransactionStatsRow> rows) {
+        TimestampBounds bounds = new TimestampBounds();
+        for (TransactionStatsRow row : rows) {
+            if (!isQueued(row)) {
+                continue;
+            }
+            if (bounds.oldest == null || row.timestamp.before(bounds.oldest)) {
+                bounds.oldest = row.timestamp;
+            }
+            if (bounds.newest == null || row.timestamp.after(bounds.newest)) {
+                bounds.newest = row.timestamp;
+            }
+        }
+        return bounds;
+    }
+
+    private static List<StatusRankAggregate> groupBy(List<TransactionStatsRow> rows) {
+        Map<String, StatusRankAggregate> groups = new HashMap<>();
+        for (TransactionStatsRow row : rows) {
+            StatusRankAggregate group = groups.get(row.syncStatus + row.priorityRank);
+            if (group == null) {
+                group = new StatusRankAggregate();
+                group.syncStatus = row.syncStatus;
+                group.priorityRank = row.priorityRank;
+                groups.put(row.syncStatus + row.priorityRank, group);
+            }
+            group.rowCount++;
+            group.amount += row.total;
+            long time = row.timestamp.getTime();
+            if (time >= TODAY[0] && time < TODAY[1]) {
+                group.amountInDay += row.total;
+            }
+            if (group.oldest == null || row.timestamp.before(group.oldest)) {
+                group.oldest = row.timestamp;
+            }
+            if (group.newest == null || row.timestamp.after(group.newest)) {
+                group.newest = row.timestamp;
+            }
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static boolean isQueued(TransactionStatsRow row) {
+        return "pending".equals(row.syncStatus) || "failed".equals(row.syncStatus);
+    }
+
+    private static TransactionStatsRow randomRow(Random random, String id) {
+        // Two days of sales so some synced rows fall outside today
+        long time = TODAY[0] - 86_400_000L + random.nextInt(2 * 86_400) * 1000L;
+        return row(id, STATUSES[random.nextInt(STATUSES.length)], 1 + random.nextInt(3),
+                50 + random.nextInt(900), Math.min(time, NOW));
+    }
+
+    private static TransactionStatsRow row(String id, String status, int rank, double total, long time) {
+        TransactionStatsRow row = new TransactionStatsRow();
+        row.id = id;
+        row.syncStatus = status;
+        row.priorityRank = rank;
+        row.total = total;
+        row.timestamp = new Date(time);
+        return row;
+    }
+
+    private static TransactionStatsRow pick(Random random, Map<String, TransactionStatsRow> table) {
+        List<TransactionStatsRow> rows = new ArrayList<>(table.values());
+        return rows.get(random.nextInt(rows.size()));
+    }
+}
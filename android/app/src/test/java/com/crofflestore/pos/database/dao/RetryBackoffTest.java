@@ -0,0 +1,52 @@
+package com.crofflestore.pos.database.dao;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.Date;
+import org.junit.Test;
+
+public class RetryBackoffTest {
+
+    @Test
+    public void windowQuadruplesPerAttemptUpToTheCap() {
+        assertEquals(60_000, RetryBackoff.maxDelayMillis(1));
+        assertEquals(240_000, RetryBackoff.maxDelayMillis(2));
+        assertEquals(960_000, RetryBackoff.maxDelayMillis(3));
+        assertEquals(RetryBackoff.MAX_DELAY_MS, RetryBackoff.maxDelayMillis(4));
+        assertEquals(RetryBackoff.MAX_DELAY_MS, RetryBackoff.maxDelayMillis(Integer.MAX_VALUE));
+        // Rows written as failed before counting an attempt
+        assertEquals(60_000, RetryBackoff.maxDelayMillis(0));
+    }
+
+    @Test
+    public void lastRetryBeforeDeadLetteringWaitsTheLongest() {
+        assertEquals(RetryBackoff.MAX_DELAY_MS,
+                RetryBackoff.maxDelayMillis(OfflineTransaction.MAX_SYNC_ATTEMPTS - 1));
+        assertTrue(RetryBackoff.maxDelayMillis(OfflineTransaction.MAX_SYNC_ATTEMPTS - 2) < RetryBackoff.MAX_DELAY_MS);
+    }
+
+    @Test
+    public void jitterSpansTheUpperHalfOfTheWindow() {
+        assertEquals(120_000, RetryBackoff.delayMillis(2, 0));
+        assertEquals(180_000, RetryBackoff.delayMillis(2, 0.5));
+        assertTrue(RetryBackoff.delayMillis(2, 0.999999) <= 240_000);
+        // Out of range jitter is clamped
+        assertEquals(120_000, RetryBackoff.delayMillis(2, -3));
+        assertEquals(240_000, RetryBackoff.delayMillis(2, 7));
+    }
+
+    @Test
+    public void rowsFailedTogetherComeDueAtDifferentTimes() {
+        Date failedAt = new Date(1_700_000_000_000L);
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < 200; i++) {
+            long due = RetryBackoff.nextRetryAt(2, failedAt).getTime() - failedAt.getTime();
+            assertTrue("delay " + due, due >= 120_000 && due <= 240_000);
+            first = Math.min(first, due);
+            last = Math.max(last, due);
+        }
+        assertTrue("spread " + (last - first), last - first > 30_000);
+    }
+}
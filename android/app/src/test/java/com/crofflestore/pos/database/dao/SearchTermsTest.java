@@ -0,0 +1,43 @@
+package com.crofflestore.pos.database.dao;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class SearchTermsTest {
+
+    @Test
+    public void tokensSplitLikeUnicode61() {
+        assertEquals(Arrays.asList("rcp", "0042"), SearchTerms.tokens("RCP-0042"));
+        assertEquals(Arrays.asList("ube", "croffle", "sku", "7"), SearchTerms.tokens("  Ube croffle (SKU #7)"));
+        assertEquals(Collections.singletonList("se\u00f1or"), SearchTerms.tokens("Se\u00f1or"));
+        assertTrue(SearchTerms.tokens("-- ").isEmpty());
+        assertTrue(SearchTerms.tokens(null).isEmpty());
+    }
+
+    @Test
+    public void matchTreatsOnlyTheWordBeingTypedAsAPrefix() {
+        assertEquals("choco cara*", SearchTerms.match("Choco cara"));
+        assertEquals("choco", SearchTerms.match("choco "));
+        assertEquals("rcp 0042*", SearchTerms.match("RCP-0042"));
+        assertEquals("ube c", SearchTerms.match("ube c"));
+        assertEquals("", SearchTerms.match("--"));
+        assertEquals("", SearchTerms.match(null));
+    }
+
+    @Test
+    public void upperBoundClosesThePrefixRange() {
+        assertEquals("RCP-1", SearchTerms.upperBound("RCP-0"));
+        assertEquals("RCP.", SearchTerms.upperBound("RCP-"));
+        assertEquals("b", SearchTerms.upperBound("a\uffff"));
+        assertNull(SearchTerms.upperBound(""));
+        assertNull(SearchTerms.upperBound("\uffff\uffff"));
+
+        String bound = SearchTerms.upperBound("RCP-12");
+        assertTrue("RCP-12".compareTo(bound) < 0);
+        assertTrue("RCP-129999".compareTo(bound) < 0);
+        assertTrue("RCP-13".compareTo(bound) >= 0);
+    }
+}
@@ -0,0 +1,47 @@
+package com.crofflestore.pos.database.dao;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+
+public class SyncErrorHistoryTest {
+
+    @Test
+    public void linesRoundTripInOrder() {
+        String history = SyncErrorHistory.line(1, new Date(1000), "HTTP 503")
+                + "\n" + SyncErrorHistory.line(2, new Date(2000), null);
+
+        List<SyncErrorHistory.Entry> entries = SyncErrorHistory.parse(history);
+
+        assertEquals(2, entries.size());
+        assertEquals(1, entries.get(0).attempt);
+        assertEquals(1000, entries.get(0).at.getTime());
+        assertEquals("HTTP 503", entries.get(0).error);
+        assertEquals(2, entries.get(1).attempt);
+        assertEquals("", entries.get(1).error);
+    }
+
+    @Test
+    public void errorsAreFlattenedAndCut() {
+        StringBuilder body = new StringBuilder("line one\nline\ttwo\r\n");
+        for (int i = 0; i < 100; i++) {
+            body.append("0123456789");
+        }
+
+        String line = SyncErrorHistory.line(3, new Date(5), body.toString());
+
+        assertEquals(-1, line.indexOf('\n'));
+        SyncErrorHistory.Entry entry = SyncErrorHistory.parse(line).get(0);
+        assertEquals(SyncErrorHistory.MAX_ERROR_CHARS, entry.error.length());
+        assertTrue(entry.error.startsWith("line one line two"));
+    }
+
+    @Test
+    public void emptyAndMalformedHistoriesParse() {
+        assertTrue(SyncErrorHistory.parse(null).isEmpty());
+        assertTrue(SyncErrorHistory.parse("").isEmpty());
+        assertEquals(1, SyncErrorHistory.parse("garbage\nx\ty\tz\n4\t9\tok").size());
+    }
+}
@@ -0,0 +1,246 @@
+package com.crofflestore.pos.sync;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class AdaptiveBatchControllerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    public void healthyWindowsGrowBatchAdditivelyAndConcurrencySlowly() {
+        AdaptiveBatchController controller = new AdaptiveBatchController();
+        assertEquals(AdaptiveBatchController.INITIAL_BATCH_SIZE, controller.getBatchSize());
+        assertEquals(AdaptiveBatchController.INITIAL_IN_FLIGHT, controller.getMaxInFlight());
+
+        window(controller, FAST, AdaptiveBatchController.Outcome.OK);
+        assertEquals(AdaptiveBatchController.INITIAL_BATCH_SIZE + AdaptiveBatchController.INCREASE_STEP,
+                controller.getBatchSize());
+        assertEquals(AdaptiveBatchController.INITIAL_IN_FLIGHT, controller.getMaxInFlight());
+
+        window(controller, FAST, AdaptiveBatchController.Outcome.OK);
+        window(controller, FAST, AdaptiveBatchController.Outcome.OK);
+        assertEquals(AdaptiveBatchController.INITIAL_BATCH_SIZE + 3 * AdaptiveBatchController.INCREASE_STEP,
+                controller.getBatchSize());
+        assertEquals(AdaptiveBatchController.INITIAL_IN_FLIGHT + 1, controller.getMaxInFlight());
+
+        for (int i = 0; i < 200; i++) {
+            window(controller, FAST, AdaptiveBatchController.Outcome.OK);
+        }
+        assertEquals(AdaptiveBatchController.DEFAULT_MAX_BATCH_SIZE, controller.getBatchSize());
+        assertEquals(AdaptiveBatchController.DEFAULT_MAX_IN_FLIGHT, controller.getMaxInFlight());
+    }
+
+    @Test
+    public void timeoutHalvesBothOnceForTheRequestsAlreadyInFlight() {
+        AdaptiveBatchController controller = new AdaptiveBatchController();
+        controller.restore(100, 4);
+
+        // Four concurrent requests all time out: one cut, not four
+        for (int i = 0; i < 4; i++) {
+            controller.onRequest(SLOW, AdaptiveBatchController.Outcome.TIMEOUT);
+        }
+
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(2, controller.getMaxInFlight());
+
+        controller.onRequest(SLOW, AdaptiveBatchController.Outcome.TIMEOUT);
+        assertEquals(25, controller.getBatchSize());
+        assertEquals(1, controller.getMaxInFlight());
+    }
+
+    @Test
+    public void errorsAndSlowWindowsCutOnlyTheBatchSize() {
+        AdaptiveBatchController controller = new AdaptiveBatchController();
+        controller.restore(100, 3);
+
+        controller.onRequest(FAST, AdaptiveBatchController.Outcome.ERROR);
+        controller.onRequest(FAST, AdaptiveBatchController.Outcome.ERROR);
+        controller.onRequest(FAST, AdaptiveBatchController.Outcome.OK);
+        controller.onRequest(FAST, AdaptiveBatchController.Outcome.OK);
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(3, controller.getMaxInFlight());
+
+        // The two other requests in flight at the cut are ignored
+        controller.onRequest(SLOW, AdaptiveBatchController.Outcome.OK);
+        controller.onRequest(SLOW, AdaptiveBatchController.Outcome.OK);
+        window(controller, SLOW, AdaptiveBatchController.Outcome.OK);
+        assertEquals(37, controller.getBatchSize());
+        assertEquals(3, controller.getMaxInFlight());
+
+        // A single error in a window is tolerated
+        controller.restore(40, 1);
+        controller.onRequest(FAST, AdaptiveBatchController.Outcome.ERROR);
+        controller.onRequest(FAST, AdaptiveBatchController.Outcome.OK);
+        controller.onRequest(FAST, AdaptiveBatchController.Outcome.OK);
+        controller.onRequest(FAST, AdaptiveBatchController.Outcome.OK);
+        assertEquals(45, controller.getBatchSize());
+    }
+
+    @Test
+    public void poorNetworkCapsWithoutGrowingTheLearnedState() {
+        AdaptiveBatchController controller = new AdaptiveBatchController();
+        controller.restore(120, 4);
+
+        controller.setNetworkQuality("poor");
+        assertEquals(20, controller.getBatchSize());
+        assertEquals(1, controller.getMaxInFlight());
+        for (int i = 0; i < 10; i++) {
+            window(controller, FAST, AdaptiveBatchController.Outcome.OK);
+        }
+        assertEquals(120, controller.getLearnedBatchSize());
+
+        controller.setNetworkQuality("fair");
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(2, controller.getMaxInFlight());
+
+        controller.setNetworkQuality("excellent");
+        assertEquals(120, controller.getBatchSize());
+        assertEquals(4, controller.getMaxInFlight());
+
+        controller.setNetworkQuality(null);
+        assertEquals(120, controller.getBatchSize());
+    }
+
+    @Test
+    public void restoreClampsSavedState() {
+        AdaptiveBatchController controller = new AdaptiveBatchController(5, 200, 4, 2000);
+        controller.restore(10_000, 0);
+        assertEquals(200, controller.getBatchSize());
+        assertEquals(1, controller.getMaxInFlight());
+        controller.restore(-1, 99);
+        assertEquals(5, controller.getBatchSize());
+        assertEquals(4, controller.getMaxInFlight());
+    }
+
+    /**
+     * Model link: 50 ms plus 10 ms per row, time out past 1.5 s (145 rows),
+     * target 1 s (95 rows), with 2% of requests timing out at random
+     * whatever their size. The controller must climb from 10 rows, then
+     * saw below the timeout size without collapsing.
+     */
+    @Test
+    public void convergesOnModelLinkWithRandomTimeouts() {
+        AdaptiveBatchController controller = new AdaptiveBatchController(5, 500, 4, 1000);
+        Random random = new Random(7);
+        int requests = 2000;
+        long sizeSum = 0;
+        int timeouts = 0;
+        int sizeTimeouts = 0;
+        int smallest = Integer.MAX_VALUE;
+
+        for (int i = 0; i < requests; i++) {
+            int rows = controller.getBatchSize();
+            long latencyMs = 50 + 10L * rows;
+            boolean tooBig = latencyMs > 1500;
+            boolean injected = random.nextInt(100) < 2;
+            AdaptiveBatchController.Outcome outcome = tooBig || injected
+                    ? AdaptiveBatchController.Outcome.TIMEOUT : AdaptiveBatchController.Outcome.OK;
+            controller.onRequest(TimeUnit.MILLISECONDS.toNanos(Math.min(latencyMs, 1500)), outcome);
+            if (i >= requests / 2) {
+                sizeSum += rows;
+                smallest = Math.min(smallest, rows);
+                if (outcome == AdaptiveBatchController.Outcome.TIMEOUT) {
+                    timeouts++;
+                    if (tooBig) {
+                        sizeTimeouts++;
+                    }
+                }
+            }
+        }
+
+        double meanSize = (double) sizeSum / (requests / 2);
+        assertTrue("mean batch " + meanSize, meanSize > 40 && meanSize <= 145);
+        assertTrue("smallest batch " + smallest, smallest >= AdaptiveBatchController.DEFAULT_MIN_BATCH_SIZE);
+        // The slow-window cut keeps it under the timeout size on its own
+        assertEquals(0, sizeTimeouts);
+        assertTrue("timeouts " + timeouts, timeouts < requests / 2 * 0.05);
+    }
+
+    /**
+     * End to end against the local server: every row costs 4 ms of server
+     * time and the client gives up after 400 ms, so requests of more than
+     * about 95 rows time out. Successive runs share the controller the
+     * way worker runs share its saved state.
+     */
+    @Test
+    public void convergesAgainstFaultInjectingServer() throws Exception {
+        try (LocalSyncServer server = LocalSyncServer.start()) {
+            server.setDelayMillis(10);
+            server.setDelayPerTransactionMillis(4);
+            HttpSyncTransport transport = new HttpSyncTransport(server.url(), null, 2_000, 400);
+            AdaptiveBatchController controller = new AdaptiveBatchController(5, 400, 4, 250);
+            controller.restore(150, 2);
+
+            List<OfflineTransaction> queue = new ArrayList<>();
+            for (int i = 0; i < 1200; i++) {
+                queue.add(new OfflineTransaction("tx-" + i, "store-" + (i % 8), "user-1", "shift-1"));
+            }
+
+            int lastRunTimeouts = -1;
+            for (int run = 0; run < 5 && !queue.isEmpty(); run++) {
+                List<OfflineTransaction> retry = new ArrayList<>();
+                int[] timeouts = {0};
+                SyncPipeline pipeline = new SyncPipeline(transport, new QueueSource(queue),
+                        outcomes -> {
+                            synchronized (retry) {
+                                for (SyncOutcome outcome : outcomes) {
+                                    if (outcome.status != SyncOutcome.Status.SYNCED) {
+                                        retry.add(new OfflineTransaction(outcome.transactionId,
+                                                "store-0", "user-1", "shift-1"));
+                                        if (outcome.error != null
+                                                && outcome.error.contains("timed out")) {
+                                            timeouts[0]++;
+                                        }
+                                    }
+                                }
+                            }
+                        },
+                        controller.getBatchSize(), controller.getMaxInFlight());
+                pipeline.setBatchController(controller);
+                pipeline.run();
+                queue = retry;
+                lastRunTimeouts = timeouts[0];
+            }
+
+            assertTrue("left " + queue.size(), queue.isEmpty());
+            assertEquals(0, lastRunTimeouts);
+            int settled = controller.getBatchSize();
+            assertTrue("settled at " + settled + " rows", settled >= 15 && settled <= 95);
+        }
+    }
+
+    private static void window(AdaptiveBatchController controller, long latency, AdaptiveBatchController.Outcome outcome) {
+        for (int i = 0; i < AdaptiveBatchController.WINDOW_REQUESTS; i++) {
+            controller.onRequest(latency, outcome);
+        }
+    }
+
+    /**
+     * Hands out the queue front to back
+     */
+    private static final class QueueSource implements SyncPipeline.BatchSource {
+        private final List<OfflineTransaction> rows;
+        private int next;
+
+        QueueSource(List<OfflineTransaction> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public List<OfflineTransaction> nextBatch(int batchSize) {
+            int end = Math.min(rows.size(), next + batchSize);
+            List<OfflineTransaction> batch = new ArrayList<>(rows.subList(next, end));
+            next = end;
+            return batch;
+        }
+    }
+}
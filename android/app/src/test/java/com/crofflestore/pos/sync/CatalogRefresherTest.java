@@ -0,0 +1,198 @@
+package com.crofflestore.pos.sync;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.entities.CatalogPrice;
+import com.crofflestore.pos.database.entities.CatalogProduct;
+import com.crofflestore.pos.database.entities.CatalogRecord;
+import com.crofflestore.pos.database.entities.CatalogSyncState;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CatalogRefresherTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private LocalCatalogServer server;
+    private MemoryStore store;
+    private CatalogRefresher refresher;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalCatalogServer.start();
+        store = new MemoryStore();
+        refresher = new CatalogRefresher(new HttpCatalogTransport(server.url(), "test-key"), store);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void firstRefreshLoadsEverythingInPages() throws IOException {
+        server.put(CatalogKind.CATEGORIES, T0, category("c-1", "Croffles"));
+        for (int i = 0; i < 1200; i++) {
+            server.put(CatalogKind.PRODUCTS, T0 + i, product("p-" + i, "SKU-" + i, 100 + i));
+        }
+        server.put(CatalogKind.PRICES, T0, price("sp-1", "p-7", "store-1", 99.5));
+
+        CatalogRefresher.Result result = refresher.refresh();
+        assertEquals(1, result.categories);
+        assertEquals(1200, result.products);
+        assertEquals(1, result.prices);
+        // 1200 products take three pages of PAGE_SIZE
+        assertEquals(1 + 3 + 1, result.requests);
+        assertEquals(1200, store.rows(CatalogKind.PRODUCTS).size());
+        CatalogProduct p7 = (CatalogProduct) store.rows(CatalogKind.PRODUCTS).get("p-7");
+        assertEquals("SKU-7", p7.sku);
+        assertEquals("c-1", p7.categoryId);
+        assertEquals(107.0, p7.price, 0.0);
+        assertEquals(T0 + 7, p7.updatedAt);
+        assertEquals("store-1", ((CatalogPrice) store.rows(CatalogKind.PRICES).get("sp-1")).storeId);
+
+        CatalogSyncState mark = store.getSyncState("products");
+        assertEquals(T0 + 1199, mark.highWaterUpdatedAt);
+        assertEquals("p-1199", mark.highWaterId);
+    }
+
+    @Test
+    public void warmRefreshFetchesOnlyTheDelta() throws IOException {
+        for (int i = 0; i < 800; i++) {
+            server.put(CatalogKind.PRODUCTS, T0 + i, product("p-" + i, "SKU-" + i, 100));
+        }
+        refresher.refresh();
+
+        // A restart keeps the store; nothing changed upstream
+        CatalogRefresher.Result idle = new CatalogRefresher(
+                new HttpCatalogTransport(server.url(), "test-key"), store).refresh();
+        assertEquals(0, idle.changed());
+        assertEquals(3, idle.requests);
+
+        server.put(CatalogKind.PRODUCTS, T0 + 5000, product("p-3", "SKU-3", 135));
+        server.put(CatalogKind.PRODUCTS, T0 + 5001, product("p-new", "SKU-NEW", 150));
+        CatalogRefresher.Result delta = refresher.refresh();
+        assertEquals(2, delta.products);
+        assertEquals(801, store.rows(CatalogKind.PRODUCTS).size());
+        assertEquals(135.0, ((CatalogProduct) store.rows(CatalogKind.PRODUCTS).get("p-3")).price, 0.0);
+        String last = server.requests().get(server.requestCount() - 2);
+        assertTrue(last, last.contains("after_updated_at=" + (T0 + 799)) && last.contains("after_id=p-799"));
+    }
+
+    @Test
+    public void tombstonesRemoveRecords() throws IOException {
+        server.put(CatalogKind.PRODUCTS, T0, product("p-1", "SKU-1", 100));
+        server.put(CatalogKind.PRODUCTS, T0 + 1, product("p-2", "SKU-2", 100));
+        refresher.refresh();
+
+        server.delete(CatalogKind.PRODUCTS, T0 + 10, "p-1");
+        CatalogRefresher.Result result = refresher.refresh();
+        assertEquals(1, result.products);
+        assertEquals(1, result.deleted);
+        assertFalse(store.rows(CatalogKind.PRODUCTS).containsKey("p-1"));
+        assertTrue(store.rows(CatalogKind.PRODUCTS).containsKey("p-2"));
+    }
+
+    @Test
+    public void recordsSharingAnUpdatedAtAreNotSkippedAcrossPages() throws IOException {
+        // A bulk price change stamps many rows with one time
+        for (int i = 0; i < 1234; i++) {
+            server.put(CatalogKind.PRODUCTS, T0, product(String.format("p-%04d", i), "SKU-" + i, 100));
+        }
+        CatalogRefresher.Result result = refresher.refresh();
+        assertEquals(1234, result.products);
+        assertEquals(1234, store.rows(CatalogKind.PRODUCTS).size());
+        assertEquals("p-1233", store.getSyncState("products").highWaterId);
+        assertEquals(0, refresher.refresh().changed());
+    }
+
+    @Test
+    public void failedRefreshResumesAfterTheLastStoredPage() throws IOException {
+        for (int i = 0; i < 1500; i++) {
+            server.put(CatalogKind.PRODUCTS, T0 + i, product("p-" + i, "SKU-" + i, 100));
+        }
+        // Categories page, then two product pages, then the network drops
+        server.failAfterRequests(3);
+        try {
+            refresher.refresh();
+            fail("expected the feed to fail");
+        } catch (SyncTransportException e) {
+            assertTrue(e.isRetryable());
+        }
+        assertEquals(1000, store.rows(CatalogKind.PRODUCTS).size());
+
+        server.failAfterRequests(-1);
+        int before = server.requestCount();
+        CatalogRefresher.Result result = refresher.refresh();
+        assertEquals(500, result.products);
+        assertEquals(1500, store.rows(CatalogKind.PRODUCTS).size());
+        String resumed = server.requests().get(before + 1);
+        assertTrue(resumed, resumed.contains("after_id=p-999"));
+    }
+
+    private static JsonObject category(String id, String name) {
+        JsonObject record = new JsonObject();
+        record.addProperty("id", id);
+        record.addProperty("name", name);
+        record.addProperty("sort_order", 1);
+        record.addProperty("active", true);
+        return record;
+    }
+
+    private static JsonObject product(String id, String sku, double price) {
+        JsonObject record = new JsonObject();
+        record.addProperty("id", id);
+        record.addProperty("sku", sku);
+        record.addProperty("name", "Product " + id);
+        record.addProperty("category_id", "c-1");
+        record.addProperty("price", price);
+        record.addProperty("active", true);
+        return record;
+    }
+
+    private static JsonObject price(String id, String productId, String storeId, double price) {
+        JsonObject record = new JsonObject();
+        record.addProperty("id", id);
+        record.addProperty("product_id", productId);
+        record.addProperty("store_id", storeId);
+        record.addProperty("price", price);
+        return record;
+    }
+
+    /**
+     * Map-backed store with the same page semantics as CatalogDao
+     */
+    static final class MemoryStore implements CatalogRefresher.Store {
+        private final Map<CatalogKind, Map<String, CatalogRecord>> tables = new EnumMap<>(CatalogKind.class);
+        private final Map<String, CatalogSyncState> marks = new HashMap<>();
+
+        Map<String, CatalogRecord> rows(CatalogKind kind) {
+            return tables.computeIfAbsent(kind, k -> new HashMap<>());
+        }
+
+        @Override
+        public CatalogSyncState getSyncState(String kind) {
+            return marks.get(kind);
+        }
+
+        @Override
+        public void apply(CatalogKind kind, List<? extends CatalogRecord> page, CatalogSyncState mark) {
+            for (CatalogRecord record : page) {
+                assertTrue(kind.recordClass.isInstance(record));
+                if (record.isDeleted()) {
+                    rows(kind).remove(record.getId());
+                } else {
+                    rows(kind).put(record.getId(), record);
+                }
+            }
+            marks.put(mark.kind, mark);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.crofflestore.pos.sync;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpSyncTransportTest {
+
+    private LocalSyncServer server;
+    private HttpSyncTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalSyncServer.start();
+        transport = new HttpSyncTransport(server.url(), "test-key");
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void uploadsWholeBatchInOneCompressedRequest() throws IOException {
+        List<OfflineTransaction> batch = batch(50);
+
+        List<SyncOutcome> outcomes = transport.upload(batch);
+
+        assertEquals(1, server.requestCount());
+        assertEquals(50, server.receivedTransactions().size());
+        assertEquals(50, outcomes.size());
+        for (SyncOutcome outcome : outcomes) {
+            assertEquals(SyncOutcome.Status.SYNCED, outcome.status);
+        }
+        assertTrue("payload should compress well, got " + server.compressedBytesReceived() + " bytes",
+                server.compressedBytesReceived() < 50 * 200);
+    }
+
+    @Test
+    public void recordsEncodeTimeAndCompressedBytes() throws IOException {
+        SyncMetrics metrics = new SyncMetrics();
+        transport.setMetrics(metrics);
+
+        transport.upload(batch(20));
+        transport.upload(batch(20));
+
+        assertEquals(2, metrics.histogram(SyncMetrics.Stage.ENCODE).getCount());
+        assertEquals(server.compressedBytesReceived(), metrics.getBytesUploaded());
+    }
+
+    @Test
+    public void reportsFailuresAndConflictsPerTransaction() throws IOException {
+        server.setResponder(transaction -> {
+            String id = transaction.get("id").getAsString();
+            if (id.equals("tx-1")) {
+                return LocalSyncServer.failed("unknown shift");
+            }
+            if (id.equals("tx-2")) {
+                JsonObject serverVersion = new JsonObject();
+                serverVersion.addProperty("total", 99.0);
+                return LocalSyncServer.conflict(serverVersion);
+            }
+            return LocalSyncServer.synced();
+        });
+
+        Map<String, SyncOutcome> outcomes = byId(transport.upload(batch(3)));
+
+        assertEquals(SyncOutcome.Status.SYNCED, outcomes.get("tx-0").status);
+        assertEquals(SyncOutcome.Status.FAILED, outcomes.get("tx-1").status);
+        assertEquals("unknown shift", outcomes.get("tx-1").error);
+        assertEquals(SyncOutcome.Status.CONFLICT, outcomes.get("tx-2").status);
+        assertEquals("{\"total\":99.0}", outcomes.get("tx-2").conflictData);
+    }
+
+    @Test
+    public void transactionsMissingFromResponseFail() throws IOException {
+        server.setResponder(transaction ->
+                transaction.get("id").getAsString().equals("tx-0") ? LocalSyncServer.synced() : null);
+
+        Map<String, SyncOutcome> outcomes = byId(transport.upload(batch(2)));
+
+        assertEquals(SyncOutcome.Status.SYNCED, outcomes.get("tx-0").status);
+        assertEquals(SyncOutcome.Status.FAILED, outcomes.get("tx-1").status);
+        assertEquals("No result returned by server", outcomes.get("tx-1").error);
+    }
+
+    @Test
+    public void serverErrorsFailTheWholeRequest() {
+        server.failRequestsWith(503);
+        try {
+            transport.upload(batch(2));
+            fail("expected SyncTransportException");
+        } catch (SyncTransportException e) {
+            assertEquals(503, e.getStatusCode());
+            assertTrue(e.isRetryable());
+        } catch (IOException e) {
+            fail("unexpected " + e);
+        }
+    }
+
+    @Test
+    public void sendsEpochMillisAndOmitsLocalQueueState() throws IOException {
+        OfflineTransaction tx = batch(1).get(0);
+        tx.timestamp = new Date(1_700_000_000_123L);
+        tx.markAsFailed("previous attempt");
+        tx.syncErrorHistory = "1\t1700000000000\tprevious attempt";
+        tx.nextRetryAt = new Date(1_700_000_060_000L);
+        tx.claimOwner = "worker-a";
+
+        transport.upload(Collections.singletonList(tx));
+
+        JsonObject sent = server.receivedTransactions().get(0);
+        assertEquals(1_700_000_000_123L, sent.get("timestamp").getAsLong());
+        assertFalse(sent.has("syncStatus"));
+        assertFalse(sent.has("syncAttempts"));
+        assertFalse(sent.has("syncError"));
+        assertFalse(sent.has("syncErrorHistory"));
+        assertFalse(sent.has("nextRetryAt"));
+        assertFalse(sent.has("claimOwner"));
+        assertFalse(sent.has("priorityRank"));
+        assertEquals(2, sent.getAsJsonArray("items").size());
+    }
+
+    @Test
+    public void emptyBatchMakesNoRequest() throws IOException {
+        assertTrue(transport.upload(new ArrayList<>()).isEmpty());
+        assertEquals(0, server.requestCount());
+    }
+
+    private static List<OfflineTransaction> batch(int size) {
+        List<OfflineTransaction> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            OfflineTransaction tx = new OfflineTransaction("tx-" + i, "store-1", "user-1", "shift-1");
+            tx.receiptNumber = "RCP-" + i;
+            tx.paymentMethod = "cash";
+            tx.items = new ArrayList<>();
+            tx.items.add(new TransactionItem("prod-1", "Classic Croffle", 2, 125.0));
+            tx.items.add(new TransactionItem("prod-2", "Iced Americano", 1, 110.0));
+            tx.total = 360.0;
+            batch.add(tx);
+        }
+        return batch;
+    }
+
+    private static Map<String, SyncOutcome> byId(List<SyncOutcome> outcomes) {
+        Map<String, SyncOutcome> byId = new HashMap<>();
+        for (SyncOutcome outcome : outcomes) {
+            byId.put(outcome.transactionId, outcome);
+        }
+        return byId;
+    }
+}
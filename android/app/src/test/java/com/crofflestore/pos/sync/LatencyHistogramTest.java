@@ -0,0 +1,144 @@
+package com.crofflestore.pos.sync;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithinOneSixteenth() {
+        int previous = -1;
+        for (long value = 0; value < 1 << 20; value += 1 + value / 64) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket >= previous);
+            previous = bucket;
+            long highest = LatencyHistogram.highestInBucket(bucket);
+            assertTrue(value + " -> " + highest, highest >= value);
+            assertTrue(value + " -> " + highest, highest - value <= Math.max(0, value / 16));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(LatencyHistogram.MAX_VALUE_US));
+        assertEquals(LatencyHistogram.MAX_VALUE_US,
+                LatencyHistogram.highestInBucket(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void percentilesTrackSortedValues() {
+        Random random = new Random(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal-ish: mostly milliseconds, a tail of seconds
+            values[i] = (long) Math.exp(7 + random.nextGaussian() * 1.5);
+            histogram.recordMicros(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.percentileMicros(percentile);
+            assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " vs " + exact, reported <= exact + exact / 16 + 1);
+        }
+        assertEquals(values[values.length - 1], histogram.percentileMicros(100));
+        assertEquals(values[values.length - 1], histogram.getMaxMicros());
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void emptyAndClampedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileMicros(99));
+        assertEquals(0, histogram.getMeanMicros());
+
+        histogram.recordNanos(-5);
+        histogram.recordMicros(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.percentileMicros(50));
+        assertEquals(LatencyHistogram.MAX_VALUE_US, histogram.percentileMicros(100));
+    }
+
+    @Test
+    public void encodeDecodeRoundTripsEveryBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value < LatencyHistogram.MAX_VALUE_US; value *= 3) {
+            histogram.recordMicros(value);
+            histogram.recordMicros(value);
+        }
+        histogram.recordMicros(0);
+
+        LatencyHistogram decoded = LatencyHistogram.decode(histogram.encode());
+
+        assertEquals(histogram.getCount(), decoded.getCount());
+        assertEquals(histogram.getMaxMicros(), decoded.getMaxMicros());
+        assertEquals(histogram.getMeanMicros(), decoded.getMeanMicros());
+        for (double percentile = 1; percentile <= 100; percentile++) {
+            assertEquals(histogram.percentileMicros(percentile), decoded.percentileMicros(percentile));
+        }
+        assertArrayEquals(histogram.encode(), decoded.encode());
+    }
+
+    @Test
+    public void decodeRejectsGarbage() {
+        for (byte[] garbage : new byte[][] {{}, {9}, {1, (byte) 0x80}, {1, 1, 1, 1, (byte) 0xFF, 0x7F, 1}}) {
+            try {
+                LatencyHistogram.decode(garbage);
+                fail("decoded " + Arrays.toString(garbage));
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void addMergesCountsAndMax() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            a.recordMicros(i);
+            b.recordMicros(i * 1000L);
+        }
+
+        a.add(b);
+
+        assertEquals(200, a.getCount());
+        assertEquals(100_000, a.getMaxMicros());
+        assertTrue(a.percentileMicros(50) <= 100 + 100 / 16);
+        assertTrue(a.percentileMicros(51) >= 1000);
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8;
+        int perThread = 50_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> recorders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread recorder = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    histogram.recordMicros(i % 1000);
+                }
+            });
+            recorders.add(recorder);
+            recorder.start();
+        }
+        start.countDown();
+        for (Thread recorder : recorders) {
+            recorder.join();
+        }
+
+        assertEquals(threads * perThread, histogram.getCount());
+        assertEquals(999, histogram.getMaxMicros());
+    }
+}
@@ -0,0 +1,162 @@
+package com.crofflestore.pos.sync;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process stand-in for the catalog feed, speaking the
+ * {@link HttpCatalogTransport} wire format on a loopback port.
+ *
+ * Tests put records per kind; each put stamps the record with the given
+ * updated_at, replacing any earlier version, the way the backend would.
+ */
+public final class LocalCatalogServer implements Closeable {
+
+    private final HttpServer server;
+    // Per kind, records in (updated_at, id) order
+    private final Map<String, TreeMap<String, JsonObject>> feeds = new HashMap<>();
+    private final Map<String, String> keysById = new HashMap<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile int failAfterRequests = -1;
+
+    private LocalCatalogServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/catalog", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public static LocalCatalogServer start() throws IOException {
+        return new LocalCatalogServer();
+    }
+
+    public URL url() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/catalog");
+    }
+
+    /**
+     * Add or replace a record of kind; record must carry an id
+     */
+    public synchronized void put(CatalogKind kind, long updatedAt, JsonObject record) {
+        String id = record.get("id").getAsString();
+        TreeMap<String, JsonObject> feed = feeds.computeIfAbsent(kind.wireName, k -> new TreeMap<>());
+        String previous = keysById.remove(kind.wireName + "/" + id);
+        if (previous != null) {
+            feed.remove(previous);
+        }
+        record.addProperty("updated_at", updatedAt);
+        String key = key(updatedAt, id);
+        feed.put(key, record);
+        keysById.put(kind.wireName + "/" + id, key);
+    }
+
+    /**
+     * Replace a record of kind with a tombstone
+     */
+    public void delete(CatalogKind kind, long updatedAt, String id) {
+        JsonObject tombstone = new JsonObject();
+        tombstone.addProperty("id", id);
+        tombstone.addProperty("deleted", true);
+        put(kind, updatedAt, tombstone);
+    }
+
+    /**
+     * Answer 503 to every request after the next n; -1 never fails
+     */
+    public void failAfterRequests(int n) {
+        this.failAfterRequests = n < 0 ? -1 : requestCount.get() + n;
+    }
+
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Path and query of every request so far
+     */
+    public List<String> requests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int n = requestCount.incrementAndGet();
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        requests.add(path + "?" + query);
+        if (failAfterRequests >= 0 && n > failAfterRequests) {
+            respond(exchange, 503, "{\"error\":\"scripted failure\"}");
+            return;
+        }
+        try {
+            String kind = path.substring(path.lastIndexOf('/') + 1);
+            Map<String, String> params = new HashMap<>();
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                params.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+            String after = key(Long.parseLong(params.get("after_updated_at")), params.get("after_id"));
+            int limit = Integer.parseInt(params.get("limit"));
+
+            JsonArray records = new JsonArray();
+            boolean hasMore;
+            synchronized (this) {
+                TreeMap<String, JsonObject> feed = feeds.getOrDefault(kind, new TreeMap<>());
+                Map<String, JsonObject> tail = feed.tailMap(after, false);
+                for (JsonObject record : tail.values()) {
+                    if (records.size() == limit) {
+                        break;
+                    }
+                    records.add(record.deepCopy());
+                }
+                hasMore = tail.size() > records.size();
+            }
+            JsonObject response = new JsonObject();
+            response.add("records", records);
+            response.addProperty("has_more", hasMore);
+            respond(exchange, 200, response.toString());
+        } catch (RuntimeException e) {
+            respond(exchange, 400, "{\"error\":\"malformed request\"}");
+        }
+    }
+
+    // Sorts as (updated_at, id) for non-negative times
+    private static String key(long updatedAt, String id) {
+        return String.format("%020d", updatedAt) + "\u0000" + id;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(status, 0);
+        try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.crofflestore.pos.sync;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process stand-in for the sync backend, speaking the
+ * {@link HttpSyncTransport} wire format on a loopback port.
+ *
+ * Tests script per-transaction answers with a {@link Responder} and can make
+ * whole requests fail with an HTTP status or answer with an arbitrary body.
+ */
+public final class LocalSyncServer implements Closeable {
+
+    /**
+     * Decides the result for one uploaded transaction
+     */
+    public interface Responder {
+        JsonObject respond(JsonObject transaction);
+    }
+
+    private final HttpServer server;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final List<JsonObject> received = Collections.synchronizedList(new ArrayList<>());
+    private volatile Responder responder = transaction -> synced();
+    private volatile int failureStatus;
+    private volatile String rawResponse;
+    private volatile long delayMillis;
+    private volatile double delayPerTransactionMillis;
+
+    private LocalSyncServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/sync", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public static LocalSyncServer start() throws IOException {
+        return new LocalSyncServer();
+    }
+
+    public URL url() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/sync");
+    }
+
+    public void setResponder(Responder responder) {
+        this.responder = responder;
+    }
+
+    /**
+     * Fail every request with this HTTP status; 0 restores normal answers
+     */
+    public void failRequestsWith(int status) {
+        this.failureStatus = status;
+    }
+
+    /**
+     * Answer every request 200 with this body instead of a result list;
+     * null restores normal answers
+     */
+    public void setRawResponse(String rawResponse) {
+        this.rawResponse = rawResponse;
+    }
+
+    /**
+     * Simulated round-trip time added to every request
+     */
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Simulated processing time per uploaded transaction, added once the
+     * body is read, so large requests can be made to run into the
+     * client's read timeout
+     */
+    public void setDelayPerTransactionMillis(double delayPerTransactionMillis) {
+        this.delayPerTransactionMillis = delayPerTransactionMillis;
+    }
+
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    public long compressedBytesReceived() {
+        return compressedBytes.get();
+    }
+
+    public List<JsonObject> receivedTransactions() {
+        synchronized (received) {
+            return new ArrayList<>(received);
+        }
+    }
+
+    public static JsonObject synced() {
+        JsonObject result = new JsonObject();
+        result.addProperty("status", "synced");
+        return result;
+    }
+
+    public static JsonObject failed(String error) {
+        JsonObject result = new JsonObject();
+        result.addProperty("status", "failed");
+        result.addProperty("error", error);
+        return result;
+    }
+
+    public static JsonObject conflict(JsonObject serverVersion) {
+        JsonObject result = new JsonObject();
+        result.addProperty("status", "conflict");
+        result.add("conflict", serverVersion);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            if (failureStatus != 0) {
+                respond(exchange, failureStatus, "{\"error\":\"scripted failure\"}");
+                return;
+            }
+            String raw = rawResponse;
+            if (raw != null) {
+                respond(exchange, 200, raw);
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())
+                    || !"gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                respond(exchange, 415, "{\"error\":\"expected gzip POST\"}");
+                return;
+            }
+
+            JsonObject body;
+            try (InputStreamReader reader = new InputStreamReader(
+                    new GZIPInputStream(new CountingInputStream(exchange.getRequestBody())),
+                    StandardCharsets.UTF_8)) {
+                body = JsonParser.parseReader(reader).getAsJsonObject();
+            }
+            long processingMillis = (long) (delayPerTransactionMillis * body.getAsJsonArray("transactions").size());
+            if (processingMillis > 0) {
+                Thread.sleep(processingMillis);
+            }
+
+            JsonArray results = new JsonArray();
+            for (JsonElement element : body.getAsJsonArray("transactions")) {
+                JsonObject transaction = element.getAsJsonObject();
+                received.add(transaction);
+                JsonObject result = responder.respond(transaction);
+                if (result != null) {
+                    result.addProperty("id", transaction.get("id").getAsString());
+                    results.add(result);
+                }
+            }
+            JsonObject response = new JsonObject();
+            response.add("results", results);
+            respond(exchange, 200, response.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "{\"error\":\"interrupted\"}");
+        } catch (RuntimeException e) {
+            respond(exchange, 400, "{\"error\":\"malformed request\"}");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(status, 0);
+        try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private final class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                compressedBytes.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                compressedBytes.addAndGet(n);
+            }
+            return n;
+        }
+    }
+}
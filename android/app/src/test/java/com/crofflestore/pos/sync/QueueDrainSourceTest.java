@@ -0,0 +1,115 @@
+package com.crofflestore.pos.sync;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.dao.QueueCursor;
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class QueueDrainSourceTest {
+
+    @Test
+    public void drainsTheWholeQueueThroughThePipeline() throws Exception {
+        FakeQueue queue = new FakeQueue(250);
+        QueueDrainSource source = new QueueDrainSource(queue, TimeUnit.MINUTES.toMillis(1));
+
+        SyncPipeline.Stats stats = new SyncPipeline(QueueDrainSourceTest::syncedAll, source,
+                outcomes -> {}, 10, 2).run();
+
+        assertEquals(250, stats.syncedCount);
+        assertEquals(250, source.getClaimedCount());
+        assertTrue(source.isDrained());
+        assertFalse(source.isBudgetExhausted());
+        // 25 full pages plus the empty claim that ended the run
+        assertEquals(26, queue.claims);
+    }
+
+    @Test
+    public void continuesAfterTheLastRowHandedOut() {
+        FakeQueue queue = new FakeQueue(30);
+        QueueDrainSource source = new QueueDrainSource(queue, TimeUnit.MINUTES.toMillis(1));
+
+        List<OfflineTransaction> first = source.nextBatch(10);
+        List<OfflineTransaction> second = source.nextBatch(10);
+
+        assertEquals("tx-9", first.get(9).id);
+        assertEquals("tx-10", second.get(0).id);
+        assertEquals("tx-19", source.getCursor().id);
+    }
+
+    @Test
+    public void stopsClaimingWhenTheBudgetRunsOut() {
+        long[] now = {0};
+        FakeQueue queue = new FakeQueue(1000);
+        QueueDrainSource source = new QueueDrainSource(queue, 500, () -> now[0]);
+
+        assertEquals(10, source.nextBatch(10).size());
+        now[0] = TimeUnit.MILLISECONDS.toNanos(499);
+        assertEquals(10, source.nextBatch(10).size());
+        now[0] = TimeUnit.MILLISECONDS.toNanos(500);
+        assertTrue(source.nextBatch(10).isEmpty());
+
+        assertTrue(source.isBudgetExhausted());
+        assertFalse(source.isDrained());
+        assertEquals(2, queue.claims);
+    }
+
+    @Test
+    public void doesNotClaimAgainOnceDrained() {
+        FakeQueue queue = new FakeQueue(5);
+        QueueDrainSource source = new QueueDrainSource(queue, TimeUnit.MINUTES.toMillis(1));
+
+        assertEquals(5, source.nextBatch(10).size());
+        assertTrue(source.nextBatch(10).isEmpty());
+        assertTrue(source.nextBatch(10).isEmpty());
+
+        assertEquals(2, queue.claims);
+    }
+
+    private static List<SyncOutcome> syncedAll(List<OfflineTransaction> batch) {
+        List<SyncOutcome> outcomes = new ArrayList<>(batch.size());
+        for (OfflineTransaction tx : batch) {
+            outcomes.add(SyncOutcome.synced(tx.id));
+        }
+        return outcomes;
+    }
+
+    /**
+     * Queue of same-priority rows whose timestamps follow their index, paged
+     * by cursor the way the keyset query does
+     */
+    private static final class FakeQueue implements QueueDrainSource.Claim {
+        private final List<OfflineTransaction> rows = new ArrayList<>();
+        int claims;
+
+        FakeQueue(int size) {
+            for (int i = 0; i < size; i++) {
+                OfflineTransaction tx = new OfflineTransaction("tx-" + i, "store-1", "user-1", "shift-1");
+                tx.timestamp = new Date(1_700_000_000_000L + i);
+                rows.add(tx);
+            }
+        }
+
+        @Override
+        public synchronized List<OfflineTransaction> claim(QueueCursor after, int batchSize) {
+            claims++;
+            List<OfflineTransaction> batch = new ArrayList<>();
+            for (OfflineTransaction tx : rows) {
+                if (batch.size() == batchSize) {
+                    break;
+                }
+                boolean later = tx.priorityRank > after.priorityRank
+                        || (tx.priorityRank == after.priorityRank && tx.timestamp.getTime() > after.timestamp);
+                if (later) {
+                    batch.add(tx);
+                }
+            }
+            return batch;
+        }
+    }
+}
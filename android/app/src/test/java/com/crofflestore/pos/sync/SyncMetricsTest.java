@@ -0,0 +1,92 @@
+package com.crofflestore.pos.sync;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.SyncMetricsSample;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class SyncMetricsTest {
+
+    @Test
+    public void pipelineRecordsEveryStage() throws Exception {
+        List<OfflineTransaction> queue = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            queue.add(new OfflineTransaction("tx-" + i, "store-" + (i % 4), "user-1", "shift-1"));
+        }
+        SyncTransport transport = batch -> {
+            List<SyncOutcome> outcomes = new ArrayList<>();
+            for (OfflineTransaction tx : batch) {
+                outcomes.add(SyncOutcome.synced(tx.id));
+            }
+            return outcomes;
+        };
+        List<OfflineTransaction> remaining = Collections.synchronizedList(new ArrayList<>(queue));
+        SyncPipeline.BatchSource source = size -> {
+            List<OfflineTransaction> batch = new ArrayList<>();
+            while (batch.size() < size && !remaining.isEmpty()) {
+                batch.add(remaining.remove(0));
+            }
+            return batch;
+        };
+        SyncMetrics metrics = new SyncMetrics();
+        SyncPipeline pipeline = new SyncPipeline(transport, source, outcomes -> { }, 10, 2);
+        pipeline.setMetrics(metrics);
+
+        SyncPipeline.Stats stats = pipeline.run();
+
+        // Four batches plus the empty claim that ends the run
+        assertEquals(5, metrics.histogram(SyncMetrics.Stage.CLAIM).getCount());
+        assertEquals(stats.requests, metrics.histogram(SyncMetrics.Stage.UPLOAD).getCount());
+        assertEquals(stats.commits, metrics.histogram(SyncMetrics.Stage.COMMIT).getCount());
+        // Encode is only recorded by HttpSyncTransport
+        assertEquals(0, metrics.histogram(SyncMetrics.Stage.ENCODE).getCount());
+    }
+
+    @Test
+    public void sampleCarriesTotalsAndRoundTripsHistograms() {
+        SyncMetrics metrics = new SyncMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(SyncMetrics.Stage.UPLOAD, i * 1_000_000L);
+            metrics.record(SyncMetrics.Stage.COMMIT, i * 10_000L);
+        }
+        metrics.addBytesUploaded(1234);
+        SyncPipeline.Stats stats = new SyncPipeline.Stats();
+        stats.syncedCount = 90;
+        stats.failedCount = 10;
+        stats.requests = 100;
+
+        SyncMetricsSample sample = metrics.toSample("periodic", stats, null, 1_000_000L);
+
+        assertEquals("periodic", sample.syncType);
+        assertEquals(90, sample.syncedCount);
+        assertEquals(10, sample.failedCount);
+        assertEquals(100, sample.requests);
+        assertEquals(1234, sample.bytesUploaded);
+        assertEquals(1_000_000L, sample.recordedAt.getTime());
+        assertNull(sample.oldestQueuedAgeMs);
+        assertEquals(0, sample.getQueuedTotal());
+        assertTrue(sample.uploadP50Micros >= 50_000 && sample.uploadP50Micros <= 53_125);
+        assertTrue(sample.uploadP99Micros >= 99_000 && sample.uploadP99Micros <= 100_000);
+        assertEquals(100_000, sample.uploadMaxMicros);
+        assertEquals(0, sample.claimP99Micros);
+
+        LatencyHistogram[] decoded = SyncMetrics.decodeHistograms(sample.latencyHistograms);
+        assertEquals(SyncMetrics.Stage.values().length, decoded.length);
+        assertEquals(100, decoded[SyncMetrics.Stage.UPLOAD.ordinal()].getCount());
+        assertEquals(sample.commitP99Micros, decoded[SyncMetrics.Stage.COMMIT.ordinal()].percentileMicros(99));
+        assertEquals(0, decoded[SyncMetrics.Stage.CLAIM.ordinal()].getCount());
+    }
+
+    @Test
+    public void missingHistogramsDecodeEmpty() {
+        LatencyHistogram[] decoded = SyncMetrics.decodeHistograms(null);
+        for (LatencyHistogram histogram : decoded) {
+            assertEquals(0, histogram.getCount());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.crofflestore.pos.sync;
+
+import static org.junit.Assert.*;
+
+import com.crofflestore.pos.database.dao.SyncOutcome;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class SyncPipelineTest {
+
+    @Test
+    public void keepsClaimOrderWithinEachStoreAndShift() throws Exception {
+        List<OfflineTransaction> queue = queue(400, 6);
+        Map<String, List<String>> uploadedByKey = new ConcurrentHashMap<>();
+        SyncTransport transport = batch -> {
+            sleepQuietly((long) (Math.random() * 5));
+            for (OfflineTransaction tx : batch) {
+                uploadedByKey.computeIfAbsent(SyncPipeline.orderingKey(tx),
+                        key -> Collections.synchronizedList(new ArrayList<>())).add(tx.id);
+            }
+            return syncedAll(batch);
+        };
+        RecordingSink sink = new RecordingSink();
+
+        SyncPipeline.Stats stats = new SyncPipeline(transport, new ListSource(queue), sink, 15, 4).run();
+
+        assertEquals(400, stats.syncedCount);
+        assertEquals(400, sink.outcomes.size());
+        Map<String, List<String>> expected = new HashMap<>();
+        for (OfflineTransaction tx : queue) {
+            expected.computeIfAbsent(SyncPipeline.orderingKey(tx), key -> new ArrayList<>()).add(tx.id);
+        }
+        assertEquals(expected, uploadedByKey);
+    }
+
+    @Test
+    public void overlapsRequestsUpToTheConfiguredLimit() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        SyncTransport transport = batch -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            sleepQuietly(20);
+            inFlight.decrementAndGet();
+            return syncedAll(batch);
+        };
+
+        SyncPipeline.Stats stats = new SyncPipeline(transport, new ListSource(queue(300, 12)),
+                new RecordingSink(), 24, 3).run();
+
+        assertEquals(300, stats.syncedCount);
+        assertTrue("max in flight " + maxInFlight.get(), maxInFlight.get() <= 3);
+        assertTrue("requests never overlapped", maxInFlight.get() > 1);
+    }
+
+    @Test
+    public void failureHoldsBackLaterRowsOfTheSameKeyOnly() throws Exception {
+        List<OfflineTransaction> queue = queue(40, 2);
+        String poison = queue.get(4).id;
+        String poisonKey = SyncPipeline.orderingKey(queue.get(4));
+        SyncTransport transport = batch -> {
+            List<SyncOutcome> outcomes = new ArrayList<>();
+            for (OfflineTransaction tx : batch) {
+                outcomes.add(tx.id.equals(poison) ? SyncOutcome.failed(tx.id, "rejected") : SyncOutcome.synced(tx.id));
+            }
+            return outcomes;
+        };
+        RecordingSink sink = new RecordingSink();
+
+        SyncPipeline.Stats stats = new SyncPipeline(transport, new ListSource(queue), sink, 5, 2).run();
+
+        assertEquals(1, stats.failedCount);
+        Map<String, SyncOutcome> outcomes = sink.byId();
+        assertEquals(SyncOutcome.Status.FAILED, outcomes.get(poison).status);
+        for (int i = 0; i < queue.size(); i++) {
+            OfflineTransaction tx = queue.get(i);
+            if (!SyncPipeline.orderingKey(tx).equals(poisonKey)) {
+                assertEquals(tx.id, SyncOutcome.Status.SYNCED, outcomes.get(tx.id).status);
+            } else if (i > 4) {
+                // Claimed in later batches: must not overtake the failed row
+                assertEquals(tx.id, SyncOutcome.Status.RELEASED, outcomes.get(tx.id).status);
+            }
+        }
+        assertEquals(17, stats.releasedCount);
+    }
+
+    @Test
+    public void transportErrorDefersTheBatch() throws Exception {
+        SyncTransport transport = batch -> {
+            throw new SocketException("connection reset");
+        };
+        RecordingSink sink = new RecordingSink();
+
+        SyncPipeline.Stats stats = new SyncPipeline(transport, new ListSource(queue(10, 1)), sink, 10, 2).run();
+
+        assertEquals(10, stats.deferredCount);
+        assertEquals(0, stats.failedCount);
+        assertEquals(1, stats.requests);
+        assertEquals(SyncOutcome.Status.DEFERRED, sink.outcomes.get(0).status);
+        assertEquals("Sync failed - connection reset", sink.outcomes.get(0).error);
+    }
+
+    @Test
+    public void rejectedRequestFailsTheBatch() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        SyncTransport transport = batch -> {
+            if (requests.incrementAndGet() == 1) {
+                throw new SyncTransportException(400, "{\"error\":\"bad payload\"}");
+            }
+            return syncedAll(batch);
+        };
+        RecordingSink sink = new RecordingSink();
+
+        SyncPipeline.Stats stats = new SyncPipeline(transport, new ListSource(queue(20, 20)), sink, 10, 1).run();
+
+        // Counted as attempts, and the server is still taken to be up
+        assertEquals(10, stats.failedCount);
+        assertEquals(0, stats.deferredCount);
+        assertEquals(10, stats.syncedCount);
+        assertEquals(SyncOutcome.Status.FAILED, sink.byId().get("tx-0").status);
+        assertEquals("Sync failed - HTTP 400: {\"error\":\"bad payload\"}", sink.byId().get("tx-0").error);
+    }
+
+    @Test
+    public void unreadableResponseFailsTheBatch() throws Exception {
+        try (LocalSyncServer server = LocalSyncServer.start()) {
+            server.setRawResponse("<html>gateway login</html>");
+            RecordingSink sink = new RecordingSink();
+
+            SyncPipeline.Stats stats = new SyncPipeline(new HttpSyncTransport(server.url(), "test-key"),
+                    new ListSource(queue(10, 1)), sink, 10, 2).run();
+
+            assertEquals(10, stats.failedCount);
+            assertEquals(0, stats.deferredCount);
+            assertEquals(SyncOutcome.Status.FAILED, sink.outcomes.get(0).status);
+        }
+    }
+
+    @Test
+    public void unreachableServerStopsTheRun() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        SyncTransport transport = batch -> {
+            requests.incrementAndGet();
+            sleepQuietly(10);
+            throw new NoRouteToHostException("no route to host");
+        };
+        RecordingSink sink = new RecordingSink();
+
+        SyncPipeline.Stats stats = new SyncPipeline(transport, new ListSource(queue(500, 4)), sink, 10, 2).run();
+
+        // Only what was in flight or already claimed is touched
+        assertTrue("requests " + requests.get(), requests.get() <= 4);
+        assertEquals(0, stats.failedCount);
+        assertEquals(stats.deferredCount + stats.releasedCount, sink.outcomes.size());
+        assertTrue(sink.outcomes.size() < 500);
+    }
+
+    @Test
+    public void commitsCompletedLanesTogether() throws Exception {
+        SyncPipeline.Stats stats = new SyncPipeline(batch -> syncedAll(batch),
+                new ListSource(queue(500, 8)), new RecordingSink(), 10, 4).run();
+
+        assertEquals(500, stats.syncedCount);
+        assertTrue("commits " + stats.commits + " requests " + stats.requests, stats.commits <= stats.requests);
+    }
+
+    @Test
+    public void cancelStopsClaiming() throws Exception {
+        ListSource source = new ListSource(queue(100, 2));
+        SyncPipeline[] pipeline = new SyncPipeline[1];
+        pipeline[0] = new SyncPipeline(batch -> {
+            pipeline[0].cancel();
+            return syncedAll(batch);
+        }, source, new RecordingSink(), 10, 1);
+
+        SyncPipeline.Stats stats = pipeline[0].run();
+
+        assertTrue(stats.batches < 10);
+        assertEquals(stats.batches * 10, stats.syncedCount);
+    }
+
+    private static List<OfflineTransaction> queue(int size, int keys) {
+        List<OfflineTransaction> queue = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            queue.add(new OfflineTransaction("tx-" + i, "store-1", "user-1", "shift-" + (i % keys)));
+        }
+        return queue;
+    }
+
+    private static List<SyncOutcome> syncedAll(List<OfflineTransaction> batch) {
+        List<SyncOutcome> outcomes = new ArrayList<>(batch.size());
+        for (OfflineTransaction tx : batch) {
+            outcomes.add(SyncOutcome.synced(tx.id));
+        }
+        return outcomes;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ListSource implements SyncPipeline.BatchSource {
+        private final List<OfflineTransaction> queue;
+        private int next;
+
+        ListSource(List<OfflineTransaction> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public List<OfflineTransaction> nextBatch(int batchSize) {
+            int end = Math.min(queue.size(), next + batchSize);
+            List<OfflineTransaction> batch = new ArrayList<>(queue.subList(next, end));
+            next = end;
+            return batch;
+        }
+    }
+
+    private static final class RecordingSink implements SyncPipeline.OutcomeSink {
+        final List<SyncOutcome> outcomes = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void commit(List<SyncOutcome> batch) {
+            outcomes.addAll(batch);
+        }
+
+        Map<String, SyncOutcome> byId() {
+            Map<String, SyncOutcome> byId = new HashMap<>();
+            for (SyncOutcome outcome : outcomes) {
+                byId.put(outcome.transactionId, outcome);
+            }
+            return byId;
+        }
+    }
+}
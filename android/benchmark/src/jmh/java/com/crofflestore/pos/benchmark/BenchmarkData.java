@@ -0,0 +1,113 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.PaymentDetails;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic rows shaped like a store's real history: carts of one to six
+ * items from a small croffle menu, spread over the last 45 days, mostly
+ * synced with a pending and failed tail. Seeded, so every run and every
+ * fork sees the same data.
+ */
+final class BenchmarkData {
+
+    private static final String[] PRODUCTS = {
+        "Classic Croffle", "Biscoff Croffle", "Nutella Croffle", "Matcha Croffle",
+        "Strawberry Croffle", "Oreo Croffle", "Caramel Croffle", "Blueberry Croffle",
+        "Iced Americano", "Caramel Latte", "Matcha Latte", "Bottled Water"
+    };
+
+    private static final String[] CATEGORIES = {"croffles", "espresso", "drinks"};
+    private static final String[] PRIORITIES = {"high", "medium", "medium", "low"};
+
+    static final long HISTORY_MS = TimeUnit.DAYS.toMillis(45);
+
+    private BenchmarkData() {}
+
+    static List<TransactionItem> items(Random random, int count) {
+        List<TransactionItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int product = random.nextInt(PRODUCTS.length);
+            TransactionItem item = new TransactionItem("prod-" + product, PRODUCTS[product], 1 + random.nextInt(2), 125.0);
+            item.sku = "SKU-" + (1000 + product);
+            item.category = CATEGORIES[product % CATEGORIES.length];
+            item.taxRate = 0.12;
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * count rows with ids prefix-0 .. prefix-(count-1), oldest first
+     */
+    static List<OfflineTransaction> transactions(String prefix, int count, long seed) {
+        Random random = new Random(seed);
+        long now = System.currentTimeMillis();
+        long start = now - HISTORY_MS;
+        long step = Math.max(1, HISTORY_MS / Math.max(1, count));
+        List<OfflineTransaction> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            OfflineTransaction tx = new OfflineTransaction(prefix + "-" + i, "store-" + (i % 3), "user-1", "shift-" + (i % 3));
+            tx.timestamp = new Date(start + i * step);
+            tx.createdAt = tx.timestamp;
+            tx.updatedAt = tx.timestamp;
+            tx.setPriority(PRIORITIES[random.nextInt(PRIORITIES.length)]);
+            tx.items = items(random, 1 + random.nextInt(6));
+            double subtotal = 0;
+            for (TransactionItem item : tx.items) {
+                subtotal += item.totalPrice;
+            }
+            tx.subtotal = subtotal;
+            tx.total = subtotal;
+            tx.amountTendered = subtotal;
+            // A quarter of sales carry one of 2000 loyalty customers
+            if (i % 4 == 0) {
+                tx.customerId = "cust-" + (i / 4 % 2000);
+            }
+            // Unique across prefixes: receipt_number has a unique index
+            tx.receiptNumber = "RCP-" + prefix.toUpperCase(Locale.ROOT) + "-" + (100000 + i);
+            if (random.nextInt(3) == 0) {
+                tx.paymentMethod = "card";
+                tx.paymentDetails = new PaymentDetails("visa", "4242");
+                tx.paymentDetails.authCode = "AUTH-" + i;
+                tx.paymentDetails.referenceNumber = tx.receiptNumber;
+            } else {
+                tx.paymentMethod = "cash";
+            }
+            assignStatus(tx, random.nextInt(100));
+            rows.add(tx);
+        }
+        return rows;
+    }
+
+    /**
+     * 70% synced, 20% pending, 6% failed (half out of retries), 2% syncing,
+     * 2% conflict
+     */
+    private static void assignStatus(OfflineTransaction tx, int roll) {
+        if (roll < 70) {
+            tx.syncStatus = "synced";
+            tx.lastSyncAttempt = tx.timestamp;
+        } else if (roll < 90) {
+            tx.syncStatus = "pending";
+        } else if (roll < 96) {
+            tx.syncStatus = "failed";
+            tx.syncAttempts = roll < 93 ? 2 : 5;
+            tx.lastSyncAttempt = tx.timestamp;
+            tx.syncError = "HTTP 503";
+        } else if (roll < 98) {
+            tx.syncStatus = "syncing";
+            tx.lastSyncAttempt = tx.timestamp;
+        } else {
+            tx.syncStatus = "conflict";
+            tx.conflictData = "{\"server_total\":0}";
+        }
+    }
+}
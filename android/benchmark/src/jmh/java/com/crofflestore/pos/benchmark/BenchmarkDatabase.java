@@ -0,0 +1,535 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.converters.PaymentDetailsConverter;
+import com.crofflestore.pos.database.converters.TransactionItemConverter;
+import com.crofflestore.pos.database.dao.OfflineTransactionQueries;
+import com.crofflestore.pos.database.dao.QueueEntry;
+import com.crofflestore.pos.database.dao.RetryBackoff;
+import com.crofflestore.pos.database.dao.SalesAggregateQueries;
+import com.crofflestore.pos.database.dao.StatusRankAggregate;
+import com.crofflestore.pos.database.dao.TransactionStatsRow;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The offline database on sqlite-jdbc
+ *
+ * The schema is the one Room creates at version 11 (CroffleOfflineDatabase
+ * with its migrations and triggers), plus the recipe tables of version 14
+ * the shift index of version 16 and the export index of version 18;
+ * keep it in step when the entities change. Writes mirror OfflineTransactionDao: insertAll checks the
+ * receipt numbers, reads the replaced stats rows, rewrites the parents'
+ * transaction_items and REPLACEs the parents, all in one transaction, with
+ * the transaction_search and sales_aggregates triggers firing on each.
+ *
+ * Queries use the DAO's SQL constants; Room's :name parameters are
+ * rewritten to JDBC placeholders by {@link #prepare}.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    private static final String SEARCH_ITEMS_OF_NEW =
+            "COALESCE((SELECT group_concat(COALESCE(name, '') || ' ' || COALESCE(sku, ''), ' ') " +
+            "FROM transaction_items WHERE transaction_id = NEW.id), '')";
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS `offline_transactions` (" +
+            "`id` TEXT NOT NULL, `timestamp` INTEGER, `store_id` TEXT, `user_id` TEXT, " +
+            "`shift_id` TEXT, `customer_id` TEXT, `items` BLOB, `subtotal` REAL NOT NULL, " +
+            "`tax` REAL NOT NULL, `discount` REAL NOT NULL, `discount_type` TEXT, " +
+            "`discount_id_number` TEXT, `total` REAL NOT NULL, `amount_tendered` REAL NOT NULL, " +
+            "`change_amount` REAL, `payment_method` TEXT, `payment_details` BLOB, `order_type` TEXT, " +
+            "`delivery_platform` TEXT, `delivery_order_number` TEXT, `sync_status` TEXT, " +
+            "`sync_attempts` INTEGER NOT NULL, `last_sync_attempt` INTEGER, `next_retry_at` INTEGER, " +
+            "`claim_owner` TEXT, `lease_expires_at` INTEGER, `sync_error` TEXT, `sync_error_history` TEXT, " +
+            "`priority` TEXT, `priority_rank` INTEGER NOT NULL DEFAULT 2, `receipt_number` TEXT, " +
+            "`device_id` TEXT, `network_quality` TEXT, `conflict_data` TEXT, `created_at` INTEGER, " +
+            "`updated_at` INTEGER, PRIMARY KEY(`id`))",
+        "CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_priority_rank_timestamp_total` " +
+            "ON `offline_transactions` (`sync_status`, `priority_rank`, `timestamp`, `total`)",
+        "CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_last_sync_attempt` " +
+            "ON `offline_transactions` (`sync_status`, `last_sync_attempt`)",
+        "CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_next_retry_at` " +
+            "ON `offline_transactions` (`sync_status`, `next_retry_at`)",
+        "CREATE INDEX IF NOT EXISTS `index_offline_transactions_sync_status_lease_expires_at` " +
+            "ON `offline_transactions` (`sync_status`, `lease_expires_at`)",
+        "CREATE UNIQUE INDEX IF NOT EXISTS `index_offline_transactions_receipt_number` " +
+            "ON `offline_transactions` (`receipt_number`)",
+        "CREATE INDEX IF NOT EXISTS `index_offline_transactions_customer_id_timestamp` " +
+            "ON `offline_transactions` (`customer_id`, `timestamp`)",
+        "CREATE INDEX IF NOT EXISTS " +
+            "`index_offline_transactions_store_id_shift_id_sync_status_priority_rank_timestamp` " +
+            "ON `offline_transactions` (`store_id`, `shift_id`, `sync_status`, `priority_rank`, `timestamp`)",
+        "CREATE INDEX IF NOT EXISTS `index_offline_transactions_timestamp_id` " +
+            "ON `offline_transactions` (`timestamp`, `id`)",
+        "CREATE TABLE IF NOT EXISTS `transaction_items` (" +
+            "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `transaction_id` TEXT NOT NULL, " +
+            "`line_number` INTEGER NOT NULL, `product_id` TEXT, `variation_id` TEXT, `name` TEXT, " +
+            "`sku` TEXT, `category` TEXT, `quantity` INTEGER NOT NULL, `unit_price` REAL NOT NULL, " +
+            "`total_price` REAL NOT NULL, `tax_rate` REAL, `store_id` TEXT, `sold_at` INTEGER)",
+        "CREATE UNIQUE INDEX IF NOT EXISTS `index_transaction_items_transaction_id_line_number` " +
+            "ON `transaction_items` (`transaction_id`, `line_number`)",
+        "CREATE INDEX IF NOT EXISTS `index_transaction_items_sold_at` ON `transaction_items` (`sold_at`)",
+        "CREATE INDEX IF NOT EXISTS `index_transaction_items_product_id_sold_at` " +
+            "ON `transaction_items` (`product_id`, `sold_at`)",
+        "CREATE INDEX IF NOT EXISTS `index_transaction_items_sku_sold_at` " +
+            "ON `transaction_items` (`sku`, `sold_at`)",
+        "CREATE INDEX IF NOT EXISTS `index_transaction_items_category_sold_at` " +
+            "ON `transaction_items` (`category`, `sold_at`)",
+        "CREATE TABLE IF NOT EXISTS `dead_letter_transactions` (" +
+            "`dead_lettered_at` INTEGER, `dead_letter_reason` TEXT, " +
+            "`id` TEXT NOT NULL, `timestamp` INTEGER, `store_id` TEXT, `user_id` TEXT, " +
+            "`shift_id` TEXT, `customer_id` TEXT, `items` BLOB, `subtotal` REAL NOT NULL, " +
+            "`tax` REAL NOT NULL, `discount` REAL NOT NULL, `discount_type` TEXT, " +
+            "`discount_id_number` TEXT, `total` REAL NOT NULL, `amount_tendered` REAL NOT NULL, " +
+            "`change_amount` REAL, `payment_method` TEXT, `payment_details` BLOB, `order_type` TEXT, " +
+            "`delivery_platform` TEXT, `delivery_order_number` TEXT, `sync_status` TEXT, " +
+            "`sync_attempts` INTEGER NOT NULL, `last_sync_attempt` INTEGER, `next_retry_at` INTEGER, " +
+            "`claim_owner` TEXT, `lease_expires_at` INTEGER, `sync_error` TEXT, `sync_error_history` TEXT, " +
+            "`priority` TEXT, `priority_rank` INTEGER NOT NULL DEFAULT 2, `receipt_number` TEXT, " +
+            "`device_id` TEXT, `network_quality` TEXT, `conflict_data` TEXT, `created_at` INTEGER, " +
+            "`updated_at` INTEGER, PRIMARY KEY(`id`))",
+        "CREATE INDEX IF NOT EXISTS `index_dead_letter_transactions_dead_lettered_at` " +
+            "ON `dead_letter_transactions` (`dead_lettered_at`)",
+        "CREATE INDEX IF NOT EXISTS `index_dead_letter_transactions_store_id_dead_lettered_at` " +
+            "ON `dead_letter_transactions` (`store_id`, `dead_lettered_at`)",
+        "CREATE TRIGGER IF NOT EXISTS offline_transactions_priority_rank_ai " +
+            "AFTER INSERT ON offline_transactions " +
+            "WHEN NEW.priority_rank != (CASE NEW.priority WHEN 'high' THEN 1 WHEN 'low' THEN 3 ELSE 2 END) " +
+            "BEGIN UPDATE offline_transactions SET priority_rank = " +
+            "CASE NEW.priority WHEN 'high' THEN 1 WHEN 'low' THEN 3 ELSE 2 END WHERE id = NEW.id; END",
+        "CREATE TRIGGER IF NOT EXISTS offline_transactions_priority_rank_au " +
+            "AFTER UPDATE OF priority, priority_rank ON offline_transactions " +
+            "WHEN NEW.priority_rank != (CASE NEW.priority WHEN 'high' THEN 1 WHEN 'low' THEN 3 ELSE 2 END) " +
+            "BEGIN UPDATE offline_transactions SET priority_rank = " +
+            "CASE NEW.priority WHEN 'high' THEN 1 WHEN 'low' THEN 3 ELSE 2 END WHERE id = NEW.id; END",
+        "CREATE TABLE IF NOT EXISTS `sales_aggregates` (" +
+            "`business_day` TEXT NOT NULL, `hour` INTEGER NOT NULL, `shift_id` TEXT NOT NULL, " +
+            "`payment_method` TEXT NOT NULL, `transaction_count` INTEGER NOT NULL DEFAULT 0, " +
+            "`subtotal_cents` INTEGER NOT NULL DEFAULT 0, `tax_cents` INTEGER NOT NULL DEFAULT 0, " +
+            "`discount_cents` INTEGER NOT NULL DEFAULT 0, `total_cents` INTEGER NOT NULL DEFAULT 0, " +
+            "`synced_count` INTEGER NOT NULL DEFAULT 0, `synced_cents` INTEGER NOT NULL DEFAULT 0, " +
+            "PRIMARY KEY(`business_day`, `hour`, `shift_id`, `payment_method`))",
+        "CREATE INDEX IF NOT EXISTS `index_sales_aggregates_shift_id` ON `sales_aggregates` (`shift_id`)",
+        "CREATE VIRTUAL TABLE IF NOT EXISTS `transaction_search` USING FTS4(" +
+            "`receipt_number` TEXT, `customer_id` TEXT, `items` TEXT, tokenize=unicode61, prefix=`2,3`, order=DESC)",
+        "CREATE TRIGGER IF NOT EXISTS offline_transactions_items_ad " +
+            "AFTER DELETE ON offline_transactions " +
+            "BEGIN DELETE FROM transaction_items WHERE transaction_id = OLD.id; END",
+        "CREATE TRIGGER IF NOT EXISTS transaction_search_bi " +
+            "BEFORE INSERT ON offline_transactions " +
+            "BEGIN DELETE FROM transaction_search WHERE rowid = " +
+            "(SELECT rowid FROM offline_transactions WHERE id = NEW.id); END",
+        "CREATE TRIGGER IF NOT EXISTS transaction_search_ai " +
+            "AFTER INSERT ON offline_transactions " +
+            "BEGIN INSERT INTO transaction_search (rowid, receipt_number, customer_id, items) " +
+            "VALUES (NEW.rowid, NEW.receipt_number, NEW.customer_id, " + SEARCH_ITEMS_OF_NEW + "); END",
+        "CREATE TRIGGER IF NOT EXISTS transaction_search_au " +
+            "AFTER UPDATE OF receipt_number, customer_id, items ON offline_transactions " +
+            "WHEN OLD.receipt_number IS NOT NEW.receipt_number OR OLD.customer_id IS NOT NEW.customer_id " +
+            "OR OLD.items IS NOT NEW.items " +
+            "BEGIN UPDATE transaction_search SET receipt_number = NEW.receipt_number, " +
+            "customer_id = NEW.customer_id, items = " + SEARCH_ITEMS_OF_NEW + " " +
+            "WHERE rowid = NEW.rowid; END",
+        "CREATE TRIGGER IF NOT EXISTS transaction_search_ad " +
+            "AFTER DELETE ON offline_transactions " +
+            "BEGIN DELETE FROM transaction_search WHERE rowid = OLD.rowid; END",
+        "CREATE TABLE IF NOT EXISTS `recipes` (" +
+            "`product_id` TEXT NOT NULL, `variation_id` TEXT NOT NULL, `version` INTEGER NOT NULL, " +
+            "`active` INTEGER NOT NULL, PRIMARY KEY(`product_id`, `variation_id`))",
+        "CREATE INDEX IF NOT EXISTS `index_recipes_version` ON `recipes` (`version`)",
+        "CREATE TABLE IF NOT EXISTS `recipe_ingredients` (" +
+            "`product_id` TEXT NOT NULL, `variation_id` TEXT NOT NULL, `item_id` TEXT NOT NULL, " +
+            "`quantity` REAL NOT NULL, `unit` TEXT, `base_unit` TEXT, " +
+            "PRIMARY KEY(`product_id`, `variation_id`, `item_id`))"
+    };
+
+    private static final String INSERT_TRANSACTION =
+            "INSERT OR REPLACE INTO `offline_transactions` (`id`,`timestamp`,`store_id`,`user_id`,`shift_id`," +
+            "`customer_id`,`items`,`subtotal`,`tax`,`discount`,`discount_type`,`discount_id_number`,`total`," +
+            "`amount_tendered`,`change_amount`,`payment_method`,`payment_details`,`order_type`," +
+            "`delivery_platform`,`delivery_order_number`,`sync_status`,`sync_attempts`,`last_sync_attempt`," +
+            "`next_retry_at`,`claim_owner`,`lease_expires_at`,`sync_error`,`sync_error_history`,`priority`," +
+            "`priority_rank`,`receipt_number`,`device_id`,`network_quality`,`conflict_data`,`created_at`,`updated_at`) " +
+            "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+    private static final String INSERT_ITEM =
+            "INSERT INTO `transaction_items` (`id`,`transaction_id`,`line_number`,`product_id`,`variation_id`," +
+            "`name`,`sku`,`category`,`quantity`,`unit_price`,`total_price`,`tax_rate`,`store_id`,`sold_at`) " +
+            "VALUES (nullif(?, 0),?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+    // OfflineTransactionDao.LEASE_MS; the DAO itself needs Room
+    private static final long LEASE_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Pattern PARAMETER = Pattern.compile(":(\\w+)");
+
+    private final File file;
+    final Connection connection;
+
+    private BenchmarkDatabase(File file, Connection connection) {
+        this.file = file;
+        this.connection = connection;
+    }
+
+    /**
+     * A fresh file-backed database in WAL mode with synchronous=NORMAL,
+     * the balanced storage profile
+     */
+    static BenchmarkDatabase create() throws IOException, SQLException {
+        File file = Files.createTempFile("croffle-bench", ".db").toFile();
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            // auto_vacuum only takes before the first page is written, and
+            // switching to WAL writes it
+            statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");
+            for (String sql : SCHEMA) {
+                statement.execute(sql);
+            }
+            for (String sql : SalesAggregateQueries.TRIGGERS) {
+                statement.execute(sql);
+            }
+        }
+        return new BenchmarkDatabase(file, connection);
+    }
+
+    /**
+     * insertAll in batches of batchSize, one transaction each
+     */
+    void seed(List<OfflineTransaction> rows, int batchSize) throws SQLException {
+        for (int i = 0; i < rows.size(); i += batchSize) {
+            insertAll(rows.subList(i, Math.min(rows.size(), i + batchSize)));
+        }
+    }
+
+    /**
+     * OfflineTransactionDao.insertAll
+     */
+    void insertAll(List<OfflineTransaction> transactions) throws SQLException {
+        Map<String, OfflineTransaction> byId = new LinkedHashMap<>();
+        for (OfflineTransaction transaction : transactions) {
+            if (transaction.hasFailed() && transaction.nextRetryAt == null) {
+                transaction.nextRetryAt = RetryBackoff.nextRetryAt(Math.max(1, transaction.syncAttempts),
+                        transaction.lastSyncAttempt);
+            } else if (transaction.isSyncing() && transaction.leaseExpiresAt == null) {
+                transaction.leaseExpiresAt = new Date(transaction.lastSyncAttempt.getTime() + LEASE_MS);
+            }
+            byId.put(transaction.id, transaction);
+        }
+        List<String> ids = new ArrayList<>(byId.keySet());
+
+        inTransaction(() -> {
+            receiptHolders(byId.values());
+            statsRows(ids);
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM transaction_items WHERE transaction_id IN (" + placeholders(ids.size()) + ")")) {
+                for (int i = 0; i < ids.size(); i++) {
+                    delete.setString(i + 1, ids.get(i));
+                }
+                delete.executeUpdate();
+            }
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_ITEM)) {
+                for (OfflineTransaction tx : byId.values()) {
+                    if (tx.items == null) {
+                        continue;
+                    }
+                    for (int line = 0; line < tx.items.size(); line++) {
+                        bindItem(insert, tx, line, tx.items.get(line));
+                        insert.executeUpdate();
+                    }
+                }
+            }
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_TRANSACTION)) {
+                for (OfflineTransaction tx : transactions) {
+                    bindTransaction(insert, tx);
+                    insert.executeUpdate();
+                }
+            }
+        });
+    }
+
+    /**
+     * The receipt lookup of OfflineTransactionDao's REPLACE guard
+     *
+     * @return ids currently holding the batch's receipt numbers
+     */
+    List<String> receiptHolders(Collection<OfflineTransaction> transactions) throws SQLException {
+        List<String> receipts = new ArrayList<>(transactions.size());
+        for (OfflineTransaction tx : transactions) {
+            if (tx.receiptNumber != null) {
+                receipts.add(tx.receiptNumber);
+            }
+        }
+        List<String> holders = new ArrayList<>();
+        if (receipts.isEmpty()) {
+            return holders;
+        }
+        String sql = OfflineTransactionQueries.SUMMARIES_BY_RECEIPTS
+                .replace("(:receiptNumbers)", "(" + placeholders(receipts.size()) + ")");
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < receipts.size(); i++) {
+                statement.setString(i + 1, receipts.get(i));
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    holders.add(result.getString("id"));
+                }
+            }
+        }
+        return holders;
+    }
+
+    List<TransactionStatsRow> statsRows(List<String> ids) throws SQLException {
+        String sql = OfflineTransactionQueries.STATS_ROWS_BY_ID
+                .replace("(:transactionIds)", "(" + placeholders(ids.size()) + ")");
+        List<TransactionStatsRow> rows = new ArrayList<>(ids.size());
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setString(i + 1, ids.get(i));
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    TransactionStatsRow row = new TransactionStatsRow();
+                    row.id = result.getString("id");
+                    row.syncStatus = result.getString("sync_status");
+                    row.priorityRank = result.getInt("priority_rank");
+                    row.syncAttempts = result.getInt("sync_attempts");
+                    row.total = result.getDouble("total");
+                    row.timestamp = date(result, "timestamp");
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Room's :name parameters as JDBC placeholders, bound by name
+     */
+    NamedStatement prepare(String roomSql) throws SQLException {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = PARAMETER.matcher(roomSql);
+        StringBuffer sql = new StringBuffer();
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+            matcher.appendReplacement(sql, "?");
+        }
+        matcher.appendTail(sql);
+        return new NamedStatement(connection.prepareStatement(sql.toString()), names);
+    }
+
+    static List<QueueEntry> queueEntries(ResultSet result) throws SQLException {
+        List<QueueEntry> entries = new ArrayList<>();
+        while (result.next()) {
+            QueueEntry entry = new QueueEntry();
+            entry.id = result.getString("id");
+            entry.timestamp = date(result, "timestamp");
+            entry.total = result.getDouble("total");
+            entry.syncStatus = result.getString("sync_status");
+            entry.priority = result.getString("priority");
+            entry.priorityRank = result.getInt("priority_rank");
+            entry.syncAttempts = result.getInt("sync_attempts");
+            entry.lastSyncAttempt = date(result, "last_sync_attempt");
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    static List<StatusRankAggregate> aggregates(ResultSet result) throws SQLException {
+        List<StatusRankAggregate> groups = new ArrayList<>();
+        while (result.next()) {
+            StatusRankAggregate group = new StatusRankAggregate();
+            group.syncStatus = result.getString("sync_status");
+            group.priorityRank = result.getInt("priority_rank");
+            group.rowCount = result.getInt("row_count");
+            group.amount = result.getDouble("amount");
+            group.amountInDay = result.getDouble("amount_in_day");
+            group.oldest = date(result, "oldest");
+            group.newest = date(result, "newest");
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    interface Work {
+        void run() throws SQLException;
+    }
+
+    void inTransaction(Work work) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            work.run();
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    long pragma(String name) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("PRAGMA " + name)) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+
+    void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        connection.close();
+        File[] siblings = {file, new File(file.getPath() + "-wal"), new File(file.getPath() + "-shm")};
+        for (File sibling : siblings) {
+            sibling.delete();
+        }
+    }
+
+    static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "?" : ",?");
+        }
+        return builder.toString();
+    }
+
+    private static Date date(ResultSet result, String column) throws SQLException {
+        long value = result.getLong(column);
+        return result.wasNull() ? null : new Date(value);
+    }
+
+    private static void bindTransaction(PreparedStatement statement, OfflineTransaction tx) throws SQLException {
+        int i = 1;
+        statement.setString(i++, tx.id);
+        setDate(statement, i++, tx.timestamp);
+        statement.setString(i++, tx.storeId);
+        statement.setString(i++, tx.userId);
+        statement.setString(i++, tx.shiftId);
+        statement.setString(i++, tx.customerId);
+        statement.setBytes(i++, TransactionItemConverter.toBytes(tx.items));
+        statement.setDouble(i++, tx.subtotal);
+        statement.setDouble(i++, tx.tax);
+        statement.setDouble(i++, tx.discount);
+        statement.setString(i++, tx.discountType);
+        statement.setString(i++, tx.discountIdNumber);
+        statement.setDouble(i++, tx.total);
+        statement.setDouble(i++, tx.amountTendered);
+        if (tx.change == null) {
+            statement.setNull(i++, Types.REAL);
+        } else {
+            statement.setDouble(i++, tx.change);
+        }
+        statement.setString(i++, tx.paymentMethod);
+        statement.setBytes(i++, PaymentDetailsConverter.toBytes(tx.paymentDetails));
+        statement.setString(i++, tx.orderType);
+        statement.setString(i++, tx.deliveryPlatform);
+        statement.setString(i++, tx.deliveryOrderNumber);
+        statement.setString(i++, tx.syncStatus);
+        statement.setInt(i++, tx.syncAttempts);
+        setDate(statement, i++, tx.lastSyncAttempt);
+        setDate(statement, i++, tx.nextRetryAt);
+        statement.setString(i++, tx.claimOwner);
+        setDate(statement, i++, tx.leaseExpiresAt);
+        statement.setString(i++, tx.syncError);
+        statement.setString(i++, tx.syncErrorHistory);
+        statement.setString(i++, tx.priority);
+        statement.setInt(i++, tx.priorityRank);
+        statement.setString(i++, tx.receiptNumber);
+        statement.setString(i++, tx.deviceId);
+        statement.setString(i++, tx.networkQuality);
+        statement.setString(i++, tx.conflictData);
+        setDate(statement, i++, tx.createdAt);
+        setDate(statement, i, tx.updatedAt);
+    }
+
+    private static void bindItem(PreparedStatement statement, OfflineTransaction tx, int line, TransactionItem item)
+            throws SQLException {
+        int i = 1;
+        statement.setLong(i++, 0);
+        statement.setString(i++, tx.id);
+        statement.setInt(i++, line);
+        statement.setString(i++, item.productId);
+        statement.setString(i++, item.variationId);
+        statement.setString(i++, item.name);
+        statement.setString(i++, item.sku);
+        statement.setString(i++, item.category);
+        statement.setInt(i++, item.quantity);
+        statement.setDouble(i++, item.unitPrice);
+        statement.setDouble(i++, item.totalPrice);
+        if (item.taxRate == null) {
+            statement.setNull(i++, Types.REAL);
+        } else {
+            statement.setDouble(i++, item.taxRate);
+        }
+        statement.setString(i++, tx.storeId);
+        setDate(statement, i, tx.timestamp);
+    }
+
+    private static void setDate(PreparedStatement statement, int index, Date date) throws SQLException {
+        if (date == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setLong(index, date.getTime());
+        }
+    }
+
+    /**
+     * A prepared statement with Room-style named parameters
+     */
+    static final class NamedStatement implements AutoCloseable {
+        final PreparedStatement statement;
+        private final List<String> names;
+
+        NamedStatement(PreparedStatement statement, List<String> names) {
+            this.statement = statement;
+            this.names = names;
+        }
+
+        NamedStatement bind(String name, Object value) throws SQLException {
+            boolean found = false;
+            for (int i = 0; i < names.size(); i++) {
+                if (names.get(i).equals(name)) {
+                    statement.setObject(i + 1, value instanceof Date ? ((Date) value).getTime() : value);
+                    found = true;
+                }
+            }
+            if (!found) {
+                throw new IllegalArgumentException("No parameter :" + name);
+            }
+            return this;
+        }
+
+        ResultSet query() throws SQLException {
+            return statement.executeQuery();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            statement.close();
+        }
+    }
+}
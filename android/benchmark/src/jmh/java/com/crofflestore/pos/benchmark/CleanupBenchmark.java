@@ -0,0 +1,155 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.dao.OfflineTransactionQueries;
+import com.crofflestore.pos.database.entities.DeadLetterTransaction;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * performCleanup as DatabaseMaintenance runs it: retention deletes and
+ * dead-letter moves in chunks, each its own transaction, then
+ * incremental_vacuum of the freed pages. Every iteration starts from a freshly seeded database, so this is
+ * single-shot: one full cleanup per measurement.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class CleanupBenchmark {
+
+    static final int CHUNK_SIZE = 200;
+    static final int VACUUM_STEP_PAGES = 128;
+    static final long SYNCED_RETENTION_MS = TimeUnit.DAYS.toMillis(7);
+
+    @State(Scope.Benchmark)
+    public static class Seeded {
+        @Param({"1000", "10000", "100000"})
+        public int rows;
+
+        BenchmarkDatabase database;
+
+        @Setup(Level.Iteration)
+        public void seed() throws IOException, SQLException {
+            database = BenchmarkDatabase.create();
+            database.seed(BenchmarkData.transactions("tx", rows, 42), SeededDatabaseState.SEED_BATCH);
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws SQLException {
+            database.close();
+        }
+    }
+
+    @Benchmark
+    public long cleanup(Seeded state) throws SQLException {
+        BenchmarkDatabase db = state.database;
+        long now = System.currentTimeMillis();
+        long deleted = deleteInChunks(db, OfflineTransactionQueries.RETENTION_SYNCED_STATS_ROWS,
+                now - SYNCED_RETENTION_MS);
+        deleted += deadLetterInChunks(db, now);
+        long free = db.pragma("freelist_count");
+        while (free > 0) {
+            db.execute("PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ")");
+            long left = db.pragma("freelist_count");
+            if (left >= free) {
+                throw new IllegalStateException("incremental_vacuum freed nothing; auto_vacuum is not INCREMENTAL");
+            }
+            free = left;
+        }
+        return deleted;
+    }
+
+    private static long deleteInChunks(BenchmarkDatabase db, String selectChunk, long cutoff) throws SQLException {
+        long total = 0;
+        try (BenchmarkDatabase.NamedStatement select = db.prepare(selectChunk)) {
+            while (true) {
+                List<String> ids = new ArrayList<>(CHUNK_SIZE);
+                db.inTransaction(() -> {
+                    select.bind("cutoffDate", cutoff).bind("limit", CHUNK_SIZE);
+                    readIds(select, ids);
+                    if (ids.isEmpty()) {
+                        return;
+                    }
+                    try (PreparedStatement delete = db.connection.prepareStatement(
+                            "DELETE FROM offline_transactions WHERE id IN ("
+                                    + BenchmarkDatabase.placeholders(ids.size()) + ")")) {
+                        for (int i = 0; i < ids.size(); i++) {
+                            delete.setString(i + 1, ids.get(i));
+                        }
+                        delete.executeUpdate();
+                    }
+                });
+                total += ids.size();
+                if (ids.size() < CHUNK_SIZE) {
+                    return total;
+                }
+            }
+        }
+    }
+
+    /**
+     * OfflineTransactionDao.deadLetterExhaustedChunk() until no exhausted
+     * rows are left: copy to dead_letter_transactions, then delete
+     */
+    private static long deadLetterInChunks(BenchmarkDatabase db, long now) throws SQLException {
+        long total = 0;
+        try (BenchmarkDatabase.NamedStatement select = db.prepare(OfflineTransactionQueries.EXHAUSTED_STATS_ROWS)) {
+            while (true) {
+                List<String> ids = new ArrayList<>(CHUNK_SIZE);
+                db.inTransaction(() -> {
+                    select.bind("limit", CHUNK_SIZE);
+                    readIds(select, ids);
+                    if (ids.isEmpty()) {
+                        return;
+                    }
+                    String in = BenchmarkDatabase.placeholders(ids.size());
+                    try (PreparedStatement copy = db.connection.prepareStatement(
+                            OfflineTransactionQueries.COPY_TO_DEAD_LETTER
+                                    .replace(":deadLetteredAt", "?")
+                                    .replace(":reason", "?")
+                                    .replace(":transactionIds", in));
+                         PreparedStatement delete = db.connection.prepareStatement(
+                                 "DELETE FROM offline_transactions WHERE id IN (" + in + ")")) {
+                        copy.setLong(1, now);
+                        copy.setString(2, DeadLetterTransaction.REASON_RETRIES_EXHAUSTED);
+                        for (int i = 0; i < ids.size(); i++) {
+                            copy.setString(i + 3, ids.get(i));
+                            delete.setString(i + 1, ids.get(i));
+                        }
+                        copy.executeUpdate();
+                        delete.executeUpdate();
+                    }
+                });
+                total += ids.size();
+                if (ids.size() < CHUNK_SIZE) {
+                    return total;
+                }
+            }
+        }
+    }
+
+    private static void readIds(BenchmarkDatabase.NamedStatement select, List<String> ids) throws SQLException {
+        try (ResultSet result = select.query()) {
+            while (result.next()) {
+                ids.add(result.getString("id"));
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.converters.PaymentDetailsConverter;
+import com.crofflestore.pos.database.converters.TransactionItemConverter;
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import com.crofflestore.pos.database.entities.OfflineTransaction.PaymentDetails;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The items and payment_details column converters, per row: the binary
+ * codec both ways, the legacy JSON values still decoded through Gson, and
+ * Gson encoding as the converters did before the binary codec.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConverterBenchmark {
+
+    static final int ROWS = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Columns {
+        final Gson gson = new Gson();
+        List<OfflineTransaction> rows;
+        byte[][] binaryItems;
+        byte[][] jsonItems;
+        byte[][] binaryPayments;
+
+        @Setup(Level.Trial)
+        public void encode() {
+            rows = BenchmarkData.transactions("tx", ROWS, 42);
+            binaryItems = new byte[ROWS][];
+            jsonItems = new byte[ROWS][];
+            binaryPayments = new byte[ROWS][];
+            for (int i = 0; i < ROWS; i++) {
+                OfflineTransaction tx = rows.get(i);
+                binaryItems[i] = TransactionItemConverter.toBytes(tx.items);
+                jsonItems[i] = gson.toJson(tx.items).getBytes(StandardCharsets.UTF_8);
+                binaryPayments[i] = PaymentDetailsConverter.toBytes(tx.paymentDetails);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void encodeItems(Columns columns, Blackhole blackhole) {
+        for (OfflineTransaction tx : columns.rows) {
+            blackhole.consume(TransactionItemConverter.toBytes(tx.items));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void decodeItems(Columns columns, Blackhole blackhole) {
+        for (byte[] value : columns.binaryItems) {
+            blackhole.consume(TransactionItemConverter.fromBytes(value));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void decodeLegacyJsonItems(Columns columns, Blackhole blackhole) {
+        for (byte[] value : columns.jsonItems) {
+            List<TransactionItem> items = TransactionItemConverter.fromBytes(value);
+            blackhole.consume(items);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void gsonEncodeItems(Columns columns, Blackhole blackhole) {
+        for (OfflineTransaction tx : columns.rows) {
+            blackhole.consume(columns.gson.toJson(tx.items));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void encodePaymentDetails(Columns columns, Blackhole blackhole) {
+        for (OfflineTransaction tx : columns.rows) {
+            blackhole.consume(PaymentDetailsConverter.toBytes(tx.paymentDetails));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void decodePaymentDetails(Columns columns, Blackhole blackhole) {
+        for (byte[] value : columns.binaryPayments) {
+            PaymentDetails details = PaymentDetailsConverter.fromBytes(value);
+            blackhole.consume(details);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.dao.OfflineTransactionQueries;
+import com.crofflestore.pos.database.dao.QueueStatsTracker;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * getDatabaseStats: the cold path (grouped aggregate query loaded into the
+ * tracker, as on first call and every reconciliation) and the hot path
+ * (a snapshot of the already loaded tracker).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DatabaseStatsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Stats extends SeededDatabaseState {
+        BenchmarkDatabase.NamedStatement aggregate;
+        QueueStatsTracker tracker;
+        long[] day;
+
+        @Setup(Level.Trial)
+        public void prepare() throws SQLException {
+            aggregate = database.prepare(OfflineTransactionQueries.STATS_BY_STATUS_AND_RANK);
+            day = QueueStatsTracker.dayBounds(System.currentTimeMillis());
+            tracker = new QueueStatsTracker();
+            reconcile();
+        }
+
+        QueueStatsTracker.Snapshot reconcile() throws SQLException {
+            aggregate.bind("dayStart", day[0]).bind("dayEnd", day[1]);
+            try (ResultSet result = aggregate.query()) {
+                tracker.reset(BenchmarkDatabase.aggregates(result), day[0], day[1], System.currentTimeMillis());
+            }
+            return tracker.snapshot(System.currentTimeMillis());
+        }
+
+        @TearDown(Level.Trial)
+        public void release() throws SQLException {
+            aggregate.close();
+        }
+    }
+
+    @Benchmark
+    public QueueStatsTracker.Snapshot reconcile(Stats stats) throws SQLException {
+        return stats.reconcile();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public QueueStatsTracker.Snapshot trackedSnapshot(Stats stats) {
+        return stats.tracker.snapshot(System.currentTimeMillis());
+    }
+}
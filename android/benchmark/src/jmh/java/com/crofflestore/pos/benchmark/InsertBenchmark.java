@@ -0,0 +1,72 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.entities.OfflineTransaction;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * OfflineTransactionDao.insert (one sale, one commit) and insertAll (a
+ * batch, one commit) into a table already holding {@code rows} rows. New
+ * rows get fresh ids and receipt numbers, so the table grows a little
+ * during a trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InsertBenchmark {
+
+    static final int BATCH_SIZE = 50;
+    private static final int FRESH_ROWS = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class Table extends SeededDatabaseState {
+        List<OfflineTransaction> fresh;
+        int next;
+
+        @Setup(Level.Trial)
+        public void prepare() {
+            fresh = BenchmarkData.transactions("new", FRESH_ROWS, 7);
+            for (OfflineTransaction tx : fresh) {
+                tx.syncStatus = "pending";
+            }
+        }
+
+        /**
+         * The next batch of fresh rows, renamed once the pool wraps so ids
+         * and receipt numbers stay unique
+         */
+        List<OfflineTransaction> take(int count) {
+            if (next + count > fresh.size()) {
+                for (OfflineTransaction tx : fresh) {
+                    tx.id = tx.id + "'";
+                    tx.receiptNumber = tx.receiptNumber + "'";
+                }
+                next = 0;
+            }
+            List<OfflineTransaction> batch = fresh.subList(next, next + count);
+            next += count;
+            return batch;
+        }
+    }
+
+    @Benchmark
+    public void insert(Table table) throws SQLException {
+        table.database.insertAll(Collections.singletonList(table.take(1).get(0)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insertAll(Table table) throws SQLException {
+        table.database.insertAll(table.take(BATCH_SIZE));
+    }
+}
@@ -0,0 +1,117 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.dao.OfflineTransactionQueries;
+import com.crofflestore.pos.database.dao.SearchTerms;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Receipt lookups and transaction search: an exact receipt on the unique
+ * index, a receipt prefix range, and OfflineTransactionDao.search() for a
+ * receipt fragment, a customer, an item, the first keystrokes of a word,
+ * and a partial word nearly every sale contains. The last is the worst
+ * case: a prefix longer than the indexed 2 and 3 characters makes FTS4
+ * read every matching document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReceiptLookupBenchmark {
+
+    static final int LIMIT = 20;
+
+    @State(Scope.Benchmark)
+    public static class Receipts extends SeededDatabaseState {
+        BenchmarkDatabase.NamedStatement exact;
+        BenchmarkDatabase.NamedStatement prefix;
+        BenchmarkDatabase.NamedStatement search;
+        String middleReceipt;
+
+        @Setup(Level.Trial)
+        public void prepare() throws SQLException {
+            exact = database.prepare(OfflineTransactionQueries.TRANSACTION_BY_RECEIPT);
+            prefix = database.prepare(OfflineTransactionQueries.RECEIPT_PREFIX_SUMMARIES);
+            search = database.prepare(OfflineTransactionQueries.SEARCH_SUMMARIES);
+            middleReceipt = "RCP-TX-" + (100000 + rows / 2);
+        }
+
+        @TearDown(Level.Trial)
+        public void release() throws SQLException {
+            exact.close();
+            prefix.close();
+            search.close();
+        }
+    }
+
+    @Benchmark
+    public int exactReceipt(Receipts state) throws SQLException {
+        state.exact.bind("receiptNumber", state.middleReceipt);
+        return count(state.exact);
+    }
+
+    @Benchmark
+    public int receiptPrefix(Receipts state) throws SQLException {
+        String prefix = state.middleReceipt.substring(0, state.middleReceipt.length() - 2);
+        state.prefix
+                .bind("prefix", prefix)
+                .bind("upperBound", SearchTerms.upperBound(prefix))
+                .bind("limit", LIMIT);
+        return count(state.prefix);
+    }
+
+    @Benchmark
+    public int searchReceiptFragment(Receipts state) throws SQLException {
+        return search(state, state.middleReceipt.substring("RCP-TX-".length()));
+    }
+
+    @Benchmark
+    public int searchCustomer(Receipts state) throws SQLException {
+        return search(state, "cust-17");
+    }
+
+    @Benchmark
+    public int searchItem(Receipts state) throws SQLException {
+        return search(state, "blueberry");
+    }
+
+    @Benchmark
+    public int searchFirstKeystrokes(Receipts state) throws SQLException {
+        return search(state, "cro");
+    }
+
+    @Benchmark
+    public int searchCommonPartialWord(Receipts state) throws SQLException {
+        return search(state, "croff");
+    }
+
+    /**
+     * OfflineTransactionDao.search()
+     */
+    private static int search(Receipts state, String input) throws SQLException {
+        state.search
+                .bind("prefix", input)
+                .bind("upperBound", SearchTerms.upperBound(input))
+                .bind("textMatch", SearchTerms.match(input))
+                .bind("limit", LIMIT);
+        return count(state.search);
+    }
+
+    private static int count(BenchmarkDatabase.NamedStatement statement) throws SQLException {
+        int count = 0;
+        try (ResultSet result = statement.query()) {
+            while (result.next()) {
+                count += result.getString("id").length();
+            }
+        }
+        return count;
+    }
+}
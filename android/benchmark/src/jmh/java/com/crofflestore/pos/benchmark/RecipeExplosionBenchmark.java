@@ -0,0 +1,239 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.RecipeExplosions;
+import com.crofflestore.pos.database.RecipeUnits;
+import com.crofflestore.pos.database.dao.RecipeQueries;
+import com.crofflestore.pos.database.entities.OfflineTransaction.TransactionItem;
+import com.crofflestore.pos.database.entities.Recipe;
+import com.crofflestore.pos.database.entities.RecipeIngredient;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Ingredient deductions for a 10-line order of the BenchmarkData menu,
+ * every product with a recipe of four to eight ingredients in mixed units
+ * and the drinks with a large variation of their own.
+ *
+ * naivePerSaleLookup reads each line's recipe with RecipeDao's
+ * INGREDIENTS_OF (and the product's, for a variation without one),
+ * converting units row by row; naiveInMemoryWalk does the same over
+ * recipes already in memory, leaving only the per-sale conversions and
+ * string hashing. compiledExplosion is RecipeExplosions.explode();
+ * recompileOneRecipe is the incremental rebuild after one recipe is saved.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecipeExplosionBenchmark {
+
+    static final int ORDER_LINES = 10;
+    static final int ORDERS = 64;
+
+    private static final String[] INGREDIENTS = {
+        "croffle-dough", "butter", "sugar", "biscoff-spread", "nutella", "matcha-powder",
+        "strawberry-jam", "oreo-crumbs", "caramel-sauce", "blueberry-jam", "whipped-cream",
+        "espresso-beans", "milk", "ice", "cup-12oz", "cup-16oz", "lid", "bottled-water"
+    };
+
+    // Recipe unit, stock unit and a per-unit-sold quantity in the recipe unit
+    private static final String[][] UNITS = {
+        {"g", "kg", "35"}, {"g", "g", "12"}, {"ml", "l", "150"}, {"pc", "pc", "1"},
+        {"kg", "g", "0.02"}, {"l", "ml", "0.03"}, {"pcs", "dozen", "1"}
+    };
+
+    @State(Scope.Benchmark)
+    public static class Menu {
+        BenchmarkDatabase database;
+        BenchmarkDatabase.NamedStatement ingredientsOf;
+        Map<String, List<RecipeIngredient>> definitions;
+        RecipeExplosions explosions;
+        List<List<TransactionItem>> orders;
+        List<Recipe> editedRecipe;
+        List<RecipeIngredient> editedLines;
+        int next;
+
+        @Setup(Level.Trial)
+        public void seed() throws IOException, SQLException {
+            database = BenchmarkDatabase.create();
+            Random random = new Random(42);
+            List<Recipe> recipes = new ArrayList<>();
+            List<RecipeIngredient> lines = new ArrayList<>();
+            long version = 0;
+            for (int product = 0; product < 12; product++) {
+                recipes.add(new Recipe("prod-" + product, "", ++version, true));
+                lines.addAll(recipeLines(random, "prod-" + product, ""));
+                if (product >= 8) {
+                    recipes.add(new Recipe("prod-" + product, "large", ++version, true));
+                    lines.addAll(recipeLines(random, "prod-" + product, "large"));
+                }
+            }
+            insert(recipes, lines);
+
+            definitions = new HashMap<>();
+            for (RecipeIngredient line : lines) {
+                String key = line.productId + '\n' + line.variationId;
+                List<RecipeIngredient> recipeLines = definitions.get(key);
+                if (recipeLines == null) {
+                    recipeLines = new ArrayList<>();
+                    definitions.put(key, recipeLines);
+                }
+                recipeLines.add(line);
+            }
+            explosions = RecipeExplosions.EMPTY.withChanges(recipes, lines);
+            ingredientsOf = database.prepare(RecipeQueries.INGREDIENTS_OF);
+
+            orders = new ArrayList<>(ORDERS);
+            for (int i = 0; i < ORDERS; i++) {
+                List<TransactionItem> order = BenchmarkData.items(random, ORDER_LINES);
+                for (TransactionItem item : order) {
+                    // Only the drinks have a large recipe; iced has none anywhere
+                    int roll = random.nextInt(3);
+                    item.variationId = roll == 0 ? "large" : roll == 1 ? "iced" : null;
+                }
+                orders.add(order);
+            }
+            editedRecipe = Collections.singletonList(new Recipe("prod-0", "", version + 1, true));
+            editedLines = recipeLines(random, "prod-0", "");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            ingredientsOf.close();
+            database.close();
+        }
+
+        List<TransactionItem> nextOrder() {
+            return orders.get(next++ & (ORDERS - 1));
+        }
+
+        private void insert(List<Recipe> recipes, List<RecipeIngredient> lines) throws SQLException {
+            database.connection.setAutoCommit(false);
+            try (PreparedStatement recipe = database.connection.prepareStatement(
+                         "INSERT INTO recipes (product_id, variation_id, version, active) VALUES (?, ?, ?, 1)");
+                 PreparedStatement line = database.connection.prepareStatement(
+                         "INSERT INTO recipe_ingredients (product_id, variation_id, item_id, quantity, unit, base_unit) " +
+                         "VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (Recipe r : recipes) {
+                    recipe.setString(1, r.productId);
+                    recipe.setString(2, r.variationId);
+                    recipe.setLong(3, r.version);
+                    recipe.executeUpdate();
+                }
+                for (RecipeIngredient l : lines) {
+                    line.setString(1, l.productId);
+                    line.setString(2, l.variationId);
+                    line.setString(3, l.itemId);
+                    line.setDouble(4, l.quantity);
+                    line.setString(5, l.unit);
+                    line.setString(6, l.baseUnit);
+                    line.executeUpdate();
+                }
+                database.connection.commit();
+            } finally {
+                database.connection.setAutoCommit(true);
+            }
+        }
+
+        private static List<RecipeIngredient> recipeLines(Random random, String productId, String variationId) {
+            int count = 4 + random.nextInt(5);
+            int first = random.nextInt(INGREDIENTS.length);
+            List<RecipeIngredient> lines = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String[] unit = UNITS[random.nextInt(UNITS.length)];
+                RecipeIngredient line = new RecipeIngredient(INGREDIENTS[(first + i) % INGREDIENTS.length],
+                        Double.parseDouble(unit[2]), unit[0], unit[1]);
+                line.productId = productId;
+                line.variationId = variationId;
+                lines.add(line);
+            }
+            return lines;
+        }
+    }
+
+    @Benchmark
+    public int naivePerSaleLookup(Menu menu) throws SQLException {
+        Map<String, Double> totals = new HashMap<>();
+        for (TransactionItem item : menu.nextOrder()) {
+            List<RecipeIngredient> lines = Collections.emptyList();
+            if (item.variationId != null) {
+                lines = query(menu, item.productId, item.variationId);
+            }
+            if (lines.isEmpty()) {
+                lines = query(menu, item.productId, "");
+            }
+            add(totals, lines, item.quantity);
+        }
+        return roundUp(totals).size();
+    }
+
+    @Benchmark
+    public int naiveInMemoryWalk(Menu menu) {
+        Map<String, Double> totals = new HashMap<>();
+        for (TransactionItem item : menu.nextOrder()) {
+            List<RecipeIngredient> lines = null;
+            if (item.variationId != null) {
+                lines = menu.definitions.get(item.productId + '\n' + item.variationId);
+            }
+            if (lines == null) {
+                lines = menu.definitions.get(item.productId + '\n');
+            }
+            add(totals, lines, item.quantity);
+        }
+        return roundUp(totals).size();
+    }
+
+    @Benchmark
+    public int compiledExplosion(Menu menu) {
+        return menu.explosions.explode(menu.nextOrder()).size();
+    }
+
+    @Benchmark
+    public int recompileOneRecipe(Menu menu) {
+        return menu.explosions.withChanges(menu.editedRecipe, menu.editedLines).size();
+    }
+
+    private static List<RecipeIngredient> query(Menu menu, String productId, String variationId) throws SQLException {
+        menu.ingredientsOf.bind("productId", productId).bind("variationId", variationId);
+        List<RecipeIngredient> lines = new ArrayList<>();
+        try (ResultSet result = menu.ingredientsOf.query()) {
+            while (result.next()) {
+                lines.add(new RecipeIngredient(result.getString("item_id"), result.getDouble("quantity"),
+                        result.getString("unit"), result.getString("base_unit")));
+            }
+        }
+        return lines;
+    }
+
+    private static void add(Map<String, Double> totals, List<RecipeIngredient> lines, int quantity) {
+        for (RecipeIngredient line : lines) {
+            double amount = line.quantity * RecipeUnits.factor(line.unit, line.baseUnit) * quantity;
+            Double total = totals.get(line.itemId);
+            totals.put(line.itemId, total == null ? amount : total + amount);
+        }
+    }
+
+    private static Map<String, Long> roundUp(Map<String, Double> totals) {
+        Map<String, Long> deduction = new HashMap<>();
+        for (Map.Entry<String, Double> total : totals.entrySet()) {
+            deduction.put(total.getKey(), (long) Math.ceil(total.getValue() - 1e-9));
+        }
+        return deduction;
+    }
+}
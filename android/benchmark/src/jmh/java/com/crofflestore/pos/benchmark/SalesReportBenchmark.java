@@ -0,0 +1,104 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.dao.QueueStatsTracker;
+import com.crofflestore.pos.database.dao.SalesAggregateQueries;
+import com.crofflestore.pos.database.entities.SalesAggregate;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * X/Z report and shift close reads from sales_aggregates against the same
+ * figures summed straight from offline_transactions, which has no index
+ * on timestamp or shift_id and so scans every row. The write side of the
+ * aggregates shows up in InsertBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SalesReportBenchmark {
+
+    private static final String SCAN_DAY_BY_PAYMENT_METHOD =
+            "SELECT payment_method, COUNT(*) AS transaction_count, TOTAL(total) AS total " +
+            "FROM offline_transactions WHERE timestamp >= :dayStart AND timestamp < :dayEnd " +
+            "GROUP BY payment_method";
+
+    private static final String SCAN_SHIFT_BY_PAYMENT_METHOD =
+            "SELECT payment_method, COUNT(*) AS transaction_count, TOTAL(total) AS total " +
+            "FROM offline_transactions WHERE shift_id = :shiftId GROUP BY payment_method";
+
+    private static final String SHIFT = "shift-1";
+
+    @State(Scope.Benchmark)
+    public static class Reports extends SeededDatabaseState {
+        BenchmarkDatabase.NamedStatement dayByPaymentMethod;
+        BenchmarkDatabase.NamedStatement shiftByPaymentMethod;
+        BenchmarkDatabase.NamedStatement scanDay;
+        BenchmarkDatabase.NamedStatement scanShift;
+        String businessDay;
+        long[] day;
+
+        @Setup(Level.Trial)
+        public void prepare() throws SQLException {
+            dayByPaymentMethod = database.prepare(SalesAggregateQueries.DAY_BY_PAYMENT_METHOD);
+            shiftByPaymentMethod = database.prepare(SalesAggregateQueries.SHIFT_BY_PAYMENT_METHOD);
+            scanDay = database.prepare(SCAN_DAY_BY_PAYMENT_METHOD);
+            scanShift = database.prepare(SCAN_SHIFT_BY_PAYMENT_METHOD);
+            // A day in the middle of the seeded history
+            long time = System.currentTimeMillis() - BenchmarkData.HISTORY_MS / 2;
+            businessDay = SalesAggregate.businessDay(new Date(time));
+            day = QueueStatsTracker.dayBounds(time);
+        }
+
+        @TearDown(Level.Trial)
+        public void release() throws SQLException {
+            dayByPaymentMethod.close();
+            shiftByPaymentMethod.close();
+            scanDay.close();
+            scanShift.close();
+        }
+    }
+
+    @Benchmark
+    public double dayByPaymentMethod(Reports state) throws SQLException {
+        state.dayByPaymentMethod.bind("businessDay", state.businessDay);
+        return sum(state.dayByPaymentMethod);
+    }
+
+    @Benchmark
+    public double dayByPaymentMethodScan(Reports state) throws SQLException {
+        state.scanDay.bind("dayStart", state.day[0]).bind("dayEnd", state.day[1]);
+        return sum(state.scanDay);
+    }
+
+    @Benchmark
+    public double shiftByPaymentMethod(Reports state) throws SQLException {
+        state.shiftByPaymentMethod.bind("shiftId", SHIFT);
+        return sum(state.shiftByPaymentMethod);
+    }
+
+    @Benchmark
+    public double shiftByPaymentMethodScan(Reports state) throws SQLException {
+        state.scanShift.bind("shiftId", SHIFT);
+        return sum(state.scanShift);
+    }
+
+    private static double sum(BenchmarkDatabase.NamedStatement statement) throws SQLException {
+        double total = 0;
+        try (ResultSet result = statement.query()) {
+            while (result.next()) {
+                total += result.getDouble("total") + result.getInt("transaction_count");
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,33 @@
+package com.crofflestore.pos.benchmark;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A database seeded with {@code rows} transactions of BenchmarkData, built
+ * once per trial
+ */
+public abstract class SeededDatabaseState {
+
+    static final int SEED_BATCH = 500;
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    BenchmarkDatabase database;
+
+    @Setup(Level.Trial)
+    public void seed() throws IOException, SQLException {
+        database = BenchmarkDatabase.create();
+        database.seed(BenchmarkData.transactions("tx", rows, 42), SEED_BATCH);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws SQLException {
+        database.close();
+    }
+}
@@ -0,0 +1,119 @@
+package com.crofflestore.pos.benchmark;
+
+import com.crofflestore.pos.database.dao.OfflineTransactionQueries;
+import com.crofflestore.pos.database.dao.QueueEntry;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The sync queue reads OfflineTransactionDao issues on every sync cycle:
+ * a keyset page from the start and from the middle of the queue, the full
+ * pending list, the retry scan, the queued timestamp bounds and the list
+ * screen's recent summaries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SyncQueueBenchmark {
+
+    static final int BATCH_SIZE = 50;
+
+    @State(Scope.Benchmark)
+    public static class Queue extends SeededDatabaseState {
+        BenchmarkDatabase.NamedStatement nextBatchAfter;
+        BenchmarkDatabase.NamedStatement pending;
+        BenchmarkDatabase.NamedStatement retry;
+        BenchmarkDatabase.NamedStatement bounds;
+        BenchmarkDatabase.NamedStatement recent;
+        QueueEntry middle;
+
+        @Setup(Level.Trial)
+        public void prepare() throws SQLException {
+            nextBatchAfter = database.prepare(OfflineTransactionQueries.NEXT_BATCH_AFTER);
+            pending = database.prepare(OfflineTransactionQueries.PENDING_QUEUE_ENTRIES);
+            retry = database.prepare(OfflineTransactionQueries.QUEUE_ENTRIES_FOR_RETRY);
+            bounds = database.prepare(OfflineTransactionQueries.QUEUED_TIMESTAMP_BOUNDS);
+            recent = database.prepare(OfflineTransactionQueries.RECENT_SUMMARIES);
+            try (ResultSet result = pending.query()) {
+                List<QueueEntry> all = BenchmarkDatabase.queueEntries(result);
+                middle = all.get(all.size() / 2);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void release() throws SQLException {
+            nextBatchAfter.close();
+            pending.close();
+            retry.close();
+            bounds.close();
+            recent.close();
+        }
+    }
+
+    @Benchmark
+    public List<QueueEntry> firstPage(Queue state) throws SQLException {
+        return page(state, 0, Long.MIN_VALUE, "");
+    }
+
+    @Benchmark
+    public List<QueueEntry> pageFromMiddle(Queue state) throws SQLException {
+        QueueEntry after = state.middle;
+        return page(state, after.priorityRank, after.timestamp.getTime(), after.id);
+    }
+
+    @Benchmark
+    public List<QueueEntry> pendingQueueEntries(Queue state) throws SQLException {
+        try (ResultSet result = state.pending.query()) {
+            return BenchmarkDatabase.queueEntries(result);
+        }
+    }
+
+    @Benchmark
+    public List<QueueEntry> retryScan(Queue state) throws SQLException {
+        state.retry.bind("now", System.currentTimeMillis());
+        try (ResultSet result = state.retry.query()) {
+            return BenchmarkDatabase.queueEntries(result);
+        }
+    }
+
+    @Benchmark
+    public long queuedTimestampBounds(Queue state) throws SQLException {
+        try (ResultSet result = state.bounds.query()) {
+            return result.next() ? result.getLong(1) ^ result.getLong(2) : 0;
+        }
+    }
+
+    @Benchmark
+    public int recentSummaries(Queue state) throws SQLException {
+        state.recent.bind("limit", BATCH_SIZE);
+        int count = 0;
+        try (ResultSet result = state.recent.query()) {
+            while (result.next()) {
+                count += result.getString("receipt_number").length();
+            }
+        }
+        return count;
+    }
+
+    private static List<QueueEntry> page(Queue state, int rank, long timestamp, String id) throws SQLException {
+        state.nextBatchAfter
+                .bind("afterRank", rank)
+                .bind("afterTimestamp", timestamp)
+                .bind("afterId", id)
+                .bind("now", System.currentTimeMillis())
+                .bind("batchSize", BATCH_SIZE);
+        try (ResultSet result = state.nextBatchAfter.query()) {
+            return BenchmarkDatabase.queueEntries(result);
+        }
+    }
+}